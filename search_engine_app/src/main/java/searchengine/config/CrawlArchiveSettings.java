@@ -0,0 +1,19 @@
+package searchengine.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Getter
+@Setter
+@Component
+@ConfigurationProperties(prefix = "crawl-archive-settings")
+public class CrawlArchiveSettings {
+    private Mode mode = Mode.LIVE;
+    private String path = "crawl-archive.bin";
+
+    public enum Mode {
+        LIVE, RECORD, REPLAY
+    }
+}
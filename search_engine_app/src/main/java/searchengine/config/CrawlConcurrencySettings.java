@@ -0,0 +1,30 @@
+package searchengine.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Getter
+@Setter
+@Component
+@ConfigurationProperties(prefix = "crawl-concurrency-settings")
+public class CrawlConcurrencySettings {
+    /**
+     * Потоки обхода, общие для всех сайтов
+     */
+    private int threads = 32;
+    /**
+     * Потоки подготовки и завершения обхода сайтов: очистка, robots.txt, sitemap, ожидание записи страниц
+     */
+    private int siteThreads = 4;
+    private int initialLimit = 2;
+    private int minLimit = 1;
+    private int maxLimit = 16;
+    /**
+     * Во сколько раз сглаженное время ответа может превысить лучшее, прежде чем число запросов снизится
+     */
+    private double latencyTolerance = 2.0;
+    private double decreaseFactor = 0.5;
+    private long maxRetryAfterMs = 60000;
+}
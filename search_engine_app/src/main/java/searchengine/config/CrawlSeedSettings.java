@@ -0,0 +1,27 @@
+package searchengine.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Getter
+@Setter
+@Component
+@ConfigurationProperties(prefix = "crawl-seed-settings")
+public class CrawlSeedSettings {
+    /**
+     * Не загружать страницы, запрещенные в robots.txt, и соблюдать Crawl-delay
+     */
+    private boolean robotsEnabled = true;
+    /**
+     * Начинать обход не только с главной страницы, но и со всех ссылок из sitemap.xml
+     */
+    private boolean sitemapsEnabled = true;
+    private long robotsCacheTtlMinutes = 1440;
+    private int maxSitemapUrls = 50000;
+    /**
+     * Глубина вложенности индексов sitemap
+     */
+    private int maxSitemapDepth = 3;
+}
@@ -0,0 +1,22 @@
+package searchengine.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Getter
+@Setter
+@Component
+@ConfigurationProperties(prefix = "duplicate-settings")
+public class DuplicateSettings {
+    private boolean enabled = true;
+    /**
+     * Наибольшее число различающихся битов SimHash, при котором страницы считаются дублями (не больше 3)
+     */
+    private int maxDistance = 3;
+    /**
+     * Страницы с меньшим числом разных лемм не проверяются: у коротких текстов отпечатки совпадают случайно
+     */
+    private int minLemmas = 20;
+}
@@ -0,0 +1,25 @@
+package searchengine.config;
+
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import searchengine.utils.ArchivePageFetcher;
+import searchengine.utils.JsoupPageFetcher;
+import searchengine.utils.PageFetcher;
+import searchengine.utils.RecordingPageFetcher;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+@Configuration
+public class FetcherConfig {
+
+    @Bean
+    public PageFetcher pageFetcher (CrawlArchiveSettings archiveSettings, WebConnection webConnection) throws IOException {
+        Path archive = Path.of(archiveSettings.getPath());
+        return switch (archiveSettings.getMode()) {
+            case LIVE -> new JsoupPageFetcher(webConnection);
+            case RECORD -> new RecordingPageFetcher(new JsoupPageFetcher(webConnection), archive);
+            case REPLAY -> new ArchivePageFetcher(archive);
+        };
+    }
+}
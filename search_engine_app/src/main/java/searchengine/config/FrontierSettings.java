@@ -0,0 +1,25 @@
+package searchengine.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Getter
+@Setter
+@Component
+@ConfigurationProperties(prefix = "frontier-settings")
+public class FrontierSettings {
+    /**
+     * Общая очередь обхода в БД: несколько экземпляров приложения обходят сайты вместе
+     */
+    private boolean enabled = false;
+    /**
+     * Имя узла в lease_owner, по умолчанию имя хоста и pid
+     */
+    private String nodeId = "";
+    private int workers = 8;
+    private int leaseBatchSize = 16;
+    private int leaseTtlSeconds = 120;
+    private long pollIntervalMs = 1000;
+}
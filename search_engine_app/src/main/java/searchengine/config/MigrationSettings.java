@@ -0,0 +1,21 @@
+package searchengine.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Getter
+@Setter
+@Component
+@ConfigurationProperties(prefix = "migration-settings")
+public class MigrationSettings {
+    /**
+     * Перенести при запуске HTML-код страниц из столбца page.content в таблицу page_content
+     */
+    private boolean copyPageContent = false;
+    /**
+     * После переноса удалить столбец page.content, если у каждой страницы с HTML-кодом есть копия в page_content
+     */
+    private boolean dropLegacyContent = false;
+}
@@ -0,0 +1,21 @@
+package searchengine.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Getter
+@Setter
+@Component
+@ConfigurationProperties(prefix = "pipeline-settings")
+public class PipelineSettings {
+    private int parseQueueCapacity = 200;
+    private int persistQueueCapacity = 500;
+    private int parsers = 2;
+    private int writers = 2;
+    private int batchSize = 100;
+    private long batchWaitMs = 200;
+    private boolean deferredFrequencies = true;
+    private long frequencyRefreshIntervalMs = 60000;
+}
@@ -0,0 +1,39 @@
+package searchengine.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Getter
+@Setter
+@Component
+@ConfigurationProperties(prefix = "posting-settings")
+public class PostingSettings {
+    private Storage storage = Storage.ROWS;
+    private int blockSize = 128;
+    private String segmentsPath = "index-segments";
+    private int mergeFactor = 10;
+    private int maxSegmentMb = 1024;
+    private String filePath = "index-store";
+
+    public enum Storage {
+        /**
+         * Строка в таблице index на каждую пару страница-лемма.
+         */
+        ROWS,
+        /**
+         * Сжатые блоки списков страниц леммы в таблице posting_block.
+         */
+        BLOCKS,
+        /**
+         * Файлы сегментов в каталоге segments-path, отображенные в память.
+         */
+        SEGMENTS,
+        /**
+         * Встроенное хранилище в каталоге file-path: леммы, списки страниц и HTML-код страниц
+         * в файлах без обращений к БД, для работы одним процессом.
+         */
+        FILE
+    }
+}
@@ -0,0 +1,69 @@
+package searchengine.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import searchengine.model.repositories.IndexRepository;
+import searchengine.model.repositories.LemmaRepository;
+import searchengine.model.repositories.PageContentRepository;
+import searchengine.model.repositories.PageRepository;
+import searchengine.model.repositories.PostingBlockRepository;
+import searchengine.model.repositories.SiteRepository;
+import searchengine.utils.FileIndexStorage;
+import searchengine.utils.IndexStorage;
+import searchengine.utils.JpaIndexStorage;
+import searchengine.utils.PostingBlockStore;
+import searchengine.utils.PostingStore;
+import searchengine.utils.SegmentPostingStore;
+import searchengine.utils.TextParser;
+
+import java.io.IOException;
+import java.util.Optional;
+
+/**
+ * При posting-settings.storage: ROWS хранилище не создается, индекс пишется в таблицу index.
+ * При FILE весь индекс хранится в {@link FileIndexStorage}, иначе в БД через {@link JpaIndexStorage}.
+ */
+@Configuration
+public class PostingStoreConfig {
+
+    @Bean
+    @ConditionalOnProperty(name = "posting-settings.storage", havingValue = "BLOCKS")
+    public PostingStore postingBlockStore (PostingBlockRepository postingBlockRepository,
+                                           LemmaRepository lemmaRepository, PostingSettings settings) {
+        return new PostingBlockStore(postingBlockRepository, lemmaRepository, settings);
+    }
+
+    @Bean
+    @ConditionalOnProperty(name = "posting-settings.storage", havingValue = "SEGMENTS")
+    public PostingStore segmentPostingStore (PostingSettings settings, LemmaRepository lemmaRepository,
+                                             PageRepository pageRepository, MeterRegistry meterRegistry)
+            throws IOException {
+        return new SegmentPostingStore(settings, lemmaRepository, pageRepository, meterRegistry);
+    }
+
+    @Bean
+    @ConditionalOnProperty(name = "posting-settings.storage", havingValue = "FILE")
+    public IndexStorage fileIndexStorage (PostingSettings settings, FrontierSettings frontierSettings,
+                                          SiteRepository siteRepository, PageRepository pageRepository,
+                                          LemmaRepository lemmaRepository, TextParser textParser,
+                                          MeterRegistry meterRegistry) throws IOException {
+        if (frontierSettings.isEnabled()) {
+            throw new IllegalStateException("Хранилище posting-settings.storage: FILE работает в одном процессе " +
+                    "и не поддерживает общий обход (frontier-settings.enabled)");
+        }
+        return new FileIndexStorage(settings, siteRepository, pageRepository, lemmaRepository, textParser, meterRegistry);
+    }
+
+    @Bean
+    @ConditionalOnMissingBean(IndexStorage.class)
+    public IndexStorage jpaIndexStorage (LemmaRepository lemmaRepository, IndexRepository indexRepository,
+                                         PageRepository pageRepository, PageContentRepository pageContentRepository,
+                                         Optional<PostingStore> postingStore, TextParser textParser,
+                                         FrontierSettings frontierSettings) {
+        return new JpaIndexStorage(lemmaRepository, indexRepository, pageRepository, pageContentRepository,
+                postingStore, textParser, frontierSettings);
+    }
+}
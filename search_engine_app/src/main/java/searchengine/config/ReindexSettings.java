@@ -0,0 +1,16 @@
+package searchengine.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Getter
+@Setter
+@Component
+@ConfigurationProperties(prefix = "reindex-settings")
+public class ReindexSettings {
+    private int queueCapacity = 1000;
+    private int workers = 2;
+    private int batchSize = 50;
+}
@@ -0,0 +1,35 @@
+package searchengine.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Getter
+@Setter
+@Component
+@ConfigurationProperties(prefix = "search-settings")
+public class SearchSettings {
+    private int threads = 8;
+    private int queueCapacity = 64;
+    /**
+     * Потоки для параллельного поиска по сайтам внутри одного запроса. Если их очередь заполнена,
+     * сайт обрабатывается в потоке самого запроса.
+     */
+    private int siteThreads = 8;
+    private int siteQueueCapacity = 256;
+    private long defaultDeadlineMs = 3000;
+    private long maxDeadlineMs = 10000;
+    /**
+     * Сколько ждать ответа после срока, прежде чем отменить запрос: поиск завершает
+     * текущий шаг и возвращает неполный результат.
+     */
+    private long timeoutGraceMs = 1000;
+
+    public long resolveDeadline (Long requestedMs) {
+        if (requestedMs == null || requestedMs <= 0) {
+            return defaultDeadlineMs;
+        }
+        return Math.min(requestedMs, maxDeadlineMs);
+    }
+}
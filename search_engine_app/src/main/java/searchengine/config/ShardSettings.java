@@ -0,0 +1,29 @@
+package searchengine.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@Getter
+@Setter
+@Component
+@ConfigurationProperties(prefix = "shard-settings")
+public class ShardSettings {
+    /**
+     * Узел принимает /api/search и рассылает запрос шардам, своя БД при этом не используется
+     */
+    private boolean coordinator = false;
+    /**
+     * Адреса узлов-шардов, например http://localhost:8081
+     */
+    private List<String> shards = new ArrayList<>();
+    private long connectTimeoutMs = 1000;
+    /**
+     * Сколько ждать ответа шарда сверх срока поиска: по сроку шард возвращает то, что успел найти
+     */
+    private long responseGraceMs = 200;
+}
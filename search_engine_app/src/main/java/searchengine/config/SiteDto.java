@@ -8,4 +8,8 @@ import lombok.Setter;
 public class SiteDto {
     private String url;
     private String name;
+    /**
+     * Доля потоков обхода, которую сайт получает относительно других сайтов
+     */
+    private double weight = 1;
 }
@@ -0,0 +1,25 @@
+package searchengine.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Getter
+@Setter
+@Component
+@ConfigurationProperties(prefix = "suggest-settings")
+public class SuggestSettings {
+    private int defaultLimit = 10;
+    private int maxLimit = 20;
+    /**
+     * Наибольшее число лемм в подсказках, при превышении отбрасываются самые редкие
+     */
+    private int maxTerms = 1_000_000;
+    /**
+     * Изменения частот копятся отдельно и вливаются в индекс подсказок раз в merge-interval-ms
+     * или сразу, когда изменилось больше max-pending-terms лемм
+     */
+    private long mergeIntervalMs = 10_000;
+    private int maxPendingTerms = 20_000;
+}
@@ -5,6 +5,8 @@ import lombok.Setter;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.stereotype.Component;
 
+import java.util.List;
+
 @Getter
 @Setter
 @Component
@@ -13,4 +15,13 @@ public class WebConnection {
     private String agent;
     private String referrer;
     private int timeout;
+    private long delay = 1000;
+    /**
+     * Страницы больше этого размера (после распаковки) не загружаются
+     */
+    private int maxPageKb = 5120;
+    /**
+     * Типы содержимого страниц, которые загружаются и индексируются
+     */
+    private List<String> contentTypes = List.of("text/html", "application/xhtml+xml");
 }
@@ -1,16 +1,35 @@
 package searchengine.controllers;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import jdk.jshell.Snippet;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.async.DeferredResult;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import searchengine.config.SearchSettings;
+import searchengine.dto.responses.ErrorSearchResponse;
 import searchengine.dto.responses.IndexingResponse;
+import searchengine.dto.responses.PipelineResponse;
 import searchengine.dto.responses.SearchResponse;
 import searchengine.dto.responses.StatisticsResponse;
 import searchengine.dto.responses.SuccessfulSearchResponse;
+import searchengine.dto.responses.SuggestResponse;
 import searchengine.services.IndexingService;
 import searchengine.services.SearchService;
 import searchengine.services.SearchServiceImpl;
 import searchengine.services.StatisticsService;
+import searchengine.services.SuggestService;
+import searchengine.utils.SearchStreamWriter;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 
 @RestController
@@ -20,11 +39,19 @@ public class ApiController {
     private final StatisticsService statisticsService;
     private final IndexingService indexingService;
     private final SearchService searchService;
+    private final ObjectMapper objectMapper;
+    private final SearchSettings searchSettings;
+    private final SuggestService suggestService;
 
-    public ApiController (StatisticsService statisticsService, IndexingService indexingService, SearchService searchService) {
+    public ApiController (StatisticsService statisticsService, IndexingService indexingService,
+                          SearchService searchService, ObjectMapper objectMapper, SearchSettings searchSettings,
+                          SuggestService suggestService) {
         this.statisticsService = statisticsService;
         this.indexingService = indexingService;
         this.searchService = searchService;
+        this.objectMapper = objectMapper;
+        this.searchSettings = searchSettings;
+        this.suggestService = suggestService;
     }
 
     @GetMapping("/statistics")
@@ -32,6 +59,11 @@ public class ApiController {
         return ResponseEntity.ok(statisticsService.getStatistics());
     }
 
+    @GetMapping("/statistics/pipeline")
+    public ResponseEntity<PipelineResponse> pipelineStatistics() {
+        return ResponseEntity.ok(statisticsService.getPipelineStatistics());
+    }
+
     @GetMapping("/startIndexing")
     public ResponseEntity<IndexingResponse> startIndexing() {
         return ResponseEntity.ok(indexingService.startIndexing());
@@ -47,13 +79,113 @@ public class ApiController {
         return ResponseEntity.ok(indexingService.indexPage(url));
     }
 
+    @PostMapping("/indexPages")
+    public ResponseEntity<IndexingResponse> indexPages(@RequestBody List<String> urls) {
+        return ResponseEntity.ok(indexingService.indexPages(urls));
+    }
+
+    @PostMapping("/removeUnconfiguredSites")
+    public ResponseEntity<IndexingResponse> removeUnconfiguredSites() {
+        return ResponseEntity.ok(indexingService.removeUnconfiguredSites());
+    }
+
+    /**
+     * Поиск выполняется в отдельном пуле, поток Tomcat освобождается сразу.
+     * deadline - срок в миллисекундах, по истечении которого возвращается неполный результат.
+     */
     @GetMapping("/search")
-    public ResponseEntity<SearchResponse> search(
+    public DeferredResult<ResponseEntity<SearchResponse>> search(
             @RequestParam String query,
             @RequestParam(required = false) String site,
             @RequestParam(required = false) int offset,
-            @RequestParam(required = false) int limit
+            @RequestParam(required = false) int limit,
+            @RequestParam(required = false) Long deadline
+            ) {
+        long deadlineMs = searchSettings.resolveDeadline(deadline);
+        DeferredResult<ResponseEntity<SearchResponse>> result =
+                new DeferredResult<>(deadlineMs + searchSettings.getTimeoutGraceMs());
+        CompletableFuture<SearchResponse> future = searchService.searchAsync(query, site, offset, limit, deadlineMs);
+        result.onTimeout(() -> {
+            future.cancel(true);
+            result.setErrorResult(ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .body(new ErrorSearchResponse("Превышено время выполнения поиска")));
+        });
+        future.whenComplete((response, error) -> {
+            if (error == null) {
+                result.setResult(ResponseEntity.ok(response));
+            } else {
+                result.setErrorResult(searchErrorResponse(error));
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Подсказки отвечают из памяти без обращения к БД, поэтому выполняются в потоке Tomcat.
+     */
+    @GetMapping("/suggest")
+    public ResponseEntity<SuggestResponse> suggest(
+            @RequestParam String query,
+            @RequestParam(required = false) Integer limit
+            ) {
+        return ResponseEntity.ok(suggestService.suggest(query, limit));
+    }
+
+    private ResponseEntity<SearchResponse> searchErrorResponse (Throwable error) {
+        Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+        if (cause instanceof RejectedExecutionException) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .header("Retry-After", "1")
+                    .body(new ErrorSearchResponse(searchErrorMessage(cause)));
+        }
+        return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                .body(new ErrorSearchResponse(searchErrorMessage(cause)));
+    }
+
+    private static String searchErrorMessage (Throwable cause) {
+        if (cause instanceof RejectedExecutionException) {
+            return "Сервер перегружен, повторите запрос позже";
+        }
+        return "Ошибка при выполнении поиска: " + cause.getMessage();
+    }
+
+    /**
+     * Потоковый поиск: Server-Sent Events, если клиент принимает text/event-stream, иначе NDJSON.
+     * Выполняется в том же пуле и с тем же сроком deadline, что и обычный поиск.
+     */
+    @GetMapping(value = "/search/stream", produces = {SearchStreamWriter.NDJSON, MediaType.TEXT_EVENT_STREAM_VALUE})
+    public ResponseEntity<StreamingResponseBody> searchStream(
+            @RequestParam String query,
+            @RequestParam(required = false) String site,
+            @RequestParam(required = false, defaultValue = "0") int offset,
+            @RequestParam(required = false, defaultValue = "20") int limit,
+            @RequestParam(required = false) Long deadline,
+            @RequestHeader(value = "Accept", required = false) String accept
             ) {
-        return ResponseEntity.ok(searchService.search(query, site, offset, limit));
+        boolean events = accept != null && accept.contains(MediaType.TEXT_EVENT_STREAM_VALUE);
+        SearchStreamWriter.Format format = events ? SearchStreamWriter.Format.SSE : SearchStreamWriter.Format.NDJSON;
+        long deadlineMs = searchSettings.resolveDeadline(deadline);
+        StreamingResponseBody body = output -> {
+            SearchStreamWriter writer = new SearchStreamWriter(output, objectMapper, format);
+            CompletableFuture<Void> future = searchService.searchStreamAsync(query, site, offset, limit, deadlineMs, writer);
+            try {
+                future.get(deadlineMs + searchSettings.getTimeoutGraceMs(), TimeUnit.MILLISECONDS);
+            } catch (TimeoutException e) {
+                future.cancel(true);
+                writer.onError("Превышено время выполнения поиска");
+            } catch (ExecutionException e) {
+                writer.onError(searchErrorMessage(e.getCause()));
+            } catch (InterruptedException e) {
+                future.cancel(true);
+                Thread.currentThread().interrupt();
+            } finally {
+                writer.finish();
+            }
+        };
+        return ResponseEntity.ok()
+                .contentType(events ? MediaType.TEXT_EVENT_STREAM : MediaType.parseMediaType(SearchStreamWriter.NDJSON))
+                .header("Cache-Control", "no-cache")
+                .header("X-Accel-Buffering", "no")
+                .body(body);
     }
 }
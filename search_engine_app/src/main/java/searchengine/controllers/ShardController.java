@@ -0,0 +1,59 @@
+package searchengine.controllers;
+
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import searchengine.config.SearchSettings;
+import searchengine.dto.search.SearchData;
+import searchengine.dto.search.ShardHits;
+import searchengine.dto.search.ShardStatistics;
+import searchengine.services.ShardSearchService;
+import searchengine.utils.SearchDeadline;
+
+import java.util.List;
+
+/**
+ * Запросы координатора распределенного поиска к узлу-шарду
+ */
+@RestController
+@RequestMapping("/api/shard")
+public class ShardController {
+
+    private final ShardSearchService shardSearchService;
+    private final SearchSettings searchSettings;
+
+    public ShardController (ShardSearchService shardSearchService, SearchSettings searchSettings) {
+        this.shardSearchService = shardSearchService;
+        this.searchSettings = searchSettings;
+    }
+
+    @GetMapping("/statistics")
+    public ResponseEntity<ShardStatistics> statistics(
+            @RequestParam List<String> lemmas,
+            @RequestParam(required = false) String site
+    ) {
+        return ResponseEntity.ok(shardSearchService.getShardStatistics(lemmas, site));
+    }
+
+    @GetMapping("/search")
+    public ResponseEntity<ShardHits> search(
+            @RequestParam List<String> lemmas,
+            @RequestParam(required = false) String site,
+            @RequestParam int top,
+            @RequestParam(required = false) Long deadline
+    ) {
+        SearchDeadline searchDeadline = SearchDeadline.after(searchSettings.resolveDeadline(deadline));
+        return ResponseEntity.ok(shardSearchService.searchShard(lemmas, site, top, searchDeadline));
+    }
+
+    @GetMapping("/pages")
+    public ResponseEntity<List<SearchData>> pages(
+            @RequestParam List<Integer> ids,
+            @RequestParam List<String> lemmas,
+            @RequestParam(defaultValue = "true") boolean snippets
+    ) {
+        return ResponseEntity.ok(shardSearchService.getShardPageData(ids, lemmas, snippets));
+    }
+}
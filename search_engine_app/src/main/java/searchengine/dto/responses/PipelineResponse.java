@@ -0,0 +1,12 @@
+package searchengine.dto.responses;
+
+import lombok.Data;
+import searchengine.dto.statistics.PipelineStageStatistics;
+
+import java.util.List;
+
+@Data
+public class PipelineResponse {
+    private boolean result;
+    private List<PipelineStageStatistics> stages;
+}
@@ -0,0 +1,13 @@
+package searchengine.dto.responses;
+
+import lombok.Data;
+
+@Data
+public class SearchCountResponse implements SearchResponse {
+    private boolean result;
+    private long count;
+    public SearchCountResponse (long count) {
+        this.result = true;
+        this.count = count;
+    }
+}
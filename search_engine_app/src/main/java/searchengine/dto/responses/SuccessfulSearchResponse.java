@@ -11,4 +11,8 @@ public class SuccessfulSearchResponse implements SearchResponse {
     private boolean result;
     private long count;
     private List<SearchData> data;
+    /**
+     * Поиск прерван по сроку, найдены не все страницы или не у всех результатов есть сниппет
+     */
+    private boolean partial;
 }
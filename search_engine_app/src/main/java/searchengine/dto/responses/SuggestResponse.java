@@ -0,0 +1,15 @@
+package searchengine.dto.responses;
+
+import lombok.Data;
+
+import java.util.List;
+
+@Data
+public class SuggestResponse {
+    private boolean result;
+    private List<String> suggestions;
+    public SuggestResponse (List<String> suggestions) {
+        this.result = true;
+        this.suggestions = suggestions;
+    }
+}
@@ -0,0 +1,16 @@
+package searchengine.dto.search;
+
+import lombok.Data;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@Data
+public class ShardHits {
+    private int count;
+    private boolean partial;
+    /**
+     * Лучшие страницы шарда по убыванию релевантности
+     */
+    private List<ShardPage> pages = new ArrayList<>();
+}
@@ -0,0 +1,12 @@
+package searchengine.dto.search;
+
+import lombok.Data;
+
+/**
+ * Найденная шардом страница с абсолютной релевантностью, без заголовка и сниппета
+ */
+@Data
+public class ShardPage {
+    private int pageId;
+    private double relevance;
+}
@@ -0,0 +1,19 @@
+package searchengine.dto.search;
+
+import lombok.Data;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Статистика узла-шарда, из которой координатор отбирает ключевые слова так же,
+ * как если бы все сайты были в одной БД
+ */
+@Data
+public class ShardStatistics {
+    private long pageCount;
+    /**
+     * Суммарная частота лемм запроса по сайтам шарда, отсутствующих лемм здесь нет
+     */
+    private Map<String, Long> lemmaFrequencies = new HashMap<>();
+}
@@ -0,0 +1,12 @@
+package searchengine.dto.statistics;
+
+import lombok.Data;
+
+@Data
+public class PipelineStageStatistics {
+    private String stage;
+    private int queueSize;
+    private int queueCapacity;
+    private long processed;
+    private double throughput;
+}
@@ -0,0 +1,58 @@
+package searchengine.model.entities;
+
+import lombok.Getter;
+import lombok.Setter;
+import searchengine.model.FrontierStatus;
+
+import javax.persistence.*;
+import javax.persistence.Index;
+import java.time.LocalDateTime;
+
+/**
+ * Ссылка общей очереди обхода. Строка с (site_id, url_hash) создается один раз за обход,
+ * поэтому вставка строки - это и "захват" ссылки узлом, который ее нашел.
+ * Узлы берут ссылки в аренду пачками, по истечении lease_expires_at
+ * незавершенную пачку забирает другой узел.
+ */
+@Entity
+@Table(name = "frontier", indexes = {
+        @Index(name = "frontier_site_url_hash", columnList = "site_id, url_hash", unique = true),
+        @Index(name = "frontier_site_status", columnList = "site_id, status"),
+        @Index(name = "frontier_lease_token", columnList = "lease_token")
+})
+@Getter
+@Setter
+public class FrontierUrl {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @JoinColumn(name = "site_id", referencedColumnName = "id", nullable = false)
+    @ManyToOne
+    private Site site;
+
+    @Column(name = "url", nullable = false, columnDefinition = "TEXT")
+    private String url;
+
+    @Column(name = "url_hash", nullable = false)
+    private long urlHash;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "status", nullable = false, columnDefinition = "ENUM('PENDING', 'LEASED', 'DONE')")
+    private FrontierStatus status = FrontierStatus.PENDING;
+
+    @Column(name = "lease_owner", columnDefinition = "VARCHAR(255)")
+    private String leaseOwner;
+
+    @Column(name = "lease_token", columnDefinition = "VARCHAR(36)")
+    private String leaseToken;
+
+    @Column(name = "lease_expires_at")
+    private LocalDateTime leaseExpiresAt;
+
+    /**
+     * Дата lastmod из sitemap.xml
+     */
+    @Column(name = "last_modified")
+    private LocalDateTime lastModified;
+}
@@ -15,11 +15,11 @@ public class Index {
     private Integer id;
 
     @JoinColumn(name = "page_id", referencedColumnName = "id", nullable = false)
-    @ManyToOne
+    @ManyToOne(fetch = FetchType.LAZY)
     private Page page;
 
     @JoinColumn(name = "lemma_id", referencedColumnName = "id", nullable = false)
-    @ManyToOne
+    @ManyToOne(fetch = FetchType.LAZY)
     private Lemma lemma;
 
     @Column(name = "\"rank\"", nullable = false)
@@ -7,16 +7,16 @@ import javax.persistence.*;
 import java.util.Set;
 
 @Entity
-@Table(name = "lemma")
+@Table(name = "lemma", indexes = @javax.persistence.Index(name = "lemma_site_lemma", columnList = "site_id, lemma", unique = true))
 @Getter
 @Setter
-public class Lemma implements Comparable<Lemma> {
+public class Lemma {
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
     private Integer id;
 
     @JoinColumn(name = "site_id", referencedColumnName = "id", nullable = false)
-    @ManyToOne
+    @ManyToOne(fetch = FetchType.LAZY)
     private Site site;
 
     @Column(name = "lemma", columnDefinition = "VARCHAR(255)", nullable = false)
@@ -27,9 +27,4 @@ public class Lemma implements Comparable<Lemma> {
 
     @OneToMany(mappedBy = "lemma", targetEntity = Index.class, cascade = CascadeType.ALL)
     private Set<Index> indexSet;
-
-    @Override
-    public int compareTo(Lemma o) {
-        return this.getFrequency() - o.getFrequency();
-    }
 }
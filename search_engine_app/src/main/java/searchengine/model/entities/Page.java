@@ -5,10 +5,13 @@ import lombok.Setter;
 
 import javax.persistence.*;
 import javax.persistence.Index;
+import searchengine.utils.Hashing;
+
+import java.time.LocalDateTime;
 import java.util.Set;
 
 @Entity
-@Table(name = "page", indexes = @Index(columnList = "path", unique = true))
+@Table(name = "page", indexes = @Index(name = "page_site_url_hash", columnList = "site_id, url_hash", unique = true))
 @Getter
 @Setter
 public class Page {
@@ -24,14 +27,48 @@ public class Page {
     @Column(name = "path", nullable = false, columnDefinition = "TEXT")
     private String path;
 
+    /**
+     * Хеш пути для поиска страницы по индексу (site_id, url_hash): по TEXT-столбцу path
+     * MySQL полноценный индекс не строит. Заполняется в {@link #setPath(String)}.
+     */
+    @Column(name = "url_hash")
+    private Long urlHash;
+
     @Column(name = "code", nullable = false)
     private int code;
 
-    @Column(name = "content", nullable = false, columnDefinition = "MEDIUMTEXT")
+    /**
+     * HTML-код загруженной страницы до записи в БД. В БД хранится в {@link PageContent}
+     * и у прочитанных из БД страниц не заполняется.
+     */
+    @Transient
     private String content;
 
+    /**
+     * Дата изменения страницы из sitemap.xml (lastmod), если сайт ее сообщает
+     */
+    @Column(name = "last_modified")
+    private LocalDateTime lastModified;
+
+    /**
+     * SimHash лемм страницы, см. {@link searchengine.utils.DuplicateDetector}
+     */
+    @Column(name = "simhash")
+    private Long simhash;
+
+    /**
+     * Страница - почти точная копия страницы с этим id и не индексируется
+     */
+    @Column(name = "canonical_page_id")
+    private Integer canonicalPageId;
+
     @OneToMany(mappedBy = "page", targetEntity = searchengine.model.entities.Index.class, cascade = CascadeType.ALL)
     private Set<searchengine.model.entities.Index> indexSet;
 
+    public void setPath (String path) {
+        this.path = path;
+        this.urlHash = path == null ? null : Hashing.hash64(path);
+    }
+
 
 }
@@ -0,0 +1,37 @@
+package searchengine.model.entities;
+
+import lombok.Getter;
+import lombok.Setter;
+
+import javax.persistence.*;
+
+/**
+ * HTML-код страницы. Хранится отдельно от {@link Page}, чтобы поиск и индексация,
+ * которым нужны только метаданные страниц, не читали MEDIUMTEXT.
+ * Загружается только там, где нужен текст: сниппеты, заголовки, повторная лемматизация.
+ */
+@Entity
+@Table(name = "page_content")
+@Getter
+@Setter
+public class PageContent {
+    @Id
+    @Column(name = "page_id")
+    private Integer id;
+
+    @MapsId
+    @OneToOne(fetch = FetchType.LAZY, optional = false)
+    @JoinColumn(name = "page_id")
+    private Page page;
+
+    @Column(name = "content", nullable = false, columnDefinition = "MEDIUMTEXT")
+    private String content;
+
+    public PageContent () {
+    }
+
+    public PageContent (Page page) {
+        this.page = page;
+        this.content = page.getContent();
+    }
+}
@@ -0,0 +1,38 @@
+package searchengine.model.entities;
+
+import lombok.Getter;
+import lombok.Setter;
+
+import javax.persistence.*;
+import javax.persistence.Index;
+
+/**
+ * Блок списка страниц леммы: до posting-settings.block-size пар (id страницы, rank),
+ * упакованных {@link searchengine.utils.PostingList#encode()}.
+ * Блоки одной леммы не пересекаются по диапазонам id страниц.
+ */
+@Entity
+@Table(name = "posting_block", indexes = @Index(columnList = "lemma_id, first_page_id"))
+@Getter
+@Setter
+public class PostingBlock {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Integer id;
+
+    @JoinColumn(name = "lemma_id", referencedColumnName = "id", nullable = false)
+    @ManyToOne(fetch = FetchType.LAZY)
+    private Lemma lemma;
+
+    @Column(name = "first_page_id", nullable = false)
+    private int firstPageId;
+
+    @Column(name = "last_page_id", nullable = false)
+    private int lastPageId;
+
+    @Column(name = "posting_count", nullable = false)
+    private int postingCount;
+
+    @Column(name = "data", nullable = false, columnDefinition = "MEDIUMBLOB")
+    private byte[] data;
+}
@@ -0,0 +1,76 @@
+package searchengine.model.repositories;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+import searchengine.model.entities.FrontierUrl;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Время аренды считается по часам БД (CURRENT_TIMESTAMP), чтобы расхождение часов узлов
+ * не приводило к преждевременному перехвату чужих пачек.
+ */
+@Repository
+public interface FrontierRepository extends JpaRepository<FrontierUrl, Long> {
+
+    /**
+     * @return 1, если ссылка захвачена этим вызовом, 0 - если она уже есть в очереди
+     */
+    @Modifying
+    @Transactional
+    @Query(value = "INSERT IGNORE INTO frontier (site_id, url, url_hash, status, last_modified) " +
+            "VALUES (:siteId, :url, :urlHash, 'PENDING', :lastModified)", nativeQuery = true)
+    int claim (@Param("siteId") int siteId, @Param("url") String url, @Param("urlHash") long urlHash,
+               @Param("lastModified") LocalDateTime lastModified);
+
+    /**
+     * Атомарно берет в аренду до limit ожидающих ссылок сайта или ссылок с истекшей арендой
+     *
+     * @return число взятых ссылок, сами ссылки - {@link #findByLeaseToken(String)}
+     */
+    @Modifying
+    @Transactional
+    @Query(value = "UPDATE frontier SET status = 'LEASED', lease_owner = :owner, lease_token = :token, " +
+            "lease_expires_at = TIMESTAMPADD(SECOND, :ttlSeconds, CURRENT_TIMESTAMP) " +
+            "WHERE site_id = :siteId AND (status = 'PENDING' " +
+            "OR (status = 'LEASED' AND lease_expires_at < CURRENT_TIMESTAMP)) LIMIT :limit", nativeQuery = true)
+    int lease (@Param("siteId") int siteId, @Param("owner") String owner, @Param("token") String token,
+               @Param("ttlSeconds") int ttlSeconds, @Param("limit") int limit);
+
+    List<FrontierUrl> findByLeaseToken (String leaseToken);
+
+    @Modifying
+    @Transactional
+    @Query(value = "UPDATE frontier SET lease_expires_at = TIMESTAMPADD(SECOND, :ttlSeconds, CURRENT_TIMESTAMP) " +
+            "WHERE lease_token = :token AND status = 'LEASED'", nativeQuery = true)
+    int renewLease (@Param("token") String token, @Param("ttlSeconds") int ttlSeconds);
+
+    /**
+     * Пачка, аренду которой уже перехватил другой узел, не изменяется
+     */
+    @Modifying
+    @Transactional
+    @Query(value = "UPDATE frontier SET status = 'DONE', lease_token = NULL, lease_expires_at = NULL " +
+            "WHERE lease_token = :token AND status = 'LEASED'", nativeQuery = true)
+    int complete (@Param("token") String token);
+
+    /**
+     * Сайты в статусе INDEXING, у которых есть ссылки для аренды
+     */
+    @Query(value = "SELECT DISTINCT f.site_id FROM frontier f JOIN site s ON s.id = f.site_id " +
+            "WHERE s.status = 'INDEXING' AND (f.status = 'PENDING' " +
+            "OR (f.status = 'LEASED' AND f.lease_expires_at < CURRENT_TIMESTAMP))", nativeQuery = true)
+    List<Integer> findLeasableSiteIds ();
+
+    @Query(value = "SELECT COUNT(*) FROM frontier WHERE site_id = :siteId AND status <> 'DONE'", nativeQuery = true)
+    long countUnfinished (@Param("siteId") int siteId);
+
+    @Modifying
+    @Query(value = "DELETE FROM frontier WHERE site_id = :siteId LIMIT :limit", nativeQuery = true)
+    int deleteChunkBySiteId (@Param("siteId") int siteId, @Param("limit") int limit);
+}
@@ -1,14 +1,33 @@
 package searchengine.model.repositories;
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import searchengine.model.entities.Index;
-import searchengine.model.entities.Lemma;
-import searchengine.model.entities.Page;
 
+import java.util.Collection;
 import java.util.List;
-import java.util.Optional;
 
 public interface IndexRepository extends JpaRepository<Index, Integer> {
-    List<Index> findByLemma (Lemma lemma);
-    Optional<Index> findByLemmaAndPage (Lemma lemma, Page page);
+    /**
+     * Список страниц леммы: строки (id страницы, rank) по возрастанию id страницы
+     */
+    @Query("SELECT i.page.id, i.rank FROM Index i WHERE i.lemma.id = :lemmaId ORDER BY i.page.id")
+    List<Object[]> findPostingsByLemmaId (@Param("lemmaId") int lemmaId);
+
+    /**
+     * Строки (id леммы, число страниц) для лемм удаляемых страниц
+     */
+    @Query("SELECT i.lemma.id, COUNT(i) FROM Index i WHERE i.page.id IN :pageIds GROUP BY i.lemma.id")
+    List<Object[]> countLemmasByPageIdIn (@Param("pageIds") Collection<Integer> pageIds);
+
+    @Modifying
+    @Query("DELETE FROM Index i WHERE i.page.id IN :pageIds")
+    int deleteByPageIdIn (@Param("pageIds") Collection<Integer> pageIds);
+
+    @Modifying
+    @Query(value = "DELETE FROM `index` WHERE page_id IN (SELECT p.id FROM page p WHERE p.site_id = :siteId) LIMIT :limit",
+            nativeQuery = true)
+    int deleteChunkBySiteId (@Param("siteId") int siteId, @Param("limit") int limit);
 }
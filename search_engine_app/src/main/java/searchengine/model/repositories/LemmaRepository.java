@@ -1,9 +1,17 @@
 package searchengine.model.repositories;
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
 import searchengine.model.entities.Lemma;
 import searchengine.model.entities.Site;
 
+import javax.persistence.LockModeType;
+
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -11,4 +19,51 @@ public interface LemmaRepository extends JpaRepository<Lemma, Integer> {
     Optional<Lemma> findByLemmaAndSite (String lemma, Site site);
     List<Lemma> findByLemma (String lemma);
     List<Lemma> findBySite (Site site);
+    List<Lemma> findBySiteAndLemmaIn (Site site, Collection<String> lemmas);
+    long countBySite (Site site);
+
+    @Query("SELECT l.lemma, l.frequency FROM Lemma l WHERE l.site.id = :siteId")
+    List<Object[]> findFrequenciesBySiteId (@Param("siteId") int siteId);
+
+    @Query("SELECT MAX(l.id), COUNT(l) FROM Lemma l")
+    List<Object[]> findWatermark ();
+
+    /**
+     * Строки (id сайта, число лемм, сумма частот)
+     */
+    @Query("SELECT l.site.id, COUNT(l), SUM(l.frequency) FROM Lemma l GROUP BY l.site.id")
+    List<Object[]> findCountersBySite ();
+
+    @Lock(LockModeType.PESSIMISTIC_READ)
+    @Query("SELECT l FROM Lemma l WHERE l.site = :site AND l.lemma IN :lemmas")
+    List<Lemma> lockBySiteAndLemmaIn (@Param("site") Site site, @Param("lemmas") Collection<String> lemmas);
+
+    @Modifying
+    @Query("UPDATE Lemma l SET l.frequency = l.frequency + :count WHERE l.site = :site AND l.lemma IN :lemmas")
+    int incrementFrequencies (@Param("site") Site site, @Param("lemmas") Collection<String> lemmas,
+                              @Param("count") int count);
+
+    @Modifying
+    @Query(value = "INSERT IGNORE INTO lemma (site_id, lemma, frequency) VALUES (:siteId, :lemma, 0)", nativeQuery = true)
+    int insertIgnore (@Param("siteId") int siteId, @Param("lemma") String lemma);
+
+    @Modifying
+    @Transactional
+    @Query(value = "UPDATE lemma l JOIN (" +
+            "SELECT i.lemma_id, COUNT(*) AS frequency FROM `index` i " +
+            "JOIN page p ON p.id = i.page_id WHERE p.site_id = :siteId GROUP BY i.lemma_id" +
+            ") f ON f.lemma_id = l.id SET l.frequency = f.frequency", nativeQuery = true)
+    int recalculateFrequencies (@Param("siteId") int siteId);
+
+    @Modifying
+    @Transactional
+    @Query(value = "UPDATE lemma l JOIN (" +
+            "SELECT b.lemma_id, SUM(b.posting_count) AS frequency FROM posting_block b " +
+            "JOIN lemma bl ON bl.id = b.lemma_id WHERE bl.site_id = :siteId GROUP BY b.lemma_id" +
+            ") f ON f.lemma_id = l.id SET l.frequency = f.frequency", nativeQuery = true)
+    int recalculateFrequenciesFromBlocks (@Param("siteId") int siteId);
+
+    @Modifying
+    @Query(value = "DELETE FROM lemma WHERE site_id = :siteId LIMIT :limit", nativeQuery = true)
+    int deleteChunkBySiteId (@Param("siteId") int siteId, @Param("limit") int limit);
 }
@@ -0,0 +1,65 @@
+package searchengine.model.repositories;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import searchengine.model.entities.PageContent;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+@Repository
+public interface PageContentRepository extends JpaRepository<PageContent, Integer> {
+    @Query("SELECT c.id, c.content FROM PageContent c WHERE c.id IN :pageIds")
+    List<Object[]> findContentsByIdIn (@Param("pageIds") Collection<Integer> pageIds);
+
+    /**
+     * HTML-код страниц по id страницы, одним запросом
+     */
+    default Map<Integer, String> findContents (Collection<Integer> pageIds) {
+        Map<Integer, String> contents = new HashMap<>();
+        if (!pageIds.isEmpty()) {
+            findContentsByIdIn(pageIds).forEach(row -> contents.put((Integer) row[0], (String) row[1]));
+        }
+        return contents;
+    }
+
+    @Modifying
+    @Query(value = "DELETE FROM page_content WHERE page_id IN (SELECT p.id FROM page p WHERE p.site_id = :siteId) LIMIT :limit",
+            nativeQuery = true)
+    int deleteChunkBySiteId (@Param("siteId") int siteId, @Param("limit") int limit);
+
+    /**
+     * Есть ли в таблице page столбец content, в котором HTML-код хранился раньше
+     */
+    @Query(value = "SELECT COUNT(*) FROM information_schema.columns " +
+            "WHERE table_schema = DATABASE() AND table_name = 'page' AND column_name = 'content'", nativeQuery = true)
+    int countLegacyContentColumns ();
+
+    @Modifying
+    @Query(value = "INSERT IGNORE INTO page_content (page_id, content) " +
+            "SELECT p.id, p.content FROM page p WHERE p.id > :fromId AND p.id <= :toId", nativeQuery = true)
+    int copyLegacyContent (@Param("fromId") int fromId, @Param("toId") int toId);
+
+    /**
+     * Страницы с HTML-кодом в столбце page.content, у которых еще нет строки в page_content
+     */
+    @Query(value = "SELECT COUNT(*) FROM page p LEFT JOIN page_content c ON c.page_id = p.id " +
+            "WHERE p.content IS NOT NULL AND c.page_id IS NULL", nativeQuery = true)
+    long countUncopiedLegacyContent ();
+
+    /**
+     * Новые страницы записываются без content, а в старой схеме столбец NOT NULL без значения по умолчанию
+     */
+    @Modifying
+    @Query(value = "ALTER TABLE page MODIFY content MEDIUMTEXT NULL", nativeQuery = true)
+    void allowNullLegacyContent ();
+
+    @Modifying
+    @Query(value = "ALTER TABLE page DROP COLUMN content", nativeQuery = true)
+    void dropLegacyContentColumn ();
+}
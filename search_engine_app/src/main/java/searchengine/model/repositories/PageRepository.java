@@ -1,14 +1,71 @@
 package searchengine.model.repositories;
 
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 import searchengine.model.entities.Page;
 import searchengine.model.entities.Site;
+import searchengine.utils.Hashing;
 
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 
 @Repository
 public interface PageRepository extends JpaRepository<Page, Integer> {
-    Optional<Page> findByPath (String path);
-    Optional<Page> findByPathAndSite (String path, Site site);
+    List<Page> findBySiteAndUrlHash (Site site, Long urlHash);
+    long countBySite (Site site);
+
+    @Query("SELECT COALESCE(MAX(p.id), 0) FROM Page p")
+    int findMaxId ();
+
+    /**
+     * Поиск по индексу (site_id, url_hash), путь сравнивается только у страниц с совпавшим хешем
+     */
+    default Optional<Page> findByPathAndSite (String path, Site site) {
+        return findBySiteAndUrlHash(site, Hashing.hash64(path))
+                .stream()
+                .filter(page -> page.getPath().equals(path))
+                .findFirst();
+    }
+
+    /**
+     * Страницы, сохраненные до появления url_hash
+     */
+    @Query("SELECT p.id, p.path FROM Page p WHERE p.urlHash IS NULL")
+    List<Object[]> findPathsWithoutUrlHash (Pageable pageable);
+
+    @Modifying
+    @Query("UPDATE Page p SET p.urlHash = :urlHash WHERE p.id = :id")
+    void updateUrlHash (@Param("id") int id, @Param("urlHash") long urlHash);
+
+    @Query("SELECT p.id FROM Page p WHERE p.site = :site")
+    List<Integer> findIdsBySite (@Param("site") Site site);
+
+    /**
+     * Пары (id, simhash) исходных страниц сайта
+     */
+    @Query("SELECT p.id, p.simhash FROM Page p WHERE p.site = :site AND p.simhash IS NOT NULL AND p.canonicalPageId IS NULL")
+    List<Object[]> findFingerprintsBySite (@Param("site") Site site);
+
+    /**
+     * Наибольший id страницы и число страниц: MAX берется из первичного ключа без чтения строк
+     */
+    @Query("SELECT MAX(p.id), COUNT(p) FROM Page p")
+    List<Object[]> findWatermark ();
+
+    /**
+     * Строки (id сайта, число страниц, наибольший id страницы)
+     */
+    @Query("SELECT p.site.id, COUNT(p), MAX(p.id) FROM Page p GROUP BY p.site.id")
+    List<Object[]> findCountersBySite ();
+
+    List<Page> findByCanonicalPageIdIn (Collection<Integer> canonicalPageIds);
+
+    @Modifying
+    @Query(value = "DELETE FROM page WHERE site_id = :siteId LIMIT :limit", nativeQuery = true)
+    int deleteChunkBySiteId (@Param("siteId") int siteId, @Param("limit") int limit);
 }
@@ -0,0 +1,46 @@
+package searchengine.model.repositories;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import searchengine.model.entities.Lemma;
+import searchengine.model.entities.PostingBlock;
+
+import javax.persistence.LockModeType;
+import java.util.Collection;
+import java.util.List;
+
+public interface PostingBlockRepository extends JpaRepository<PostingBlock, Integer> {
+    List<PostingBlock> findByLemmaOrderByFirstPageId (Lemma lemma);
+
+    /**
+     * Неполные блоки лемм с блокировкой до конца транзакции, чтобы параллельные
+     * дописывания в один блок не затирали друг друга.
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    List<PostingBlock> findByLemmaInAndPostingCountLessThan (Collection<Lemma> lemmas, int postingCount);
+
+    /**
+     * Блоки леммы, диапазон которых пересекается с [fromPageId, toPageId].
+     */
+    @Query("SELECT b FROM PostingBlock b WHERE b.lemma = :lemma " +
+            "AND b.lastPageId >= :fromPageId AND b.firstPageId <= :toPageId ORDER BY b.firstPageId")
+    List<PostingBlock> findOverlapping (@Param("lemma") Lemma lemma,
+                                        @Param("fromPageId") int fromPageId, @Param("toPageId") int toPageId);
+
+    /**
+     * То же, что {@link #findOverlapping}, с блокировкой блоков до конца транзакции для их изменения.
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT b FROM PostingBlock b WHERE b.lemma = :lemma " +
+            "AND b.lastPageId >= :fromPageId AND b.firstPageId <= :toPageId ORDER BY b.firstPageId")
+    List<PostingBlock> findOverlappingForUpdate (@Param("lemma") Lemma lemma,
+                                                 @Param("fromPageId") int fromPageId, @Param("toPageId") int toPageId);
+
+    @Modifying
+    @Query(value = "DELETE FROM posting_block WHERE lemma_id IN (SELECT l.id FROM lemma l WHERE l.site_id = :siteId) " +
+            "LIMIT :limit", nativeQuery = true)
+    int deleteChunkBySiteId (@Param("siteId") int siteId, @Param("limit") int limit);
+}
@@ -1,13 +1,39 @@
 package searchengine.model.repositories;
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+import searchengine.model.IndexingStatus;
 import searchengine.model.entities.Site;
 
-import java.util.List;
+import java.time.LocalDateTime;
+
 import java.util.Optional;
 
 @Repository
 public interface SiteRepository extends JpaRepository<Site, Integer> {
     Optional<Site> findByUrl(String url);
+
+    boolean existsByIndexingStatusAndStatusTimeAfter (IndexingStatus indexingStatus, LocalDateTime statusTime);
+
+    /**
+     * Обновляет только время статуса, не затирая статус, выставленный другим узлом
+     */
+    @Modifying
+    @Transactional
+    @Query(value = "UPDATE site SET status_time = :statusTime WHERE id = :siteId AND status = 'INDEXING'", nativeQuery = true)
+    int touch (@Param("siteId") int siteId, @Param("statusTime") LocalDateTime statusTime);
+
+    @Modifying
+    @Transactional
+    @Query(value = "UPDATE site SET last_error = :lastError, status_time = :statusTime WHERE id = :siteId", nativeQuery = true)
+    int recordError (@Param("siteId") int siteId, @Param("lastError") String lastError,
+                     @Param("statusTime") LocalDateTime statusTime);
+
+    @Modifying
+    @Query(value = "DELETE FROM site WHERE id = :siteId", nativeQuery = true)
+    int deleteRowById (@Param("siteId") int siteId);
 }
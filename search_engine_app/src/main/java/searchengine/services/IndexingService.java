@@ -3,8 +3,12 @@ package searchengine.services;
 import searchengine.dto.responses.IndexingResponse;
 import searchengine.dto.responses.SuccessfulSearchResponse;
 
+import java.util.List;
+
 public interface IndexingService {
     IndexingResponse startIndexing ();
     IndexingResponse stopIndexing ();
     IndexingResponse indexPage (String url);
+    IndexingResponse indexPages (List<String> urls);
+    IndexingResponse removeUnconfiguredSites ();
 }
@@ -3,21 +3,19 @@ package searchengine.services;
 import lombok.EqualsAndHashCode;
 import lombok.extern.log4j.Log4j2;
 import org.springframework.stereotype.Service;
+import searchengine.config.CrawlConcurrencySettings;
+import searchengine.config.FrontierSettings;
+import searchengine.config.PipelineSettings;
 import searchengine.config.SiteDto;
 import searchengine.config.SitesList;
 import searchengine.dto.exceptions.NoSiteInConfigException;
 import searchengine.dto.responses.IndexingResponse;
 import searchengine.model.IndexingStatus;
-import searchengine.model.entities.Index;
-import searchengine.model.entities.Lemma;
-import searchengine.model.entities.Page;
 import searchengine.model.entities.Site;
-import searchengine.model.repositories.IndexRepository;
-import searchengine.model.repositories.LemmaRepository;
-import searchengine.model.repositories.PageRepository;
 import searchengine.model.repositories.SiteRepository;
 import searchengine.utils.*;
 
+import javax.annotation.PreDestroy;
 import java.net.URLDecoder;
 import java.nio.charset.StandardCharsets;
 import java.time.LocalDateTime;
@@ -31,144 +29,397 @@ import java.util.concurrent.atomic.AtomicBoolean;
 @EqualsAndHashCode
 public class IndexingServiceImpl implements IndexingService {
     private final SitesList sitesList;
-    private ExecutorService executor;
+    private final ExecutorService siteExecutor;
     private final SiteRepository siteRepository;
-    private final PageRepository pageRepository;
-    private final LemmaRepository lemmaRepository;
-    private final IndexRepository indexRepository;
-    private final ForkJoinPool forkJoinPool = new ForkJoinPool();
+    private final CrawlScheduler crawlScheduler;
     private final PageIndexer pageIndexer;
-    private final TextParser textParser;
+    private final SitePurger sitePurger;
+    private final PageReindexQueue reindexQueue;
+    private final IndexingPipeline pipeline;
+    private final PipelineSettings pipelineSettings;
+    private final LemmaFrequencyAggregator frequencyAggregator;
+    private final RobotsCache robotsCache;
+    private final SitemapReader sitemapReader;
+    private final CrawlConcurrencyController concurrencyController;
+    private final FrontierCrawler frontierCrawler;
+    private final FrontierSettings frontierSettings;
+    private final IndexSnapshotStore snapshotStore;
     private final AtomicBoolean isIndexingBool = new AtomicBoolean();
-    private CountDownLatch latch;
+    /**
+     * Признак индексации занят удалением сайтов, а не обходом: останавливать нечего
+     */
+    private volatile boolean isPurging;
+    private volatile Thread waitingThread;
 
-    public IndexingServiceImpl (SiteRepository siteRepository, PageRepository pageRepository,
-                                LemmaRepository lemmaRepository, IndexRepository indexRepository,
-                                PageIndexer pageIndexer, TextParserImpl textParser, SitesList sitesList
+    public IndexingServiceImpl (SiteRepository siteRepository, PageIndexer pageIndexer, SitesList sitesList,
+                                SitePurger sitePurger, PageReindexQueue reindexQueue,
+                                IndexingPipeline pipeline, PipelineSettings pipelineSettings,
+                                LemmaFrequencyAggregator frequencyAggregator,
+                                RobotsCache robotsCache, SitemapReader sitemapReader,
+                                CrawlConcurrencyController concurrencyController,
+                                CrawlConcurrencySettings concurrencySettings,
+                                FrontierCrawler frontierCrawler, FrontierSettings frontierSettings,
+                                IndexSnapshotStore snapshotStore, CrawlScheduler crawlScheduler
                                 ) {
         this.sitesList = sitesList;
         this.siteRepository = siteRepository;
-        this.pageRepository = pageRepository;
-        this.lemmaRepository = lemmaRepository;
-        this.indexRepository = indexRepository;
         this.pageIndexer = pageIndexer;
-        this.textParser = textParser;
+        this.sitePurger = sitePurger;
+        this.reindexQueue = reindexQueue;
+        this.pipeline = pipeline;
+        this.pipelineSettings = pipelineSettings;
+        this.frequencyAggregator = frequencyAggregator;
+        this.robotsCache = robotsCache;
+        this.sitemapReader = sitemapReader;
+        this.concurrencyController = concurrencyController;
+        this.frontierCrawler = frontierCrawler;
+        this.frontierSettings = frontierSettings;
+        this.snapshotStore = snapshotStore;
+        this.crawlScheduler = crawlScheduler;
+        this.siteExecutor = Executors.newFixedThreadPool(concurrencySettings.getSiteThreads());
     }
 
     @Override
     public IndexingResponse startIndexing() {
         IndexingResponse response = new IndexingResponse();
-        if (isIndexingBool.get()) {
+        if (frontierCrawler.isEnabled() && isIndexingOnOtherNode()) {
+            response.setResult(false);
+            response.setError("Индексация уже запущена на другом узле");
+            return response;
+        }
+        if (!isIndexingBool.compareAndSet(false, true)) {
             response.setResult(false);
             response.setError("Индексация уже запущена");
             return response;
         }
-        isIndexingBool.set(true);
+        // поток ожидания прошлой индексации уже завершен, останавливать нужно только новый
+        waitingThread = null;
 
         List<SiteDto> sites = sitesList.getSites();
-        executor = Executors.newFixedThreadPool(sites.size());
-        latch = new CountDownLatch(sites.size());
+        CountDownLatch latch = new CountDownLatch(sites.size());
+        crawlScheduler.open();
 
         for (SiteDto siteDto : sites) {
-            executor.submit(() -> executeSiteParsing(siteDto));
+            siteExecutor.execute(() -> {
+                try {
+                    executeSiteParsing(siteDto, latch);
+                } catch (RuntimeException e) {
+                    log.error("Ошибка запуска обхода сайта " + siteDto.getUrl() + ": " + e.getMessage());
+                    latch.countDown();
+                }
+            });
         }
-        waitIndexing();
+        waitIndexing(latch);
 
         response.setResult(true);
         return response;
     }
 
-    private void waitIndexing () {
-        new Thread(() -> {
+    /**
+     * Только этот поток снимает признак индексации, поэтому после остановки
+     * следующая индексация не пересекается с завершением предыдущей.
+     */
+    private void waitIndexing (CountDownLatch latch) {
+        waitingThread = new Thread(() -> {
             try {
                 latch.await();
             } catch (InterruptedException e) {
-                throw new RuntimeException(e);
+                // приложение останавливается, индексация не завершена
+                return;
+            }
+            snapshotStore.save();
+            isIndexingBool.set(false);
+        });
+        waitingThread.start();
+    }
+
+    /**
+     * Останавливает обход, как {@link #stopIndexing()}, и ждет, пока поток ожидания запишет
+     * снимок индекса, после чего завершает потоки сайтов.
+     */
+    @PreDestroy
+    public void shutdown () {
+        crawlScheduler.cancelAll();
+        if (waitingThread != null) {
+            try {
+                waitingThread.join(TimeUnit.SECONDS.toMillis(30));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
             }
+            waitingThread.interrupt();
+        }
+        siteExecutor.shutdownNow();
+    }
+
+    /**
+     * Удаляет данные сайтов, которых больше нет в конфигурации. Выполняется только по запросу
+     * и только без индексации: на время удаления индексацию запустить нельзя.
+     */
+    @Override
+    public IndexingResponse removeUnconfiguredSites () {
+        IndexingResponse response = new IndexingResponse();
+        if (frontierCrawler.isEnabled() && isIndexingOnOtherNode()) {
+            response.setResult(false);
+            response.setError("Индексация уже запущена на другом узле");
+            return response;
+        }
+        if (!isIndexingBool.compareAndSet(false, true)) {
+            response.setResult(false);
+            response.setError("Индексация уже запущена");
+            return response;
+        }
+        isPurging = true;
+        try {
+            Set<String> configuredUrls = new HashSet<>();
+            sitesList.getSites().forEach(siteDto -> configuredUrls.add(siteDto.getUrl()));
+            List<Site> unconfiguredSites = siteRepository.findAll().stream()
+                    .filter(site -> !configuredUrls.contains(site.getUrl()))
+                    .toList();
+            unconfiguredSites.forEach(sitePurger::purgeSite);
+            log.info("Удалено сайтов, которых нет в конфигурации: " + unconfiguredSites.size());
+        } finally {
+            isPurging = false;
             isIndexingBool.set(false);
-        }).start();
+        }
+        response.setResult(true);
+        return response;
     }
 
     @Override
     public IndexingResponse stopIndexing() {
         IndexingResponse response = new IndexingResponse();
-        if (!isIndexingBool.get()) {
+        if (!isIndexingBool.get() || isPurging) {
             response.setResult(false);
             response.setError("Индексация не запущена");
             return response;
         }
 
-        forkJoinPool.shutdownNow();
-        try {
-            if (forkJoinPool.awaitTermination(30, TimeUnit.SECONDS)) {
-                log.info("ForkJoinPool terminated");
+        crawlScheduler.cancelAll();
+        updateStoppedSites();
+        // поток ожидания создается после запуска обхода сайтов и может еще не существовать
+        Thread thread = waitingThread;
+        if (thread != null) {
+            try {
+                thread.join(TimeUnit.SECONDS.toMillis(30));
+            } catch (InterruptedException e) {
+                log.error("Ожидание остановки индексации прервано");
+                Thread.currentThread().interrupt();
             }
-        } catch (InterruptedException e) {
-            log.error("Termination failed");
         }
-        executor.shutdownNow();
-        isIndexingBool.set(false);
+        if (thread != null && thread.isAlive()) {
+            log.warn("Обход сайтов не завершился за 30 секунд после остановки");
+            isIndexingBool.set(false);
+        }
         log.info("Индексация прервана");
 
-        updateStoppedSites();
         response.setResult(true);
         return response;
     }
 
     @Override
     public IndexingResponse indexPage(String url) {
-        IndexingResponse response = new IndexingResponse();
-
         String decodedUrl = URLDecoder.decode(url, StandardCharsets.UTF_8);
         String absHref = decodedUrl.substring(decodedUrl.indexOf("=") + 1);
-        int endDomainIndex = absHref.indexOf("/", absHref.indexOf("//") + 2);
-        String domain = absHref.substring(0, endDomainIndex + 1);
+        return indexPages(List.of(absHref));
+    }
 
-        Site site;
-        try {
-            site = findSiteInConfiguration(domain);
-        } catch (NoSiteInConfigException e) {
+    @Override
+    public IndexingResponse indexPages(List<String> urls) {
+        IndexingResponse response = new IndexingResponse();
+
+        Map<String, Site> domainToSite = new HashMap<>();
+        Map<String, Site> linkToSite = new LinkedHashMap<>();
+        for (String absHref : urls) {
+            int endDomainIndex = absHref.indexOf("/", absHref.indexOf("//") + 2);
+            String domain = absHref.substring(0, endDomainIndex + 1);
+            try {
+                Site site = domainToSite.get(domain);
+                if (site == null) {
+                    site = findSiteInConfiguration(domain);
+                    domainToSite.put(domain, site);
+                }
+                linkToSite.put(absHref, site);
+            } catch (NoSiteInConfigException e) {
+                response.setResult(false);
+                response.setError(e.getMessage());
+                return response;
+            }
+        }
+
+        // страницы ставятся в очередь все вместе, чтобы при ошибке ни одна не была принята
+        if (!reindexQueue.offerAll(linkToSite)) {
             response.setResult(false);
-            response.setError("Данная страница находится за " +
-                    "пределами сайтов, указанных в " +
-                    "конфигурационном файле");
+            response.setError("Очередь переиндексации переполнена, повторите запрос позже");
             return response;
         }
-
-        Optional<Page> optionalPage = pageRepository.findByPathAndSite(absHref.substring(endDomainIndex), site);
-        optionalPage.ifPresent(this::clearPageInfo);
-
-        executor = Executors.newSingleThreadExecutor();
-        executor.execute(() -> {
-            pageIndexer.executePageIndexing(absHref, site);
-        });
         response.setResult(true);
         return response;
     }
 
-    private void executeSiteParsing (SiteDto siteDto) {
+    private void executeSiteParsing (SiteDto siteDto, CountDownLatch latch) {
+        // индексация остановлена раньше, чем до сайта дошла очередь
+        if (!crawlScheduler.isOpen()) {
+            latch.countDown();
+            return;
+        }
         Optional<Site> siteOptional = siteRepository.findByUrl(siteDto.getUrl());
-        siteOptional.ifPresent(site -> {
-            siteRepository.delete(site);
-            log.info("Сайт удален из БД");
-        });
+        siteOptional.ifPresent(sitePurger::purgeSite);
         Site indexingSite = saveSiteEntity(siteDto, IndexingStatus.INDEXING);
 
-        WebParserTask task = new WebParserTask(
-                indexingSite, indexingSite.getUrl(),
-                siteRepository, pageRepository,
-                new AtomicBoolean(true), pageIndexer
-        );
-        forkJoinPool.invoke(task);
+        Set<String> visitedLinks = ConcurrentHashMap.newKeySet();
+        visitedLinks.add(indexingSite.getUrl());
+        AtomicBoolean isIndexed = new AtomicBoolean(true);
+        RobotsRules robotsRules = robotsCache.getRules(indexingSite.getUrl());
+        Map<String, LocalDateTime> sitemapLastModified = new HashMap<>();
+        List<String> startLinks = new ArrayList<>();
+        if (robotsRules.isAllowed("/")) {
+            startLinks.add(indexingSite.getUrl());
+        }
+        for (SitemapUrl sitemapUrl : sitemapReader.read(indexingSite.getUrl(), robotsRules)) {
+            String link = sitemapUrl.url().replace("www.", "");
+            if (!isCrawlable(link, indexingSite, robotsRules)) {
+                continue;
+            }
+            if (sitemapUrl.lastModified() != null) {
+                sitemapLastModified.put(link, sitemapUrl.lastModified());
+            }
+            if (visitedLinks.add(link)) {
+                startLinks.add(link);
+            }
+        }
+        log.info("Обход сайта " + indexingSite.getUrl() + " начинается с " + startLinks.size() + " страниц");
+        if (startLinks.isEmpty()) {
+            isIndexed.set(false);
+            indexingSite.setIndexingStatus(IndexingStatus.FAILED);
+            indexingSite.setLastError("Обход сайта запрещен в robots.txt");
+            indexingSite.setStatusTime(LocalDateTime.now());
+            siteRepository.save(indexingSite);
+        }
+
+        frequencyAggregator.startPeriodicRefresh(indexingSite);
+        if (frontierCrawler.isEnabled()) {
+            crawlShared(indexingSite, startLinks, sitemapLastModified, isIndexed, latch);
+            return;
+        }
+        // при Crawl-delay запросы к сайту идут строго по одному
+        concurrencyController.register(indexingSite, robotsRules.getCrawlDelayMs() > 0 ? 1 : Integer.MAX_VALUE);
+        List<WebParserTask> startTasks = new ArrayList<>();
+        for (String startLink : startLinks) {
+            startTasks.add(new WebParserTask(
+                    indexingSite, startLink,
+                    siteRepository, isIndexed,
+                    pageIndexer, pipeline, crawlScheduler, visitedLinks,
+                    robotsRules, sitemapLastModified
+            ));
+        }
+        long requestDelay = WebParserTask.requestDelay(pageIndexer.getRequestDelay(), robotsRules);
+        crawlScheduler
+                .start(indexingSite, siteDto.getWeight(), requestDelay, startTasks)
+                .thenAcceptAsync(crawled -> finishSite(indexingSite, latch,
+                        () -> finishSiteParsing(indexingSite, crawled, isIndexed)), siteExecutor);
+    }
 
-        if (task.getIsIndexed().get()) {
+    /**
+     * Завершение обхода сайта после выполнения всех его задач в {@link CrawlScheduler}
+     */
+    private void finishSiteParsing (Site indexingSite, boolean crawled, AtomicBoolean isIndexed) {
+        if (!crawled) {
+            isIndexed.set(false);
+        }
+        concurrencyController.unregister(indexingSite);
+
+        try {
+            pipeline.awaitSite(indexingSite);
+        } catch (InterruptedException e) {
+            log.error("Ожидание записи страниц прервано");
+            isIndexed.set(false);
+            Thread.currentThread().interrupt();
+        }
+        frequencyAggregator.stopPeriodicRefresh(indexingSite);
+        if (pipelineSettings.isDeferredFrequencies()) {
+            frequencyAggregator.recalculate(indexingSite);
+        }
+        String persistFailure = pipeline.takeFailure(indexingSite);
+        if (persistFailure != null && crawled) {
+            isIndexed.set(false);
+            indexingSite.setIndexingStatus(IndexingStatus.FAILED);
+            indexingSite.setLastError(persistFailure);
+            indexingSite.setStatusTime(LocalDateTime.now());
+            siteRepository.save(indexingSite);
+        }
+        if (isIndexed.get()) {
             indexingSite.setStatusTime(LocalDateTime.now());
             indexingSite.setIndexingStatus(IndexingStatus.INDEXED);
             siteRepository.save(indexingSite);
+        } else if (!crawled) {
+            markStopped(indexingSite);
+        }
+    }
+
+    /**
+     * Сайт считается обработанным, даже если при завершении его обхода произошла ошибка,
+     * иначе индексация не закончится и не сможет быть запущена снова.
+     */
+    private void finishSite (Site indexingSite, CountDownLatch latch, Runnable finish) {
+        try {
+            finish.run();
+        } catch (RuntimeException e) {
+            log.error("Ошибка завершения обхода сайта " + indexingSite.getUrl() + ": " + e.getMessage());
+        } finally {
+            latch.countDown();
         }
-        latch.countDown();
     }
 
+    /**
+     * Обход сайта вместе с другими узлами через общую очередь ссылок. Ошибки загрузки страниц
+     * узлы записывают в last_error сайта, по нему и определяется итоговый статус.
+     */
+    private void crawlShared (Site indexingSite, List<String> startLinks,
+                              Map<String, LocalDateTime> sitemapLastModified, AtomicBoolean isIndexed,
+                              CountDownLatch latch) {
+        frontierCrawler.seed(indexingSite, startLinks, sitemapLastModified);
+        frontierCrawler
+                .awaitSite(indexingSite, siteExecutor)
+                .whenCompleteAsync((crawled, e) -> {
+                    if (e != null) {
+                        log.error("Ошибка ожидания обхода сайта " + indexingSite.getUrl() + ": " + e.getMessage());
+                    }
+                    if (!Boolean.TRUE.equals(crawled)) {
+                        isIndexed.set(false);
+                    }
+                    finishSite(indexingSite, latch, () -> finishShared(indexingSite, isIndexed));
+                }, siteExecutor);
+    }
+
+    private void finishShared (Site indexingSite, AtomicBoolean isIndexed) {
+        frequencyAggregator.stopPeriodicRefresh(indexingSite);
+        if (isIndexed.get()) {
+            frequencyAggregator.recalculate(indexingSite);
+            Site crawledSite = siteRepository.findById(indexingSite.getId()).orElse(indexingSite);
+            crawledSite.setIndexingStatus(crawledSite.getLastError() == null ? IndexingStatus.INDEXED : IndexingStatus.FAILED);
+            crawledSite.setStatusTime(LocalDateTime.now());
+            siteRepository.save(crawledSite);
+        }
+    }
+
+    /**
+     * Узел, запустивший индексацию, сам не обновляет время статуса сайтов, это делают
+     * обработчики очереди. Сайт без обновлений дольше аренды пачки считается брошенным.
+     */
+    private boolean isIndexingOnOtherNode () {
+        LocalDateTime activeSince = LocalDateTime.now().minusSeconds(2L * frontierSettings.getLeaseTtlSeconds());
+        return siteRepository.existsByIndexingStatusAndStatusTimeAfter(IndexingStatus.INDEXING, activeSince);
+    }
+
+    /**
+     * Ссылка из sitemap проходит те же проверки, что и ссылки со страниц сайта.
+     */
+    private static boolean isCrawlable (String link, Site site, RobotsRules robotsRules) {
+        String lowerCaseLink = link.toLowerCase();
+        return link.startsWith(site.getUrl()) && !link.contains("#")
+                && Arrays.stream(WebParserTask.getInvalidExtensions()).noneMatch(lowerCaseLink::endsWith)
+                && robotsRules.isAllowed(WebParserTask.pathOf(link));
+    }
 
 
     private Site findSiteInConfiguration (String link) throws NoSiteInConfigException {
@@ -199,12 +450,14 @@ public class IndexingServiceImpl implements IndexingService {
                 .findAll()
                 .stream()
                 .filter(site -> site.getIndexingStatus().equals(IndexingStatus.INDEXING))
-                .forEach(site -> {
-                    site.setIndexingStatus(IndexingStatus.FAILED);
-                    site.setLastError("Индексация остановлена пользователем");
-                    site.setStatusTime(LocalDateTime.now());
-                    siteRepository.save(site);
-                });
+                .forEach(this::markStopped);
+    }
+
+    private void markStopped (Site site) {
+        site.setIndexingStatus(IndexingStatus.FAILED);
+        site.setLastError("Индексация остановлена пользователем");
+        site.setStatusTime(LocalDateTime.now());
+        siteRepository.save(site);
     }
 
     private Site saveSiteEntity (SiteDto siteDto, IndexingStatus status) {
@@ -217,17 +470,4 @@ public class IndexingServiceImpl implements IndexingService {
         log.info("Сайт сохранен в БД");
         return site;
     }
-
-    private void clearPageInfo (Page page) {
-        List<Lemma> lemmasToDelete = page.getIndexSet().stream().map(Index::getLemma).toList();
-        pageRepository.delete(page);
-        lemmasToDelete.forEach(lemma -> {
-            if (lemma.getFrequency() == 1) {
-                lemmaRepository.delete(lemma);
-            } else {
-                lemma.setFrequency(lemma.getFrequency() - 1);
-                lemmaRepository.save(lemma);
-            }
-        });
-    }
 }
@@ -0,0 +1,308 @@
+package searchengine.services;
+
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Primary;
+import org.springframework.stereotype.Service;
+import org.springframework.web.util.UriComponentsBuilder;
+import searchengine.config.SearchSettings;
+import searchengine.config.ShardSettings;
+import searchengine.dto.responses.ErrorSearchResponse;
+import searchengine.dto.responses.SearchResponse;
+import searchengine.dto.responses.SuccessfulSearchResponse;
+import searchengine.dto.search.SearchData;
+import searchengine.dto.search.ShardHits;
+import searchengine.dto.search.ShardPage;
+import searchengine.dto.search.ShardStatistics;
+import searchengine.utils.SearchDeadline;
+import searchengine.utils.SearchExecutor;
+import searchengine.utils.SearchRanking;
+import searchengine.utils.TextParser;
+import searchengine.utils.TextParserImpl;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.IntFunction;
+
+/**
+ * Координатор распределенного поиска (shard-settings.coordinator: true): сайты разнесены
+ * по узлам-шардам, запрос рассылается всем шардам по HTTP в три этапа.
+ * <ol>
+ *     <li>Статистика: число страниц и частоты лемм запроса на каждом шарде. По их сумме
+ *     ключевые слова отбираются так же, как при поиске по одной БД.</li>
+ *     <li>Поиск: каждый шард возвращает свои лучшие offset + limit страниц с абсолютной
+ *     релевантностью, координатор сливает списки и нормирует релевантность по общему максимуму.</li>
+ *     <li>Выдача: заголовки и сниппеты запрашиваются только для страниц итоговой страницы выдачи.</li>
+ * </ol>
+ * Шард, не ответивший к сроку поиска, пропускается, а ответ помечается как неполный.
+ */
+@Log4j2
+@Service
+@Primary
+@ConditionalOnProperty(name = "shard-settings.coordinator", havingValue = "true")
+public class ScatterGatherSearchService implements SearchService {
+    private static final Comparator<ShardHit> HIT_ORDER = Comparator
+            .comparingDouble((ShardHit hit) -> hit.page().getRelevance()).reversed()
+            .thenComparingInt(ShardHit::shard)
+            .thenComparingInt(hit -> hit.page().getPageId());
+
+    private final ShardSettings settings;
+    private final SearchSettings searchSettings;
+    private final TextParser textParser;
+    private final SearchExecutor searchExecutor;
+    private final ObjectMapper objectMapper;
+    private final MeterRegistry meterRegistry;
+    private final HttpClient httpClient;
+
+    public ScatterGatherSearchService (ShardSettings settings, SearchSettings searchSettings, TextParserImpl textParser,
+                                       SearchExecutor searchExecutor, ObjectMapper objectMapper,
+                                       MeterRegistry meterRegistry) {
+        this.settings = settings;
+        this.searchSettings = searchSettings;
+        this.textParser = textParser;
+        this.searchExecutor = searchExecutor;
+        this.objectMapper = objectMapper;
+        this.meterRegistry = meterRegistry;
+        this.httpClient = HttpClient.newBuilder()
+                .connectTimeout(Duration.ofMillis(settings.getConnectTimeoutMs()))
+                .build();
+        log.info("Распределенный поиск по шардам: " + settings.getShards());
+    }
+
+    @Override
+    public SearchResponse search (String query, String siteUrl, int offset, int limit) {
+        return search(query, siteUrl, offset, limit, SearchDeadline.none());
+    }
+
+    @Override
+    public SearchResponse search (String query, String siteUrl, int offset, int limit, SearchDeadline deadline) {
+        if (query.isBlank()) {
+            return new ErrorSearchResponse("Задан пустой поисковый запрос");
+        }
+        Timer.Sample searchSample = Timer.start(meterRegistry);
+        List<String> shards = settings.getShards();
+        Set<String> queryLemmas = textParser.getLemmas(query).keySet();
+        SuccessfulSearchResponse response = new SuccessfulSearchResponse();
+        response.setResult(true);
+        response.setData(new ArrayList<>());
+        if (queryLemmas.isEmpty() || shards.isEmpty()) {
+            return response;
+        }
+
+        List<ShardStatistics> statistics = stageTimer("statistics").record(() -> scatter(shards.size(), shard ->
+                shardUri(shards.get(shard), "/api/shard/statistics")
+                        .queryParam("lemmas", String.join(",", queryLemmas))
+                        .queryParamIfPresent("site", Optional.ofNullable(siteUrl)), ShardStatistics.class, deadline));
+        List<String> keyWords = selectKeyWords(queryLemmas, statistics);
+        if (keyWords.isEmpty()) {
+            response.setPartial(deadline.isPartial());
+            return response;
+        }
+
+        int topCount = (int) Math.min(Integer.MAX_VALUE, (long) Math.max(0, offset) + Math.max(0, limit));
+        List<ShardHits> shardHits = stageTimer("shard_search").record(() -> scatter(shards.size(), shard ->
+                statistics.get(shard) == null ? null : shardUri(shards.get(shard), "/api/shard/search")
+                        .queryParam("lemmas", String.join(",", keyWords))
+                        .queryParamIfPresent("site", Optional.ofNullable(siteUrl))
+                        .queryParam("top", topCount)
+                        .queryParam("deadline", deadline.remainingMs(searchSettings.getMaxDeadlineMs())),
+                ShardHits.class, deadline));
+
+        List<List<ShardHit>> sortedLists = new ArrayList<>();
+        long count = 0;
+        for (int shard = 0; shard < shardHits.size(); shard++) {
+            ShardHits hits = shardHits.get(shard);
+            if (hits == null) {
+                continue;
+            }
+            int shardNumber = shard;
+            sortedLists.add(hits.getPages().stream().map(page -> new ShardHit(shardNumber, page)).toList());
+            count += hits.getCount();
+            if (hits.isPartial()) {
+                deadline.markPartial();
+            }
+        }
+        List<ShardHit> topHits = stageTimer("merge").record(() ->
+                SearchRanking.mergeTopPages(sortedLists, topCount, HIT_ORDER));
+        List<ShardHit> pageHits = topHits.stream().skip(offset).limit(limit).toList();
+
+        response.setCount(count);
+        response.setData(stageTimer("snippet").record(() -> fetchPageData(shards, pageHits, keyWords, deadline,
+                topHits.isEmpty() ? 1 : topHits.get(0).page().getRelevance())));
+        response.setPartial(deadline.isPartial());
+        if (deadline.isPartial()) {
+            meterRegistry.counter("searchengine.search.partial").increment();
+        }
+        searchSample.stop(meterRegistry.timer("searchengine.search"));
+        return response;
+    }
+
+    @Override
+    public CompletableFuture<SearchResponse> searchAsync (String query, String siteUrl, int offset, int limit,
+                                                          long deadlineMs) {
+        try {
+            return searchExecutor.submit(() -> search(query, siteUrl, offset, limit, SearchDeadline.after(deadlineMs)));
+        } catch (RejectedExecutionException e) {
+            meterRegistry.counter("searchengine.search.rejected").increment();
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    @Override
+    public CompletableFuture<Void> searchStreamAsync (String query, String siteUrl, int offset, int limit,
+                                                      long deadlineMs, SearchResultListener listener) {
+        try {
+            return searchExecutor.submit(() -> {
+                try {
+                    searchStream(query, siteUrl, offset, limit, SearchDeadline.after(deadlineMs), listener);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                return null;
+            });
+        } catch (RejectedExecutionException e) {
+            meterRegistry.counter("searchengine.search.rejected").increment();
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    /**
+     * Шарды отдают результаты целиком, поэтому первый результат приходит вместе с последним
+     */
+    @Override
+    public void searchStream (String query, String siteUrl, int offset, int limit, SearchDeadline deadline,
+                              SearchResultListener listener) throws IOException {
+        SearchResponse response = search(query, siteUrl, offset, limit, deadline);
+        if (response instanceof ErrorSearchResponse error) {
+            listener.onError(error.getError());
+            return;
+        }
+        SuccessfulSearchResponse successfulResponse = (SuccessfulSearchResponse) response;
+        listener.onCount(successfulResponse.getCount());
+        for (SearchData data : successfulResponse.getData()) {
+            listener.onResult(data);
+        }
+    }
+
+    private static List<String> selectKeyWords (Set<String> queryLemmas, List<ShardStatistics> statistics) {
+        long pageCount = 0;
+        Map<String, Long> lemmaFrequencies = new HashMap<>();
+        for (ShardStatistics shardStatistics : statistics) {
+            if (shardStatistics != null) {
+                pageCount += shardStatistics.getPageCount();
+                shardStatistics.getLemmaFrequencies().forEach((lemma, frequency) -> lemmaFrequencies.merge(lemma, frequency, Long::sum));
+            }
+        }
+        long totalPageCount = pageCount;
+        return queryLemmas.stream()
+                .filter(lemma -> lemmaFrequencies.containsKey(lemma)
+                        && SearchRanking.isKeyWord(lemmaFrequencies.get(lemma), totalPageCount))
+                .sorted()
+                .toList();
+    }
+
+    /**
+     * Запрашивает данные страниц выдачи у шардов, которым они принадлежат. После срока
+     * поиска сниппеты не строятся. Релевантность нормируется по лучшей странице выдачи.
+     */
+    private List<SearchData> fetchPageData (List<String> shards, List<ShardHit> pageHits, List<String> keyWords,
+                                            SearchDeadline deadline, double maxRelevance) {
+        Map<Integer, List<ShardHit>> shardToHits = new HashMap<>();
+        pageHits.forEach(hit -> shardToHits.computeIfAbsent(hit.shard(), shard -> new ArrayList<>()).add(hit));
+        boolean withSnippets = !deadline.cutOff();
+        JavaType listType = objectMapper.getTypeFactory().constructCollectionType(List.class, SearchData.class);
+        List<List<SearchData>> shardData = scatter(shards.size(), shard -> !shardToHits.containsKey(shard) ? null
+                : shardUri(shards.get(shard), "/api/shard/pages")
+                        .queryParam("ids", String.join(",", shardToHits.get(shard).stream()
+                                .map(hit -> String.valueOf(hit.page().getPageId())).toList()))
+                        .queryParam("lemmas", String.join(",", keyWords))
+                        .queryParam("snippets", withSnippets), listType, deadline);
+
+        Map<ShardHit, SearchData> hitToData = new HashMap<>();
+        shardToHits.forEach((shard, hits) -> {
+            List<SearchData> data = shardData.get(shard);
+            for (int i = 0; data != null && i < Math.min(hits.size(), data.size()); i++) {
+                hitToData.put(hits.get(i), data.get(i));
+            }
+        });
+
+        List<SearchData> result = new ArrayList<>();
+        for (ShardHit hit : pageHits) {
+            SearchData data = hitToData.get(hit);
+            if (data != null) {
+                data.setRelevance(hit.page().getRelevance() / maxRelevance);
+                result.add(data);
+            }
+        }
+        return result;
+    }
+
+    private <T> List<T> scatter (int shardCount, IntFunction<UriComponentsBuilder> request, Class<T> type,
+                                 SearchDeadline deadline) {
+        return scatter(shardCount, request, objectMapper.constructType(type), deadline);
+    }
+
+    /**
+     * Отправляет запросы всем шардам одновременно и ждет ответов не дольше срока поиска.
+     *
+     * @param request запрос к шарду по его номеру, null - шард пропускается
+     * @return ответы по номерам шардов, null - шард пропущен или не ответил
+     */
+    private <T> List<T> scatter (int shardCount, IntFunction<UriComponentsBuilder> request, JavaType type,
+                                 SearchDeadline deadline) {
+        Duration timeout = Duration.ofMillis(deadline.remainingMs(searchSettings.getMaxDeadlineMs())
+                + settings.getResponseGraceMs());
+        List<CompletableFuture<T>> futures = new ArrayList<>();
+        for (int shard = 0; shard < shardCount; shard++) {
+            UriComponentsBuilder uri = request.apply(shard);
+            if (uri == null) {
+                futures.add(CompletableFuture.completedFuture(null));
+                continue;
+            }
+            URI shardUri = uri.encode().build().toUri();
+            HttpRequest httpRequest = HttpRequest.newBuilder(shardUri).timeout(timeout).GET().build();
+            futures.add(httpClient.sendAsync(httpRequest, HttpResponse.BodyHandlers.ofByteArray())
+                    .thenApply(response -> {
+                        if (response.statusCode() != 200) {
+                            throw new IllegalStateException("код ответа " + response.statusCode());
+                        }
+                        try {
+                            return objectMapper.<T>readValue(response.body(), type);
+                        } catch (IOException e) {
+                            throw new IllegalStateException("некорректный ответ: " + e.getMessage(), e);
+                        }
+                    })
+                    .exceptionally(error -> {
+                        log.warn("Шард " + shardUri.getHost() + ":" + shardUri.getPort() + " не ответил на "
+                                + shardUri.getPath() + ": " + error.getMessage());
+                        meterRegistry.counter("searchengine.search.shard.failed").increment();
+                        deadline.markPartial();
+                        return null;
+                    }));
+        }
+        return futures.stream().map(CompletableFuture::join).toList();
+    }
+
+    private static UriComponentsBuilder shardUri (String shard, String path) {
+        return UriComponentsBuilder.fromHttpUrl(shard.replaceAll("/$", "")).path(path);
+    }
+
+    private Timer stageTimer (String stage) {
+        return meterRegistry.timer("searchengine.search.stage", "stage", stage);
+    }
+
+    private record ShardHit (int shard, ShardPage page) {
+    }
+}
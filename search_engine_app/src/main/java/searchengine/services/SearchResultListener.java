@@ -0,0 +1,13 @@
+package searchengine.services;
+
+import searchengine.dto.search.SearchData;
+
+import java.io.IOException;
+
+public interface SearchResultListener {
+    void onCount (long count) throws IOException;
+
+    void onResult (SearchData data) throws IOException;
+
+    void onError (String error) throws IOException;
+}
@@ -2,7 +2,37 @@ package searchengine.services;
 
 import searchengine.dto.responses.SearchResponse;
 import searchengine.dto.responses.SuccessfulSearchResponse;
+import searchengine.utils.SearchDeadline;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
 
 public interface SearchService {
     SearchResponse search (String query, String siteUrl, int offset, int limit);
+
+    /**
+     * Поиск с ограничением по времени: по истечении срока возвращается то, что успели найти,
+     * с признаком partial.
+     */
+    SearchResponse search (String query, String siteUrl, int offset, int limit, SearchDeadline deadline);
+
+    /**
+     * Поиск в отдельном пуле потоков. Если очередь пула заполнена, future сразу завершается
+     * с {@link java.util.concurrent.RejectedExecutionException}.
+     */
+    CompletableFuture<SearchResponse> searchAsync (String query, String siteUrl, int offset, int limit, long deadlineMs);
+
+    /**
+     * Поиск с выдачей результатов по одному: сначала общее число найденных страниц,
+     * затем каждый результат сразу после построения его сниппета. После срока
+     * оставшиеся результаты выдаются без сниппетов.
+     */
+    void searchStream (String query, String siteUrl, int offset, int limit, SearchDeadline deadline,
+                       SearchResultListener listener) throws IOException;
+
+    /**
+     * Потоковый поиск в том же пуле потоков и с тем же сроком, что {@link #searchAsync}
+     */
+    CompletableFuture<Void> searchStreamAsync (String query, String siteUrl, int offset, int limit, long deadlineMs,
+                                               SearchResultListener listener);
 }
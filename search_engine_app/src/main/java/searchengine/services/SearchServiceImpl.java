@@ -1,276 +1,387 @@
 package searchengine.services;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import lombok.EqualsAndHashCode;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
 import searchengine.config.SitesList;
 import searchengine.dto.responses.ErrorSearchResponse;
 import searchengine.dto.responses.SearchResponse;
 import searchengine.dto.responses.SuccessfulSearchResponse;
 import searchengine.dto.search.SearchData;
-import searchengine.model.entities.Index;
+import searchengine.dto.search.ShardHits;
+import searchengine.dto.search.ShardPage;
+import searchengine.dto.search.ShardStatistics;
 import searchengine.model.entities.Lemma;
 import searchengine.model.entities.Page;
 import searchengine.model.entities.Site;
-import searchengine.model.repositories.IndexRepository;
-import searchengine.model.repositories.LemmaRepository;
 import searchengine.model.repositories.PageRepository;
 import searchengine.model.repositories.SiteRepository;
-import searchengine.utils.Language;
+import searchengine.utils.IndexStorage;
 import searchengine.utils.PageIndexer;
+import searchengine.utils.PostingList;
+import searchengine.utils.SearchDeadline;
+import searchengine.utils.SearchExecutor;
+import searchengine.utils.SearchRanking;
+import searchengine.utils.SnippetBuilder;
 import searchengine.utils.TextParser;
 import searchengine.utils.TextParserImpl;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.ForkJoinPool;
-import java.util.concurrent.atomic.AtomicInteger;
-import java.util.stream.Collectors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Supplier;
 
 @Service
 @EqualsAndHashCode
-public class SearchServiceImpl implements SearchService {
+public class SearchServiceImpl implements SearchService, ShardSearchService {
     private final SiteRepository siteRepository;
     private final PageRepository pageRepository;
-    private final LemmaRepository lemmaRepository;
-    private final IndexRepository indexRepository;
+    private final IndexStorage indexStorage;
     private final PageIndexer pageIndexer;
     private final TextParser textParser;
+    private final SnippetBuilder snippetBuilder;
+    private final MeterRegistry meterRegistry;
+    private final TransactionTemplate readOnlyTransaction;
+    private final SearchExecutor searchExecutor;
     public SearchServiceImpl (SiteRepository siteRepository, PageRepository pageRepository,
-                                LemmaRepository lemmaRepository, IndexRepository indexRepository,
-                                PageIndexer pageIndexer, TextParserImpl textParser
+                                IndexStorage indexStorage, PageIndexer pageIndexer, TextParserImpl textParser,
+                                SnippetBuilder snippetBuilder,
+                                MeterRegistry meterRegistry, PlatformTransactionManager transactionManager,
+                                SearchExecutor searchExecutor
     ) {
         this.siteRepository = siteRepository;
         this.pageRepository = pageRepository;
-        this.lemmaRepository = lemmaRepository;
-        this.indexRepository = indexRepository;
+        this.indexStorage = indexStorage;
         this.pageIndexer = pageIndexer;
         this.textParser = textParser;
+        this.snippetBuilder = snippetBuilder;
+        this.meterRegistry = meterRegistry;
+        this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction.setReadOnly(true);
+        this.searchExecutor = searchExecutor;
     }
     @Override
     public SearchResponse search(String query, String siteUrl, int offset, int limit) {
+        return search(query, siteUrl, offset, limit, SearchDeadline.none());
+    }
+
+    @Override
+    public SearchResponse search (String query, String siteUrl, int offset, int limit, SearchDeadline deadline) {
         if (query.isBlank()) {
             return new ErrorSearchResponse("Задан пустой поисковый запрос");
         }
-        SuccessfulSearchResponse response = new SuccessfulSearchResponse();
-
-        Optional<Site> optionalSite = siteRepository.findByUrl(siteUrl);
-        Set<String> queryLemmas = textParser.getLemmas(query).keySet();
-        TreeSet<Lemma> keyWords = optionalSite
-                .map(site -> getQueryKeyWords(queryLemmas, site))
-                .orElseGet(() -> getQueryKeyWords(queryLemmas));
-
-        List<Page> foundPages = findPagesByQuery(keyWords);
-        if (foundPages.isEmpty()) {
-            response.setResult(true);
-            response.setCount(0);
-            response.setData(new ArrayList<>());
-        }
-        foundPages.forEach(page -> System.out.println(page.getId() + " - " + page.getPath()));
+        Timer.Sample searchSample = Timer.start(meterRegistry);
+        RankedPages rankedPages = rank(query, siteUrl, topCount(offset, limit), deadline);
 
-        HashMap<Page, Double> pageToRelevance = calculateRelevance(foundPages, keyWords);
-        List<SearchData> dataList = new ArrayList<>();
-
-        for (Map.Entry<Page, Double> pair : pageToRelevance.entrySet()) {
-            String snippet = getSnippet(pair.getKey().getContent(), keyWords);
-            SearchData dataEntity = getPageData(pair.getKey(), pair.getValue(), snippet);
-            dataList.add(dataEntity);
-        }
-        dataList.sort(Comparator.comparing(SearchData::getRelevance).reversed());
-        List<SearchData> dataPart = dataList.stream().skip(offset).limit(limit).toList();
+        List<SearchData> dataPart = new ArrayList<>();
+        stageTimer("snippet").record(() -> {
+            List<Map.Entry<Page, Double>> slice = rankedPages.slice(offset, limit);
+            Map<Integer, String> contents = findContents(slice);
+            for (Map.Entry<Page, Double> pair : slice) {
+                // после истечения срока оставшиеся результаты отдаются без сниппетов
+                boolean withSnippet = !deadline.cutOff();
+                dataPart.add(getPageData(pair.getKey(), contents.get(pair.getKey().getId()), pair.getValue(),
+                        rankedPages.keyWords(), withSnippet));
+            }
+        });
 
+        SuccessfulSearchResponse response = new SuccessfulSearchResponse();
         response.setResult(true);
-        response.setCount(dataList.size());
+        response.setCount(rankedPages.count());
         response.setData(dataPart);
+        response.setPartial(deadline.isPartial());
+        if (deadline.isPartial()) {
+            meterRegistry.counter("searchengine.search.partial").increment();
+        }
+        searchSample.stop(meterRegistry.timer("searchengine.search"));
         return response;
     }
 
-    private SearchData getPageData (Page page, Double relevance, String snippet) {
-        SearchData dataEntity = new SearchData();
-        String siteLink = page.getSite().getUrl().replaceAll("/$", "");
-        dataEntity.setSite(siteLink);
-        dataEntity.setSiteName(page.getSite().getName());
-        String pagePath = page.getPath();
-        dataEntity.setUri(pagePath);
-        String absHref = siteLink + pagePath;
-        dataEntity.setTitle(pageIndexer.getPageTitle(absHref));
-        dataEntity.setSnippet(snippet);
-        dataEntity.setRelevance(relevance);
-        return dataEntity;
+    @Override
+    public CompletableFuture<SearchResponse> searchAsync (String query, String siteUrl, int offset, int limit,
+                                                          long deadlineMs) {
+        try {
+            return searchExecutor.submit(() -> search(query, siteUrl, offset, limit, SearchDeadline.after(deadlineMs)));
+        } catch (RejectedExecutionException e) {
+            meterRegistry.counter("searchengine.search.rejected").increment();
+            return CompletableFuture.failedFuture(e);
+        }
     }
 
-    private String getSnippet (String content, Set<Lemma> keyWords) {
-        List<String> textParts = decomposeText(content);
-        StringBuilder snippet = new StringBuilder();
-        long maxCount = 0L;
-        for (String part : textParts) {
-            long keyCount = 0L;
-            List<String> words = Arrays.stream(part.split("[^А-ЯЁа-яёA-Za-z]+")).toList();
-            for (Lemma keyWord : keyWords) {
-                List<String> keys = findKeyWord(words, keyWord);
-                keyCount = keys.size();
-                for (String key : keys) {
-                    key = key.replaceAll("[^А-ЯЁа-яёA-Za-z]", "");
-                    part = part.replaceAll(key, "<b>" + key + "</b>");
+    @Override
+    public CompletableFuture<Void> searchStreamAsync (String query, String siteUrl, int offset, int limit,
+                                                      long deadlineMs, SearchResultListener listener) {
+        try {
+            return searchExecutor.submit(() -> {
+                try {
+                    searchStream(query, siteUrl, offset, limit, SearchDeadline.after(deadlineMs), listener);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
                 }
-            }
-            if (keyCount > maxCount) {
-                maxCount = keyCount;
-                snippet = new StringBuilder(part);
-            }
+                return null;
+            });
+        } catch (RejectedExecutionException e) {
+            meterRegistry.counter("searchengine.search.rejected").increment();
+            return CompletableFuture.failedFuture(e);
         }
-        snippet = new StringBuilder().append("...").append(snippet).append("...");
-
-        return snippet.toString();
     }
 
-    private List<String> decomposeText (String text) {
-        List<String> textParts = new ArrayList<>();
-        text = textParser.replaceHtml(text).replaceAll(" +", " ").trim();
-        int startIndex = 0;
-        int endIndex = 300;
+    @Override
+    public void searchStream (String query, String siteUrl, int offset, int limit, SearchDeadline deadline,
+                              SearchResultListener listener) throws IOException {
+        if (query.isBlank()) {
+            listener.onError("Задан пустой поисковый запрос");
+            return;
+        }
+        Timer.Sample searchSample = Timer.start(meterRegistry);
+        Timer.Sample firstResultSample = Timer.start(meterRegistry);
+        RankedPages rankedPages = rank(query, siteUrl, topCount(offset, limit), deadline);
+        listener.onCount(rankedPages.count());
 
-        while (endIndex < text.length()) {
-            textParts.add(text.substring(startIndex, endIndex + 1));
-            startIndex = startIndex + 300;
-            endIndex = endIndex + 300;
+        boolean first = true;
+        List<Map.Entry<Page, Double>> slice = rankedPages.slice(offset, limit);
+        Map<Integer, String> contents = findContents(slice);
+        for (Map.Entry<Page, Double> pair : slice) {
+            Timer.Sample snippetSample = Timer.start(meterRegistry);
+            SearchData data = getPageData(pair.getKey(), contents.get(pair.getKey().getId()), pair.getValue(),
+                    rankedPages.keyWords(), !deadline.cutOff());
+            snippetSample.stop(stageTimer("snippet"));
+            listener.onResult(data);
+            if (first) {
+                firstResultSample.stop(meterRegistry.timer("searchengine.search.stream.first_result"));
+                first = false;
+            }
         }
-        if (text.length() <= 300) {
-            textParts.add(text);
-        } else {
-            textParts.add(text.substring(endIndex - 300));
+        if (deadline.isPartial()) {
+            meterRegistry.counter("searchengine.search.partial").increment();
         }
-        return textParts;
+        searchSample.stop(meterRegistry.timer("searchengine.search.stream"));
     }
 
-    private List<String> findKeyWord (List<String> words, Lemma keyWord) {
-        return words
-                .stream()
-                .filter(word -> {
-                    word = word.replaceAll("[^А-ЯЁа-яёA-Za-z]", "");
-                    if (word.isBlank()) {
-                        return false;
-                    }
-
-                    Language language;
-                    if (word.matches("^[a-zA-Z]*$")) {
-                        language = Language.ENGLISH;
-                    } else if (word.matches("^[А-ЯЁа-яё]*$")){
-                        language = Language.RUSSIAN;
-                    } else {
-                        return false;
-                    }
-
-                    return textParser.getLemma(word.toLowerCase(), language).equals(keyWord.getLemma());
-                })
-                .toList();
+    @Override
+    public ShardStatistics getShardStatistics (Collection<String> lemmas, String siteUrl) {
+        return readOnlyTransaction.execute(status -> {
+            ShardStatistics statistics = new ShardStatistics();
+            Optional<Site> optionalSite = siteRepository.findByUrl(siteUrl);
+            if (isSiteSelected(siteUrl) && optionalSite.isEmpty()) {
+                return statistics;
+            }
+            statistics.setPageCount(optionalSite.map(pageRepository::countBySite).orElseGet(pageRepository::count));
+            for (String lemma : lemmas) {
+                List<Lemma> found = findShardLemmas(lemma, optionalSite);
+                if (!found.isEmpty()) {
+                    statistics.getLemmaFrequencies().put(lemma, found.stream().mapToLong(Lemma::getFrequency).sum());
+                }
+            }
+            return statistics;
+        });
     }
 
-    private HashMap<Page, Double> calculateRelevance (List<Page> pages, Set<Lemma> keyWords) {
-        HashMap<Page, Double> pageToAbsoluteRelevance = new HashMap<>();
-        HashMap<Page, Double> pageToRelevance = new HashMap<>();
-        List<Double> absoluteRelevanceList = new ArrayList<>();
-        Double maxAbsoluteRelevance = 0.0;
+    @Override
+    public ShardHits searchShard (Collection<String> keyWords, String siteUrl, int topCount, SearchDeadline deadline) {
+        List<Lemma> lemmas = readOnlyTransaction.execute(status -> stageTimer("lemma_lookup").record(() -> {
+            Optional<Site> optionalSite = siteRepository.findByUrl(siteUrl);
+            if (isSiteSelected(siteUrl) && optionalSite.isEmpty()) {
+                return List.<Lemma>of();
+            }
+            return keyWords.stream()
+                    .flatMap(lemma -> findShardLemmas(lemma, optionalSite).stream())
+                    .sorted(Comparator.comparingInt(Lemma::getFrequency))
+                    .toList();
+        }));
 
-        for (Page page : pages) {
-            double absoluteRelevance = getAbsoluteRelevance(page, keyWords);
-            absoluteRelevanceList.add(absoluteRelevance);
-            pageToAbsoluteRelevance.put(page, absoluteRelevance);
-        }
+        List<Supplier<SiteHits>> siteSearches = groupBySite(lemmas).stream()
+                .<Supplier<SiteHits>>map(siteKeyWords -> () -> searchSite(siteKeyWords, topCount, deadline))
+                .toList();
+        List<SiteHits> siteHits = searchExecutor.invokeAll(siteSearches);
 
-        for (Double absoluteRelevance : absoluteRelevanceList) {
-            maxAbsoluteRelevance = Double.max(absoluteRelevance, maxAbsoluteRelevance);
+        ShardHits hits = new ShardHits();
+        for (Map.Entry<Page, Double> entry : SearchRanking.mergeTopPages(
+                siteHits.stream().map(SiteHits::topPages).toList(), topCount)) {
+            ShardPage page = new ShardPage();
+            page.setPageId(entry.getKey().getId());
+            page.setRelevance(entry.getValue());
+            hits.getPages().add(page);
         }
+        hits.setCount(siteHits.stream().mapToInt(SiteHits::count).sum());
+        hits.setPartial(deadline.isPartial());
+        return hits;
+    }
 
-        for (Map.Entry<Page, Double> pair : pageToAbsoluteRelevance.entrySet()) {
-            Page page = pair.getKey();
-            Double relevance = pair.getValue() / maxAbsoluteRelevance;
-            pageToRelevance.put(page, relevance);
-        }
+    @Override
+    public List<SearchData> getShardPageData (List<Integer> pageIds, Collection<String> keyWords, boolean withSnippets) {
+        Set<Lemma> keyWordLemmas = new HashSet<>();
+        keyWords.forEach(keyWord -> {
+            Lemma lemma = new Lemma();
+            lemma.setLemma(keyWord);
+            keyWordLemmas.add(lemma);
+        });
+        return readOnlyTransaction.execute(status -> {
+            Map<Integer, Page> idToPage = new HashMap<>();
+            pageRepository.findAllById(pageIds).forEach(page -> idToPage.put(page.getId(), page));
+            Map<Integer, String> contents = indexStorage.findPageContents(idToPage.keySet());
+            List<SearchData> data = new ArrayList<>();
+            for (Integer pageId : pageIds) {
+                Page page = idToPage.get(pageId);
+                data.add(page == null ? null : getPageData(page, contents.get(pageId), 0.0, keyWordLemmas, withSnippets));
+            }
+            return data;
+        });
+    }
 
-        return pageToRelevance;
+    private static boolean isSiteSelected (String siteUrl) {
+        return siteUrl != null && !siteUrl.isBlank();
     }
 
-    private Double getAbsoluteRelevance (Page page, Set<Lemma> keyWords) {
-        List<Index> indexes = new ArrayList<>();
-        for (Lemma lemma : keyWords) {
-            Optional<Index> optionalIndex = indexRepository.findByLemmaAndPage(lemma, page);
-            optionalIndex.ifPresent(indexes::add);
-        }
+    private List<Lemma> findShardLemmas (String lemma, Optional<Site> optionalSite) {
+        return optionalSite
+                .map(site -> indexStorage.findLemma(lemma, site).stream().toList())
+                .orElseGet(() -> indexStorage.findLemmas(lemma));
+    }
 
-        List<Float> ranks = indexes.stream().map(Index::getRank).toList();
-        double absoluteRelevance = 0;
-        for (Float rank : ranks) {
-            absoluteRelevance += rank;
-        }
-        return absoluteRelevance;
+    /**
+     * Находит страницы и считает релевантность без построения сниппетов.
+     * Сайты обрабатываются параллельно, каждый в своей транзакции, чтобы одинаковые страницы
+     * сайта были одним объектом. От каждого сайта берутся лучшие topCount страниц,
+     * общая выдача собирается слиянием этих списков.
+     * По истечении срока обход сайтов и страниц прекращается, найденное к этому моменту ранжируется.
+     */
+    private RankedPages rank (String query, String siteUrl, int topCount, SearchDeadline deadline) {
+        List<Lemma> keyWords = readOnlyTransaction.execute(status -> stageTimer("lemma_lookup").record(() -> {
+            Optional<Site> optionalSite = siteRepository.findByUrl(siteUrl);
+            Set<String> queryLemmas = textParser.getLemmas(query).keySet();
+            return optionalSite
+                    .map(site -> getQueryKeyWords(queryLemmas, site))
+                    .orElseGet(() -> getQueryKeyWords(queryLemmas));
+        }));
+
+        List<Supplier<SiteHits>> siteSearches = groupBySite(keyWords).stream()
+                .<Supplier<SiteHits>>map(siteKeyWords -> () -> searchSite(siteKeyWords, topCount, deadline))
+                .toList();
+        List<SiteHits> siteHits = searchExecutor.invokeAll(siteSearches);
+
+        List<Map.Entry<Page, Double>> pages = stageTimer("merge").record(() -> SearchRanking.normalizeRelevance(
+                SearchRanking.mergeTopPages(siteHits.stream().map(SiteHits::topPages).toList(), topCount)));
+        int count = siteHits.stream().mapToInt(SiteHits::count).sum();
+        return new RankedPages(keyWords, pages, count);
     }
 
-    private List<Page> findPagesByQuery (Set<Lemma> keyWords) {
-        if (keyWords.isEmpty()) {
-            return new ArrayList<>();
+    /**
+     * Поиск по одному сайту: страницы со всеми ключевыми словами сайта и их абсолютная релевантность.
+     */
+    private SiteHits searchSite (List<Lemma> siteKeyWords, int topCount, SearchDeadline deadline) {
+        if (deadline.cutOff()) {
+            return new SiteHits(List.of(), 0);
         }
-        List<Site> sites = keyWords.stream().map(Lemma::getSite).distinct().toList();
-        keyWords = new TreeSet<>(keyWords);
-        TreeSet<Lemma> allKeyWords = (TreeSet<Lemma>) keyWords;
-        List<Page> foundPages = new ArrayList<>();
-        for (Site site : sites) {
-            keyWords = allKeyWords
-                    .stream()
-                    .filter(lemma -> lemma.getSite().equals(site))
-                    .collect(Collectors.toCollection(TreeSet::new));
-            if (keyWords.isEmpty()) {
-                continue;
-            }
-            Lemma rarestWord = keyWords.stream().findFirst().get();
-            List<Page> foundPagesForSite = findPagesByLemma(rarestWord);
-            for (Lemma lemma : keyWords) {
-                List<Page> pagesWithLemma = findPagesByLemma(lemma);
-                foundPagesForSite = foundPagesForSite
-                        .stream()
-                        .filter(page -> pagesWithLemma
-                                .stream()
-                                .anyMatch(pageWithLemma -> Objects.equals(pageWithLemma, page)))
-                        .toList();
-            }
-            foundPages.addAll(foundPagesForSite);
+        return readOnlyTransaction.execute(status -> {
+            PostingList matches = stageTimer("intersection").record(() -> intersect(siteKeyWords, deadline));
+            List<Map.Entry<Page, Double>> topPages = stageTimer("scoring")
+                    .record(() -> loadTopPages(matches, topCount, deadline));
+            return new SiteHits(topPages, matches.size());
+        });
+    }
+
+    /**
+     * Ключевые слова по сайтам, внутри сайта от самой редкой леммы к самой частой.
+     */
+    private static Collection<List<Lemma>> groupBySite (Collection<Lemma> keyWords) {
+        Map<Integer, List<Lemma>> siteToKeyWords = new LinkedHashMap<>();
+        keyWords.forEach(lemma -> siteToKeyWords.computeIfAbsent(lemma.getSite().getId(), id -> new ArrayList<>()).add(lemma));
+        return siteToKeyWords.values();
+    }
+
+    private static int topCount (int offset, int limit) {
+        return (int) Math.min(Integer.MAX_VALUE, (long) Math.max(0, offset) + Math.max(0, limit));
+    }
+
+    private record SiteHits (List<Map.Entry<Page, Double>> topPages, int count) {
+    }
+
+    /**
+     * @param pages первые страницы выдачи с нормированной релевантностью
+     * @param count сколько всего страниц найдено
+     */
+    private record RankedPages (List<Lemma> keyWords, List<Map.Entry<Page, Double>> pages, int count) {
+        List<Map.Entry<Page, Double>> slice (int offset, int limit) {
+            return pages.stream().skip(offset).limit(limit).toList();
         }
-        return foundPages;
     }
 
-    private TreeSet<Lemma> getQueryKeyWords (Set<String> lemmas, Site site) {
-        TreeSet<Lemma> keyWords = new TreeSet<>();
-        lemmas.forEach(lemma -> {
-            Optional<Lemma> optionalLemma = lemmaRepository.findByLemmaAndSite(lemma, site);
-            if (optionalLemma.isPresent()) {
-                Lemma lemmaExist = optionalLemma.get();
-                int pageCount = site.getPageSet().size();
-                if (lemmaExist.getFrequency() < pageCount * 0.7 || pageCount < 50) {
-                    keyWords.add(lemmaExist);
-                }
-            }
-        });
-        return keyWords;
+    private Timer stageTimer (String stage) {
+        return meterRegistry.timer("searchengine.search.stage", "stage", stage);
     }
 
-    private TreeSet<Lemma> getQueryKeyWords (Set<String> lemmas) {
-        TreeSet<Lemma> keyWords = new TreeSet<>();
-        lemmas.forEach(lemma -> {
-            List<Lemma> lemmaList = lemmaRepository.findByLemma(lemma);
-            AtomicInteger totalFrequency = new AtomicInteger();
-            lemmaList.forEach(lemma1 -> totalFrequency.set(totalFrequency.get() + lemma1.getFrequency()));
-            int pageCount = pageRepository.findAll().size();
-            if (totalFrequency.get() < pageCount * 0.7 || pageCount < 50) {
-                keyWords.addAll(lemmaList);
+    private SearchData getPageData (Page page, String content, Double relevance, Collection<Lemma> keyWords, boolean withSnippet) {
+        String html = content == null ? "" : content;
+        String snippet = withSnippet ? snippetBuilder.getSnippet(html, keyWords) : "";
+        SearchData dataEntity = new SearchData();
+        String siteLink = page.getSite().getUrl().replaceAll("/$", "");
+        dataEntity.setSite(siteLink);
+        dataEntity.setSiteName(page.getSite().getName());
+        String pagePath = page.getPath();
+        dataEntity.setUri(pagePath);
+        dataEntity.setTitle(snippetBuilder.getTitle(html));
+        dataEntity.setSnippet(snippet);
+        dataEntity.setRelevance(relevance);
+        return dataEntity;
+    }
+
+    /**
+     * HTML-код страниц выдачи одним запросом: при ранжировании он не читается
+     */
+    private Map<Integer, String> findContents (List<Map.Entry<Page, Double>> pages) {
+        return indexStorage.findPageContents(pages.stream().map(entry -> entry.getKey().getId()).toList());
+    }
+
+    /**
+     * Пересечение списков страниц лемм сайта от самой редкой леммы, rank суммируется по ходу пересечения.
+     * Из хранилища читаются только пары (id страницы, rank), без загрузки сущностей страниц.
+     * Срок проверяется перед каждой леммой: недопересеченный список содержит страницы не со всеми
+     * ключевыми словами, поэтому по истечении срока сайт ничего не находит.
+     */
+    private PostingList intersect (List<Lemma> siteKeyWords, SearchDeadline deadline) {
+        PostingList matches = indexStorage.readPostings(siteKeyWords.get(0));
+        for (int i = 1; i < siteKeyWords.size() && !matches.isEmpty(); i++) {
+            if (deadline.cutOff()) {
+                return PostingList.empty();
             }
-        });
-        return keyWords;
+            matches = indexStorage.intersect(siteKeyWords.get(i), matches);
+        }
+        return matches;
     }
 
-    private List<Page> findPagesByLemma (Lemma lemma) {
-        return indexRepository
-                .findByLemma(lemma)
-                .stream()
-                .map(Index::getPage)
+    /**
+     * Лучшие topCount страниц отбираются по id, из БД загружаются только они
+     */
+    private List<Map.Entry<Page, Double>> loadTopPages (PostingList matches, int topCount, SearchDeadline deadline) {
+        List<Map.Entry<Integer, Double>> topPageIds = SearchRanking.topPageIds(matches, topCount, deadline);
+        Map<Integer, Page> idToPage = new HashMap<>();
+        pageRepository.findAllById(topPageIds.stream().map(Map.Entry::getKey).toList())
+                .forEach(page -> idToPage.put(page.getId(), page));
+        return topPageIds.stream()
+                .filter(entry -> idToPage.containsKey(entry.getKey()))
+                .map(entry -> Map.entry(idToPage.get(entry.getKey()), entry.getValue()))
                 .toList();
     }
+
+    private List<Lemma> getQueryKeyWords (Set<String> lemmas, Site site) {
+        Map<String, List<Lemma>> candidates = new HashMap<>();
+        lemmas.forEach(lemma -> indexStorage
+                .findLemma(lemma, site)
+                .ifPresent(lemmaExist -> candidates.put(lemma, List.of(lemmaExist))));
+        return SearchRanking.selectKeyWords(candidates, pageRepository.countBySite(site));
+    }
+
+    private List<Lemma> getQueryKeyWords (Set<String> lemmas) {
+        Map<String, List<Lemma>> candidates = new HashMap<>();
+        lemmas.forEach(lemma -> candidates.put(lemma, indexStorage.findLemmas(lemma)));
+        return SearchRanking.selectKeyWords(candidates, pageRepository.count());
+    }
 }
@@ -0,0 +1,28 @@
+package searchengine.services;
+
+import searchengine.dto.search.SearchData;
+import searchengine.dto.search.ShardHits;
+import searchengine.dto.search.ShardStatistics;
+import searchengine.utils.SearchDeadline;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Поиск по локальной БД узла-шарда для {@link ScatterGatherSearchService}.
+ * Если сайт задан, но на шарде его нет, шард ничего не находит.
+ */
+public interface ShardSearchService {
+    ShardStatistics getShardStatistics (Collection<String> lemmas, String siteUrl);
+
+    /**
+     * @param keyWords ключевые слова, отобранные координатором по статистике всех шардов
+     */
+    ShardHits searchShard (Collection<String> keyWords, String siteUrl, int topCount, SearchDeadline deadline);
+
+    /**
+     * Данные страниц для выдачи в порядке pageIds, без релевантности.
+     * На месте удаленных с момента поиска страниц - null.
+     */
+    List<SearchData> getShardPageData (List<Integer> pageIds, Collection<String> keyWords, boolean withSnippets);
+}
@@ -1,7 +1,9 @@
 package searchengine.services;
 
+import searchengine.dto.responses.PipelineResponse;
 import searchengine.dto.responses.StatisticsResponse;
 
 public interface StatisticsService {
     StatisticsResponse getStatistics();
+    PipelineResponse getPipelineStatistics();
 }
@@ -4,13 +4,17 @@ import lombok.RequiredArgsConstructor;
 import org.springframework.stereotype.Service;
 import searchengine.config.SiteDto;
 import searchengine.config.SitesList;
+import searchengine.dto.responses.PipelineResponse;
 import searchengine.dto.statistics.DetailedStatisticsItem;
 import searchengine.dto.statistics.StatisticsData;
 import searchengine.dto.responses.StatisticsResponse;
 import searchengine.dto.statistics.TotalStatistics;
 import searchengine.model.IndexingStatus;
 import searchengine.model.entities.Site;
+import searchengine.model.repositories.PageRepository;
 import searchengine.model.repositories.SiteRepository;
+import searchengine.utils.IndexStorage;
+import searchengine.utils.IndexingPipeline;
 
 import java.time.ZoneOffset;
 import java.util.ArrayList;
@@ -23,6 +27,9 @@ public class StatisticsServiceImpl implements StatisticsService {
     
     private final SitesList sites;
     private final SiteRepository siteRepository;
+    private final PageRepository pageRepository;
+    private final IndexStorage indexStorage;
+    private final IndexingPipeline pipeline;
 
     @Override
     public StatisticsResponse getStatistics() {
@@ -42,8 +49,8 @@ public class StatisticsServiceImpl implements StatisticsService {
             }
             
             Site site = optionalSite.get();
-            updateTotalStatistics(total, site);
             DetailedStatisticsItem detailedItem = getDetailedStatisticItem(site);
+            updateTotalStatistics(total, detailedItem, site);
             detailed.add(detailedItem);
         }
 
@@ -56,25 +63,34 @@ public class StatisticsServiceImpl implements StatisticsService {
         return response;
     }
 
-    private static DetailedStatisticsItem getDetailedStatisticItem (Site site) {
+    @Override
+    public PipelineResponse getPipelineStatistics() {
+        PipelineResponse response = new PipelineResponse();
+        response.setStages(pipeline.getStatistics());
+        response.setResult(true);
+        return response;
+    }
+
+    private DetailedStatisticsItem getDetailedStatisticItem (Site site) {
         DetailedStatisticsItem detailedItem = new DetailedStatisticsItem();
         detailedItem.setUrl(site.getUrl());
         detailedItem.setName(site.getName());
         detailedItem.setStatus(String.valueOf(site.getIndexingStatus()));
         detailedItem.setStatusTime(site.getStatusTime().atZone(ZoneOffset.UTC).getNano());
         detailedItem.setError(site.getLastError() == null ? "" : site.getLastError());
-        detailedItem.setPages(site.getPageSet().size());
-        detailedItem.setLemmas(site.getLemmaSet().size());
+        // запрос COUNT вместо загрузки всех страниц и лемм сайта через pageSet и lemmaSet
+        detailedItem.setPages((int) pageRepository.countBySite(site));
+        detailedItem.setLemmas((int) indexStorage.countLemmas(site));
         return detailedItem;
     }
 
-    private void updateTotalStatistics (TotalStatistics total, Site site) {
+    private void updateTotalStatistics (TotalStatistics total, DetailedStatisticsItem detailedItem, Site site) {
         if (site.getIndexingStatus().equals(IndexingStatus.INDEXING)) {
             total.setIndexing(true);
         }
 
         total.setSites(total.getSites() + 1);
-        total.setPages(total.getPages() + site.getPageSet().size());
-        total.setLemmas(total.getLemmas() + site.getLemmaSet().size());
+        total.setPages(total.getPages() + detailedItem.getPages());
+        total.setLemmas(total.getLemmas() + detailedItem.getLemmas());
     }
 }
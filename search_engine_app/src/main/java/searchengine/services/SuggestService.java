@@ -0,0 +1,7 @@
+package searchengine.services;
+
+import searchengine.dto.responses.SuggestResponse;
+
+public interface SuggestService {
+    SuggestResponse suggest (String query, Integer limit);
+}
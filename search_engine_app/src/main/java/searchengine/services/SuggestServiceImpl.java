@@ -0,0 +1,39 @@
+package searchengine.services;
+
+import org.springframework.stereotype.Service;
+import searchengine.config.SuggestSettings;
+import searchengine.dto.responses.SuggestResponse;
+import searchengine.utils.LemmaSuggester;
+
+import java.util.List;
+import java.util.Locale;
+
+@Service
+public class SuggestServiceImpl implements SuggestService {
+    private final LemmaSuggester lemmaSuggester;
+    private final SuggestSettings settings;
+
+    public SuggestServiceImpl (LemmaSuggester lemmaSuggester, SuggestSettings settings) {
+        this.lemmaSuggester = lemmaSuggester;
+        this.settings = settings;
+    }
+
+    /**
+     * Дополняет последнее слово запроса леммами, начинающимися с него.
+     * Предыдущие слова остаются без изменений.
+     */
+    @Override
+    public SuggestResponse suggest (String query, Integer limit) {
+        int resolvedLimit = limit == null ? settings.getDefaultLimit() : Math.min(limit, settings.getMaxLimit());
+        int wordStart = query.length();
+        while (wordStart > 0 && Character.isLetterOrDigit(query.charAt(wordStart - 1))) {
+            wordStart--;
+        }
+        String head = query.substring(0, wordStart);
+        String prefix = query.substring(wordStart).toLowerCase(Locale.ROOT);
+        List<String> suggestions = lemmaSuggester.suggest(prefix, resolvedLimit).stream()
+                .map(lemma -> head + lemma)
+                .toList();
+        return new SuggestResponse(suggestions);
+    }
+}
@@ -0,0 +1,138 @@
+package searchengine.utils;
+
+import lombok.extern.log4j.Log4j2;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
+import java.util.function.BiConsumer;
+
+/**
+ * Файл записей [длина:int][данные], которые только дописываются в конец.
+ * Запись, недописанная из-за сбоя, отбрасывается при открытии файла.
+ * Записи буферизуются до {@link #flush()}, по смещению читаются только сброшенные записи.
+ */
+@Log4j2
+public class AppendLog implements Closeable {
+    private static final int WRITE_BUFFER_BYTES = 1 << 16;
+
+    private final Path path;
+    private final FileChannel channel;
+    private final DataOutputStream output;
+    private long size;
+
+    private AppendLog (Path path, FileChannel channel, long size) {
+        this.path = path;
+        this.channel = channel;
+        this.size = size;
+        this.output = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel), WRITE_BUFFER_BYTES));
+    }
+
+    /**
+     * Открывает файл, создавая его при необходимости, и передает в reader смещение и данные каждой записи
+     */
+    public static AppendLog open (Path path, BiConsumer<Long, ByteBuffer> reader) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        long fileSize = channel.size();
+        long position = 0;
+        DataInputStream input = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel),
+                WRITE_BUFFER_BYTES));
+        while (position + Integer.BYTES <= fileSize) {
+            int length = input.readInt();
+            if (length < 0 || position + Integer.BYTES + length > fileSize) {
+                break;
+            }
+            byte[] record = new byte[length];
+            input.readFully(record);
+            reader.accept(position, ByteBuffer.wrap(record));
+            position += Integer.BYTES + length;
+        }
+        if (position < fileSize) {
+            log.warn("Отброшена недописанная запись в конце файла " + path + ": " + (fileSize - position) + " байт");
+            channel.truncate(position);
+        }
+        channel.position(position);
+        return new AppendLog(path, channel, position);
+    }
+
+    /**
+     * Записывает records в новый файл и заменяет им файл path
+     */
+    public static void rewrite (Path path, Iterator<byte[]> records) throws IOException {
+        Path temporary = path.resolveSibling(path.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            DataOutputStream output = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel),
+                    WRITE_BUFFER_BYTES));
+            while (records.hasNext()) {
+                byte[] record = records.next();
+                output.writeInt(record.length);
+                output.write(record);
+            }
+            output.flush();
+            channel.force(true);
+        }
+        Files.move(temporary, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * @return смещение записи в файле
+     */
+    public synchronized long append (byte[] record) throws IOException {
+        long offset = size;
+        output.writeInt(record.length);
+        output.write(record);
+        size += Integer.BYTES + record.length;
+        return offset;
+    }
+
+    public synchronized void flush () throws IOException {
+        output.flush();
+    }
+
+    public byte[] read (long offset) throws IOException {
+        ByteBuffer length = ByteBuffer.allocate(Integer.BYTES);
+        readFully(length, offset);
+        ByteBuffer record = ByteBuffer.allocate(length.getInt(0));
+        readFully(record, offset + Integer.BYTES);
+        return record.array();
+    }
+
+    /**
+     * Размер записи вместе с длиной
+     */
+    public long recordBytes (long offset) throws IOException {
+        ByteBuffer length = ByteBuffer.allocate(Integer.BYTES);
+        readFully(length, offset);
+        return Integer.BYTES + length.getInt(0);
+    }
+
+    public synchronized long size () {
+        return size;
+    }
+
+    public Path getPath () {
+        return path;
+    }
+
+    private void readFully (ByteBuffer buffer, long offset) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, offset + buffer.position()) < 0) {
+                throw new EOFException("Запись выходит за конец файла " + path);
+            }
+        }
+    }
+
+    @Override
+    public synchronized void close () throws IOException {
+        output.flush();
+        channel.close();
+    }
+}
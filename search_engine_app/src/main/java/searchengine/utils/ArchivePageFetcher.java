@@ -0,0 +1,51 @@
+package searchengine.utils;
+
+import lombok.extern.log4j.Log4j2;
+
+import java.io.Closeable;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Map;
+
+/**
+ * Отдает страницы из архива обхода вместо обращения к сайтам.
+ * Страницы, которых нет в архиве, считаются недоступными.
+ */
+@Log4j2
+public class ArchivePageFetcher implements PageFetcher, Closeable {
+    private final CrawlArchive.Reader reader;
+
+    public ArchivePageFetcher (Path archive) throws IOException {
+        this.reader = new CrawlArchive.Reader(archive);
+        log.info("Обход выполняется по архиву " + archive + ", страниц: " + reader.size());
+    }
+
+    @Override
+    public FetchedPage fetch (String link) throws IOException {
+        FetchedPage page = reader.read(link);
+        if (page == null) {
+            throw new FileNotFoundException("Страницы нет в архиве обхода: " + link);
+        }
+        return page;
+    }
+
+    /**
+     * Служебного файла нет в архиве - считается, что сайт его не публикует.
+     */
+    @Override
+    public FetchedPage fetchResource (String link) throws IOException {
+        FetchedPage resource = reader.read(link);
+        return resource != null ? resource : new FetchedPage(link, 404, Map.of(), "");
+    }
+
+    @Override
+    public long getRequestDelay () {
+        return 0;
+    }
+
+    @Override
+    public void close () throws IOException {
+        reader.close();
+    }
+}
@@ -0,0 +1,140 @@
+package searchengine.utils;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Архив загруженных страниц для повторного обхода без сети.
+ * Файл состоит из записей [длина:int][gzip-блок], каждый блок содержит
+ * URL, код ответа, заголовки и тело одной страницы. Блоки сжимаются отдельно,
+ * поэтому запись можно дописывать в конец файла, а читать по смещению.
+ */
+public final class CrawlArchive {
+    private static final String FORMAT = "CRAWL/1";
+
+    private CrawlArchive () {
+    }
+
+    public static class Writer implements Closeable {
+        private final OutputStream output;
+
+        public Writer (Path path) throws IOException {
+            output = new BufferedOutputStream(Files.newOutputStream(path,
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND));
+        }
+
+        public synchronized void write (FetchedPage page) throws IOException {
+            ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+            try (DataOutputStream record = new DataOutputStream(new GZIPOutputStream(compressed))) {
+                writeString(record, FORMAT);
+                writeString(record, page.url());
+                record.writeInt(page.statusCode());
+                record.writeInt(page.headers().size());
+                for (Map.Entry<String, String> header : page.headers().entrySet()) {
+                    writeString(record, header.getKey());
+                    writeString(record, header.getValue());
+                }
+                writeString(record, page.body());
+            }
+            DataOutputStream frame = new DataOutputStream(output);
+            frame.writeInt(compressed.size());
+            compressed.writeTo(frame);
+            frame.flush();
+        }
+
+        @Override
+        public synchronized void close () throws IOException {
+            output.close();
+        }
+    }
+
+    public static class Reader implements Closeable {
+        private final FileChannel channel;
+        private final Map<String, long[]> urlToFrame = new LinkedHashMap<>();
+
+        public Reader (Path path) throws IOException {
+            channel = FileChannel.open(path, StandardOpenOption.READ);
+            long position = 0;
+            long size = channel.size();
+            while (position + Integer.BYTES <= size) {
+                ByteBuffer lengthBuffer = readFully(position, Integer.BYTES);
+                int length = lengthBuffer.getInt();
+                long offset = position + Integer.BYTES;
+                FetchedPage page = decode(readFully(offset, length));
+                urlToFrame.put(page.url(), new long[]{offset, length});
+                position = offset + length;
+            }
+        }
+
+        public FetchedPage read (String url) throws IOException {
+            long[] frame = urlToFrame.get(url);
+            if (frame == null) {
+                return null;
+            }
+            return decode(readFully(frame[0], (int) frame[1]));
+        }
+
+        public Iterable<String> urls () {
+            return Collections.unmodifiableSet(urlToFrame.keySet());
+        }
+
+        public int size () {
+            return urlToFrame.size();
+        }
+
+        private ByteBuffer readFully (long position, int length) throws IOException {
+            ByteBuffer buffer = ByteBuffer.allocate(length);
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer, position + buffer.position()) < 0) {
+                    throw new EOFException("Архив обхода поврежден: неполная запись");
+                }
+            }
+            return buffer.flip();
+        }
+
+        private static FetchedPage decode (ByteBuffer frame) throws IOException {
+            try (DataInputStream record = new DataInputStream(new GZIPInputStream(
+                    new ByteArrayInputStream(frame.array(), frame.arrayOffset(), frame.limit())))) {
+                String format = readString(record);
+                if (!FORMAT.equals(format)) {
+                    throw new IOException("Неизвестный формат записи архива: " + format);
+                }
+                String url = readString(record);
+                int status = record.readInt();
+                int headerCount = record.readInt();
+                Map<String, String> headers = new LinkedHashMap<>();
+                for (int i = 0; i < headerCount; i++) {
+                    headers.put(readString(record), readString(record));
+                }
+                return new FetchedPage(url, status, headers, readString(record));
+            }
+        }
+
+        @Override
+        public void close () throws IOException {
+            channel.close();
+        }
+    }
+
+    private static void writeString (DataOutputStream output, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        output.writeInt(bytes.length);
+        output.write(bytes);
+    }
+
+    private static String readString (DataInputStream input) throws IOException {
+        byte[] bytes = new byte[input.readInt()];
+        input.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,200 @@
+package searchengine.utils;
+
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.stereotype.Component;
+import searchengine.config.CrawlConcurrencySettings;
+import searchengine.model.entities.Site;
+
+import javax.sql.DataSource;
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Число одновременных запросов к каждому сайту по схеме AIMD: после каждого успешного ответа
+ * предел растет примерно на единицу за время ответа, при перегрузке уменьшается в decrease-factor раз.
+ * Перегрузкой считаются ответы 429/503/504, ошибки соединения, рост времени ответа
+ * больше latency-tolerance раз от лучшего, а также общая перегрузка: очередь конвейера индексации
+ * заполнена или потоки ждут соединения с БД. Retry-After приостанавливает запросы к сайту.
+ */
+@Log4j2
+@Component
+public class CrawlConcurrencyController {
+    private static final long WAIT_MS = 50;
+    private static final long BACKPRESSURE_WINDOW_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private final CrawlConcurrencySettings settings;
+    private final HikariPoolMXBean connectionPool;
+    private final MeterRegistry meterRegistry;
+    private final Map<String, SiteLimiter> siteToLimiter = new ConcurrentHashMap<>();
+    private volatile long lastBackpressureNanos = System.nanoTime() - BACKPRESSURE_WINDOW_NANOS;
+
+    public CrawlConcurrencyController (CrawlConcurrencySettings settings, DataSource dataSource,
+                                      MeterRegistry meterRegistry) {
+        this.settings = settings;
+        this.connectionPool = dataSource instanceof HikariDataSource hikari ? hikari.getHikariPoolMXBean() : null;
+        this.meterRegistry = meterRegistry;
+    }
+
+    /**
+     * @param maxLimit наибольшее число одновременных запросов к сайту, например 1 при Crawl-delay
+     */
+    public void register (Site site, int maxLimit) {
+        siteToLimiter.put(site.getUrl(), new SiteLimiter(Math.max(1, Math.min(maxLimit, settings.getMaxLimit()))));
+        Gauge.builder("searchengine.crawl.concurrency", siteToLimiter, limiters -> {
+                    SiteLimiter limiter = limiters.get(site.getUrl());
+                    return limiter == null ? 0 : limiter.getLimit();
+                })
+                .tag("site", site.getName())
+                .register(meterRegistry);
+    }
+
+    public void unregister (Site site) {
+        siteToLimiter.remove(site.getUrl());
+    }
+
+    /**
+     * Ожидает, пока число запросов к сайту станет меньше предела. {@link CrawlScheduler} не запускает
+     * задачи сайта сверх {@link #allowedRequests}, поэтому потоки обхода здесь почти не ждут.
+     */
+    public Permit acquire (Site site) throws InterruptedException {
+        SiteLimiter limiter = siteToLimiter.computeIfAbsent(site.getUrl(), url -> new SiteLimiter(settings.getMaxLimit()));
+        limiter.acquire();
+        return new Permit(limiter, System.nanoTime());
+    }
+
+    /**
+     * Сколько запросов к сайту можно выполнять одновременно сейчас: 0, пока обход приостановлен по Retry-After
+     */
+    public int allowedRequests (Site site) {
+        SiteLimiter limiter = siteToLimiter.get(site.getUrl());
+        return limiter == null ? settings.getMaxLimit() : limiter.allowedRequests();
+    }
+
+    /**
+     * Сообщение конвейера индексации о том, что очередь заполнена и обход нужно замедлить.
+     */
+    public void reportBackpressure () {
+        lastBackpressureNanos = System.nanoTime();
+    }
+
+    private boolean isCongested () {
+        if (System.nanoTime() - lastBackpressureNanos < BACKPRESSURE_WINDOW_NANOS) {
+            return true;
+        }
+        return connectionPool != null && connectionPool.getThreadsAwaitingConnection() > 0;
+    }
+
+    /**
+     * Разрешение на один запрос к сайту, возвращается через {@link #release}.
+     */
+    public final class Permit {
+        private final SiteLimiter limiter;
+        private final long startNanos;
+
+        private Permit (SiteLimiter limiter, long startNanos) {
+            this.limiter = limiter;
+            this.startNanos = startNanos;
+        }
+
+        /**
+         * @param statusCode код ответа или -1, если ответ не получен
+         */
+        public void release (int statusCode, Map<String, String> headers) {
+            limiter.release(System.nanoTime() - startNanos, statusCode, retryAfterMs(headers));
+        }
+    }
+
+    private long retryAfterMs (Map<String, String> headers) {
+        if (headers == null) {
+            return 0;
+        }
+        String value = headers.entrySet().stream()
+                .filter(header -> header.getKey().equalsIgnoreCase("Retry-After"))
+                .map(Map.Entry::getValue)
+                .findFirst()
+                .orElse(null);
+        if (value == null || value.isBlank()) {
+            return 0;
+        }
+        long delay;
+        try {
+            delay = TimeUnit.SECONDS.toMillis(Long.parseLong(value.trim()));
+        } catch (NumberFormatException e) {
+            try {
+                ZonedDateTime date = ZonedDateTime.parse(value.trim(), DateTimeFormatter.RFC_1123_DATE_TIME);
+                delay = Duration.between(ZonedDateTime.now(date.getZone()), date).toMillis();
+            } catch (DateTimeParseException ignored) {
+                return 0;
+            }
+        }
+        return Math.max(0, Math.min(delay, settings.getMaxRetryAfterMs()));
+    }
+
+    private final class SiteLimiter {
+        private final int maxLimit;
+        private double limit;
+        private int inFlight;
+        private long pausedUntilNanos = System.nanoTime();
+        private long lastDecreaseNanos = System.nanoTime();
+        private double averageLatencyNanos;
+        private double bestLatencyNanos = Double.MAX_VALUE;
+
+        SiteLimiter (int maxLimit) {
+            this.maxLimit = maxLimit;
+            this.limit = Math.max(settings.getMinLimit(), Math.min(settings.getInitialLimit(), maxLimit));
+        }
+
+        synchronized double getLimit () {
+            return limit;
+        }
+
+        synchronized int allowedRequests () {
+            return System.nanoTime() - pausedUntilNanos >= 0 ? (int) limit : 0;
+        }
+
+        /**
+         * Ждет с таймаутом: пауза Retry-After заканчивается без уведомления
+         */
+        synchronized void acquire () throws InterruptedException {
+            while (inFlight >= (int) limit || System.nanoTime() - pausedUntilNanos < 0) {
+                wait(WAIT_MS);
+            }
+            inFlight++;
+        }
+
+        synchronized void release (long latencyNanos, int statusCode, long retryAfterMs) {
+            inFlight--;
+            long now = System.nanoTime();
+            if (retryAfterMs > 0) {
+                pausedUntilNanos = Math.max(pausedUntilNanos, now + TimeUnit.MILLISECONDS.toNanos(retryAfterMs));
+            }
+            boolean overloaded = statusCode < 0 || statusCode == 429 || statusCode == 503 || statusCode == 504;
+            if (!overloaded) {
+                averageLatencyNanos = averageLatencyNanos == 0 ? latencyNanos : 0.8 * averageLatencyNanos + 0.2 * latencyNanos;
+                // лучшее время медленно забывается, чтобы один случайно быстрый ответ не занижал предел навсегда
+                bestLatencyNanos = Math.min(latencyNanos, bestLatencyNanos * 1.01);
+                overloaded = averageLatencyNanos > bestLatencyNanos * settings.getLatencyTolerance();
+            }
+            if (overloaded || isCongested()) {
+                // не чаще одного раза за время ответа: запросы, начатые до снижения, не снижают предел повторно
+                if (now - lastDecreaseNanos > averageLatencyNanos) {
+                    limit = Math.max(settings.getMinLimit(), limit * settings.getDecreaseFactor());
+                    lastDecreaseNanos = now;
+                    log.debug("Предел запросов снижен до " + limit);
+                }
+            } else {
+                limit = Math.min(maxLimit, limit + 1 / limit);
+            }
+            notifyAll();
+        }
+    }
+}
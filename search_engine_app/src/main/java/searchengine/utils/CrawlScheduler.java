@@ -0,0 +1,229 @@
+package searchengine.utils;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.stereotype.Component;
+import searchengine.config.CrawlConcurrencySettings;
+import searchengine.model.entities.Site;
+
+import javax.annotation.PreDestroy;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Общие для всех сайтов crawl-concurrency-settings.threads потоков обхода. У каждого сайта своя очередь задач,
+ * а сайты обслуживаются по взвешенной справедливой очереди: поток берет задачу сайта с наименьшим
+ * виртуальным временем, которое за каждую задачу растет на 1/weight. Сайт, у которого не было задач,
+ * начинает с текущего виртуального времени и не получает преимущества за простой, поэтому большой
+ * сайт не вытесняет остальные. Задача сайта запускается не раньше чем через паузу после запуска
+ * предыдущей задачи этого сайта и только пока задач сайта меньше предела {@link CrawlConcurrencyController},
+ * так что потоки не заняты ожиданием.
+ * После {@link #cancelAll()} планировщик не принимает сайты до следующего {@link #open()}, потоки при этом
+ * не останавливаются, поэтому индексацию можно запускать повторно.
+ */
+@Log4j2
+@Component
+public class CrawlScheduler {
+    private static final long IDLE_WAIT_MS = 50;
+
+    private final CrawlConcurrencyController concurrencyController;
+    private final Map<Integer, SiteQueue> siteQueues = new HashMap<>();
+    private double virtualTime;
+    private int queuedTasks;
+    private boolean open;
+    private boolean shutdown;
+
+    public CrawlScheduler (CrawlConcurrencySettings settings, CrawlConcurrencyController concurrencyController,
+                           MeterRegistry meterRegistry) {
+        this.concurrencyController = concurrencyController;
+        for (int i = 0; i < settings.getThreads(); i++) {
+            Thread worker = new Thread(this::work, "crawl-" + i);
+            worker.setDaemon(true);
+            worker.start();
+        }
+        Gauge.builder("searchengine.crawl.scheduler.queued", this, CrawlScheduler::getQueuedTasks)
+                .register(meterRegistry);
+        Gauge.builder("searchengine.crawl.scheduler.sites", this, CrawlScheduler::getActiveSites)
+                .register(meterRegistry);
+    }
+
+    /**
+     * Разрешает запуск обхода сайтов
+     */
+    public synchronized void open () {
+        open = true;
+    }
+
+    public synchronized boolean isOpen () {
+        return open;
+    }
+
+    /**
+     * Ставит в очередь стартовые задачи сайта
+     *
+     * @param weight доля потоков сайта относительно других сайтов
+     * @param delayMs пауза между запусками задач сайта
+     * @return завершается, когда выполнены все задачи сайта, в том числе добавленные через {@link #submit};
+     * значение false, если обход сайта отменен
+     */
+    public synchronized CompletableFuture<Boolean> start (Site site, double weight, long delayMs,
+                                                          List<? extends Runnable> tasks) {
+        if (!open) {
+            return CompletableFuture.completedFuture(false);
+        }
+        SiteQueue queue = new SiteQueue(site, weight > 0 ? weight : 1, TimeUnit.MILLISECONDS.toNanos(delayMs));
+        siteQueues.put(site.getId(), queue);
+        tasks.forEach(task -> enqueue(queue, task));
+        completeIfDone(queue);
+        return queue.completion;
+    }
+
+    /**
+     * Добавляет задачу сайта, обход которого еще идет. Задачи отмененного сайта отбрасываются.
+     */
+    public synchronized void submit (Site site, Runnable task) {
+        SiteQueue queue = siteQueues.get(site.getId());
+        if (queue != null && !queue.cancelled) {
+            enqueue(queue, task);
+        }
+    }
+
+    /**
+     * Отменяет обход всех сайтов: очереди очищаются, а ссылки, найденные выполняемыми задачами,
+     * отбрасываются. Задачи не прерываются, чтобы не обрывать запросы к БД посреди транзакции,
+     * и дорабатывают свою страницу. Обход сайта завершается со значением false, когда они закончатся.
+     */
+    public synchronized void cancelAll () {
+        open = false;
+        for (SiteQueue queue : new ArrayList<>(siteQueues.values())) {
+            queuedTasks -= queue.tasks.size();
+            queue.tasks.clear();
+            queue.cancelled = true;
+            completeIfDone(queue);
+        }
+    }
+
+    public synchronized int getQueuedTasks () {
+        return queuedTasks;
+    }
+
+    public synchronized int getActiveSites () {
+        return siteQueues.size();
+    }
+
+    @PreDestroy
+    public synchronized void shutdown () {
+        shutdown = true;
+        notifyAll();
+    }
+
+    private void enqueue (SiteQueue queue, Runnable task) {
+        if (queue.tasks.isEmpty() && queue.running == 0) {
+            queue.virtualTime = Math.max(queue.virtualTime, virtualTime);
+        }
+        queue.tasks.add(task);
+        queuedTasks++;
+        notifyAll();
+    }
+
+    private void work () {
+        while (true) {
+            SiteQueue queue;
+            Runnable task;
+            synchronized (this) {
+                queue = nextQueue();
+                if (shutdown) {
+                    return;
+                }
+                if (Thread.currentThread().isInterrupted()) {
+                    log.warn("Поток обхода " + Thread.currentThread().getName() + " прерван и завершается");
+                    return;
+                }
+                if (queue == null) {
+                    continue;
+                }
+                task = queue.tasks.poll();
+                queuedTasks--;
+                virtualTime = Math.max(virtualTime, queue.virtualTime);
+                queue.virtualTime += 1 / queue.weight;
+                queue.nextAllowedNanos = System.nanoTime() + queue.delayNanos;
+                queue.running++;
+            }
+            try {
+                task.run();
+            } catch (Throwable e) {
+                // поток обхода общий для всех сайтов и не должен завершаться из-за ошибки одной задачи
+                log.error("Ошибка обхода сайта " + queue.site.getUrl(), e);
+            } finally {
+                synchronized (this) {
+                    queue.running--;
+                    completeIfDone(queue);
+                    notifyAll();
+                }
+            }
+        }
+    }
+
+    /**
+     * Сайт с наименьшим виртуальным временем среди тех, у кого есть задачи, пауза после
+     * предыдущего запуска прошла и есть место под предел. Если такого нет, ждет ближайшей паузы,
+     * освобождения места или новой задачи.
+     */
+    private SiteQueue nextQueue () {
+        long now = System.nanoTime();
+        long waitNanos = Long.MAX_VALUE;
+        SiteQueue next = null;
+        for (SiteQueue queue : siteQueues.values()) {
+            if (queue.tasks.isEmpty()) {
+                continue;
+            }
+            if (queue.nextAllowedNanos - now > 0) {
+                waitNanos = Math.min(waitNanos, queue.nextAllowedNanos - now);
+            } else if (queue.running >= concurrencyController.allowedRequests(queue.site)) {
+                // предел сайта может вырасти или пауза Retry-After закончиться без новых событий
+                waitNanos = Math.min(waitNanos, TimeUnit.MILLISECONDS.toNanos(IDLE_WAIT_MS));
+            } else if (next == null || queue.virtualTime < next.virtualTime) {
+                next = queue;
+            }
+        }
+        if (next == null && !shutdown) {
+            try {
+                if (waitNanos == Long.MAX_VALUE) {
+                    wait();
+                } else {
+                    TimeUnit.NANOSECONDS.timedWait(this, Math.max(1, waitNanos));
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        return next;
+    }
+
+    private void completeIfDone (SiteQueue queue) {
+        if (queue.tasks.isEmpty() && queue.running == 0) {
+            siteQueues.remove(queue.site.getId(), queue);
+            queue.completion.complete(!queue.cancelled);
+        }
+    }
+
+    private static final class SiteQueue {
+        private final Site site;
+        private final double weight;
+        private final long delayNanos;
+        private final Deque<Runnable> tasks = new ArrayDeque<>();
+        private final CompletableFuture<Boolean> completion = new CompletableFuture<>();
+        private int running;
+        private double virtualTime;
+        private long nextAllowedNanos = System.nanoTime();
+        private boolean cancelled;
+
+        SiteQueue (Site site, double weight, long delayNanos) {
+            this.site = site;
+            this.weight = weight;
+            this.delayNanos = delayNanos;
+        }
+    }
+}
@@ -0,0 +1,173 @@
+package searchengine.utils;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.stereotype.Component;
+import searchengine.config.DuplicateSettings;
+import searchengine.model.entities.Page;
+import searchengine.model.entities.Site;
+import searchengine.model.repositories.PageRepository;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Поиск почти одинаковых страниц сайта (версии для печати, ссылки с метками, варианты пагинации)
+ * по SimHash лемм. Дубль сохраняется как ссылка на исходную страницу (canonical_page_id)
+ * и не индексируется.
+ * Отпечатки исходных страниц каждого сайта хранятся в памяти и загружаются из БД при первом обращении.
+ */
+@Log4j2
+@Component
+public class DuplicateDetector {
+    private static final int MAX_DISTANCE = SimHashIndex.BLOCKS - 1;
+
+    private final PageRepository pageRepository;
+    private final DuplicateSettings settings;
+    private final Map<Integer, SimHashIndex> siteToIndex = new ConcurrentHashMap<>();
+    private final Counter duplicatesCounter;
+
+    public DuplicateDetector (PageRepository pageRepository, DuplicateSettings settings, MeterRegistry meterRegistry) {
+        this.pageRepository = pageRepository;
+        this.settings = settings;
+        this.duplicatesCounter = meterRegistry.counter("searchengine.index.duplicates");
+    }
+
+    /**
+     * Вычисляет отпечатки страниц пакета. Дублям уже сохраненных страниц проставляется canonicalPageId.
+     *
+     * @return дубли других страниц этого же пакета: дубль -> исходная страница. Их canonicalPageId
+     * заполняется после сохранения исходных страниц.
+     */
+    public Map<Page, Page> markDuplicates (Map<Page, Map<String, Integer>> pageToLemmas) {
+        Map<Page, Page> batchDuplicates = new HashMap<>();
+        if (!settings.isEnabled()) {
+            return batchDuplicates;
+        }
+        int maxDistance = Math.min(settings.getMaxDistance(), MAX_DISTANCE);
+        Map<Integer, List<Page>> siteToBatchPages = new HashMap<>();
+        pageToLemmas.forEach((page, lemmas) -> {
+            if (lemmas.size() < settings.getMinLemmas()) {
+                return;
+            }
+            long fingerprint = SimHash.fingerprint(lemmas.keySet());
+            page.setSimhash(fingerprint);
+            Integer canonicalPageId = getIndex(page.getSite()).findNear(fingerprint, maxDistance);
+            if (canonicalPageId != null) {
+                page.setCanonicalPageId(canonicalPageId);
+                duplicatesCounter.increment();
+                log.debug("Страница " + page.getPath() + " - дубль страницы с id " + canonicalPageId);
+                return;
+            }
+            List<Page> batchPages = siteToBatchPages.computeIfAbsent(page.getSite().getId(), id -> new ArrayList<>());
+            batchPages.stream()
+                    .filter(batchPage -> SimHash.distance(batchPage.getSimhash(), fingerprint) <= maxDistance)
+                    .findFirst()
+                    .ifPresentOrElse(canonical -> {
+                        batchDuplicates.put(page, canonical);
+                        duplicatesCounter.increment();
+                        log.debug("Страница " + page.getPath() + " - дубль страницы " + canonical.getPath());
+                    }, () -> batchPages.add(page));
+        });
+        return batchDuplicates;
+    }
+
+    /**
+     * Добавляет сохраненные исходные страницы в индекс отпечатков после фиксации транзакции.
+     */
+    public void register (Collection<Page> pages) {
+        List<Page> fingerprinted = pages.stream()
+                .filter(page -> page.getSimhash() != null && page.getCanonicalPageId() == null)
+                .toList();
+        if (fingerprinted.isEmpty()) {
+            return;
+        }
+        Runnable add = () -> fingerprinted.forEach(page ->
+                getIndex(page.getSite()).add(page.getId(), page.getSimhash()));
+        TransactionHooks.afterCommit(add);
+    }
+
+    public void forget (Collection<Page> pages) {
+        pages.forEach(page -> {
+            SimHashIndex index = siteToIndex.get(page.getSite().getId());
+            if (index != null) {
+                index.remove(page.getId());
+            }
+        });
+    }
+
+    public void forgetSite (Site site) {
+        siteToIndex.remove(site.getId());
+    }
+
+    private SimHashIndex getIndex (Site site) {
+        return siteToIndex.computeIfAbsent(site.getId(), id -> {
+            SimHashIndex index = new SimHashIndex();
+            pageRepository.findFingerprintsBySite(site).forEach(row -> index.add((Integer) row[0], (Long) row[1]));
+            return index;
+        });
+    }
+
+    /**
+     * Отпечаток делится на 4 блока по 16 бит. Если отпечатки отличаются не больше чем в 3 битах,
+     * хотя бы один блок у них совпадает, поэтому кандидаты ищутся по точному совпадению блока.
+     */
+    private static final class SimHashIndex {
+        static final int BLOCKS = 4;
+        private static final int BLOCK_BITS = Long.SIZE / BLOCKS;
+
+        private final List<Map<Integer, List<Integer>>> blockTables = new ArrayList<>();
+        private final Map<Integer, Long> pageToFingerprint = new HashMap<>();
+
+        SimHashIndex () {
+            for (int i = 0; i < BLOCKS; i++) {
+                blockTables.add(new HashMap<>());
+            }
+        }
+
+        synchronized void add (int pageId, long fingerprint) {
+            remove(pageId);
+            pageToFingerprint.put(pageId, fingerprint);
+            for (int i = 0; i < BLOCKS; i++) {
+                blockTables.get(i).computeIfAbsent(block(fingerprint, i), key -> new ArrayList<>()).add(pageId);
+            }
+        }
+
+        synchronized void remove (int pageId) {
+            Long fingerprint = pageToFingerprint.remove(pageId);
+            if (fingerprint == null) {
+                return;
+            }
+            for (int i = 0; i < BLOCKS; i++) {
+                List<Integer> pageIds = blockTables.get(i).get(block(fingerprint, i));
+                pageIds.remove(Integer.valueOf(pageId));
+                if (pageIds.isEmpty()) {
+                    blockTables.get(i).remove(block(fingerprint, i));
+                }
+            }
+        }
+
+        /**
+         * @return id ближайшей страницы не дальше maxDistance или null
+         */
+        synchronized Integer findNear (long fingerprint, int maxDistance) {
+            Integer nearest = null;
+            int nearestDistance = maxDistance + 1;
+            for (int i = 0; i < BLOCKS; i++) {
+                for (Integer pageId : blockTables.get(i).getOrDefault(block(fingerprint, i), List.of())) {
+                    int distance = SimHash.distance(pageToFingerprint.get(pageId), fingerprint);
+                    if (distance < nearestDistance || nearest != null && distance == nearestDistance && pageId < nearest) {
+                        nearest = pageId;
+                        nearestDistance = distance;
+                    }
+                }
+            }
+            return nearest;
+        }
+
+        private static int block (long fingerprint, int block) {
+            return (int) ((fingerprint >>> (block * BLOCK_BITS)) & ((1L << BLOCK_BITS) - 1));
+        }
+    }
+}
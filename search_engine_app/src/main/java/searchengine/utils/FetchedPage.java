@@ -0,0 +1,6 @@
+package searchengine.utils;
+
+import java.util.Map;
+
+public record FetchedPage (String url, int statusCode, Map<String, String> headers, String body) {
+}
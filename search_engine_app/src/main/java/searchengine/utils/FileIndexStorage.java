@@ -0,0 +1,508 @@
+package searchengine.utils;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.log4j.Log4j2;
+import searchengine.config.PostingSettings;
+import searchengine.model.entities.Lemma;
+import searchengine.model.entities.Page;
+import searchengine.model.entities.Site;
+import searchengine.model.repositories.LemmaRepository;
+import searchengine.model.repositories.PageRepository;
+import searchengine.model.repositories.SiteRepository;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Встроенное хранилище индекса в каталоге posting-settings.file-path для работы одним процессом
+ * (posting-settings.storage: FILE). Все записи только дописываются в конец файлов, без обращений к БД:
+ * <ul>
+ * <li>lemmas.log - журнал изменений лемм, словарь лемм целиком держится в памяти
+ * и восстанавливается из журнала при запуске;</li>
+ * <li>contents.log - HTML-код страниц, в памяти хранится только смещение записи каждой страницы;</li>
+ * <li>segments - списки страниц лемм в сегментах {@link SegmentPostingStore}.</li>
+ * </ul>
+ * Журналы сжимаются при запуске, если устаревшие записи занимают больше половины файла.
+ * Внутри транзакции БД записи в журналы и сегменты откладываются до ее фиксации, поэтому страницы откаченной
+ * транзакции в них не попадают. Словарь лемм в памяти меняется сразу: ид новых лемм нужны для списков страниц.
+ */
+@Log4j2
+public class FileIndexStorage implements IndexStorage, Closeable {
+    private static final String LEMMAS_FILE = "lemmas.log";
+    private static final String CONTENTS_FILE = "contents.log";
+    private static final String SEGMENTS_DIRECTORY = "segments";
+    private static final int MIN_COMPACTION_RECORDS = 10_000;
+    private static final long MIN_COMPACTION_BYTES = 16L * 1024 * 1024;
+    /**
+     * [тип][id леммы:int][id сайта:int][частота:int][лемма в UTF-8]
+     */
+    private static final byte LEMMA_PUT = 1;
+    /**
+     * [тип][id леммы:int][частота:int]
+     */
+    private static final byte LEMMA_FREQUENCY = 2;
+    /**
+     * [тип][id леммы:int]
+     */
+    private static final byte LEMMA_DELETE = 3;
+    /**
+     * [тип][id сайта:int]
+     */
+    private static final byte SITE_DELETE = 4;
+    /**
+     * Запись страницы: [id страницы:int][признак:byte][HTML-код в UTF-8], без кода при удалении
+     */
+    private static final byte CONTENT_PRESENT = 1;
+    private static final byte CONTENT_DELETED = 0;
+
+    private final PageRepository pageRepository;
+    private final TextParser textParser;
+    private final SegmentPostingStore postings;
+    private final AppendLog lemmaLog;
+    private final AppendLog contentLog;
+    private final Map<Integer, Site> sites = new ConcurrentHashMap<>();
+    private final Map<Integer, Map<String, Lemma>> siteToLemmas = new ConcurrentHashMap<>();
+    private final Map<Integer, Lemma> idToLemma = new ConcurrentHashMap<>();
+    /**
+     * Число страниц каждой леммы по ид. Ведется и при отложенном пересчете частот, когда частота
+     * новой леммы равна нулю. Меняется под блокировкой журнала лемм.
+     */
+    private final Map<Integer, Integer> lemmaPageCounts = new HashMap<>();
+    private final AtomicInteger nextLemmaId = new AtomicInteger(1);
+    private final Map<Integer, Long> pageToOffset = new ConcurrentHashMap<>();
+
+    public FileIndexStorage (PostingSettings settings, SiteRepository siteRepository, PageRepository pageRepository,
+                             LemmaRepository lemmaRepository, TextParser textParser, MeterRegistry meterRegistry)
+            throws IOException {
+        this.pageRepository = pageRepository;
+        this.textParser = textParser;
+        Path directory = Path.of(settings.getFilePath());
+        Files.createDirectories(directory);
+        siteRepository.findAll().forEach(site -> sites.put(site.getId(), site));
+
+        long start = System.currentTimeMillis();
+        this.lemmaLog = openLemmaLog(directory.resolve(LEMMAS_FILE));
+        this.contentLog = openContentLog(directory.resolve(CONTENTS_FILE));
+        this.postings = new SegmentPostingStore(directory.resolve(SEGMENTS_DIRECTORY), settings, lemmaRepository,
+                pageRepository, meterRegistry);
+        log.info("Открыто файловое хранилище индекса " + directory.toAbsolutePath() + " за "
+                + (System.currentTimeMillis() - start) + " мс: лемм " + idToLemma.size() + ", страниц " + pageToOffset.size());
+    }
+
+    @Override
+    public Map<String, Lemma> upsertLemmas (Site site, Map<String, Integer> lemmaToPageCount, boolean deferFrequencies) {
+        sites.put(site.getId(), site);
+        Map<String, Lemma> siteLemmas = siteToLemmas.computeIfAbsent(site.getId(), id -> new ConcurrentHashMap<>());
+        Map<String, Lemma> lemmaEntities = new HashMap<>();
+        List<byte[]> records = new ArrayList<>();
+        synchronized (lemmaLog) {
+            lemmaToPageCount.forEach((lemma, count) -> {
+                Lemma lemmaEntity = siteLemmas.get(lemma);
+                if (lemmaEntity == null) {
+                    lemmaEntity = new Lemma();
+                    lemmaEntity.setId(nextLemmaId.getAndIncrement());
+                    lemmaEntity.setSite(site);
+                    lemmaEntity.setLemma(lemma);
+                    lemmaEntity.setFrequency(deferFrequencies ? 0 : count);
+                    siteLemmas.put(lemma, lemmaEntity);
+                    idToLemma.put(lemmaEntity.getId(), lemmaEntity);
+                    records.add(putRecord(lemmaEntity));
+                } else if (!deferFrequencies) {
+                    lemmaEntity.setFrequency(lemmaEntity.getFrequency() + count);
+                    records.add(frequencyRecord(lemmaEntity));
+                }
+                lemmaPageCounts.merge(lemmaEntity.getId(), count, Integer::sum);
+                lemmaEntities.put(lemma, lemmaEntity);
+            });
+        }
+        TransactionHooks.afterCommit(() -> appendLemmas(records));
+        return lemmaEntities;
+    }
+
+    @Override
+    public void appendPostings (Map<Lemma, PostingList> lemmaToPostings) {
+        postings.append(lemmaToPostings);
+    }
+
+    @Override
+    public Map<Lemma, Integer> removePostings (Collection<Page> pages) {
+        Map<Lemma, Set<Integer>> lemmaToPageIds = new HashMap<>();
+        Map<Integer, String> contents = findPageContents(pages.stream().map(Page::getId).toList());
+        IndexStorage.parsePageLemmas(pages, contents, textParser).forEach((siteId, lemmaPages) -> {
+            Map<String, Lemma> siteLemmas = siteToLemmas.getOrDefault(siteId, Map.of());
+            lemmaPages.forEach((lemma, pageIds) -> {
+                Lemma lemmaEntity = siteLemmas.get(lemma);
+                if (lemmaEntity != null) {
+                    lemmaToPageIds.put(lemmaEntity, pageIds);
+                }
+            });
+        });
+
+        Map<Lemma, Integer> lemmaToRemoved = new HashMap<>();
+        List<byte[]> records = new ArrayList<>();
+        synchronized (lemmaLog) {
+            lemmaToPageIds.forEach((lemma, pageIds) -> {
+                lemmaToRemoved.put(lemma, pageIds.size());
+                int remaining = countRemainingPages(lemma, pageIds);
+                if (remaining == 0) {
+                    Map<String, Lemma> siteLemmas = siteToLemmas.get(lemma.getSite().getId());
+                    if (siteLemmas != null) {
+                        siteLemmas.remove(lemma.getLemma());
+                    }
+                    idToLemma.remove(lemma.getId());
+                    lemmaPageCounts.remove(lemma.getId());
+                    records.add(ByteBuffer.allocate(1 + Integer.BYTES).put(LEMMA_DELETE).putInt(lemma.getId()).array());
+                    return;
+                }
+                lemmaPageCounts.put(lemma.getId(), remaining);
+                // при отложенном пересчете частота нулевая до пересчета в конце обхода
+                if (lemma.getFrequency() > 0) {
+                    lemma.setFrequency(Math.max(0, lemma.getFrequency() - pageIds.size()));
+                    records.add(frequencyRecord(lemma));
+                }
+            });
+        }
+        postings.remove(lemmaToPageIds);
+        TransactionHooks.afterCommit(() -> appendLemmas(records));
+        return lemmaToRemoved;
+    }
+
+    /**
+     * Счетчик страниц учитывает страницы незафиксированных транзакций, но после перезапуска восстанавливается
+     * из частоты, которая при отложенном пересчете может быть нулевой. Поэтому лемма считается неиспользуемой,
+     * только если страниц не остается и по счетчику, и в сохраненных списках страниц.
+     */
+    private int countRemainingPages (Lemma lemma, Set<Integer> removedPageIds) {
+        int remaining = lemmaPageCounts.getOrDefault(lemma.getId(), 0) - removedPageIds.size();
+        if (remaining > 0) {
+            return remaining;
+        }
+        return postings.read(lemma).without(removedPageIds).size();
+    }
+
+    @Override
+    public PostingList readPostings (Lemma lemma) {
+        return postings.read(lemma);
+    }
+
+    @Override
+    public PostingList intersect (Lemma lemma, PostingList candidates) {
+        return postings.intersect(lemma, candidates);
+    }
+
+    /**
+     * Возвращаются копии: частоты лемм в памяти меняются при индексации
+     */
+    @Override
+    public Optional<Lemma> findLemma (String lemma, Site site) {
+        return Optional.ofNullable(siteToLemmas.getOrDefault(site.getId(), Map.of()).get(lemma)).map(FileIndexStorage::copy);
+    }
+
+    @Override
+    public List<Lemma> findLemmas (String lemma) {
+        List<Lemma> lemmas = new ArrayList<>();
+        siteToLemmas.values().forEach(siteLemmas -> {
+            Lemma lemmaEntity = siteLemmas.get(lemma);
+            if (lemmaEntity != null) {
+                lemmas.add(copy(lemmaEntity));
+            }
+        });
+        return lemmas;
+    }
+
+    @Override
+    public long countLemmas (Site site) {
+        return siteToLemmas.getOrDefault(site.getId(), Map.of()).size();
+    }
+
+    @Override
+    public Map<String, Integer> findLemmaFrequencies (int siteId) {
+        Map<String, Integer> lemmaFrequencies = new HashMap<>();
+        siteToLemmas.getOrDefault(siteId, Map.of()).forEach((lemma, lemmaEntity) -> lemmaFrequencies.put(lemma, lemmaEntity.getFrequency()));
+        return lemmaFrequencies;
+    }
+
+    @Override
+    public LemmaWatermark findLemmaWatermark () {
+        return new LemmaWatermark(nextLemmaId.get() - 1, siteToLemmas.values().stream().mapToLong(Map::size).sum());
+    }
+
+    @Override
+    public Map<Integer, LemmaCounters> findLemmaCounters () {
+        Map<Integer, LemmaCounters> counters = new HashMap<>();
+        siteToLemmas.forEach((siteId, siteLemmas) -> {
+            if (!siteLemmas.isEmpty()) {
+                long frequencySum = siteLemmas.values().stream().mapToLong(Lemma::getFrequency).sum();
+                counters.put(siteId, new LemmaCounters(siteLemmas.size(), frequencySum));
+            }
+        });
+        return counters;
+    }
+
+    @Override
+    public int recalculateFrequencies (Site site) {
+        int updated = 0;
+        synchronized (lemmaLog) {
+            for (Lemma lemma : siteToLemmas.getOrDefault(site.getId(), Map.of()).values()) {
+                int frequency = postings.read(lemma).size();
+                lemmaPageCounts.put(lemma.getId(), frequency);
+                if (lemma.getFrequency() != frequency) {
+                    lemma.setFrequency(frequency);
+                    appendLemma(frequencyRecord(lemma));
+                    updated++;
+                }
+            }
+            flush(lemmaLog);
+        }
+        return updated;
+    }
+
+    @Override
+    public void savePageContents (Collection<Page> pages) {
+        Map<Integer, String> contents = new HashMap<>();
+        pages.stream().filter(page -> page.getContent() != null)
+                .forEach(page -> contents.put(page.getId(), page.getContent()));
+        TransactionHooks.afterCommit(() -> writePageContents(contents));
+    }
+
+    private void writePageContents (Map<Integer, String> contents) {
+        Map<Integer, Long> offsets = new HashMap<>();
+        synchronized (contentLog) {
+            try {
+                for (Map.Entry<Integer, String> entry : contents.entrySet()) {
+                    offsets.put(entry.getKey(), contentLog.append(contentRecord(entry.getKey(), entry.getValue())));
+                }
+                contentLog.flush();
+            } catch (IOException e) {
+                throw new UncheckedIOException("Не удалось записать содержимое страниц в " + contentLog.getPath(), e);
+            }
+        }
+        pageToOffset.putAll(offsets);
+    }
+
+    @Override
+    public Map<Integer, String> findPageContents (Collection<Integer> pageIds) {
+        Map<Integer, String> contents = new HashMap<>();
+        try {
+            for (Integer pageId : pageIds) {
+                Long offset = pageToOffset.get(pageId);
+                if (offset != null) {
+                    byte[] record = contentLog.read(offset);
+                    contents.put(pageId, new String(record, Integer.BYTES + 1, record.length - Integer.BYTES - 1,
+                            StandardCharsets.UTF_8));
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Не удалось прочитать содержимое страниц из " + contentLog.getPath(), e);
+        }
+        return contents;
+    }
+
+    @Override
+    public void removePageContents (Collection<Integer> pageIds) {
+        List<Integer> removedIds = List.copyOf(pageIds);
+        TransactionHooks.afterCommit(() -> writePageRemovals(removedIds));
+    }
+
+    private void writePageRemovals (Collection<Integer> pageIds) {
+        synchronized (contentLog) {
+            try {
+                for (Integer pageId : pageIds) {
+                    if (pageToOffset.remove(pageId) != null) {
+                        contentLog.append(ByteBuffer.allocate(Integer.BYTES + 1).putInt(pageId).put(CONTENT_DELETED).array());
+                    }
+                }
+                contentLog.flush();
+            } catch (IOException e) {
+                throw new UncheckedIOException("Не удалось записать удаление страниц в " + contentLog.getPath(), e);
+            }
+        }
+    }
+
+    @Override
+    public void removeSite (Site site) {
+        postings.removeSite(site);
+        removePageContents(pageRepository.findIdsBySite(site));
+        synchronized (lemmaLog) {
+            Map<String, Lemma> siteLemmas = siteToLemmas.remove(site.getId());
+            if (siteLemmas != null) {
+                siteLemmas.values().forEach(lemma -> {
+                    idToLemma.remove(lemma.getId());
+                    lemmaPageCounts.remove(lemma.getId());
+                });
+            }
+            appendLemma(ByteBuffer.allocate(1 + Integer.BYTES).put(SITE_DELETE).putInt(site.getId()).array());
+            flush(lemmaLog);
+        }
+        sites.remove(site.getId());
+    }
+
+    private AppendLog openLemmaLog (Path path) throws IOException {
+        long[] records = new long[1];
+        AppendLog.open(path, (offset, record) -> {
+            records[0]++;
+            replayLemma(record);
+        }).close();
+        if (records[0] > MIN_COMPACTION_RECORDS && records[0] > 2L * idToLemma.size()) {
+            AppendLog.rewrite(path, idToLemma.values().stream().map(FileIndexStorage::putRecord).iterator());
+            log.info("Журнал лемм сжат: записей " + records[0] + ", лемм " + idToLemma.size());
+        }
+        return AppendLog.open(path, (offset, record) -> {
+        });
+    }
+
+    private void replayLemma (ByteBuffer record) {
+        byte type = record.get();
+        int id = record.getInt();
+        switch (type) {
+            case LEMMA_PUT -> {
+                Site site = sites.get(record.getInt());
+                int frequency = record.getInt();
+                if (site == null) {
+                    return;
+                }
+                Lemma lemma = new Lemma();
+                lemma.setId(id);
+                lemma.setSite(site);
+                lemma.setFrequency(frequency);
+                lemma.setLemma(StandardCharsets.UTF_8.decode(record).toString());
+                siteToLemmas.computeIfAbsent(site.getId(), siteId -> new ConcurrentHashMap<>()).put(lemma.getLemma(), lemma);
+                idToLemma.put(id, lemma);
+                lemmaPageCounts.put(id, frequency);
+                nextLemmaId.accumulateAndGet(id + 1, Math::max);
+            }
+            case LEMMA_FREQUENCY -> {
+                Lemma lemma = idToLemma.get(id);
+                if (lemma != null) {
+                    lemma.setFrequency(record.getInt());
+                    lemmaPageCounts.put(id, lemma.getFrequency());
+                }
+            }
+            case LEMMA_DELETE -> {
+                Lemma lemma = idToLemma.remove(id);
+                lemmaPageCounts.remove(id);
+                if (lemma != null) {
+                    siteToLemmas.get(lemma.getSite().getId()).remove(lemma.getLemma());
+                }
+            }
+            case SITE_DELETE -> {
+                Map<String, Lemma> siteLemmas = siteToLemmas.remove(id);
+                if (siteLemmas != null) {
+                    siteLemmas.values().forEach(lemma -> {
+                        idToLemma.remove(lemma.getId());
+                        lemmaPageCounts.remove(lemma.getId());
+                    });
+                }
+            }
+            default -> throw new IllegalStateException("Неизвестный тип записи журнала лемм: " + type);
+        }
+    }
+
+    /**
+     * Смещения страниц восстанавливаются при каждом открытии, поэтому после сжатия журнал читается заново
+     */
+    private AppendLog openContentLog (Path path) throws IOException {
+        Map<Integer, Integer> pageToBytes = new HashMap<>();
+        AppendLog contents = AppendLog.open(path, (offset, record) -> {
+            int pageId = record.getInt();
+            if (record.get() == CONTENT_PRESENT) {
+                pageToOffset.put(pageId, offset);
+                pageToBytes.put(pageId, Integer.BYTES + record.capacity());
+            } else {
+                pageToOffset.remove(pageId);
+                pageToBytes.remove(pageId);
+            }
+        });
+        long liveBytes = pageToBytes.values().stream().mapToLong(Integer::longValue).sum();
+        long size = contents.size();
+        if (size < MIN_COMPACTION_BYTES || size < 2 * liveBytes) {
+            return contents;
+        }
+        try (contents) {
+            AppendLog.rewrite(path, pageToOffset.values().stream().map(offset -> readRecord(contents, offset)).iterator());
+        }
+        pageToOffset.clear();
+        AppendLog compacted = AppendLog.open(path, (offset, record) -> pageToOffset.put(record.getInt(), offset));
+        log.info("Журнал содержимого страниц сжат с " + size + " до " + compacted.size() + " байт");
+        return compacted;
+    }
+
+    private static byte[] readRecord (AppendLog appendLog, long offset) {
+        try {
+            return appendLog.read(offset);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Не удалось прочитать " + appendLog.getPath(), e);
+        }
+    }
+
+    private void appendLemmas (List<byte[]> records) {
+        if (records.isEmpty()) {
+            return;
+        }
+        synchronized (lemmaLog) {
+            records.forEach(this::appendLemma);
+            flush(lemmaLog);
+        }
+    }
+
+    private void appendLemma (byte[] record) {
+        try {
+            lemmaLog.append(record);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Не удалось записать леммы в " + lemmaLog.getPath(), e);
+        }
+    }
+
+    private static void flush (AppendLog appendLog) {
+        try {
+            appendLog.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Не удалось записать " + appendLog.getPath(), e);
+        }
+    }
+
+    private static byte[] putRecord (Lemma lemma) {
+        byte[] text = lemma.getLemma().getBytes(StandardCharsets.UTF_8);
+        return ByteBuffer.allocate(1 + 3 * Integer.BYTES + text.length)
+                .put(LEMMA_PUT)
+                .putInt(lemma.getId())
+                .putInt(lemma.getSite().getId())
+                .putInt(lemma.getFrequency())
+                .put(text)
+                .array();
+    }
+
+    private static byte[] frequencyRecord (Lemma lemma) {
+        return ByteBuffer.allocate(1 + 2 * Integer.BYTES).put(LEMMA_FREQUENCY).putInt(lemma.getId())
+                .putInt(lemma.getFrequency()).array();
+    }
+
+    private static byte[] contentRecord (int pageId, String content) {
+        byte[] html = content.getBytes(StandardCharsets.UTF_8);
+        return ByteBuffer.allocate(Integer.BYTES + 1 + html.length).putInt(pageId).put(CONTENT_PRESENT).put(html).array();
+    }
+
+    private static Lemma copy (Lemma lemma) {
+        Lemma copy = new Lemma();
+        copy.setId(lemma.getId());
+        copy.setSite(lemma.getSite());
+        copy.setLemma(lemma.getLemma());
+        copy.setFrequency(lemma.getFrequency());
+        return copy;
+    }
+
+    @Override
+    public void close () throws IOException {
+        postings.close();
+        lemmaLog.close();
+        contentLog.close();
+    }
+}
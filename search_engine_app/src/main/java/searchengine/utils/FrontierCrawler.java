@@ -0,0 +1,261 @@
+package searchengine.utils;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.stereotype.Component;
+import searchengine.config.FrontierSettings;
+import searchengine.config.PostingSettings;
+import searchengine.model.IndexingStatus;
+import searchengine.model.entities.FrontierUrl;
+import searchengine.model.entities.Page;
+import searchengine.model.entities.Site;
+import searchengine.model.repositories.FrontierRepository;
+import searchengine.model.repositories.PageRepository;
+import searchengine.model.repositories.SiteRepository;
+
+import javax.annotation.PreDestroy;
+import java.lang.management.ManagementFactory;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Обход сайтов несколькими экземплярами приложения через общую очередь ссылок в таблице frontier
+ * (frontier-settings.enabled). Узел, на котором запущена индексация, очищает сайт, кладет в очередь
+ * стартовые ссылки и ждет, пока все ссылки сайта будут обработаны. Обработчики всех узлов,
+ * включая его самого, берут ссылки в аренду пачками, загружают страницы, добавляют в очередь
+ * найденные ссылки и завершают пачку только после записи ее страниц в БД.
+ * Если узел упал, аренда его пачки истекает и пачку забирает другой узел.
+ */
+@Log4j2
+@Component
+public class FrontierCrawler {
+    private final FrontierSettings settings;
+    private final FrontierRepository frontierRepository;
+    private final SiteRepository siteRepository;
+    private final PageRepository pageRepository;
+    private final PageIndexer pageIndexer;
+    private final IndexingPipeline pipeline;
+    private final RobotsCache robotsCache;
+    private final CrawlConcurrencyController concurrencyController;
+    private final String nodeId;
+    private final ConcurrentHashMap<Integer, SiteCrawl> siteCrawls = new ConcurrentHashMap<>();
+    private final Counter leasedCounter;
+    private final ExecutorService workers;
+
+    public FrontierCrawler (FrontierSettings settings, FrontierRepository frontierRepository,
+                            SiteRepository siteRepository, PageRepository pageRepository,
+                            PageIndexer pageIndexer, IndexingPipeline pipeline, RobotsCache robotsCache,
+                            CrawlConcurrencyController concurrencyController, PostingSettings postingSettings,
+                            MeterRegistry meterRegistry) {
+        this.settings = settings;
+        this.frontierRepository = frontierRepository;
+        this.siteRepository = siteRepository;
+        this.pageRepository = pageRepository;
+        this.pageIndexer = pageIndexer;
+        this.pipeline = pipeline;
+        this.robotsCache = robotsCache;
+        this.concurrencyController = concurrencyController;
+        this.nodeId = settings.getNodeId().isBlank() ? ManagementFactory.getRuntimeMXBean().getName() : settings.getNodeId();
+        this.leasedCounter = meterRegistry.counter("searchengine.frontier.leased", "node", nodeId);
+        if (!settings.isEnabled()) {
+            workers = null;
+            return;
+        }
+        if (postingSettings.getStorage() == PostingSettings.Storage.SEGMENTS) {
+            log.warn("Сегменты индекса хранятся локально на каждом узле, для общего обхода нужно хранилище ROWS или BLOCKS");
+        }
+        workers = Executors.newFixedThreadPool(settings.getWorkers());
+        for (int i = 0; i < settings.getWorkers(); i++) {
+            workers.execute(this::crawlLoop);
+        }
+        log.info("Узел " + nodeId + " подключен к общей очереди обхода, обработчиков: " + settings.getWorkers());
+    }
+
+    public boolean isEnabled () {
+        return settings.isEnabled();
+    }
+
+    /**
+     * Кладет в очередь стартовые ссылки сайта
+     */
+    public void seed (Site site, List<String> startLinks, Map<String, LocalDateTime> sitemapLastModified) {
+        int claimed = 0;
+        for (String link : startLinks) {
+            claimed += frontierRepository.claim(site.getId(), link, Hashing.hash64(link), sitemapLastModified.get(link));
+        }
+        log.info("В общую очередь обхода добавлено стартовых ссылок: " + claimed + " для сайта " + site.getUrl());
+    }
+
+    /**
+     * Раз в poll-interval-ms проверяет в executor, обработаны ли узлами все ссылки сайта.
+     * Поток на время ожидания не занимается.
+     *
+     * @return завершается значением false, если индексация сайта была остановлена
+     */
+    public CompletableFuture<Boolean> awaitSite (Site site, Executor executor) {
+        CompletableFuture<Boolean> result = new CompletableFuture<>();
+        executor.execute(() -> pollSite(site, result, executor));
+        return result;
+    }
+
+    private void pollSite (Site site, CompletableFuture<Boolean> result, Executor executor) {
+        try {
+            Optional<IndexingStatus> status = siteRepository.findById(site.getId()).map(Site::getIndexingStatus);
+            if (status.isEmpty() || status.get() != IndexingStatus.INDEXING) {
+                result.complete(false);
+            } else if (frontierRepository.countUnfinished(site.getId()) == 0) {
+                result.complete(true);
+            } else {
+                CompletableFuture.delayedExecutor(settings.getPollIntervalMs(), TimeUnit.MILLISECONDS, executor)
+                        .execute(() -> pollSite(site, result, executor));
+            }
+        } catch (RuntimeException e) {
+            result.completeExceptionally(e);
+        }
+    }
+
+    private void crawlLoop () {
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                Lease lease = leaseNext();
+                if (lease == null) {
+                    Thread.sleep(settings.getPollIntervalMs());
+                    continue;
+                }
+                processLease(lease);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (RuntimeException e) {
+                log.error("Ошибка обработки пачки общей очереди обхода: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Сайты перебираются в случайном порядке, чтобы узлы не брали ссылки одного сайта по очереди
+     */
+    private Lease leaseNext () {
+        List<Integer> siteIds = new ArrayList<>(frontierRepository.findLeasableSiteIds());
+        forgetFinishedSites(siteIds);
+        Collections.shuffle(siteIds);
+        for (Integer siteId : siteIds) {
+            String token = UUID.randomUUID().toString();
+            int leased = frontierRepository.lease(siteId, nodeId, token,
+                    settings.getLeaseTtlSeconds(), settings.getLeaseBatchSize());
+            if (leased > 0) {
+                leasedCounter.increment(leased);
+                return new Lease(siteId, token, frontierRepository.findByLeaseToken(token));
+            }
+        }
+        return null;
+    }
+
+    private void processLease (Lease lease) throws InterruptedException {
+        Optional<Site> siteOptional = siteRepository.findById(lease.siteId());
+        if (siteOptional.isEmpty() || siteOptional.get().getIndexingStatus() != IndexingStatus.INDEXING) {
+            return;
+        }
+        Site site = siteOptional.get();
+        SiteCrawl siteCrawl = siteCrawls.computeIfAbsent(site.getId(), id -> startSiteCrawl(site));
+
+        for (FrontierUrl frontierUrl : lease.urls()) {
+            crawlUrl(frontierUrl, site, siteCrawl);
+            frontierRepository.renewLease(lease.token(), settings.getLeaseTtlSeconds());
+        }
+        pipeline.awaitSite(site);
+        // ошибка записи уже в last_error сайта, по нему узел-координатор выставит итоговый статус
+        pipeline.takeFailure(site);
+        frontierRepository.complete(lease.token());
+        siteRepository.touch(site.getId(), LocalDateTime.now());
+    }
+
+    private void crawlUrl (FrontierUrl frontierUrl, Site site, SiteCrawl siteCrawl) throws InterruptedException {
+        String link = frontierUrl.getUrl();
+        // страница уже записана узлом, аренда которого истекла, ее ссылки уже в очереди
+        if (pageRepository.findByPathAndSite(WebParserTask.pathOf(link), site).isPresent()) {
+            return;
+        }
+        awaitRequestSlot(siteCrawl);
+
+        PageFetchResult result = pageIndexer.getPageEntity(link, site);
+        if (result.status() == PageFetchResult.Status.SKIPPED) {
+            return;
+        }
+        Page page = result.page();
+        if (page == null) {
+            siteRepository.recordError(site.getId(), "Не удалось подключиться к странице: " + link, LocalDateTime.now());
+            log.error("Не удалось подключиться к странице: " + link);
+            return;
+        }
+        page.setLastModified(frontierUrl.getLastModified());
+        for (String childLink : WebParserTask.childLinks(page, link, site, siteCrawl.robotsRules())) {
+            if (siteCrawl.seenLinks().add(childLink)) {
+                frontierRepository.claim(site.getId(), childLink, Hashing.hash64(childLink), null);
+            }
+        }
+        pipeline.submit(page);
+    }
+
+    /**
+     * Обработчики узла занимают очередь запросов к сайту: каждый следующий запрос начинается не раньше,
+     * чем через паузу (с учетом Crawl-delay) после предыдущего, сколько бы обработчиков ни взяли ссылки сайта.
+     * Число одновременных запросов ограничивает {@link CrawlConcurrencyController} в {@link PageIndexer#getPageEntity}.
+     */
+    private void awaitRequestSlot (SiteCrawl siteCrawl) throws InterruptedException {
+        long delayNanos = TimeUnit.MILLISECONDS.toNanos(
+                WebParserTask.requestDelay(pageIndexer.getRequestDelay(), siteCrawl.robotsRules()));
+        if (delayNanos == 0) {
+            return;
+        }
+        long now = System.nanoTime();
+        long previous = siteCrawl.nextRequestNanos().getAndAccumulate(now,
+                (next, requestNanos) -> Math.max(next, requestNanos) + delayNanos);
+        long waitNanos = Math.max(previous, now) - now;
+        if (waitNanos > 0) {
+            TimeUnit.NANOSECONDS.sleep(waitNanos);
+        }
+    }
+
+    private SiteCrawl startSiteCrawl (Site site) {
+        RobotsRules robotsRules = robotsCache.getRules(site.getUrl());
+        concurrencyController.register(site, robotsRules.getCrawlDelayMs() > 0 ? 1 : Integer.MAX_VALUE);
+        return new SiteCrawl(site, robotsRules, ConcurrentHashMap.newKeySet(), new AtomicLong(System.nanoTime()));
+    }
+
+    /**
+     * Сайт забывается, когда его обход закончен или остановлен. Сайт без свободных ссылок
+     * может еще обрабатываться другими обработчиками, поэтому проверяется его статус.
+     */
+    private void forgetFinishedSites (List<Integer> leasableSiteIds) {
+        siteCrawls.entrySet().removeIf(entry -> {
+            if (leasableSiteIds.contains(entry.getKey()) || siteRepository.findById(entry.getKey())
+                    .filter(site -> site.getIndexingStatus() == IndexingStatus.INDEXING).isPresent()) {
+                return false;
+            }
+            concurrencyController.unregister(entry.getValue().site());
+            return true;
+        });
+    }
+
+    @PreDestroy
+    public void shutdown () {
+        if (workers != null) {
+            workers.shutdownNow();
+        }
+    }
+
+    private record Lease (int siteId, String token, List<FrontierUrl> urls) {
+    }
+
+    /**
+     * Состояние обхода сайта на этом узле. seenLinks избавляет от повторных попыток
+     * добавить в очередь ссылки, которые этот узел уже видел, nextRequestNanos - время, когда
+     * начнется следующий запрос к сайту.
+     */
+    private record SiteCrawl (Site site, RobotsRules robotsRules, Set<String> seenLinks, AtomicLong nextRequestNanos) {
+    }
+}
@@ -0,0 +1,29 @@
+package searchengine.utils;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 64-битный хеш строки: FNV-1a с перемешиванием из MurmurHash3,
+ * чтобы биты хеша коротких строк были независимы.
+ */
+public final class Hashing {
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private Hashing () {
+    }
+
+    public static long hash64 (String value) {
+        long hash = FNV_OFFSET;
+        for (byte b : value.getBytes(StandardCharsets.UTF_8)) {
+            hash ^= b & 0xff;
+            hash *= FNV_PRIME;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
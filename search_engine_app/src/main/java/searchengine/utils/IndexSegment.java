@@ -0,0 +1,256 @@
+package searchengine.utils;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.BitSet;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntFunction;
+
+/**
+ * Неизменяемый файл сегмента индекса, отображенный в память.
+ * Формат: заголовок [magic:int][число лемм:int][смещение id страниц:long][число страниц:int], словарь из записей
+ * [id леммы:int][смещение:long][длина:int], отсортированный по id леммы, затем списки страниц
+ * в формате {@link PostingList#encode()} и id всех страниц сегмента по возрастанию [id:int].
+ * Поиск леммы - двоичный поиск по словарю прямо в отображенном буфере.
+ * В сегментах первой версии нет id страниц, для них {@link #containsPage(int)} всегда true.
+ * <p>
+ * Отображение освобождается сразу при закрытии, а не сборщиком мусора, поэтому читать сегмент,
+ * который может быть закрыт другим потоком, можно только между {@link #acquire()} и {@link #release()}.
+ */
+public class IndexSegment implements Closeable {
+    private static final int MAGIC_V1 = 0x53454731;
+    private static final int MAGIC = 0x53454732;
+    private static final int HEADER_BYTES_V1 = 2 * Integer.BYTES;
+    private static final int HEADER_BYTES = 3 * Integer.BYTES + Long.BYTES;
+    private static final int ENTRY_BYTES = Integer.BYTES + Long.BYTES + Integer.BYTES;
+    private static final Method INVOKE_CLEANER;
+    private static final Object UNSAFE;
+
+    static {
+        Method invokeCleaner = null;
+        Object unsafe = null;
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Field field = unsafeClass.getDeclaredField("theUnsafe");
+            field.setAccessible(true);
+            unsafe = field.get(null);
+            invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            // отображения будут освобождаться сборщиком мусора
+        }
+        INVOKE_CLEANER = invokeCleaner;
+        UNSAFE = unsafe;
+    }
+
+    private final Path path;
+    private final long generation;
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+    private final int dictionaryOffset;
+    private final int termCount;
+    private final int pagesOffset;
+    private final int pageCount;
+    /**
+     * Ссылка владельца плюс число читателей, при нуле отображение освобождается
+     */
+    private final AtomicInteger references = new AtomicInteger(1);
+    private final AtomicBoolean closed = new AtomicBoolean();
+
+    private IndexSegment (Path path, long generation) throws IOException {
+        this.path = path;
+        this.generation = generation;
+        this.channel = FileChannel.open(path, StandardOpenOption.READ);
+        this.buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        int magic = buffer.getInt(0);
+        if (magic == MAGIC) {
+            this.dictionaryOffset = HEADER_BYTES;
+            this.pagesOffset = (int) buffer.getLong(2 * Integer.BYTES);
+            this.pageCount = buffer.getInt(2 * Integer.BYTES + Long.BYTES);
+        } else if (magic == MAGIC_V1) {
+            this.dictionaryOffset = HEADER_BYTES_V1;
+            this.pagesOffset = -1;
+            this.pageCount = -1;
+        } else {
+            channel.close();
+            unmap(buffer);
+            throw new IOException("Файл не является сегментом индекса: " + path);
+        }
+        this.termCount = buffer.getInt(Integer.BYTES);
+    }
+
+    public static IndexSegment open (Path path, long generation) throws IOException {
+        return new IndexSegment(path, generation);
+    }
+
+    /**
+     * Записывает сегмент во временный файл и переименовывает его, чтобы
+     * в каталоге никогда не было недописанного сегмента.
+     *
+     * @param lemmaIds id лемм по возрастанию
+     * @param postings список страниц для id леммы
+     */
+    public static IndexSegment write (Path path, long generation, int[] lemmaIds, IntFunction<PostingList> postings)
+            throws IOException {
+        Path temporary = path.resolveSibling(path.getFileName() + ".tmp");
+        try (FileChannel output = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            int dictionaryBytes = HEADER_BYTES + lemmaIds.length * ENTRY_BYTES;
+            ByteBuffer dictionary = ByteBuffer.allocate(dictionaryBytes);
+            dictionary.position(HEADER_BYTES);
+            BitSet pageIds = new BitSet();
+            long offset = dictionaryBytes;
+            output.position(offset);
+            for (int lemmaId : lemmaIds) {
+                PostingList lemmaPostings = postings.apply(lemmaId);
+                for (int i = 0; i < lemmaPostings.size(); i++) {
+                    pageIds.set(lemmaPostings.pageId(i));
+                }
+                ByteBuffer encoded = ByteBuffer.wrap(lemmaPostings.encode());
+                dictionary.putInt(lemmaId).putLong(offset).putInt(encoded.remaining());
+                offset += encoded.remaining();
+                while (encoded.hasRemaining()) {
+                    output.write(encoded);
+                }
+            }
+            long pagesOffset = offset;
+            ByteBuffer pages = ByteBuffer.allocate(pageIds.cardinality() * Integer.BYTES);
+            pageIds.stream().forEach(pages::putInt);
+            pages.flip();
+            offset += pages.remaining();
+            while (pages.hasRemaining()) {
+                output.write(pages);
+            }
+            if (offset > Integer.MAX_VALUE) {
+                throw new IOException("Сегмент индекса больше 2 ГБ: " + path);
+            }
+            dictionary.putInt(0, MAGIC)
+                    .putInt(Integer.BYTES, lemmaIds.length)
+                    .putLong(2 * Integer.BYTES, pagesOffset)
+                    .putInt(2 * Integer.BYTES + Long.BYTES, pageIds.cardinality());
+            dictionary.flip();
+            long position = 0;
+            while (dictionary.hasRemaining()) {
+                position += output.write(dictionary, position);
+            }
+            output.force(true);
+        }
+        Files.move(temporary, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        return open(path, generation);
+    }
+
+    public PostingList read (int lemmaId) {
+        int low = 0;
+        int high = termCount - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int entry = dictionaryOffset + middle * ENTRY_BYTES;
+            int current = buffer.getInt(entry);
+            if (current < lemmaId) {
+                low = middle + 1;
+            } else if (current > lemmaId) {
+                high = middle - 1;
+            } else {
+                long offset = buffer.getLong(entry + Integer.BYTES);
+                int length = buffer.getInt(entry + Integer.BYTES + Long.BYTES);
+                return PostingList.decode(buffer.slice((int) offset, length));
+            }
+        }
+        return PostingList.empty();
+    }
+
+    /**
+     * @return false, если страницы точно нет ни в одном списке сегмента
+     */
+    public boolean containsPage (int pageId) {
+        if (pageCount < 0) {
+            return true;
+        }
+        int low = 0;
+        int high = pageCount - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int current = buffer.getInt(pagesOffset + middle * Integer.BYTES);
+            if (current < pageId) {
+                low = middle + 1;
+            } else if (current > pageId) {
+                high = middle - 1;
+            } else {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return false, если сегмент уже закрыт и читать его нельзя
+     */
+    public boolean acquire () {
+        int count;
+        do {
+            count = references.get();
+            if (count == 0 || closed.get()) {
+                return false;
+            }
+        } while (!references.compareAndSet(count, count + 1));
+        return true;
+    }
+
+    public void release () {
+        if (references.decrementAndGet() == 0) {
+            unmap(buffer);
+        }
+    }
+
+    public int termCount () {
+        return termCount;
+    }
+
+    public int lemmaId (int term) {
+        return buffer.getInt(dictionaryOffset + term * ENTRY_BYTES);
+    }
+
+    public long size () {
+        return buffer.capacity();
+    }
+
+    public long getGeneration () {
+        return generation;
+    }
+
+    public Path getPath () {
+        return path;
+    }
+
+    /**
+     * Файл закрывается сразу, отображение освобождается, когда закончат чтение все,
+     * кто успел вызвать {@link #acquire()}
+     */
+    @Override
+    public void close () throws IOException {
+        if (closed.compareAndSet(false, true)) {
+            channel.close();
+            release();
+        }
+    }
+
+    private static void unmap (MappedByteBuffer buffer) {
+        if (INVOKE_CLEANER == null) {
+            return;
+        }
+        try {
+            INVOKE_CLEANER.invoke(UNSAFE, buffer);
+        } catch (ReflectiveOperationException e) {
+            // отображение освободит сборщик мусора
+        }
+    }
+}
@@ -0,0 +1,157 @@
+package searchengine.utils;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Снимок словаря лемм и счетчиков сайтов для быстрого запуска.
+ * Формат: заголовок [magic:int][версия:int][время создания:long][наибольший id страницы:long]
+ * [число страниц:long][наибольший id леммы:long][число лемм:long][число сайтов:int],
+ * для каждого сайта [id:int][число страниц:long][наибольший id страницы:long][число лемм:long]
+ * [сумма частот:long][число записей:int] и записи [длина:int][лемма в UTF-8][частота:int],
+ * в конце [CRC32 всего предыдущего:long]. Файл читается целиком через отображение в память.
+ */
+public class IndexSnapshot {
+    private static final int MAGIC = 0x534E4150;
+    public static final int VERSION = 2;
+    private static final int HEADER_BYTES = 2 * Integer.BYTES + 5 * Long.BYTES + Integer.BYTES;
+
+    private final long createdAt;
+    private final Watermark watermark;
+    private final Map<Integer, SiteSnapshot> sites;
+
+    public IndexSnapshot (long createdAt, Watermark watermark, Map<Integer, SiteSnapshot> sites) {
+        this.createdAt = createdAt;
+        this.watermark = watermark;
+        this.sites = sites;
+    }
+
+    public long getCreatedAt () {
+        return createdAt;
+    }
+
+    public Watermark getWatermark () {
+        return watermark;
+    }
+
+    public Map<Integer, SiteSnapshot> getSites () {
+        return sites;
+    }
+
+    /**
+     * @return пустой результат, если снимок записан другой версией приложения
+     * @throws IOException если файл поврежден или недописан
+     */
+    public static Optional<IndexSnapshot> read (Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < HEADER_BYTES + Long.BYTES || size > Integer.MAX_VALUE) {
+                throw new IOException("Неверный размер снимка индекса: " + size);
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            if (buffer.getInt() != MAGIC) {
+                throw new IOException("Файл не является снимком индекса: " + path);
+            }
+            if (buffer.getInt() != VERSION) {
+                return Optional.empty();
+            }
+            int contentBytes = (int) size - Long.BYTES;
+            CRC32 checksum = new CRC32();
+            checksum.update(buffer.slice(0, contentBytes));
+            if (checksum.getValue() != buffer.getLong(contentBytes)) {
+                throw new IOException("Контрольная сумма снимка индекса не совпадает: " + path);
+            }
+
+            long createdAt = buffer.getLong();
+            Watermark watermark = new Watermark(buffer.getLong(), buffer.getLong(), buffer.getLong(), buffer.getLong());
+            int siteCount = buffer.getInt();
+            Map<Integer, SiteSnapshot> sites = new HashMap<>();
+            for (int i = 0; i < siteCount; i++) {
+                int siteId = buffer.getInt();
+                SiteCounters counters = new SiteCounters(buffer.getLong(), buffer.getLong(), buffer.getLong(), buffer.getLong());
+                int lemmaCount = buffer.getInt();
+                Map<String, Integer> lemmaFrequencies = new HashMap<>(lemmaCount * 4 / 3 + 1);
+                for (int j = 0; j < lemmaCount; j++) {
+                    byte[] lemma = new byte[buffer.getInt()];
+                    buffer.get(lemma);
+                    lemmaFrequencies.put(new String(lemma, StandardCharsets.UTF_8), buffer.getInt());
+                }
+                sites.put(siteId, new SiteSnapshot(siteId, counters, lemmaFrequencies));
+            }
+            return Optional.of(new IndexSnapshot(createdAt, watermark, sites));
+        }
+    }
+
+    /**
+     * Записывает снимок во временный файл и переименовывает его,
+     * чтобы прежний снимок оставался целым до конца записи.
+     */
+    public void write (Path path) throws IOException {
+        Files.createDirectories(path.toAbsolutePath().getParent());
+        Path temporary = path.resolveSibling(path.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            CheckedOutputStream checked = new CheckedOutputStream(Channels.newOutputStream(channel), new CRC32());
+            DataOutputStream output = new DataOutputStream(new BufferedOutputStream(checked));
+            output.writeInt(MAGIC);
+            output.writeInt(VERSION);
+            output.writeLong(createdAt);
+            output.writeLong(watermark.maxPageId());
+            output.writeLong(watermark.pageCount());
+            output.writeLong(watermark.maxLemmaId());
+            output.writeLong(watermark.lemmaCount());
+            output.writeInt(sites.size());
+            for (SiteSnapshot site : sites.values()) {
+                output.writeInt(site.siteId());
+                output.writeLong(site.counters().pageCount());
+                output.writeLong(site.counters().maxPageId());
+                output.writeLong(site.counters().lemmaCount());
+                output.writeLong(site.counters().frequencySum());
+                output.writeInt(site.lemmaFrequencies().size());
+                for (Map.Entry<String, Integer> entry : site.lemmaFrequencies().entrySet()) {
+                    byte[] lemma = entry.getKey().getBytes(StandardCharsets.UTF_8);
+                    output.writeInt(lemma.length);
+                    output.write(lemma);
+                    output.writeInt(entry.getValue());
+                }
+            }
+            output.flush();
+            output.writeLong(checked.getChecksum().getValue());
+            output.flush();
+            channel.force(true);
+        }
+        Files.move(temporary, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * Наибольшие id и число страниц и лемм по всем сайтам на момент записи снимка. Страницы
+     * и леммы только добавляются с новыми id или удаляются, а частоты лемм меняются вместе
+     * со страницами, поэтому при совпадении водяного знака при запуске снимок верен целиком
+     * и счетчики сайтов не считаются. {@link #UNKNOWN} не совпадает ни с каким состоянием БД.
+     */
+    public record Watermark (long maxPageId, long pageCount, long maxLemmaId, long lemmaCount) {
+        public static final Watermark UNKNOWN = new Watermark(-1, -1, -1, -1);
+    }
+
+    /**
+     * Счетчики сайта в БД. Если при запуске они совпадают с записанными в снимке,
+     * данные сайта не менялись и берутся из снимка.
+     */
+    public record SiteCounters (long pageCount, long maxPageId, long lemmaCount, long frequencySum) {
+    }
+
+    public record SiteSnapshot (int siteId, SiteCounters counters, Map<String, Integer> lemmaFrequencies) {
+    }
+}
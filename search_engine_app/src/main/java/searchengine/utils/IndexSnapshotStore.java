@@ -0,0 +1,140 @@
+package searchengine.utils;
+
+import lombok.extern.log4j.Log4j2;
+import org.springframework.stereotype.Component;
+import searchengine.config.SnapshotSettings;
+import searchengine.model.repositories.PageRepository;
+import searchengine.utils.IndexSnapshot.SiteCounters;
+import searchengine.utils.IndexSnapshot.SiteSnapshot;
+import searchengine.utils.IndexSnapshot.Watermark;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+/**
+ * Снимок словаря лемм на локальном диске (snapshot-settings). Записывается после индексации,
+ * при запуске из него берутся сайты, счетчики которых в БД не изменились,
+ * остальные сайты догружаются из БД. Списки страниц в снимок не входят:
+ * они либо читаются из БД при поиске, либо уже лежат в файлах сегментов.
+ */
+@Log4j2
+@Component
+public class IndexSnapshotStore {
+    private final SnapshotSettings settings;
+    private final IndexStorage indexStorage;
+    private final PageRepository pageRepository;
+
+    public IndexSnapshotStore (SnapshotSettings settings, IndexStorage indexStorage, PageRepository pageRepository) {
+        this.settings = settings;
+        this.indexStorage = indexStorage;
+        this.pageRepository = pageRepository;
+    }
+
+    /**
+     * Суммарные частоты лемм по всем сайтам. Если водяной знак снимка совпадает с БД,
+     * словарь берется из снимка без подсчета счетчиков сайтов.
+     */
+    public TreeMap<String, Long> loadLemmaFrequencies () {
+        long start = System.currentTimeMillis();
+        Optional<IndexSnapshot> snapshot = readSnapshot();
+        TreeMap<String, Long> terms = new TreeMap<>();
+        if (snapshot.isPresent() && snapshot.get().getWatermark().equals(currentWatermark())) {
+            snapshot.get().getSites().values().forEach(site -> site.lemmaFrequencies()
+                    .forEach((lemma, frequency) -> terms.merge(lemma, (long) frequency, Long::sum)));
+            log.info("Словарь лемм загружен из снимка за " + (System.currentTimeMillis() - start) + " мс, сайтов: "
+                    + snapshot.get().getSites().size());
+            return terms;
+        }
+        Map<Integer, SiteSnapshot> snapshotSites = snapshot.map(IndexSnapshot::getSites).orElse(Map.of());
+        int fromSnapshot = 0;
+        int fromDatabase = 0;
+        for (Map.Entry<Integer, SiteCounters> entry : currentCounters().entrySet()) {
+            SiteSnapshot site = snapshotSites.get(entry.getKey());
+            Map<String, Integer> lemmaFrequencies;
+            if (site != null && site.counters().equals(entry.getValue())) {
+                lemmaFrequencies = site.lemmaFrequencies();
+                fromSnapshot++;
+            } else {
+                lemmaFrequencies = findLemmaFrequencies(entry.getKey());
+                fromDatabase++;
+            }
+            lemmaFrequencies.forEach((lemma, frequency) -> terms.merge(lemma, (long) frequency, Long::sum));
+        }
+        log.info("Словарь лемм загружен за " + (System.currentTimeMillis() - start) + " мс: сайтов из снимка "
+                + fromSnapshot + ", из БД " + fromDatabase);
+        return terms;
+    }
+
+    /**
+     * Записывает снимок. Сайты, изменившиеся во время записи, в снимок не попадают
+     * и при следующем запуске будут загружены из БД, водяной знак тогда не записывается.
+     */
+    public void save () {
+        if (!settings.isEnabled()) {
+            return;
+        }
+        long start = System.currentTimeMillis();
+        Watermark watermark = currentWatermark();
+        Map<Integer, SiteSnapshot> sites = new HashMap<>();
+        currentCounters().forEach((siteId, counters) ->
+                sites.put(siteId, new SiteSnapshot(siteId, counters, findLemmaFrequencies(siteId))));
+        Map<Integer, SiteCounters> counters = currentCounters();
+        sites.values().removeIf(site -> !site.counters().equals(counters.get(site.siteId())));
+        if (!watermark.equals(currentWatermark()) || sites.size() != counters.size()) {
+            watermark = Watermark.UNKNOWN;
+        }
+        try {
+            new IndexSnapshot(start, watermark, sites).write(Path.of(settings.getPath()));
+            log.info("Снимок индекса записан за " + (System.currentTimeMillis() - start) + " мс, сайтов: " + sites.size());
+        } catch (IOException e) {
+            log.error("Не удалось записать снимок индекса: " + e.getMessage());
+        }
+    }
+
+    private Optional<IndexSnapshot> readSnapshot () {
+        Path path = Path.of(settings.getPath());
+        if (!settings.isEnabled() || !Files.exists(path)) {
+            return Optional.empty();
+        }
+        try {
+            Optional<IndexSnapshot> snapshot = IndexSnapshot.read(path);
+            if (snapshot.isEmpty()) {
+                log.info("Снимок индекса записан другой версией и будет пропущен: " + path);
+            }
+            return snapshot;
+        } catch (IOException e) {
+            log.error("Не удалось прочитать снимок индекса: " + e.getMessage());
+            return Optional.empty();
+        }
+    }
+
+    private Watermark currentWatermark () {
+        Object[] pages = pageRepository.findWatermark().get(0);
+        IndexStorage.LemmaWatermark lemmas = indexStorage.findLemmaWatermark();
+        return new Watermark(pages[0] == null ? 0 : ((Number) pages[0]).longValue(), ((Number) pages[1]).longValue(),
+                lemmas.maxLemmaId(), lemmas.lemmaCount());
+    }
+
+    private Map<Integer, SiteCounters> currentCounters () {
+        Map<Integer, long[]> siteToValues = new HashMap<>();
+        pageRepository.findCountersBySite().forEach(row -> {
+            long[] values = siteToValues.computeIfAbsent((Integer) row[0], id -> new long[4]);
+            values[0] = ((Number) row[1]).longValue();
+            values[1] = ((Number) row[2]).longValue();
+        });
+        indexStorage.findLemmaCounters().forEach((siteId, lemmaCounters) -> {
+            long[] values = siteToValues.computeIfAbsent(siteId, id -> new long[4]);
+            values[2] = lemmaCounters.lemmaCount();
+            values[3] = lemmaCounters.frequencySum();
+        });
+        Map<Integer, SiteCounters> counters = new HashMap<>();
+        siteToValues.forEach((siteId, values) -> counters.put(siteId, new SiteCounters(values[0], values[1], values[2], values[3])));
+        return counters;
+    }
+
+    private Map<String, Integer> findLemmaFrequencies (int siteId) {
+        return indexStorage.findLemmaFrequencies(siteId);
+    }
+}
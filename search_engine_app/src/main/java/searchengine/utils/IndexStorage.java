@@ -0,0 +1,106 @@
+package searchengine.utils;
+
+import searchengine.model.entities.Lemma;
+import searchengine.model.entities.Page;
+import searchengine.model.entities.Site;
+
+import java.util.*;
+
+/**
+ * Хранилище данных индекса, которые пишутся и читаются при индексации и поиске:
+ * леммы сайтов с частотами, списки страниц лемм и HTML-код страниц.
+ * Сайты и страницы (путь, код ответа, дубли) остаются в БД.
+ * Реализации: {@link JpaIndexStorage} (БД и, при BLOCKS или SEGMENTS, {@link PostingStore})
+ * и {@link FileIndexStorage} (posting-settings.storage: FILE).
+ */
+public interface IndexStorage {
+    /**
+     * Находит леммы сайта, недостающие создает.
+     *
+     * @param lemmaToPageCount лемма и число новых страниц с ней
+     * @param deferFrequencies не менять частоты, новые леммы создаются с нулевой частотой
+     * @return все леммы из lemmaToPageCount
+     */
+    Map<String, Lemma> upsertLemmas (Site site, Map<String, Integer> lemmaToPageCount, boolean deferFrequencies);
+
+    void appendPostings (Map<Lemma, PostingList> lemmaToPostings);
+
+    /**
+     * Удаляет страницы из списков их лемм и уменьшает частоты лемм, леммы без страниц удаляются.
+     *
+     * @return лемма и число удаленных страниц с ней
+     */
+    Map<Lemma, Integer> removePostings (Collection<Page> pages);
+
+    PostingList readPostings (Lemma lemma);
+
+    /**
+     * Страницы из candidates, на которых есть лемма, с суммой rank.
+     */
+    PostingList intersect (Lemma lemma, PostingList candidates);
+
+    Optional<Lemma> findLemma (String lemma, Site site);
+
+    /**
+     * Лемма на всех сайтах
+     */
+    List<Lemma> findLemmas (String lemma);
+
+    long countLemmas (Site site);
+
+    Map<String, Integer> findLemmaFrequencies (int siteId);
+
+    /**
+     * Число лемм и сумма их частот по id сайта
+     */
+    Map<Integer, LemmaCounters> findLemmaCounters ();
+
+    /**
+     * Наибольший id леммы и число лемм по всем сайтам, без обхода лемм
+     */
+    LemmaWatermark findLemmaWatermark ();
+
+    /**
+     * Записывает в леммы сайта число страниц, на которых они встречаются.
+     *
+     * @return число обновленных лемм
+     */
+    int recalculateFrequencies (Site site);
+
+    void savePageContents (Collection<Page> pages);
+
+    /**
+     * HTML-код страниц по id, для страниц без сохраненного кода записи нет
+     */
+    Map<Integer, String> findPageContents (Collection<Integer> pageIds);
+
+    void removePageContents (Collection<Integer> pageIds);
+
+    /**
+     * Вызывается перед удалением сайта, пока его страницы еще есть в БД.
+     * Таблицы БД очищает {@link SitePurger}.
+     */
+    void removeSite (Site site);
+
+    record LemmaCounters (long lemmaCount, long frequencySum) {
+    }
+
+    record LemmaWatermark (long maxLemmaId, long lemmaCount) {
+    }
+
+    /**
+     * Леммы страниц, заново полученные из их HTML-кода, для хранилищ без таблицы index.
+     *
+     * @return id сайта, лемма и id страниц сайта с ней
+     */
+    static Map<Integer, Map<String, Set<Integer>>> parsePageLemmas (Collection<Page> pages, Map<Integer, String> contents,
+                                                                   TextParser textParser) {
+        Map<Integer, Map<String, Set<Integer>>> siteToLemmaPages = new HashMap<>();
+        for (Page page : pages) {
+            Map<String, Set<Integer>> lemmaPages = siteToLemmaPages.computeIfAbsent(page.getSite().getId(), id -> new HashMap<>());
+            textParser.getLemmas(contents.getOrDefault(page.getId(), "")).keySet()
+                    .forEach(lemma -> lemmaPages.computeIfAbsent(lemma, key -> new HashSet<>()).add(page.getId()));
+        }
+        return siteToLemmaPages;
+    }
+}
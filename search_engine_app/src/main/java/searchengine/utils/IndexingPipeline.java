@@ -0,0 +1,273 @@
+package searchengine.utils;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.stereotype.Component;
+import searchengine.config.PipelineSettings;
+import searchengine.dto.statistics.PipelineStageStatistics;
+import searchengine.model.entities.Page;
+import searchengine.model.entities.Site;
+import searchengine.model.repositories.SiteRepository;
+
+import javax.annotation.PreDestroy;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Конвейер индексации: загрузка -> лемматизация -> запись в БД.
+ * Этапы связаны ограниченными очередями. Если запись в БД не успевает,
+ * очереди заполняются и потоки обхода блокируются в {@link #submit(Page)}.
+ * Страницы одного сайта всегда попадают к одному и тому же потоку записи, поэтому пакеты сайта
+ * записываются по порядку. Леммы сайта при этом может одновременно обновлять {@link PageReindexQueue},
+ * поэтому точные частоты лемм дает только их пересчет после обхода (pipeline-settings.deferred-frequencies).
+ * Если пакет не удалось записать, ошибка сохраняется в last_error сайта и возвращается
+ * {@link #takeFailure(Site)}, чтобы сайт не получил статус INDEXED без части страниц.
+ */
+@Log4j2
+@Component
+public class IndexingPipeline {
+    private final PageIndexer pageIndexer;
+    private final TextParser textParser;
+    private final PipelineSettings settings;
+    private final CrawlConcurrencyController concurrencyController;
+    private final SiteRepository siteRepository;
+    private final BlockingQueue<Page> parseQueue;
+    private final List<BlockingQueue<ParsedPage>> persistQueues = new ArrayList<>();
+    private final ExecutorService parsers;
+    private final ExecutorService writers;
+    private final StageCounter fetched = new StageCounter();
+    private final StageCounter parsed = new StageCounter();
+    private final StageCounter persisted = new StageCounter();
+    private final ConcurrentHashMap<Integer, AtomicInteger> sitePending = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<Integer, String> siteFailures = new ConcurrentHashMap<>();
+    private final Object siteMonitor = new Object();
+    private final Timer lemmatizeTimer;
+    private final Timer persistTimer;
+    private final DistributionSummary batchSizeSummary;
+
+    public IndexingPipeline (PageIndexer pageIndexer, TextParser textParser, PipelineSettings settings,
+                             CrawlConcurrencyController concurrencyController, SiteRepository siteRepository,
+                             MeterRegistry meterRegistry) {
+        this.pageIndexer = pageIndexer;
+        this.textParser = textParser;
+        this.settings = settings;
+        this.concurrencyController = concurrencyController;
+        this.siteRepository = siteRepository;
+        this.parseQueue = new ArrayBlockingQueue<>(settings.getParseQueueCapacity());
+
+        int writerCount = Math.max(1, settings.getWriters());
+        int writerQueueCapacity = Math.max(1, settings.getPersistQueueCapacity() / writerCount);
+        for (int i = 0; i < writerCount; i++) {
+            persistQueues.add(new ArrayBlockingQueue<>(writerQueueCapacity));
+        }
+
+        lemmatizeTimer = meterRegistry.timer("searchengine.index.lemmatize");
+        persistTimer = meterRegistry.timer("searchengine.index.batch.persist", "source", "crawl");
+        batchSizeSummary = meterRegistry.summary("searchengine.index.batch.size", "source", "crawl");
+        Gauge.builder("searchengine.pipeline.queue.size", parseQueue, BlockingQueue::size)
+                .tag("stage", "parse")
+                .register(meterRegistry);
+        Gauge.builder("searchengine.pipeline.queue.size", persistQueues,
+                        queues -> queues.stream().mapToInt(BlockingQueue::size).sum())
+                .tag("stage", "persist")
+                .register(meterRegistry);
+
+        parsers = Executors.newFixedThreadPool(settings.getParsers());
+        for (int i = 0; i < settings.getParsers(); i++) {
+            parsers.execute(this::parseLoop);
+        }
+        writers = Executors.newFixedThreadPool(writerCount);
+        for (BlockingQueue<ParsedPage> queue : persistQueues) {
+            writers.execute(() -> persistLoop(queue));
+        }
+    }
+
+    /**
+     * Передает загруженную страницу на лемматизацию и запись.
+     * Блокирует вызывающий поток, пока в очереди нет места, и сообщает об этом
+     * {@link CrawlConcurrencyController}, чтобы обход замедлился.
+     */
+    public void submit (Page page) throws InterruptedException {
+        int siteId = page.getSite().getId();
+        sitePending.computeIfAbsent(siteId, id -> new AtomicInteger()).incrementAndGet();
+        try {
+            if (!parseQueue.offer(page)) {
+                concurrencyController.reportBackpressure();
+                parseQueue.put(page);
+            }
+        } catch (InterruptedException e) {
+            release(siteId, 1);
+            throw e;
+        }
+        fetched.add(1);
+    }
+
+    /**
+     * Ожидает, пока все переданные страницы сайта будут записаны в БД.
+     */
+    public void awaitSite (Site site) throws InterruptedException {
+        synchronized (siteMonitor) {
+            while (pendingPages(site.getId()) > 0) {
+                siteMonitor.wait();
+            }
+        }
+    }
+
+    /**
+     * @return ошибка записи страниц сайта после последнего вызова или null, если все пакеты записаны
+     */
+    public String takeFailure (Site site) {
+        return siteFailures.remove(site.getId());
+    }
+
+    public List<PipelineStageStatistics> getStatistics () {
+        int persistQueueSize = persistQueues.stream().mapToInt(BlockingQueue::size).sum();
+        return List.of(
+                fetched.toStatistics("fetch", 0, 0),
+                parsed.toStatistics("parse", parseQueue.size(), settings.getParseQueueCapacity()),
+                persisted.toStatistics("persist", persistQueueSize, settings.getPersistQueueCapacity())
+        );
+    }
+
+    private int pendingPages (int siteId) {
+        AtomicInteger counter = sitePending.get(siteId);
+        return counter == null ? 0 : counter.get();
+    }
+
+    private void release (int siteId, int count) {
+        AtomicInteger counter = sitePending.get(siteId);
+        if (counter != null && counter.addAndGet(-count) <= 0) {
+            synchronized (siteMonitor) {
+                siteMonitor.notifyAll();
+            }
+        }
+    }
+
+    private void parseLoop () {
+        while (!Thread.currentThread().isInterrupted()) {
+            Page page;
+            try {
+                page = parseQueue.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+
+            Map<String, Integer> lemmas;
+            try {
+                lemmas = lemmatizeTimer.record(() -> textParser.getLemmas(page.getContent()));
+            } catch (RuntimeException e) {
+                log.error("Не удалось получить леммы страницы " + page.getPath() + ": " + e.getMessage());
+                release(page.getSite().getId(), 1);
+                continue;
+            }
+            parsed.add(1);
+
+            int writer = Math.floorMod(page.getSite().getId(), persistQueues.size());
+            try {
+                persistQueues.get(writer).put(new ParsedPage(page, lemmas));
+            } catch (InterruptedException e) {
+                release(page.getSite().getId(), 1);
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    private void persistLoop (BlockingQueue<ParsedPage> queue) {
+        while (!Thread.currentThread().isInterrupted()) {
+            List<ParsedPage> batch;
+            try {
+                batch = takeBatch(queue);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+
+            Map<Page, Map<String, Integer>> pageToLemmas = new LinkedHashMap<>();
+            Map<Integer, Integer> siteToCount = new HashMap<>();
+            for (ParsedPage parsedPage : batch) {
+                pageToLemmas.put(parsedPage.page(), parsedPage.lemmas());
+                siteToCount.merge(parsedPage.page().getSite().getId(), 1, Integer::sum);
+            }
+            try {
+                persistTimer.record(() -> pageIndexer.saveParsedPages(pageToLemmas, settings.isDeferredFrequencies()));
+                batchSizeSummary.record(batch.size());
+                persisted.add(batch.size());
+            } catch (RuntimeException e) {
+                log.error("Не удалось сохранить пакет из " + batch.size() + " страниц: " + e.getMessage());
+                siteToCount.keySet().forEach(siteId -> recordFailure(siteId, e));
+            } finally {
+                siteToCount.forEach(this::release);
+            }
+        }
+    }
+
+    private void recordFailure (int siteId, RuntimeException e) {
+        String error = "Не удалось сохранить страницы сайта: " + e.getMessage();
+        siteFailures.put(siteId, error);
+        try {
+            siteRepository.recordError(siteId, error, LocalDateTime.now());
+        } catch (RuntimeException recordException) {
+            log.error("Не удалось записать ошибку сайта " + siteId + ": " + recordException.getMessage());
+        }
+    }
+
+    private List<ParsedPage> takeBatch (BlockingQueue<ParsedPage> queue) throws InterruptedException {
+        List<ParsedPage> batch = new ArrayList<>();
+        batch.add(queue.take());
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(settings.getBatchWaitMs());
+        while (batch.size() < settings.getBatchSize()) {
+            queue.drainTo(batch, settings.getBatchSize() - batch.size());
+            long remaining = deadline - System.nanoTime();
+            if (batch.size() >= settings.getBatchSize() || remaining <= 0) {
+                break;
+            }
+            ParsedPage next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+            if (next == null) {
+                break;
+            }
+            batch.add(next);
+        }
+        return batch;
+    }
+
+    @PreDestroy
+    public void shutdown () {
+        parsers.shutdownNow();
+        writers.shutdownNow();
+    }
+
+    private record ParsedPage (Page page, Map<String, Integer> lemmas) {
+    }
+
+    private static class StageCounter {
+        private final LongAdder count = new LongAdder();
+        private volatile long startNanos;
+
+        void add (int processed) {
+            if (startNanos == 0) {
+                startNanos = System.nanoTime();
+            }
+            count.add(processed);
+        }
+
+        PipelineStageStatistics toStatistics (String stage, int queueSize, int queueCapacity) {
+            PipelineStageStatistics statistics = new PipelineStageStatistics();
+            statistics.setStage(stage);
+            statistics.setQueueSize(queueSize);
+            statistics.setQueueCapacity(queueCapacity);
+            long processed = count.sum();
+            statistics.setProcessed(processed);
+            double seconds = startNanos == 0 ? 0 : (System.nanoTime() - startNanos) / 1e9;
+            statistics.setThroughput(seconds > 0 ? processed / seconds : 0);
+            return statistics;
+        }
+    }
+}
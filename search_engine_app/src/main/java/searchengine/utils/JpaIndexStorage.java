@@ -0,0 +1,283 @@
+package searchengine.utils;
+
+import searchengine.config.FrontierSettings;
+import searchengine.model.entities.Index;
+import searchengine.model.entities.Lemma;
+import searchengine.model.entities.Page;
+import searchengine.model.entities.PageContent;
+import searchengine.model.entities.Site;
+import searchengine.model.repositories.IndexRepository;
+import searchengine.model.repositories.LemmaRepository;
+import searchengine.model.repositories.PageContentRepository;
+import searchengine.model.repositories.PageRepository;
+
+import java.util.*;
+import java.util.function.Consumer;
+
+/**
+ * Хранилище в БД: леммы в таблице lemma, HTML-код в page_content, списки страниц
+ * в таблице index (posting-settings.storage: ROWS) или в {@link PostingStore}.
+ * Методы записи выполняются в транзакции вызывающего кода.
+ */
+public class JpaIndexStorage implements IndexStorage {
+    private static final int LEMMA_LOOKUP_CHUNK = 1000;
+
+    private final LemmaRepository lemmaRepository;
+    private final IndexRepository indexRepository;
+    private final PageRepository pageRepository;
+    private final PageContentRepository pageContentRepository;
+    private final Optional<PostingStore> postingStore;
+    private final TextParser textParser;
+    private final FrontierSettings frontierSettings;
+
+    public JpaIndexStorage (LemmaRepository lemmaRepository, IndexRepository indexRepository,
+                            PageRepository pageRepository, PageContentRepository pageContentRepository,
+                            Optional<PostingStore> postingStore, TextParser textParser,
+                            FrontierSettings frontierSettings) {
+        this.lemmaRepository = lemmaRepository;
+        this.indexRepository = indexRepository;
+        this.pageRepository = pageRepository;
+        this.pageContentRepository = pageContentRepository;
+        this.postingStore = postingStore;
+        this.textParser = textParser;
+        this.frontierSettings = frontierSettings;
+    }
+
+    /**
+     * При общем обходе (frontier-settings) частоты откладываются всегда. Иначе частоты увеличиваются
+     * одним UPDATE frequency = frequency + n, а новые леммы вставляются через INSERT IGNORE,
+     * потому что леммы сайта одновременно пишут конвейер обхода и очередь переиндексации.
+     */
+    @Override
+    public Map<String, Lemma> upsertLemmas (Site site, Map<String, Integer> lemmaToPageCount, boolean deferFrequencies) {
+        Map<String, Lemma> lemmaEntities = findLemmaEntities(lemmaToPageCount.keySet(), site);
+        if (deferFrequencies || frontierSettings.isEnabled()) {
+            List<Lemma> newLemmas = new ArrayList<>();
+            lemmaToPageCount.keySet().forEach(lemma -> lemmaEntities.computeIfAbsent(lemma, key -> {
+                Lemma lemmaEntity = newLemmaEntity(key, site);
+                newLemmas.add(lemmaEntity);
+                return lemmaEntity;
+            }));
+            if (frontierSettings.isEnabled()) {
+                insertSharedLemmas(newLemmas, site, lemmaEntities);
+            } else {
+                lemmaRepository.saveAll(newLemmas);
+            }
+        } else {
+            List<String> newLemmas = lemmaToPageCount.keySet().stream()
+                    .filter(lemma -> !lemmaEntities.containsKey(lemma))
+                    .sorted()
+                    .toList();
+            newLemmas.forEach(lemma -> lemmaRepository.insertIgnore(site.getId(), lemma));
+            // UPDATE блокирует строки до чтения новых лемм, поэтому транзакции не ждут друг друга взаимно
+            Map<Integer, List<String>> countToLemmas = new TreeMap<>();
+            lemmaToPageCount.forEach((lemma, count) ->
+                    countToLemmas.computeIfAbsent(count, key -> new ArrayList<>()).add(lemma));
+            countToLemmas.forEach((count, lemmas) -> {
+                Collections.sort(lemmas);
+                forEachChunk(lemmas, chunk -> lemmaRepository.incrementFrequencies(site, chunk, count));
+            });
+            lockLemmas(newLemmas, site, lemmaEntities);
+        }
+        return lemmaEntities;
+    }
+
+    @Override
+    public void appendPostings (Map<Lemma, PostingList> lemmaToPostings) {
+        if (postingStore.isPresent()) {
+            postingStore.get().append(lemmaToPostings);
+            return;
+        }
+        List<Index> indexList = new ArrayList<>();
+        lemmaToPostings.forEach((lemma, postings) -> {
+            for (int i = 0; i < postings.size(); i++) {
+                Index index = new Index();
+                index.setPage(pageRepository.getReferenceById(postings.pageId(i)));
+                index.setLemma(lemma);
+                index.setRank(postings.rank(i));
+                indexList.add(index);
+            }
+        });
+        indexRepository.saveAll(indexList);
+    }
+
+    @Override
+    public Map<Lemma, Integer> removePostings (Collection<Page> pages) {
+        Map<Lemma, Integer> lemmaToRemoved = new HashMap<>();
+        if (pages.isEmpty()) {
+            return lemmaToRemoved;
+        }
+        if (postingStore.isPresent()) {
+            Map<Lemma, Set<Integer>> lemmaToPageIds = findPageLemmas(pages);
+            postingStore.get().remove(lemmaToPageIds);
+            lemmaToPageIds.forEach((lemma, pageIds) -> lemmaToRemoved.put(lemma, pageIds.size()));
+        } else {
+            List<Integer> pageIds = pages.stream().map(Page::getId).toList();
+            Map<Integer, Integer> idToRemoved = new HashMap<>();
+            indexRepository.countLemmasByPageIdIn(pageIds)
+                    .forEach(row -> idToRemoved.put((Integer) row[0], ((Number) row[1]).intValue()));
+            lemmaRepository.findAllById(idToRemoved.keySet())
+                    .forEach(lemma -> lemmaToRemoved.put(lemma, idToRemoved.get(lemma.getId())));
+            indexRepository.deleteByPageIdIn(pageIds);
+        }
+
+        List<Lemma> lemmasToUpdate = new ArrayList<>();
+        List<Integer> lemmasToDelete = new ArrayList<>();
+        lemmaToRemoved.forEach((lemma, removed) -> {
+            if (lemma.getFrequency() <= removed) {
+                lemmasToDelete.add(lemma.getId());
+            } else {
+                lemma.setFrequency(lemma.getFrequency() - removed);
+                lemmasToUpdate.add(lemma);
+            }
+        });
+        lemmaRepository.saveAll(lemmasToUpdate);
+        lemmaRepository.deleteAllByIdInBatch(lemmasToDelete);
+        return lemmaToRemoved;
+    }
+
+    @Override
+    public PostingList readPostings (Lemma lemma) {
+        if (postingStore.isPresent()) {
+            return postingStore.get().read(lemma);
+        }
+        List<Object[]> rows = indexRepository.findPostingsByLemmaId(lemma.getId());
+        int[] pageIds = new int[rows.size()];
+        float[] ranks = new float[rows.size()];
+        for (int i = 0; i < rows.size(); i++) {
+            pageIds[i] = (Integer) rows.get(i)[0];
+            ranks[i] = ((Number) rows.get(i)[1]).floatValue();
+        }
+        return PostingList.of(pageIds, ranks);
+    }
+
+    @Override
+    public PostingList intersect (Lemma lemma, PostingList candidates) {
+        return postingStore
+                .map(store -> store.intersect(lemma, candidates))
+                .orElseGet(() -> candidates.intersect(readPostings(lemma)));
+    }
+
+    @Override
+    public Optional<Lemma> findLemma (String lemma, Site site) {
+        return lemmaRepository.findByLemmaAndSite(lemma, site);
+    }
+
+    @Override
+    public List<Lemma> findLemmas (String lemma) {
+        return lemmaRepository.findByLemma(lemma);
+    }
+
+    @Override
+    public long countLemmas (Site site) {
+        return lemmaRepository.countBySite(site);
+    }
+
+    @Override
+    public Map<String, Integer> findLemmaFrequencies (int siteId) {
+        Map<String, Integer> lemmaFrequencies = new HashMap<>();
+        lemmaRepository.findFrequenciesBySiteId(siteId)
+                .forEach(row -> lemmaFrequencies.put((String) row[0], ((Number) row[1]).intValue()));
+        return lemmaFrequencies;
+    }
+
+    @Override
+    public LemmaWatermark findLemmaWatermark () {
+        Object[] row = lemmaRepository.findWatermark().get(0);
+        return new LemmaWatermark(row[0] == null ? 0 : ((Number) row[0]).longValue(), ((Number) row[1]).longValue());
+    }
+
+    @Override
+    public Map<Integer, LemmaCounters> findLemmaCounters () {
+        Map<Integer, LemmaCounters> counters = new HashMap<>();
+        lemmaRepository.findCountersBySite().forEach(row -> counters.put((Integer) row[0],
+                new LemmaCounters(((Number) row[1]).longValue(), ((Number) row[2]).longValue())));
+        return counters;
+    }
+
+    @Override
+    public int recalculateFrequencies (Site site) {
+        return postingStore
+                .map(store -> store.recalculateFrequencies(site))
+                .orElseGet(() -> lemmaRepository.recalculateFrequencies(site.getId()));
+    }
+
+    @Override
+    public void savePageContents (Collection<Page> pages) {
+        pageContentRepository.saveAll(pages.stream().map(PageContent::new).toList());
+    }
+
+    @Override
+    public Map<Integer, String> findPageContents (Collection<Integer> pageIds) {
+        return pageContentRepository.findContents(pageIds);
+    }
+
+    @Override
+    public void removePageContents (Collection<Integer> pageIds) {
+        pageContentRepository.deleteAllByIdInBatch(pageIds);
+    }
+
+    @Override
+    public void removeSite (Site site) {
+        postingStore.ifPresent(store -> store.removeSite(site));
+    }
+
+    /**
+     * Леммы страниц для {@link PostingStore}: таблицы index нет, поэтому
+     * леммы заново получаются из сохраненного содержимого страниц.
+     */
+    private Map<Lemma, Set<Integer>> findPageLemmas (Collection<Page> pages) {
+        Map<Integer, String> contents = findPageContents(pages.stream().map(Page::getId).toList());
+        Map<Integer, Site> sites = new HashMap<>();
+        pages.forEach(page -> sites.putIfAbsent(page.getSite().getId(), page.getSite()));
+        Map<Lemma, Set<Integer>> lemmaToPageIds = new HashMap<>();
+        IndexStorage.parsePageLemmas(pages, contents, textParser).forEach((siteId, lemmaPages) ->
+                findLemmaEntities(lemmaPages.keySet(), sites.get(siteId))
+                        .forEach((lemma, lemmaEntity) -> lemmaToPageIds.put(lemmaEntity, lemmaPages.get(lemma))));
+        return lemmaToPageIds;
+    }
+
+    private Map<String, Lemma> findLemmaEntities (Set<String> lemmas, Site site) {
+        Map<String, Lemma> lemmaEntities = new HashMap<>();
+        List<String> lemmaList = new ArrayList<>(lemmas);
+        for (int from = 0; from < lemmaList.size(); from += LEMMA_LOOKUP_CHUNK) {
+            List<String> chunk = lemmaList.subList(from, Math.min(from + LEMMA_LOOKUP_CHUNK, lemmaList.size()));
+            lemmaRepository
+                    .findBySiteAndLemmaIn(site, chunk)
+                    .forEach(lemma -> lemmaEntities.put(lemma.getLemma(), lemma));
+        }
+        return lemmaEntities;
+    }
+
+    /**
+     * При общем обходе леммы сайта одновременно создают несколько узлов. INSERT IGNORE по индексу
+     * (site_id, lemma) пропускает леммы, уже созданные другим узлом, а блокирующее чтение
+     * видит их, даже если они появились после начала транзакции. Леммы вставляются
+     * в порядке сортировки, чтобы транзакции узлов не блокировали друг друга взаимно.
+     */
+    private void insertSharedLemmas (List<Lemma> newLemmas, Site site, Map<String, Lemma> lemmaEntities) {
+        List<String> lemmaList = newLemmas.stream().map(Lemma::getLemma).sorted().toList();
+        lemmaList.forEach(lemma -> lemmaRepository.insertIgnore(site.getId(), lemma));
+        lockLemmas(lemmaList, site, lemmaEntities);
+    }
+
+    private void lockLemmas (List<String> lemmas, Site site, Map<String, Lemma> lemmaEntities) {
+        forEachChunk(lemmas, chunk -> lemmaRepository
+                .lockBySiteAndLemmaIn(site, chunk)
+                .forEach(lemma -> lemmaEntities.put(lemma.getLemma(), lemma)));
+    }
+
+    private static void forEachChunk (List<String> lemmas, Consumer<List<String>> action) {
+        for (int from = 0; from < lemmas.size(); from += LEMMA_LOOKUP_CHUNK) {
+            action.accept(lemmas.subList(from, Math.min(from + LEMMA_LOOKUP_CHUNK, lemmas.size())));
+        }
+    }
+
+    private static Lemma newLemmaEntity (String lemma, Site site) {
+        Lemma lemmaEntity = new Lemma();
+        lemmaEntity.setSite(site);
+        lemmaEntity.setLemma(lemma);
+        lemmaEntity.setFrequency(0);
+        return lemmaEntity;
+    }
+}
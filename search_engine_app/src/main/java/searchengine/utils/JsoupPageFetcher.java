@@ -0,0 +1,141 @@
+package searchengine.utils;
+
+import org.jsoup.Connection;
+import org.jsoup.Jsoup;
+import searchengine.config.WebConnection;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Страницы запрашиваются со сжатием gzip или deflate. До чтения тела по заголовкам проверяются
+ * тип содержимого (web-connection-settings.content-types) и длина, затем по первым байтам тела
+ * отсеивается двоичное содержимое без типа или с неверным типом. Тело читается потоком
+ * не больше max-page-kb после распаковки, при превышении загрузка прерывается.
+ */
+public class JsoupPageFetcher implements PageFetcher {
+    /**
+     * Предел размера sitemap по протоколу sitemaps.org
+     */
+    private static final int MAX_RESOURCE_BYTES = 50 * 1024 * 1024;
+    private static final int SNIFF_BYTES = 512;
+    /**
+     * Сигнатуры форматов, в начале которых может не быть нулевых байтов
+     */
+    private static final List<byte[]> BINARY_SIGNATURES = List.of(
+            "%PDF".getBytes(StandardCharsets.US_ASCII),
+            "PK\u0003\u0004".getBytes(StandardCharsets.US_ASCII),
+            "GIF8".getBytes(StandardCharsets.US_ASCII),
+            "RIFF".getBytes(StandardCharsets.US_ASCII),
+            "OggS".getBytes(StandardCharsets.US_ASCII),
+            "ID3".getBytes(StandardCharsets.US_ASCII),
+            "Rar!".getBytes(StandardCharsets.US_ASCII),
+            "wOFF".getBytes(StandardCharsets.US_ASCII),
+            new byte[]{(byte) 0x89, 'P', 'N', 'G'},
+            new byte[]{(byte) 0xff, (byte) 0xd8, (byte) 0xff},
+            new byte[]{0x1f, (byte) 0x8b});
+
+    private final WebConnection webConnection;
+
+    public JsoupPageFetcher (WebConnection webConnection) {
+        this.webConnection = webConnection;
+    }
+
+    @Override
+    public FetchedPage fetch (String link) throws IOException {
+        Connection.Response response = Jsoup
+                .connect(link)
+                .timeout(webConnection.getTimeout())
+                .userAgent(webConnection.getAgent())
+                .referrer(webConnection.getReferrer())
+                .header("Accept-Encoding", "gzip, deflate")
+                .ignoreHttpErrors(true)
+                .ignoreContentType(true)
+                .maxBodySize(0)
+                .execute();
+        try (InputStream input = response.bodyStream()) {
+            // Тело страницы с ошибкой не используется, поэтому не загружается
+            if (response.statusCode() >= 400) {
+                return new FetchedPage(link, response.statusCode(), response.headers(), "");
+            }
+            String contentType = response.contentType();
+            if (contentType != null && !isAcceptedType(contentType)) {
+                throw skipped(link, response, "тип содержимого " + contentType);
+            }
+            long maxBytes = webConnection.getMaxPageKb() * 1024L;
+            String contentLength = response.header("Content-Length");
+            if (contentLength != null && contentLength.matches("\\d{1,18}") && Long.parseLong(contentLength) > maxBytes) {
+                throw skipped(link, response, "размер " + contentLength + " байт");
+            }
+            byte[] head = input.readNBytes(SNIFF_BYTES);
+            if (isBinary(head)) {
+                throw skipped(link, response, "двоичное содержимое" + (contentType == null ? "" : " с типом " + contentType));
+            }
+            byte[] rest = input.readNBytes((int) Math.min(Integer.MAX_VALUE - 8, maxBytes + 1 - head.length));
+            if (head.length + rest.length > maxBytes) {
+                throw skipped(link, response, "размер больше " + webConnection.getMaxPageKb() + " КБ");
+            }
+            Charset charset = response.charset() != null && Charset.isSupported(response.charset())
+                    ? Charset.forName(response.charset()) : StandardCharsets.UTF_8;
+            byte[] body = Arrays.copyOf(head, head.length + rest.length);
+            System.arraycopy(rest, 0, body, head.length, rest.length);
+            return new FetchedPage(link, response.statusCode(), response.headers(), new String(body, charset));
+        }
+    }
+
+    @Override
+    public FetchedPage fetchResource (String link) throws IOException {
+        Connection.Response response = Jsoup
+                .connect(link)
+                .timeout(webConnection.getTimeout())
+                .userAgent(webConnection.getAgent())
+                .ignoreContentType(true)
+                .ignoreHttpErrors(true)
+                .maxBodySize(MAX_RESOURCE_BYTES)
+                .execute();
+        byte[] body = response.bodyAsBytes();
+        // sitemap.xml.gz отдается как файл, а не со сжатием при передаче, поэтому Jsoup его не распаковывает
+        if (body.length > 1 && (body[0] & 0xff) == 0x1f && (body[1] & 0xff) == 0x8b) {
+            try (InputStream input = new GZIPInputStream(new ByteArrayInputStream(body))) {
+                body = input.readNBytes(MAX_RESOURCE_BYTES);
+            }
+            return new FetchedPage(link, response.statusCode(), response.headers(), new String(body, StandardCharsets.UTF_8));
+        }
+        return new FetchedPage(link, response.statusCode(), response.headers(), response.body());
+    }
+
+    @Override
+    public long getRequestDelay () {
+        return webConnection.getDelay();
+    }
+
+    private boolean isAcceptedType (String contentType) {
+        String mimeType = contentType.split(";", 2)[0].trim().toLowerCase(Locale.ROOT);
+        return webConnection.getContentTypes().stream().anyMatch(type -> type.equalsIgnoreCase(mimeType));
+    }
+
+    private static boolean isBinary (byte[] head) {
+        // Текст в UTF-16 с меткой порядка байтов содержит нулевые байты
+        boolean utf16 = head.length > 1 && ((head[0] & 0xff) == 0xfe && (head[1] & 0xff) == 0xff
+                || (head[0] & 0xff) == 0xff && (head[1] & 0xff) == 0xfe);
+        for (int i = 0; i < head.length && !utf16; i++) {
+            if (head[i] == 0) {
+                return true;
+            }
+        }
+        return BINARY_SIGNATURES.stream().anyMatch(signature -> head.length >= signature.length
+                && Arrays.equals(head, 0, signature.length, signature, 0, signature.length));
+    }
+
+    private static UnsupportedContentException skipped (String link, Connection.Response response, String reason) {
+        return new UnsupportedContentException("Пропущена страница " + link + ": " + reason,
+                response.statusCode(), response.headers());
+    }
+}
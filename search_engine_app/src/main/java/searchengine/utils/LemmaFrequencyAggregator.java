@@ -0,0 +1,65 @@
+package searchengine.utils;
+
+import lombok.extern.log4j.Log4j2;
+import org.springframework.stereotype.Component;
+import searchengine.config.PipelineSettings;
+import searchengine.model.entities.Site;
+
+import javax.annotation.PreDestroy;
+import java.util.Map;
+import java.util.concurrent.*;
+
+/**
+ * Пересчитывает частоты лемм сайта средствами {@link IndexStorage}:
+ * одним агрегирующим запросом по таблице index или по спискам страниц хранилища.
+ * Используется при полной индексации, когда {@link PageIndexer} не обновляет частоты
+ * на каждой странице: в конце обхода сайта и периодически, пока обход идет.
+ */
+@Log4j2
+@Component
+public class LemmaFrequencyAggregator {
+    private final IndexStorage indexStorage;
+    private final PipelineSettings settings;
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+    private final Map<Integer, ScheduledFuture<?>> refreshTasks = new ConcurrentHashMap<>();
+
+    public LemmaFrequencyAggregator (IndexStorage indexStorage, PipelineSettings settings) {
+        this.indexStorage = indexStorage;
+        this.settings = settings;
+    }
+
+    public void recalculate (Site site) {
+        int updated = indexStorage.recalculateFrequencies(site);
+        log.info("Пересчитаны частоты " + updated + " лемм сайта " + site.getUrl());
+    }
+
+    public void startPeriodicRefresh (Site site) {
+        long interval = settings.getFrequencyRefreshIntervalMs();
+        if (!settings.isDeferredFrequencies() || interval <= 0) {
+            return;
+        }
+        ScheduledFuture<?> task = scheduler.scheduleWithFixedDelay(() -> {
+            try {
+                recalculate(site);
+            } catch (RuntimeException e) {
+                log.error("Не удалось пересчитать частоты лемм сайта " + site.getUrl() + ": " + e.getMessage());
+            }
+        }, interval, interval, TimeUnit.MILLISECONDS);
+        ScheduledFuture<?> previous = refreshTasks.put(site.getId(), task);
+        if (previous != null) {
+            previous.cancel(false);
+        }
+    }
+
+    public void stopPeriodicRefresh (Site site) {
+        ScheduledFuture<?> task = refreshTasks.remove(site.getId());
+        if (task != null) {
+            task.cancel(false);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown () {
+        scheduler.shutdownNow();
+    }
+}
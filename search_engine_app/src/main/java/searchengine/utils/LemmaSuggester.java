@@ -0,0 +1,132 @@
+package searchengine.utils;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import searchengine.config.SuggestSettings;
+import searchengine.model.entities.Site;
+
+import javax.annotation.PreDestroy;
+import java.util.*;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Подсказки по префиксу леммы с весом, равным сумме частот леммы по всем сайтам.
+ * Индекс {@link SuggestIndex} загружается при запуске из снимка {@link IndexSnapshotStore} и БД,
+ * после этого БД не читается: изменения частот при записи и удалении страниц копятся
+ * в pending и периодически вливаются в новую копию индекса. До слияния они учитываются при каждом запросе.
+ */
+@Log4j2
+@Component
+public class LemmaSuggester {
+    private final IndexStorage indexStorage;
+    private final IndexSnapshotStore snapshotStore;
+    private final SuggestSettings settings;
+    private final ConcurrentSkipListMap<String, Long> pending = new ConcurrentSkipListMap<>();
+    private final AtomicBoolean mergeScheduled = new AtomicBoolean();
+    private final ScheduledExecutorService merger = Executors.newSingleThreadScheduledExecutor();
+    private volatile SuggestIndex index = SuggestIndex.empty();
+
+    public LemmaSuggester (IndexStorage indexStorage, IndexSnapshotStore snapshotStore,
+                           SuggestSettings settings, MeterRegistry meterRegistry) {
+        this.indexStorage = indexStorage;
+        this.snapshotStore = snapshotStore;
+        this.settings = settings;
+        Gauge.builder("searchengine.suggest.terms", this, suggester -> suggester.index.size()).register(meterRegistry);
+        Gauge.builder("searchengine.suggest.memory", this, suggester -> suggester.index.memoryBytes())
+                .baseUnit("bytes")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Загрузка выполняется до того, как приложение сообщит о готовности (/actuator/health/readiness)
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void load () {
+        index = SuggestIndex.build(snapshotStore.loadLemmaFrequencies(), settings.getMaxTerms());
+        log.info("Загружен индекс подсказок: лемм " + index.size() + ", байт " + index.memoryBytes());
+        merger.scheduleWithFixedDelay(this::merge, settings.getMergeIntervalMs(),
+                settings.getMergeIntervalMs(), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * До limit лемм, начинающихся с prefix, по убыванию веса
+     */
+    public List<String> suggest (String prefix, int limit) {
+        if (prefix.isEmpty() || limit <= 0) {
+            return List.of();
+        }
+        SuggestIndex current = index;
+        NavigableMap<String, Long> changes = pending.subMap(prefix, true, prefix + Character.MAX_VALUE, false);
+        // изменения могут понизить вес не больше чем changes.size() лемм из индекса
+        Map<String, Long> weights = new HashMap<>(current.top(prefix, limit + changes.size()));
+        changes.forEach((term, change) -> weights.put(term, current.weight(term) + change));
+        return weights.entrySet().stream()
+                .filter(entry -> entry.getValue() > 0)
+                .sorted(Map.Entry.<String, Long>comparingByValue().reversed().thenComparing(Map.Entry.comparingByKey()))
+                .limit(limit)
+                .map(Map.Entry::getKey)
+                .toList();
+    }
+
+    /**
+     * Учитывает изменения частот лемм после фиксации текущей транзакции
+     *
+     * @param lemmaToChange лемма и изменение ее частоты, отрицательное при удалении страниц
+     */
+    public void update (Map<String, Integer> lemmaToChange) {
+        if (lemmaToChange.isEmpty()) {
+            return;
+        }
+        Runnable add = () -> {
+            lemmaToChange.forEach(this::addPending);
+            if (pending.size() > settings.getMaxPendingTerms() && mergeScheduled.compareAndSet(false, true)) {
+                merger.execute(this::merge);
+            }
+        };
+        TransactionHooks.afterCommit(add);
+    }
+
+    /**
+     * Вычитает частоты лемм сайта перед его удалением из БД
+     */
+    public void removeSite (Site site) {
+        Map<String, Integer> lemmaToChange = new HashMap<>();
+        indexStorage.findLemmaFrequencies(site.getId()).forEach((lemma, frequency) -> lemmaToChange.put(lemma, -frequency));
+        update(lemmaToChange);
+    }
+
+    private void addPending (String term, long change) {
+        pending.merge(term, change, (current, added) -> current + added == 0 ? null : current + added);
+    }
+
+    /**
+     * Вливает накопленные изменения в новую копию индекса. Изменения вычитаются из pending
+     * только после публикации копии, поэтому запрос не может пропустить их.
+     */
+    private void merge () {
+        mergeScheduled.set(false);
+        if (pending.isEmpty()) {
+            return;
+        }
+        try {
+            TreeMap<String, Long> changes = new TreeMap<>(pending);
+            index = index.merge(changes, settings.getMaxTerms());
+            changes.forEach((term, change) -> addPending(term, -change));
+        } catch (RuntimeException e) {
+            log.error("Не удалось обновить индекс подсказок: " + e.getMessage());
+        }
+    }
+
+    @PreDestroy
+    public void shutdown () {
+        merger.shutdownNow();
+    }
+}
@@ -0,0 +1,70 @@
+package searchengine.utils;
+
+import lombok.extern.log4j.Log4j2;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import searchengine.config.MigrationSettings;
+import searchengine.model.repositories.PageContentRepository;
+import searchengine.model.repositories.PageRepository;
+
+/**
+ * Переносит HTML-код страниц из столбца page.content, где он хранился раньше, в таблицу page_content.
+ * Если столбец есть, при запуске он всегда становится необязательным, иначе новые страницы не записываются.
+ * Перенос выполняется, только если включен migration-settings.copy-page-content, пакетами
+ * по диапазону id, каждый в своей транзакции. Столбец удаляется, только если дополнительно включен
+ * migration-settings.drop-legacy-content и проверка показала, что копия есть у всех страниц.
+ */
+@Log4j2
+@Component
+public class PageContentMigration {
+    private static final int CHUNK_SIZE = 1000;
+
+    private final PageContentRepository pageContentRepository;
+    private final PageRepository pageRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final MigrationSettings settings;
+
+    public PageContentMigration (PageContentRepository pageContentRepository, PageRepository pageRepository,
+                                 PlatformTransactionManager transactionManager, MigrationSettings settings) {
+        this.pageContentRepository = pageContentRepository;
+        this.pageRepository = pageRepository;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.settings = settings;
+    }
+
+    @Order(Ordered.HIGHEST_PRECEDENCE)
+    @EventListener(ApplicationReadyEvent.class)
+    public void migrate () {
+        if (pageContentRepository.countLegacyContentColumns() == 0) {
+            return;
+        }
+        transactionTemplate.executeWithoutResult(status -> pageContentRepository.allowNullLegacyContent());
+        if (!settings.isCopyPageContent()) {
+            log.warn("В таблице page остался столбец content: HTML-код старых страниц не виден в выдаче, " +
+                    "пока он не перенесен в page_content (migration-settings.copy-page-content)");
+            return;
+        }
+        int maxId = pageRepository.findMaxId();
+        long total = 0;
+        for (int fromId = 0; fromId < maxId; fromId += CHUNK_SIZE) {
+            int chunkStart = fromId;
+            Integer copied = transactionTemplate.execute(status ->
+                    pageContentRepository.copyLegacyContent(chunkStart, chunkStart + CHUNK_SIZE));
+            total += copied == null ? 0 : copied;
+        }
+        log.info("Содержимое страниц перенесено в таблицу page_content: " + total);
+
+        long uncopied = pageContentRepository.countUncopiedLegacyContent();
+        if (uncopied > 0) {
+            log.error("Не перенесено содержимое страниц: " + uncopied + ", столбец page.content сохранен");
+        } else if (settings.isDropLegacyContent()) {
+            transactionTemplate.executeWithoutResult(status -> pageContentRepository.dropLegacyContentColumn());
+            log.info("Столбец page.content удален");
+        }
+    }
+}
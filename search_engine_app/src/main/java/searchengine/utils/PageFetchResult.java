@@ -0,0 +1,28 @@
+package searchengine.utils;
+
+import searchengine.model.entities.Page;
+
+/**
+ * Результат загрузки страницы для индексации. SKIPPED — страница пропущена намеренно
+ * (не HTML или больше web-connection-settings.max-page-kb) и ошибкой обхода не считается.
+ */
+public record PageFetchResult (Status status, Page page) {
+
+    public enum Status {
+        LOADED,
+        SKIPPED,
+        FAILED
+    }
+
+    public static PageFetchResult loaded (Page page) {
+        return new PageFetchResult(Status.LOADED, page);
+    }
+
+    public static PageFetchResult skipped () {
+        return new PageFetchResult(Status.SKIPPED, null);
+    }
+
+    public static PageFetchResult failed () {
+        return new PageFetchResult(Status.FAILED, null);
+    }
+}
@@ -0,0 +1,18 @@
+package searchengine.utils;
+
+import java.io.IOException;
+
+public interface PageFetcher {
+    FetchedPage fetch (String link) throws IOException;
+
+    /**
+     * Загрузка служебного файла сайта (robots.txt, sitemap.xml): принимается любой тип содержимого,
+     * ответ с ошибкой возвращается, а не выбрасывается, сжатое gzip тело распаковывается.
+     */
+    FetchedPage fetchResource (String link) throws IOException;
+
+    /**
+     * Пауза перед каждым запросом при обходе сайта, мс.
+     */
+    long getRequestDelay ();
+}
@@ -1,18 +1,13 @@
 package searchengine.utils;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import lombok.extern.log4j.Log4j2;
-import org.jsoup.Connection;
-import org.jsoup.Jsoup;
-import org.jsoup.nodes.Document;
 import org.springframework.stereotype.Component;
 import org.springframework.transaction.annotation.Transactional;
-import searchengine.config.WebConnection;
-import searchengine.model.entities.Index;
 import searchengine.model.entities.Lemma;
 import searchengine.model.entities.Page;
 import searchengine.model.entities.Site;
-import searchengine.model.repositories.IndexRepository;
-import searchengine.model.repositories.LemmaRepository;
 import searchengine.model.repositories.PageRepository;
 
 import java.io.IOException;
@@ -22,117 +17,198 @@ import java.util.*;
 @Component
 public class PageIndexer {
     private final TextParser textParser;
-    private static WebConnection webConnection = new WebConnection();
+    private final PageFetcher pageFetcher;
+    private final IndexStorage indexStorage;
     private final PageRepository pageRepository;
-    private final LemmaRepository lemmaRepository;
-    private final IndexRepository indexRepository;
-    public PageIndexer (TextParser textParser, PageRepository pageRepository,
-                        LemmaRepository lemmaRepository, IndexRepository indexRepository,
-                        WebConnection webConnection) {
+    private final DuplicateDetector duplicateDetector;
+    private final CrawlConcurrencyController concurrencyController;
+    private final LemmaSuggester lemmaSuggester;
+    private final MeterRegistry meterRegistry;
+    public PageIndexer (TextParser textParser, PageRepository pageRepository, IndexStorage indexStorage,
+                        PageFetcher pageFetcher, DuplicateDetector duplicateDetector,
+                        CrawlConcurrencyController concurrencyController, LemmaSuggester lemmaSuggester,
+                        MeterRegistry meterRegistry) {
         this.textParser = textParser;
         this.pageRepository = pageRepository;
-        this.lemmaRepository = lemmaRepository;
-        this.indexRepository = indexRepository;
-        PageIndexer.webConnection = webConnection;
+        this.indexStorage = indexStorage;
+        this.meterRegistry = meterRegistry;
+        this.pageFetcher = pageFetcher;
+        this.duplicateDetector = duplicateDetector;
+        this.concurrencyController = concurrencyController;
+        this.lemmaSuggester = lemmaSuggester;
     }
 
     @Transactional
-    public boolean executePageIndexing (String link, Site site) {
-        Page page = getPageEntity(link, site);
-        if (page == null) {
-            return false;
+    public void reindexPages (Collection<Page> oldPages, Collection<Page> newPages) {
+        clearPages(oldPages);
+        savePages(newPages);
+    }
+
+    @Transactional
+    public void savePages (Collection<Page> pages) {
+        Map<Page, Map<String, Integer>> pageToLemmas = new HashMap<>();
+        pages.forEach(page -> pageToLemmas.put(page, textParser.getLemmas(page.getContent())));
+        saveParsedPages(pageToLemmas, false);
+    }
+
+    /**
+     * @param deferFrequencies не обновлять частоту уже существующих лемм, новые леммы
+     *                         сохраняются с нулевой частотой. Частоты затем пересчитываются
+     *                         одним запросом в {@link LemmaFrequencyAggregator}.
+     */
+    @Transactional
+    public void saveParsedPages (Map<Page, Map<String, Integer>> parsedPages, boolean deferFrequencies) {
+        if (parsedPages.isEmpty()) {
+            return;
+        }
+        Map<Page, Map<String, Integer>> pageToLemmas = saveUniquePages(parsedPages);
+        if (pageToLemmas.isEmpty()) {
+            return;
         }
 
-        pageRepository.save(page);
-        log.info("Страница сохранена в БД");
-        HashMap<String, Integer> lemmas = new HashMap<>(textParser.getLemmas(page.getContent()));
-        Set<Lemma> lemmaSet = new HashSet<>();
-        Set<Index> indexSet = new HashSet<>();
-        for (Map.Entry<String, Integer> lemmaToCount : lemmas.entrySet()) {
-            Lemma lemma = getLemmaEntity(lemmaToCount.getKey(), site);
-            Index index = getIndexEntity(page, lemma, lemmaToCount.getValue());
-            lemmaSet.add(lemma);
-            indexSet.add(index);
+        Map<Integer, Site> sites = new HashMap<>();
+        Map<Integer, Map<String, Integer>> siteToLemmaCount = new HashMap<>();
+        for (Map.Entry<Page, Map<String, Integer>> entry : pageToLemmas.entrySet()) {
+            Map<String, Integer> lemmas = entry.getValue();
+            Site site = entry.getKey().getSite();
+            sites.putIfAbsent(site.getId(), site);
+            Map<String, Integer> lemmaCount = siteToLemmaCount.computeIfAbsent(site.getId(), id -> new HashMap<>());
+            lemmas.keySet().forEach(lemma -> lemmaCount.merge(lemma, 1, Integer::sum));
         }
-        lemmaRepository.saveAll(lemmaSet);
-        indexRepository.saveAll(indexSet);
-        log.info("Леммы и индексы сохранены в БД");
+        Map<String, Integer> lemmaToPageCount = new HashMap<>();
+        siteToLemmaCount.values().forEach(lemmaCount -> lemmaCount
+                .forEach((lemma, count) -> lemmaToPageCount.merge(lemma, count, Integer::sum)));
+        lemmaSuggester.update(lemmaToPageCount);
+
+        Map<Integer, Map<String, Lemma>> siteToLemmaEntities = new HashMap<>();
+        siteToLemmaCount.forEach((siteId, lemmaCount) -> siteToLemmaEntities.put(siteId,
+                indexStorage.upsertLemmas(sites.get(siteId), lemmaCount, deferFrequencies)));
 
-        return true;
+        Map<Lemma, Map<Integer, Float>> lemmaToPostings = new HashMap<>();
+        pageToLemmas.forEach((page, lemmas) -> {
+            Map<String, Lemma> lemmaEntities = siteToLemmaEntities.get(page.getSite().getId());
+            lemmas.forEach((lemma, rank) -> lemmaToPostings
+                    .computeIfAbsent(lemmaEntities.get(lemma), key -> new HashMap<>())
+                    .put(page.getId(), rank.floatValue()));
+        });
+        Map<Lemma, PostingList> postings = new HashMap<>();
+        lemmaToPostings.forEach((lemma, pageToRank) -> postings.put(lemma, toPostingList(pageToRank)));
+        indexStorage.appendPostings(postings);
+        log.info("Сохранено страниц: " + pageToLemmas.size() + ", индексов: "
+                + postings.values().stream().mapToInt(PostingList::size).sum());
     }
 
-    public String getPageTitle (String link) {
-        Document document;
-        try {
-            document = getDocument(link);
-        } catch (IOException e) {
-            return "";
+    /**
+     * Сохраняет страницы пакета, дубли - ссылкой на исходную страницу.
+     *
+     * @return исходные страницы с их леммами, индексируются только они
+     */
+    private Map<Page, Map<String, Integer>> saveUniquePages (Map<Page, Map<String, Integer>> parsedPages) {
+        Map<Page, Page> batchDuplicates = duplicateDetector.markDuplicates(parsedPages);
+        Map<Page, Map<String, Integer>> uniquePages = new LinkedHashMap<>();
+        List<Page> duplicates = new ArrayList<>();
+        parsedPages.forEach((page, lemmas) -> {
+            if (page.getCanonicalPageId() != null || batchDuplicates.containsKey(page)) {
+                duplicates.add(page);
+            } else {
+                uniquePages.put(page, lemmas);
+            }
+        });
+        pageRepository.saveAll(uniquePages.keySet());
+        batchDuplicates.forEach((duplicate, canonical) -> duplicate.setCanonicalPageId(canonical.getId()));
+        pageRepository.saveAll(duplicates);
+        indexStorage.savePageContents(parsedPages.keySet());
+        duplicateDetector.register(uniquePages.keySet());
+        if (!duplicates.isEmpty()) {
+            log.info("Сохранено дублей других страниц без индексации: " + duplicates.size());
+        }
+        return uniquePages;
+    }
+
+    /**
+     * Удаляет страницы из индекса и БД. Дубли удаляемых страниц удаляются вместе с ними
+     * и будут заново найдены при следующем обходе.
+     */
+    @Transactional
+    public void clearPages (Collection<Page> pages) {
+        if (pages.isEmpty()) {
+            return;
         }
-        return document.title();
+        Set<Integer> clearedIds = new HashSet<>();
+        pages.forEach(page -> clearedIds.add(page.getId()));
+        List<Page> duplicates = pageRepository.findByCanonicalPageIdIn(clearedIds).stream()
+                .filter(duplicate -> !clearedIds.contains(duplicate.getId()))
+                .toList();
+        duplicateDetector.forget(pages);
+        List<Page> indexedPages = pages.stream().filter(page -> page.getCanonicalPageId() == null).toList();
+
+        Map<Lemma, Integer> lemmaToRemoved = indexStorage.removePostings(indexedPages);
+        List<Integer> removedIds = new ArrayList<>(clearedIds);
+        duplicates.forEach(duplicate -> removedIds.add(duplicate.getId()));
+        indexStorage.removePageContents(removedIds);
+        pageRepository.deleteAllByIdInBatch(removedIds);
+
+        Map<String, Integer> lemmaToChange = new HashMap<>();
+        lemmaToRemoved.forEach((lemma, removed) -> lemmaToChange.merge(lemma.getLemma(), -removed, Integer::sum));
+        lemmaSuggester.update(lemmaToChange);
+        log.info("Удалено страниц: " + (pages.size() + duplicates.size()) + ", индексов: "
+                + lemmaToRemoved.values().stream().mapToInt(Integer::intValue).sum());
+    }
+
+    private PostingList toPostingList (Map<Integer, Float> pageToRank) {
+        int[] pageIds = new int[pageToRank.size()];
+        float[] ranks = new float[pageToRank.size()];
+        int i = 0;
+        for (Map.Entry<Integer, Float> entry : pageToRank.entrySet()) {
+            pageIds[i] = entry.getKey();
+            ranks[i++] = entry.getValue();
+        }
+        return PostingList.of(pageIds, ranks);
     }
 
-    private Page getPageEntity (String link, Site site) {
-        Connection.Response connectionResponse;
+    public PageFetchResult getPageEntity (String link, Site site) {
+        FetchedPage response;
         Page page = new Page();
+        CrawlConcurrencyController.Permit permit;
+        try {
+            permit = concurrencyController.acquire(site);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return PageFetchResult.failed();
+        }
+        Timer.Sample sample = Timer.start(meterRegistry);
         try {
-            connectionResponse = getResponse(link);
-            if (connectionResponse.statusCode() >= 400) {
-                log.error("Страница недоступна.");
-                return null;
+            try {
+                response = pageFetcher.fetch(link);
+            } catch (UnsupportedContentException e) {
+                permit.release(e.getStatusCode(), e.getHeaders());
+                meterRegistry.counter("searchengine.crawl.pages.skipped", "site", site.getName()).increment();
+                log.info(e.getMessage());
+                return PageFetchResult.skipped();
+            } catch (IOException e) {
+                permit.release(-1, null);
+                throw e;
+            }
+            permit.release(response.statusCode(), response.headers());
+            if (response.statusCode() >= 400) {
+                log.error("Страница недоступна (" + response.statusCode() + "): " + link);
+                return PageFetchResult.failed();
             }
             page.setSite(site);
             page.setPath(link.substring(link.indexOf("/", link.indexOf("//") + 2)));
-            page.setCode(connectionResponse.statusCode());
-            page.setContent(connectionResponse.body());
+            page.setCode(response.statusCode());
+            page.setContent(response.body());
         } catch (IOException e) {
             log.error(e.getMessage() + "  Страница не найдена.");
-            return null;
+            return PageFetchResult.failed();
+        } finally {
+            sample.stop(meterRegistry.timer("searchengine.crawl.fetch", "site", site.getName()));
         }
-        return page;
-    }
-
-    private Lemma getLemmaEntity (String lemma, Site site) {
-        Optional<Lemma> optionalLemma = lemmaRepository.findByLemmaAndSite(lemma, site);
-        log.info("Лемма ищется в БД");
-        if (optionalLemma.isPresent()) {
-            Lemma presentLemma = optionalLemma.get();
-            presentLemma.setFrequency(presentLemma.getFrequency() + 1);
-            log.info("Лемма найдена");
-            return presentLemma;
-        } else {
-            Lemma lemmaEntity = new Lemma();
-            lemmaEntity.setSite(site);
-            lemmaEntity.setLemma(lemma);
-            lemmaEntity.setFrequency(1);
-            log.info("Лемма не найдена - формируется новая");
-            return lemmaEntity;
-        }
-    }
-
-    private Index getIndexEntity (Page page, Lemma lemma, Integer rank) {
-        Index index = new Index();
-        index.setPage(page);
-        index.setLemma(lemma);
-        index.setRank(rank);
-        log.info("Сформирован индекс");
-        return index;
-    }
-
-    public static Connection.Response getResponse (String link) throws IOException {
-        return Jsoup
-                .connect(link)
-                .timeout(webConnection.getTimeout())
-                .userAgent(webConnection.getAgent())
-                .referrer(webConnection.getReferrer())
-                .execute();
+        meterRegistry.counter("searchengine.crawl.pages.fetched", "site", site.getName()).increment();
+        return PageFetchResult.loaded(page);
     }
 
-    public static Document getDocument (String link) throws IOException {
-        return Jsoup
-                .connect(link)
-                .timeout(webConnection.getTimeout())
-                .userAgent(webConnection.getAgent())
-                .referrer(webConnection.getReferrer())
-                .get();
+    public long getRequestDelay () {
+        return pageFetcher.getRequestDelay();
     }
 }
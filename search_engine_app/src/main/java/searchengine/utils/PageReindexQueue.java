@@ -0,0 +1,127 @@
+package searchengine.utils;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.stereotype.Component;
+import searchengine.config.ReindexSettings;
+import searchengine.model.entities.Page;
+import searchengine.model.entities.Site;
+import searchengine.model.repositories.PageRepository;
+
+import javax.annotation.PreDestroy;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Очередь переиндексации отдельных страниц. Повторные запросы на один и тот же URL,
+ * пока он ждет обработки, объединяются в один. Фиксированный пул обработчиков забирает
+ * страницы пачками и очищает/сохраняет их в одной транзакции. Страницы пачки, которую не удалось
+ * переиндексировать, считаются в searchengine.reindex.failed и могут быть запрошены повторно.
+ */
+@Log4j2
+@Component
+public class PageReindexQueue {
+    private final PageIndexer pageIndexer;
+    private final PageRepository pageRepository;
+    private final ReindexSettings settings;
+    private final BlockingQueue<String> queue;
+    private final ConcurrentHashMap<String, Site> pending = new ConcurrentHashMap<>();
+    private final ExecutorService workers;
+    private final Timer persistTimer;
+    private final DistributionSummary batchSizeSummary;
+    private final Counter failedCounter;
+
+    public PageReindexQueue (PageIndexer pageIndexer, PageRepository pageRepository, ReindexSettings settings,
+                             MeterRegistry meterRegistry) {
+        this.pageIndexer = pageIndexer;
+        this.pageRepository = pageRepository;
+        this.settings = settings;
+        this.queue = new LinkedBlockingQueue<>(settings.getQueueCapacity());
+        this.persistTimer = meterRegistry.timer("searchengine.index.batch.persist", "source", "reindex");
+        this.batchSizeSummary = meterRegistry.summary("searchengine.index.batch.size", "source", "reindex");
+        this.failedCounter = meterRegistry.counter("searchengine.reindex.failed");
+        Gauge.builder("searchengine.reindex.queue.size", queue, BlockingQueue::size).register(meterRegistry);
+        this.workers = Executors.newFixedThreadPool(settings.getWorkers());
+        for (int i = 0; i < settings.getWorkers(); i++) {
+            workers.execute(this::processQueue);
+        }
+    }
+
+    /**
+     * Ставит в очередь все страницы или ни одной. Обработчики только забирают страницы из очереди,
+     * поэтому место, проверенное под блокировкой добавления, не пропадает до конца добавления.
+     *
+     * @return false, если в очереди нет места под все страницы
+     */
+    public synchronized boolean offerAll (Map<String, Site> linkToSite) {
+        List<String> newLinks = linkToSite.keySet().stream().filter(link -> !pending.containsKey(link)).toList();
+        if (newLinks.size() > queue.remainingCapacity()) {
+            return false;
+        }
+        for (Map.Entry<String, Site> entry : linkToSite.entrySet()) {
+            if (pending.putIfAbsent(entry.getKey(), entry.getValue()) != null) {
+                log.info("Страница уже ожидает переиндексации: " + entry.getKey());
+            } else {
+                queue.add(entry.getKey());
+            }
+        }
+        return true;
+    }
+
+    public int size () {
+        return queue.size();
+    }
+
+    private void processQueue () {
+        while (!Thread.currentThread().isInterrupted()) {
+            List<String> links = new ArrayList<>();
+            try {
+                links.add(queue.take());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            queue.drainTo(links, settings.getBatchSize() - 1);
+            // страницы пачки перестают ожидать сразу, чтобы после ошибки их можно было запросить повторно
+            Map<String, Site> linkToSite = new LinkedHashMap<>();
+            links.forEach(link -> {
+                Site site = pending.remove(link);
+                if (site != null) {
+                    linkToSite.put(link, site);
+                }
+            });
+            try {
+                reindexBatch(linkToSite);
+            } catch (RuntimeException e) {
+                failedCounter.increment(linkToSite.size());
+                log.error("Не удалось переиндексировать страницы " + linkToSite.keySet() + ": " + e.getMessage());
+            }
+        }
+    }
+
+    private void reindexBatch (Map<String, Site> linkToSite) {
+        List<Page> oldPages = new ArrayList<>();
+        List<Page> newPages = new ArrayList<>();
+        linkToSite.forEach((link, site) -> {
+            int pathStart = link.indexOf("/", link.indexOf("//") + 2);
+            String path = pathStart < 0 ? "/" : link.substring(pathStart);
+            pageRepository.findByPathAndSite(path, site).ifPresent(oldPages::add);
+            Page page = pageIndexer.getPageEntity(link, site).page();
+            if (page != null) {
+                newPages.add(page);
+            }
+        });
+        persistTimer.record(() -> pageIndexer.reindexPages(oldPages, newPages));
+        batchSizeSummary.record(linkToSite.size());
+        log.info("Переиндексировано страниц: " + newPages.size() + " из " + linkToSite.size());
+    }
+
+    @PreDestroy
+    public void shutdown () {
+        workers.shutdownNow();
+    }
+}
@@ -0,0 +1,149 @@
+package searchengine.utils;
+
+import lombok.extern.log4j.Log4j2;
+import searchengine.config.PostingSettings;
+import searchengine.model.entities.Lemma;
+import searchengine.model.entities.PostingBlock;
+import searchengine.model.entities.Site;
+import searchengine.model.repositories.LemmaRepository;
+import searchengine.model.repositories.PostingBlockRepository;
+
+import java.util.*;
+
+/**
+ * Хранилище списков страниц лемм в виде сжатых блоков (posting-settings.storage: BLOCKS).
+ * Новые страницы дописываются в последний неполный блок леммы, если идут после его последней страницы,
+ * иначе (переиндексация старых страниц) записываются в новые блоки, которые пересекаются с прежними.
+ * При поиске читаются и распаковываются только блоки, попадающие в диапазон кандидатов.
+ * Методы записи вызываются внутри транзакции {@link PageIndexer}. Изменяемые блоки читаются с блокировкой
+ * строк, поэтому обход и переиндексация страниц, дописывающие в один блок, выполняются по очереди.
+ */
+@Log4j2
+public class PostingBlockStore implements PostingStore {
+    private static final int LEMMA_LOOKUP_CHUNK = 1000;
+    private final PostingBlockRepository postingBlockRepository;
+    private final LemmaRepository lemmaRepository;
+    private final PostingSettings settings;
+
+    public PostingBlockStore (PostingBlockRepository postingBlockRepository, LemmaRepository lemmaRepository,
+                              PostingSettings settings) {
+        this.postingBlockRepository = postingBlockRepository;
+        this.lemmaRepository = lemmaRepository;
+        this.settings = settings;
+    }
+
+    @Override
+    public void append (Map<Lemma, PostingList> lemmaToPostings) {
+        int blockSize = Math.max(1, settings.getBlockSize());
+        Map<Integer, PostingBlock> tails = findTailBlocks(lemmaToPostings.keySet(), blockSize);
+        List<PostingBlock> changed = new ArrayList<>();
+        lemmaToPostings.forEach((lemma, postings) -> {
+            if (postings.isEmpty()) {
+                return;
+            }
+            PostingBlock tail = tails.get(lemma.getId());
+            if (tail != null && tail.getLastPageId() < postings.firstPageId()) {
+                postings = PostingList.decode(tail.getData()).merge(postings);
+            } else {
+                tail = null;
+            }
+            for (int from = 0; from < postings.size(); from += blockSize) {
+                PostingBlock block = tail != null && from == 0 ? tail : newBlock(lemma);
+                fill(block, postings.slice(from, Math.min(from + blockSize, postings.size())));
+                changed.add(block);
+            }
+        });
+        postingBlockRepository.saveAll(changed);
+    }
+
+    @Override
+    public void remove (Map<Lemma, Set<Integer>> lemmaToPageIds) {
+        List<PostingBlock> changed = new ArrayList<>();
+        List<PostingBlock> emptied = new ArrayList<>();
+        lemmaToPageIds.forEach((lemma, pageIds) -> {
+            int from = Collections.min(pageIds);
+            int to = Collections.max(pageIds);
+            for (PostingBlock block : postingBlockRepository.findOverlappingForUpdate(lemma, from, to)) {
+                PostingList postings = PostingList.decode(block.getData()).without(pageIds);
+                if (postings.isEmpty()) {
+                    emptied.add(block);
+                } else if (postings.size() != block.getPostingCount()) {
+                    fill(block, postings);
+                    changed.add(block);
+                }
+            }
+        });
+        postingBlockRepository.saveAll(changed);
+        postingBlockRepository.deleteAllInBatch(emptied);
+    }
+
+    @Override
+    public PostingList read (Lemma lemma) {
+        List<PostingList> blocks = new ArrayList<>();
+        for (PostingBlock block : postingBlockRepository.findByLemmaOrderByFirstPageId(lemma)) {
+            blocks.add(PostingList.decode(block.getData()));
+        }
+        return PostingList.concat(blocks);
+    }
+
+    /**
+     * Блоки вне диапазона id кандидатов не читаются. Блоки идут по возрастанию первой страницы,
+     * поэтому кандидаты просматриваются одним курсором, а не заново для каждого блока.
+     */
+    @Override
+    public PostingList intersect (Lemma lemma, PostingList candidates) {
+        if (candidates.isEmpty()) {
+            return candidates;
+        }
+        List<PostingList> matches = new ArrayList<>();
+        int cursor = 0;
+        List<PostingBlock> blocks = postingBlockRepository
+                .findOverlapping(lemma, candidates.firstPageId(), candidates.lastPageId());
+        for (PostingBlock block : blocks) {
+            PostingList postings = PostingList.decode(block.getData());
+            if (postings.isEmpty()) {
+                continue;
+            }
+            cursor = candidates.lowerBound(postings.firstPageId(), cursor);
+            int end = candidates.lowerBound(postings.lastPageId(), cursor);
+            if (end < candidates.size() && candidates.pageId(end) == postings.lastPageId()) {
+                end++;
+            }
+            if (cursor < end) {
+                matches.add(candidates.slice(cursor, end).intersect(postings));
+            }
+        }
+        return PostingList.concat(matches);
+    }
+
+    @Override
+    public int recalculateFrequencies (Site site) {
+        return lemmaRepository.recalculateFrequenciesFromBlocks(site.getId());
+    }
+
+    private Map<Integer, PostingBlock> findTailBlocks (Set<Lemma> lemmas, int blockSize) {
+        Map<Integer, PostingBlock> tails = new HashMap<>();
+        List<Lemma> lemmaList = lemmas.stream().filter(lemma -> lemma.getId() != null).toList();
+        for (int from = 0; from < lemmaList.size(); from += LEMMA_LOOKUP_CHUNK) {
+            List<Lemma> chunk = lemmaList.subList(from, Math.min(from + LEMMA_LOOKUP_CHUNK, lemmaList.size()));
+            for (PostingBlock block : postingBlockRepository.findByLemmaInAndPostingCountLessThan(chunk, blockSize)) {
+                tails.merge(block.getLemma().getId(), block,
+                        (a, b) -> a.getLastPageId() >= b.getLastPageId() ? a : b);
+            }
+        }
+        return tails;
+    }
+
+    private PostingBlock newBlock (Lemma lemma) {
+        PostingBlock block = new PostingBlock();
+        block.setLemma(lemma);
+        return block;
+    }
+
+    private void fill (PostingBlock block, PostingList postings) {
+        block.setFirstPageId(postings.firstPageId());
+        block.setLastPageId(postings.lastPageId());
+        block.setPostingCount(postings.size());
+        block.setData(postings.encode());
+    }
+}
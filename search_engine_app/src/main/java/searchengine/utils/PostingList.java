@@ -0,0 +1,257 @@
+package searchengine.utils;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+/**
+ * Список страниц леммы, отсортированный по id страницы, с rank каждой страницы.
+ * В блоке хранится в виде: число записей, затем для каждой записи разность id
+ * с предыдущей страницей и rank, все числа в varint (7 бит на байт).
+ * Rank в индексе - число вхождений леммы на странице, поэтому хранится целым.
+ */
+public final class PostingList {
+    private static final PostingList EMPTY = new PostingList(new int[0], new float[0]);
+
+    private final int[] pageIds;
+    private final float[] ranks;
+
+    private PostingList (int[] pageIds, float[] ranks) {
+        this.pageIds = pageIds;
+        this.ranks = ranks;
+    }
+
+    public static PostingList empty () {
+        return EMPTY;
+    }
+
+    /**
+     * @param pageIds id страниц без повторов, в любом порядке
+     */
+    public static PostingList of (int[] pageIds, float[] ranks) {
+        Integer[] order = new Integer[pageIds.length];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> Integer.compare(pageIds[a], pageIds[b]));
+        int[] sortedIds = new int[pageIds.length];
+        float[] sortedRanks = new float[pageIds.length];
+        for (int i = 0; i < order.length; i++) {
+            sortedIds[i] = pageIds[order[i]];
+            sortedRanks[i] = ranks[order[i]];
+        }
+        return new PostingList(sortedIds, sortedRanks);
+    }
+
+    /**
+     * Склеивает списки, упорядоченные по первой странице, за один проход. Список, который пересекается
+     * с уже склеенными страницами, вливается через {@link #merge}, и его rank берется для общих страниц.
+     */
+    public static PostingList concat (List<PostingList> lists) {
+        int total = lists.stream().mapToInt(PostingList::size).sum();
+        int[] ids = new int[total];
+        float[] concatenatedRanks = new float[total];
+        int n = 0;
+        for (PostingList list : lists) {
+            if (list.isEmpty()) {
+                continue;
+            }
+            if (n > 0 && list.firstPageId() <= ids[n - 1]) {
+                PostingList merged = new PostingList(Arrays.copyOf(ids, n), Arrays.copyOf(concatenatedRanks, n)).merge(list);
+                n = merged.size();
+                System.arraycopy(merged.pageIds, 0, ids, 0, n);
+                System.arraycopy(merged.ranks, 0, concatenatedRanks, 0, n);
+            } else {
+                System.arraycopy(list.pageIds, 0, ids, n, list.size());
+                System.arraycopy(list.ranks, 0, concatenatedRanks, n, list.size());
+                n += list.size();
+            }
+        }
+        return n == total ? new PostingList(ids, concatenatedRanks)
+                : new PostingList(Arrays.copyOf(ids, n), Arrays.copyOf(concatenatedRanks, n));
+    }
+
+    /**
+     * Слияние k списков через кучу их текущих страниц за O(N log k). Если страница есть в нескольких
+     * списках, берется rank из списка с большим индексом, как при последовательных вызовах {@link #merge}.
+     */
+    public static PostingList mergeAll (List<PostingList> lists) {
+        // [индекс списка, позиция в списке]; при равных страницах первым идет список с меньшим индексом
+        PriorityQueue<int[]> heads = new PriorityQueue<>(Comparator
+                .<int[]>comparingInt(head -> lists.get(head[0]).pageIds[head[1]])
+                .thenComparingInt(head -> head[0]));
+        int total = 0;
+        for (int i = 0; i < lists.size(); i++) {
+            total += lists.get(i).size();
+            if (!lists.get(i).isEmpty()) {
+                heads.add(new int[]{i, 0});
+            }
+        }
+        int[] ids = new int[total];
+        float[] mergedRanks = new float[total];
+        int n = 0;
+        while (!heads.isEmpty()) {
+            int[] head = heads.poll();
+            PostingList list = lists.get(head[0]);
+            int pageId = list.pageIds[head[1]];
+            if (n > 0 && ids[n - 1] == pageId) {
+                mergedRanks[n - 1] = list.ranks[head[1]];
+            } else {
+                ids[n] = pageId;
+                mergedRanks[n++] = list.ranks[head[1]];
+            }
+            if (++head[1] < list.size()) {
+                heads.add(head);
+            }
+        }
+        return n == total ? new PostingList(ids, mergedRanks)
+                : new PostingList(Arrays.copyOf(ids, n), Arrays.copyOf(mergedRanks, n));
+    }
+
+    public int size () {
+        return pageIds.length;
+    }
+
+    public boolean isEmpty () {
+        return pageIds.length == 0;
+    }
+
+    public int pageId (int i) {
+        return pageIds[i];
+    }
+
+    public float rank (int i) {
+        return ranks[i];
+    }
+
+    public int firstPageId () {
+        return pageIds[0];
+    }
+
+    public int lastPageId () {
+        return pageIds[pageIds.length - 1];
+    }
+
+    /**
+     * Позиция первой страницы с id не меньше pageId среди позиций начиная с from
+     */
+    public int lowerBound (int pageId, int from) {
+        int index = Arrays.binarySearch(pageIds, from, pageIds.length, pageId);
+        return index >= 0 ? index : -index - 1;
+    }
+
+    public PostingList slice (int from, int to) {
+        return new PostingList(Arrays.copyOfRange(pageIds, from, to), Arrays.copyOfRange(ranks, from, to));
+    }
+
+    /**
+     * Объединение списков. Если страница есть в обоих, берется rank из other.
+     */
+    public PostingList merge (PostingList other) {
+        int[] ids = new int[size() + other.size()];
+        float[] mergedRanks = new float[ids.length];
+        int i = 0, j = 0, n = 0;
+        while (i < size() || j < other.size()) {
+            if (j == other.size() || (i < size() && pageIds[i] < other.pageIds[j])) {
+                ids[n] = pageIds[i];
+                mergedRanks[n++] = ranks[i++];
+            } else {
+                if (i < size() && pageIds[i] == other.pageIds[j]) {
+                    i++;
+                }
+                ids[n] = other.pageIds[j];
+                mergedRanks[n++] = other.ranks[j++];
+            }
+        }
+        return new PostingList(Arrays.copyOf(ids, n), Arrays.copyOf(mergedRanks, n));
+    }
+
+    /**
+     * Страницы, которые есть в обоих списках, с суммой rank.
+     */
+    public PostingList intersect (PostingList other) {
+        int[] ids = new int[Math.min(size(), other.size())];
+        float[] summedRanks = new float[ids.length];
+        int i = 0, j = 0, n = 0;
+        while (i < size() && j < other.size()) {
+            if (pageIds[i] < other.pageIds[j]) {
+                i++;
+            } else if (pageIds[i] > other.pageIds[j]) {
+                j++;
+            } else {
+                ids[n] = pageIds[i];
+                summedRanks[n++] = ranks[i++] + other.ranks[j++];
+            }
+        }
+        return new PostingList(Arrays.copyOf(ids, n), Arrays.copyOf(summedRanks, n));
+    }
+
+    public PostingList without (Set<Integer> removedPageIds) {
+        int[] ids = new int[size()];
+        float[] keptRanks = new float[size()];
+        int n = 0;
+        for (int i = 0; i < size(); i++) {
+            if (!removedPageIds.contains(pageIds[i])) {
+                ids[n] = pageIds[i];
+                keptRanks[n++] = ranks[i];
+            }
+        }
+        return n == size() ? this : new PostingList(Arrays.copyOf(ids, n), Arrays.copyOf(keptRanks, n));
+    }
+
+    public byte[] encode () {
+        ByteArrayOutputStream output = new ByteArrayOutputStream(size() * 3 + 5);
+        writeVarInt(output, size());
+        int previous = 0;
+        for (int i = 0; i < size(); i++) {
+            writeVarInt(output, pageIds[i] - previous);
+            writeVarInt(output, Math.round(ranks[i]));
+            previous = pageIds[i];
+        }
+        return output.toByteArray();
+    }
+
+    public static PostingList decode (byte[] data) {
+        return decode(ByteBuffer.wrap(data));
+    }
+
+    /**
+     * Читает список с текущей позиции буфера, позиция сдвигается за конец списка.
+     */
+    public static PostingList decode (ByteBuffer data) {
+        int count = readVarInt(data);
+        int[] ids = new int[count];
+        float[] decodedRanks = new float[count];
+        int previous = 0;
+        for (int i = 0; i < count; i++) {
+            previous += readVarInt(data);
+            ids[i] = previous;
+            decodedRanks[i] = readVarInt(data);
+        }
+        return new PostingList(ids, decodedRanks);
+    }
+
+    private static void writeVarInt (ByteArrayOutputStream output, int value) {
+        while ((value & ~0x7F) != 0) {
+            output.write((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        output.write(value);
+    }
+
+    private static int readVarInt (ByteBuffer data) {
+        int value = 0;
+        int shift = 0;
+        byte current;
+        do {
+            current = data.get();
+            value |= (current & 0x7F) << shift;
+            shift += 7;
+        } while ((current & 0x80) != 0);
+        return value;
+    }
+}
@@ -0,0 +1,38 @@
+package searchengine.utils;
+
+import searchengine.model.entities.Lemma;
+import searchengine.model.entities.Site;
+
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Хранилище списков страниц лемм вместо таблицы index
+ * (posting-settings.storage: BLOCKS или SEGMENTS).
+ */
+public interface PostingStore {
+    void append (Map<Lemma, PostingList> lemmaToPostings);
+
+    void remove (Map<Lemma, Set<Integer>> lemmaToPageIds);
+
+    PostingList read (Lemma lemma);
+
+    /**
+     * Страницы из candidates, на которых есть лемма, с суммой rank.
+     */
+    PostingList intersect (Lemma lemma, PostingList candidates);
+
+    /**
+     * Записывает в леммы сайта число страниц, на которых они встречаются.
+     *
+     * @return число обновленных лемм
+     */
+    int recalculateFrequencies (Site site);
+
+    /**
+     * Вызывается перед удалением сайта, пока его страницы еще есть в БД.
+     * Хранилищам в БД ничего делать не нужно: их таблицы очищает {@link SitePurger}.
+     */
+    default void removeSite (Site site) {
+    }
+}
@@ -0,0 +1,46 @@
+package searchengine.utils;
+
+import lombok.extern.log4j.Log4j2;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * Загружает страницы через другой {@link PageFetcher} и сохраняет каждый ответ в архив обхода.
+ */
+@Log4j2
+public class RecordingPageFetcher implements PageFetcher, Closeable {
+    private final PageFetcher delegate;
+    private final CrawlArchive.Writer writer;
+
+    public RecordingPageFetcher (PageFetcher delegate, Path archive) throws IOException {
+        this.delegate = delegate;
+        this.writer = new CrawlArchive.Writer(archive);
+        log.info("Ответы сайтов записываются в архив " + archive);
+    }
+
+    @Override
+    public FetchedPage fetch (String link) throws IOException {
+        FetchedPage page = delegate.fetch(link);
+        writer.write(page);
+        return page;
+    }
+
+    @Override
+    public FetchedPage fetchResource (String link) throws IOException {
+        FetchedPage resource = delegate.fetchResource(link);
+        writer.write(resource);
+        return resource;
+    }
+
+    @Override
+    public long getRequestDelay () {
+        return delegate.getRequestDelay();
+    }
+
+    @Override
+    public void close () throws IOException {
+        writer.close();
+    }
+}
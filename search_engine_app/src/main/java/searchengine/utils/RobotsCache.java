@@ -0,0 +1,86 @@
+package searchengine.utils;
+
+import lombok.extern.log4j.Log4j2;
+import org.springframework.stereotype.Component;
+import searchengine.config.CrawlSeedSettings;
+import searchengine.config.WebConnection;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Загружает robots.txt сайта и хранит разобранные правила robots-cache-ttl-minutes минут.
+ * Если robots.txt нет или он недоступен, обход сайта ничем не ограничивается.
+ */
+@Log4j2
+@Component
+public class RobotsCache {
+    private final PageFetcher pageFetcher;
+    private final WebConnection webConnection;
+    private final CrawlSeedSettings settings;
+    private final Map<String, CachedRules> siteToRules = new ConcurrentHashMap<>();
+
+    public RobotsCache (PageFetcher pageFetcher, WebConnection webConnection, CrawlSeedSettings settings) {
+        this.pageFetcher = pageFetcher;
+        this.webConnection = webConnection;
+        this.settings = settings;
+    }
+
+    /**
+     * robots.txt загружает только поток, который поместил в кэш новую запись, вне блокировок карты.
+     * Остальные потоки, запросившие тот же сайт, ждут окончания этой загрузки.
+     *
+     * @param siteUrl адрес сайта с "/" в конце, как в конфигурации
+     */
+    public RobotsRules getRules (String siteUrl) {
+        if (!settings.isRobotsEnabled()) {
+            return RobotsRules.allowAll();
+        }
+        long ttl = TimeUnit.MINUTES.toNanos(settings.getRobotsCacheTtlMinutes());
+        while (true) {
+            long now = System.nanoTime();
+            CachedRules cached = siteToRules.get(siteUrl);
+            if (cached != null && now - cached.loadedAt() < ttl) {
+                return cached.rules().join();
+            }
+            CachedRules loading = new CachedRules(new CompletableFuture<>(), now);
+            boolean owner = cached == null
+                    ? siteToRules.putIfAbsent(siteUrl, loading) == null
+                    : siteToRules.replace(siteUrl, cached, loading);
+            if (owner) {
+                try {
+                    loading.rules().complete(load(siteUrl));
+                } catch (RuntimeException e) {
+                    siteToRules.remove(siteUrl, loading);
+                    loading.rules().completeExceptionally(e);
+                    throw e;
+                }
+                return loading.rules().join();
+            }
+        }
+    }
+
+    private RobotsRules load (String siteUrl) {
+        String link = siteUrl.replaceAll("/$", "") + "/robots.txt";
+        try {
+            FetchedPage robots = pageFetcher.fetchResource(link);
+            if (robots.statusCode() >= 400) {
+                log.info("robots.txt не найден (" + robots.statusCode() + "): " + link);
+                return RobotsRules.allowAll();
+            }
+            RobotsRules rules = RobotsRules.parse(robots.body(), webConnection.getAgent());
+            log.info("Загружен " + link + ", Crawl-delay: " + rules.getCrawlDelayMs() + " мс, sitemap: "
+                    + rules.getSitemaps().size());
+            return rules;
+        } catch (IOException e) {
+            log.error("Не удалось загрузить " + link + ": " + e.getMessage());
+            return RobotsRules.allowAll();
+        }
+    }
+
+    private record CachedRules (CompletableFuture<RobotsRules> rules, long loadedAt) {
+    }
+}
@@ -0,0 +1,154 @@
+package searchengine.utils;
+
+import java.util.*;
+
+/**
+ * Правила robots.txt для одного User-agent: Allow/Disallow, Crawl-delay и ссылки на sitemap.
+ * Используется группа, в User-agent которой упоминается наш агент, иначе группа "*".
+ * Из подходящих к пути правил действует самое длинное, при равной длине Allow.
+ * Поддерживаются шаблоны * и $ в конце правила.
+ */
+public final class RobotsRules {
+    private static final RobotsRules ALLOW_ALL = new RobotsRules(List.of(), 0, List.of());
+
+    private final List<Rule> rules;
+    private final long crawlDelayMs;
+    private final List<String> sitemaps;
+
+    private RobotsRules (List<Rule> rules, long crawlDelayMs, List<String> sitemaps) {
+        this.rules = rules;
+        this.crawlDelayMs = crawlDelayMs;
+        this.sitemaps = sitemaps;
+    }
+
+    public static RobotsRules allowAll () {
+        return ALLOW_ALL;
+    }
+
+    public static RobotsRules parse (String robotsTxt, String userAgent) {
+        String agent = userAgent == null ? "" : userAgent.toLowerCase(Locale.ROOT);
+        List<Group> groups = new ArrayList<>();
+        List<String> sitemaps = new ArrayList<>();
+        Group current = null;
+        boolean readingAgents = false;
+        for (String rawLine : robotsTxt.split("\r?\n|\r")) {
+            String line = rawLine.replaceFirst("#.*", "").trim();
+            int colon = line.indexOf(':');
+            if (colon < 0) {
+                continue;
+            }
+            String field = line.substring(0, colon).trim().toLowerCase(Locale.ROOT);
+            String value = line.substring(colon + 1).trim();
+            switch (field) {
+                case "user-agent" -> {
+                    if (!readingAgents) {
+                        current = new Group();
+                        groups.add(current);
+                    }
+                    current.agents.add(value.toLowerCase(Locale.ROOT));
+                    readingAgents = true;
+                }
+                case "allow", "disallow" -> {
+                    readingAgents = false;
+                    // пустой Disallow ничего не запрещает
+                    if (current != null && !value.isEmpty()) {
+                        current.rules.add(new Rule(value, field.equals("allow")));
+                    }
+                }
+                case "crawl-delay" -> {
+                    readingAgents = false;
+                    if (current != null) {
+                        current.crawlDelayMs = parseDelay(value);
+                    }
+                }
+                case "sitemap" -> {
+                    if (!value.isEmpty()) {
+                        sitemaps.add(value);
+                    }
+                }
+                default -> readingAgents = false;
+            }
+        }
+
+        Group selected = null;
+        for (Group group : groups) {
+            if (group.agents.stream().anyMatch(name -> !name.equals("*") && !name.isEmpty() && agent.contains(name))) {
+                selected = group;
+                break;
+            }
+        }
+        if (selected == null) {
+            selected = groups.stream().filter(group -> group.agents.contains("*")).findFirst().orElse(null);
+        }
+        if (selected == null) {
+            return new RobotsRules(List.of(), 0, List.copyOf(sitemaps));
+        }
+        return new RobotsRules(List.copyOf(selected.rules), selected.crawlDelayMs, List.copyOf(sitemaps));
+    }
+
+    /**
+     * @param path путь страницы вместе со строкой запроса, начиная с "/"
+     */
+    public boolean isAllowed (String path) {
+        Rule matched = null;
+        for (Rule rule : rules) {
+            if (rule.matches(path) && (matched == null || rule.length() > matched.length()
+                    || rule.length() == matched.length() && rule.allow())) {
+                matched = rule;
+            }
+        }
+        return matched == null || matched.allow();
+    }
+
+    public long getCrawlDelayMs () {
+        return crawlDelayMs;
+    }
+
+    public List<String> getSitemaps () {
+        return sitemaps;
+    }
+
+    private static long parseDelay (String value) {
+        try {
+            return Math.max(0, (long) (Double.parseDouble(value) * 1000));
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    private static final class Group {
+        private final List<String> agents = new ArrayList<>();
+        private final List<Rule> rules = new ArrayList<>();
+        private long crawlDelayMs;
+    }
+
+    private record Rule (String pattern, boolean allow) {
+        int length () {
+            return pattern.length();
+        }
+
+        boolean matches (String path) {
+            boolean anchored = pattern.endsWith("$");
+            String body = anchored ? pattern.substring(0, pattern.length() - 1) : pattern;
+            return matches(path, 0, body, 0, anchored);
+        }
+
+        private static boolean matches (String path, int pathFrom, String pattern, int patternFrom, boolean anchored) {
+            int star = pattern.indexOf('*', patternFrom);
+            String literal = star < 0 ? pattern.substring(patternFrom) : pattern.substring(patternFrom, star);
+            if (!path.startsWith(literal, pathFrom)) {
+                return false;
+            }
+            int next = pathFrom + literal.length();
+            if (star < 0) {
+                return !anchored || next == path.length();
+            }
+            for (int i = next; i <= path.length(); i++) {
+                if (matches(path, i, pattern, star + 1, anchored)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+}
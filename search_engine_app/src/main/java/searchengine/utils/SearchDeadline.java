@@ -0,0 +1,57 @@
+package searchengine.utils;
+
+/**
+ * Срок выполнения поискового запроса. Этапы поиска проверяют его между шагами
+ * и при истечении прекращают работу, а ответ помечается как неполный.
+ */
+public final class SearchDeadline {
+    private final long deadlineNanos;
+    private final boolean unlimited;
+    private volatile boolean partial;
+
+    private SearchDeadline (long deadlineNanos, boolean unlimited) {
+        this.deadlineNanos = deadlineNanos;
+        this.unlimited = unlimited;
+    }
+
+    public static SearchDeadline none () {
+        return new SearchDeadline(0, true);
+    }
+
+    public static SearchDeadline after (long millis) {
+        return new SearchDeadline(System.nanoTime() + millis * 1_000_000L, false);
+    }
+
+    public boolean isExpired () {
+        return Thread.currentThread().isInterrupted() || !unlimited && System.nanoTime() - deadlineNanos >= 0;
+    }
+
+    /**
+     * @return true, если срок истек; результат при этом отмечается как неполный
+     */
+    public boolean cutOff () {
+        if (isExpired()) {
+            partial = true;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * @param unlimitedMs значение для поиска без срока
+     */
+    public long remainingMs (long unlimitedMs) {
+        return unlimited ? unlimitedMs : Math.max(0, (deadlineNanos - System.nanoTime()) / 1_000_000L);
+    }
+
+    /**
+     * Отмечает результат как неполный, например если не ответил один из шардов
+     */
+    public void markPartial () {
+        partial = true;
+    }
+
+    public boolean isPartial () {
+        return partial;
+    }
+}
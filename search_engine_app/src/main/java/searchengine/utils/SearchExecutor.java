@@ -0,0 +1,92 @@
+package searchengine.utils;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.binder.jvm.ExecutorServiceMetrics;
+import org.springframework.stereotype.Component;
+import searchengine.config.SearchSettings;
+
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.function.Supplier;
+
+/**
+ * Отдельный пул потоков для поисковых запросов с ограниченной очередью.
+ * Когда очередь заполнена, запрос сразу отклоняется, а не ждет свободный поток.
+ * Второй пул выполняет части одного запроса (поиск по отдельным сайтам) параллельно.
+ */
+@Component
+public class SearchExecutor {
+    private final ThreadPoolExecutor executor;
+    private final ThreadPoolExecutor siteExecutor;
+
+    public SearchExecutor (SearchSettings settings, MeterRegistry meterRegistry) {
+        executor = new ThreadPoolExecutor(settings.getThreads(), settings.getThreads(), 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(settings.getQueueCapacity()), new ThreadPoolExecutor.AbortPolicy());
+        new ExecutorServiceMetrics(executor, "search", Tags.empty()).bindTo(meterRegistry);
+        siteExecutor = new ThreadPoolExecutor(settings.getSiteThreads(), settings.getSiteThreads(), 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(settings.getSiteQueueCapacity()), new ThreadPoolExecutor.CallerRunsPolicy());
+        new ExecutorServiceMetrics(siteExecutor, "search_sites", Tags.empty()).bindTo(meterRegistry);
+    }
+
+    /**
+     * @throws RejectedExecutionException если очередь запросов заполнена
+     */
+    public <T> CompletableFuture<T> submit (Supplier<T> task) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        Future<?> future = executor.submit(() -> {
+            try {
+                result.complete(task.get());
+            } catch (RuntimeException e) {
+                result.completeExceptionally(e);
+            }
+        });
+        result.whenComplete((value, error) -> {
+            if (result.isCancelled()) {
+                future.cancel(true);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Выполняет задачи параллельно и возвращает их результаты в том же порядке.
+     * Единственная задача выполняется в вызывающем потоке. Если вызывающий поток прерван
+     * (запрос отменен через {@link #submit}), задачи тоже прерываются.
+     *
+     * @throws CancellationException если вызывающий поток прерван
+     */
+    public <T> List<T> invokeAll (List<Supplier<T>> tasks) {
+        if (tasks.size() == 1) {
+            return List.of(tasks.get(0).get());
+        }
+        List<Future<T>> futures = tasks.stream()
+                .map(task -> siteExecutor.submit(task::get))
+                .toList();
+        List<T> results = new ArrayList<>(futures.size());
+        try {
+            for (Future<T> future : futures) {
+                results.add(future.get());
+            }
+            return results;
+        } catch (InterruptedException e) {
+            futures.forEach(future -> future.cancel(true));
+            Thread.currentThread().interrupt();
+            throw new CancellationException("Поиск отменен");
+        } catch (ExecutionException e) {
+            futures.forEach(future -> future.cancel(true));
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    @PreDestroy
+    public void shutdown () {
+        executor.shutdownNow();
+        siteExecutor.shutdownNow();
+    }
+}
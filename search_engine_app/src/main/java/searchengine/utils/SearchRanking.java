@@ -0,0 +1,147 @@
+package searchengine.utils;
+
+import searchengine.model.entities.Lemma;
+import searchengine.model.entities.Page;
+
+import java.util.*;
+
+/**
+ * Вычисления поиска, не зависящие от БД: отбор ключевых слов,
+ * отбор лучших страниц и расчет релевантности.
+ */
+public final class SearchRanking {
+    private static final double MAX_FREQUENCY_SHARE = 0.7;
+    private static final int MIN_PAGE_COUNT = 50;
+    private static final int DEADLINE_CHECK_INTERVAL = 4096;
+    /**
+     * Порядок выдачи: по убыванию релевантности, при равной релевантности по id страницы,
+     * чтобы страницы выдачи не перекрывались
+     */
+    public static final Comparator<Map.Entry<Page, Double>> RELEVANCE_ORDER =
+            Map.Entry.<Page, Double>comparingByValue().reversed()
+                    .thenComparing(entry -> entry.getKey().getId());
+    /**
+     * Порядок ключевых слов: от самой редкой леммы к самой частой. Леммы с равной частотой
+     * (разных сайтов или при отложенном подсчете частот) различаются по id.
+     */
+    public static final Comparator<Lemma> KEY_WORD_ORDER =
+            Comparator.comparingInt(Lemma::getFrequency).thenComparing(Lemma::getId);
+
+    private SearchRanking () {
+    }
+
+    /**
+     * Слишком частые леммы (встречаются на 70% страниц и больше) не используются как ключевые слова.
+     *
+     * @param candidates леммы запроса, найденные в БД, сгруппированные по тексту леммы
+     */
+    public static List<Lemma> selectKeyWords (Map<String, List<Lemma>> candidates, long pageCount) {
+        List<Lemma> keyWords = new ArrayList<>();
+        candidates.values().forEach(lemmaList -> {
+            long totalFrequency = 0;
+            for (Lemma lemma : lemmaList) {
+                totalFrequency += lemma.getFrequency();
+            }
+            if (isKeyWord(totalFrequency, pageCount)) {
+                keyWords.addAll(lemmaList);
+            }
+        });
+        keyWords.sort(KEY_WORD_ORDER);
+        return keyWords;
+    }
+
+    public static boolean isKeyWord (long frequency, long pageCount) {
+        return frequency < pageCount * MAX_FREQUENCY_SHARE || pageCount < MIN_PAGE_COUNT;
+    }
+
+    /**
+     * Первые k страниц пересечения в порядке {@link #RELEVANCE_ORDER}: id страницы и сумма rank.
+     * Сущности страниц для них загружаются уже после отбора.
+     */
+    public static List<Map.Entry<Integer, Double>> topPageIds (PostingList matches, int k) {
+        return topPageIds(matches, k, SearchDeadline.none());
+    }
+
+    /**
+     * По истечении срока просмотр страниц прекращается, отбираются лучшие из просмотренных
+     */
+    public static List<Map.Entry<Integer, Double>> topPageIds (PostingList matches, int k, SearchDeadline deadline) {
+        Comparator<Map.Entry<Integer, Double>> order = Map.Entry.<Integer, Double>comparingByValue().reversed()
+                .thenComparing(Map.Entry.comparingByKey());
+        PriorityQueue<Map.Entry<Integer, Double>> top = new PriorityQueue<>(order.reversed());
+        for (int i = 0; i < matches.size() && k > 0; i++) {
+            if (i % DEADLINE_CHECK_INTERVAL == DEADLINE_CHECK_INTERVAL - 1 && deadline.cutOff()) {
+                break;
+            }
+            Map.Entry<Integer, Double> entry = Map.entry(matches.pageId(i), (double) matches.rank(i));
+            if (top.size() < k) {
+                top.add(entry);
+            } else if (order.compare(entry, top.peek()) < 0) {
+                top.poll();
+                top.add(entry);
+            }
+        }
+        List<Map.Entry<Integer, Double>> result = new ArrayList<>(top);
+        result.sort(order);
+        return result;
+    }
+
+    /**
+     * Слияние уже упорядоченных списков (по одному на сайт) в первые k страниц общей выдачи.
+     */
+    public static List<Map.Entry<Page, Double>> mergeTopPages (List<List<Map.Entry<Page, Double>>> sortedLists, int k) {
+        return mergeTopPages(sortedLists, k, RELEVANCE_ORDER);
+    }
+
+    /**
+     * Слияние списков, упорядоченных по order, в первые k элементов
+     */
+    public static <T> List<T> mergeTopPages (List<List<T>> sortedLists, int k, Comparator<T> order) {
+        PriorityQueue<ListCursor<T>> heads = new PriorityQueue<>(Comparator.comparing(ListCursor::head, order));
+        for (List<T> list : sortedLists) {
+            if (!list.isEmpty()) {
+                heads.add(new ListCursor<>(list));
+            }
+        }
+        List<T> merged = new ArrayList<>();
+        while (merged.size() < k && !heads.isEmpty()) {
+            ListCursor<T> cursor = heads.poll();
+            merged.add(cursor.head());
+            if (cursor.advance()) {
+                heads.add(cursor);
+            }
+        }
+        return merged;
+    }
+
+    /**
+     * Делит абсолютную релевантность на максимальную. Список должен быть упорядочен
+     * по {@link #RELEVANCE_ORDER}, максимум - его первый элемент.
+     */
+    public static List<Map.Entry<Page, Double>> normalizeRelevance (List<Map.Entry<Page, Double>> sortedPages) {
+        if (sortedPages.isEmpty()) {
+            return sortedPages;
+        }
+        double maxAbsoluteRelevance = sortedPages.get(0).getValue();
+        return sortedPages.stream()
+                .map(entry -> Map.entry(entry.getKey(), entry.getValue() / maxAbsoluteRelevance))
+                .toList();
+    }
+
+    private static final class ListCursor<T> {
+        private final List<T> list;
+        private int position;
+
+        ListCursor (List<T> list) {
+            this.list = list;
+        }
+
+        T head () {
+            return list.get(position);
+        }
+
+        boolean advance () {
+            return ++position < list.size();
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package searchengine.utils;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import searchengine.dto.responses.ErrorSearchResponse;
+import searchengine.dto.responses.SearchCountResponse;
+import searchengine.dto.search.SearchData;
+import searchengine.services.SearchResultListener;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Пишет результаты потокового поиска в ответ и сбрасывает буфер после каждого события.
+ * NDJSON: по одному JSON-объекту в строке - число найденных страниц, затем результаты.
+ * SSE: те же объекты в событиях count, result и error, в конце событие end.
+ * После {@link #finish()} запись игнорируется: поиск, отмененный по сроку, может еще дописывать результаты.
+ */
+public class SearchStreamWriter implements SearchResultListener {
+    public static final String NDJSON = "application/x-ndjson";
+
+    public enum Format {
+        NDJSON, SSE
+    }
+
+    private final OutputStream output;
+    private final ObjectMapper objectMapper;
+    private final Format format;
+    private boolean finished;
+
+    public SearchStreamWriter (OutputStream output, ObjectMapper objectMapper, Format format) {
+        this.output = output;
+        this.objectMapper = objectMapper;
+        this.format = format;
+    }
+
+    @Override
+    public synchronized void onCount (long count) throws IOException {
+        write("count", new SearchCountResponse(count));
+    }
+
+    @Override
+    public synchronized void onResult (SearchData data) throws IOException {
+        write("result", data);
+    }
+
+    @Override
+    public synchronized void onError (String error) throws IOException {
+        write("error", new ErrorSearchResponse(error));
+    }
+
+    public synchronized void finish () throws IOException {
+        if (format == Format.SSE && !finished) {
+            writeRaw("event: end\ndata: {}\n\n");
+        }
+        finished = true;
+    }
+
+    private void write (String event, Object payload) throws IOException {
+        if (finished) {
+            return;
+        }
+        String json = objectMapper.writeValueAsString(payload);
+        writeRaw(format == Format.SSE ? "event: " + event + "\ndata: " + json + "\n\n" : json + "\n");
+    }
+
+    private void writeRaw (String text) throws IOException {
+        output.write(text.getBytes(StandardCharsets.UTF_8));
+        output.flush();
+    }
+}
@@ -0,0 +1,391 @@
+package searchengine.utils;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.log4j.Log4j2;
+import searchengine.config.PostingSettings;
+import searchengine.model.entities.Lemma;
+import searchengine.model.entities.Site;
+import searchengine.model.repositories.LemmaRepository;
+import searchengine.model.repositories.PageRepository;
+
+import java.io.*;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.IntFunction;
+import java.util.stream.IntStream;
+
+/**
+ * Хранилище списков страниц в файлах сегментов рядом с MySQL (posting-settings.storage: SEGMENTS).
+ * Каждый пакет индексации записывается новым неизменяемым сегментом {@link IndexSegment}.
+ * Удаленные страницы не вырезаются из сегментов, а запоминаются в deleted-pages.bin
+ * и отфильтровываются при чтении. Фоновое слияние объединяет сегменты близкого размера
+ * по merge-factor штук, поэтому число сегментов растет логарифмически от объема индекса.
+ * Слитый сегмент записывается уже без удаленных страниц, и отметки страниц, которых больше нет
+ * ни в одном сегменте, после слияния удаляются вместе с перезаписью deleted-pages.bin.
+ * Внутри транзакции БД сегменты и отметки удаления пишутся после ее фиксации.
+ * Кэшированием страниц сегментов занимается ОС.
+ */
+@Log4j2
+public class SegmentPostingStore implements PostingStore, Closeable {
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".seg";
+    private static final String DELETED_PAGES = "deleted-pages.bin";
+    private static final long MIN_TIER_BYTES = 64 * 1024;
+
+    private final Path directory;
+    private final PostingSettings settings;
+    private final LemmaRepository lemmaRepository;
+    private final PageRepository pageRepository;
+    private final AtomicLong nextGeneration = new AtomicLong();
+    private final Object segmentsLock = new Object();
+    private volatile List<IndexSegment> segments = List.of();
+    /**
+     * Заменяется целиком под deletedPagesLock, чтобы читатель мог взять отметки раньше сегментов
+     */
+    private volatile Set<Integer> deletedPages = Set.of();
+    private final Object deletedPagesLock = new Object();
+    private DataOutputStream deletedPagesLog;
+    private final ExecutorService merger = Executors.newSingleThreadExecutor();
+    private volatile boolean closing;
+
+    public SegmentPostingStore (PostingSettings settings, LemmaRepository lemmaRepository,
+                                PageRepository pageRepository, MeterRegistry meterRegistry) throws IOException {
+        this(Path.of(settings.getSegmentsPath()), settings, lemmaRepository, pageRepository, meterRegistry);
+    }
+
+    /**
+     * @param directory каталог сегментов, если он отличается от posting-settings.segments-path
+     */
+    public SegmentPostingStore (Path directory, PostingSettings settings, LemmaRepository lemmaRepository,
+                                PageRepository pageRepository, MeterRegistry meterRegistry) throws IOException {
+        this.directory = directory;
+        this.settings = settings;
+        this.lemmaRepository = lemmaRepository;
+        this.pageRepository = pageRepository;
+        Files.createDirectories(directory);
+
+        List<IndexSegment> opened = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                if (name.endsWith(".tmp")) {
+                    Files.delete(file);
+                } else if (name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX)) {
+                    long generation = Long.parseLong(name.substring(SEGMENT_PREFIX.length(),
+                            name.length() - SEGMENT_SUFFIX.length()));
+                    opened.add(IndexSegment.open(file, generation));
+                    nextGeneration.accumulateAndGet(generation + 1, Math::max);
+                }
+            }
+        }
+        opened.sort(Comparator.comparingLong(IndexSegment::getGeneration));
+        segments = List.copyOf(opened);
+
+        Path deletedPagesFile = directory.resolve(DELETED_PAGES);
+        if (Files.exists(deletedPagesFile)) {
+            Set<Integer> loaded = new HashSet<>();
+            try (DataInputStream input = new DataInputStream(new BufferedInputStream(Files.newInputStream(deletedPagesFile)))) {
+                for (long i = Files.size(deletedPagesFile) / Integer.BYTES; i > 0; i--) {
+                    loaded.add(input.readInt());
+                }
+            }
+            deletedPages = Set.copyOf(loaded);
+        }
+        deletedPagesLog = openDeletedPagesLog();
+        pruneDeletedPages(deletedPages);
+
+        Gauge.builder("searchengine.index.segments", this, store -> store.segments.size())
+                .register(meterRegistry);
+        log.info("Открыто сегментов индекса: " + segments.size() + " в каталоге " + directory.toAbsolutePath());
+        merger.execute(this::mergeSegments);
+    }
+
+    @Override
+    public void append (Map<Lemma, PostingList> lemmaToPostings) {
+        TransactionHooks.afterCommit(() -> appendSegment(lemmaToPostings));
+    }
+
+    private void appendSegment (Map<Lemma, PostingList> lemmaToPostings) {
+        Map<Integer, PostingList> idToPostings = new TreeMap<>();
+        lemmaToPostings.forEach((lemma, postings) -> {
+            if (!postings.isEmpty()) {
+                idToPostings.put(lemma.getId(), postings);
+            }
+        });
+        if (idToPostings.isEmpty()) {
+            return;
+        }
+        int[] lemmaIds = idToPostings.keySet().stream().mapToInt(Integer::intValue).toArray();
+        IndexSegment segment = writeSegment(lemmaIds, idToPostings::get);
+        synchronized (segmentsLock) {
+            List<IndexSegment> updated = new ArrayList<>(segments);
+            updated.add(segment);
+            segments = List.copyOf(updated);
+        }
+        merger.execute(this::mergeSegments);
+    }
+
+    @Override
+    public void remove (Map<Lemma, Set<Integer>> lemmaToPageIds) {
+        Set<Integer> pageIds = new HashSet<>();
+        lemmaToPageIds.values().forEach(pageIds::addAll);
+        TransactionHooks.afterCommit(() -> markDeleted(pageIds));
+    }
+
+    @Override
+    public void removeSite (Site site) {
+        List<Integer> pageIds = pageRepository.findIdsBySite(site);
+        TransactionHooks.afterCommit(() -> markDeleted(pageIds));
+    }
+
+    /**
+     * Отметки удаления берутся до сегментов: отметка удаляется только после замены слитых сегментов,
+     * поэтому у читателя старых сегментов она еще есть.
+     */
+    @Override
+    public PostingList read (Lemma lemma) {
+        Set<Integer> deleted = deletedPages;
+        List<IndexSegment> current = acquireSegments();
+        PostingList postings;
+        try {
+            postings = PostingList.mergeAll(current.stream().map(segment -> segment.read(lemma.getId())).toList());
+        } finally {
+            current.forEach(IndexSegment::release);
+        }
+        return deleted.isEmpty() ? postings : postings.without(deleted);
+    }
+
+    @Override
+    public PostingList intersect (Lemma lemma, PostingList candidates) {
+        if (candidates.isEmpty()) {
+            return candidates;
+        }
+        List<IndexSegment> current = acquireSegments();
+        try {
+            return PostingList.mergeAll(current.stream()
+                    .map(segment -> candidates.intersect(segment.read(lemma.getId())))
+                    .toList());
+        } finally {
+            current.forEach(IndexSegment::release);
+        }
+    }
+
+    int segmentCount () {
+        return segments.size();
+    }
+
+    /**
+     * Сегменты, которые не будут закрыты до {@link IndexSegment#release()}. Если слияние успело
+     * закрыть сегмент из прочитанного списка, список читается заново: слитый сегмент уже в нем.
+     */
+    private List<IndexSegment> acquireSegments () {
+        while (true) {
+            List<IndexSegment> current = segments;
+            List<IndexSegment> acquired = new ArrayList<>(current.size());
+            for (IndexSegment segment : current) {
+                if (!segment.acquire()) {
+                    break;
+                }
+                acquired.add(segment);
+            }
+            if (acquired.size() == current.size()) {
+                return current;
+            }
+            acquired.forEach(IndexSegment::release);
+        }
+    }
+
+    @Override
+    public int recalculateFrequencies (Site site) {
+        List<Lemma> changed = new ArrayList<>();
+        for (Lemma lemma : lemmaRepository.findBySite(site)) {
+            int frequency = read(lemma).size();
+            if (lemma.getFrequency() != frequency) {
+                lemma.setFrequency(frequency);
+                changed.add(lemma);
+            }
+        }
+        lemmaRepository.saveAll(changed);
+        return changed.size();
+    }
+
+    private void markDeleted (Collection<Integer> pageIds) {
+        synchronized (deletedPagesLock) {
+            Set<Integer> updated = new HashSet<>(deletedPages);
+            try {
+                for (Integer pageId : pageIds) {
+                    if (updated.add(pageId)) {
+                        deletedPagesLog.writeInt(pageId);
+                    }
+                }
+                deletedPagesLog.flush();
+            } catch (IOException e) {
+                throw new UncheckedIOException("Не удалось записать удаленные страницы в " + DELETED_PAGES, e);
+            } finally {
+                deletedPages = Set.copyOf(updated);
+            }
+        }
+    }
+
+    /**
+     * Удаляет отметки страниц, которых нет ни в одном сегменте, и перезаписывает deleted-pages.bin
+     *
+     * @param candidates отметки, которые могли перестать быть нужны
+     */
+    private void pruneDeletedPages (Set<Integer> candidates) {
+        if (candidates.isEmpty()) {
+            return;
+        }
+        List<IndexSegment> current = acquireSegments();
+        try {
+            synchronized (deletedPagesLock) {
+                Set<Integer> kept = new HashSet<>(deletedPages);
+                boolean pruned = kept.removeIf(pageId -> candidates.contains(pageId)
+                        && current.stream().noneMatch(segment -> segment.containsPage(pageId)));
+                if (!pruned) {
+                    return;
+                }
+                rewriteDeletedPages(kept);
+                log.info("Удалено отметок удаленных страниц: " + (deletedPages.size() - kept.size())
+                        + ", осталось: " + kept.size());
+                deletedPages = Set.copyOf(kept);
+            }
+        } catch (IOException e) {
+            log.error("Не удалось перезаписать " + DELETED_PAGES + ": " + e.getMessage());
+        } finally {
+            current.forEach(IndexSegment::release);
+        }
+    }
+
+    private void rewriteDeletedPages (Set<Integer> pageIds) throws IOException {
+        Path file = directory.resolve(DELETED_PAGES);
+        Path temporary = directory.resolve(DELETED_PAGES + ".tmp");
+        try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary)))) {
+            for (Integer pageId : pageIds) {
+                output.writeInt(pageId);
+            }
+        }
+        deletedPagesLog.close();
+        Files.move(temporary, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        deletedPagesLog = openDeletedPagesLog();
+    }
+
+    private DataOutputStream openDeletedPagesLog () throws IOException {
+        return new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(directory.resolve(DELETED_PAGES),
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND)));
+    }
+
+    private IndexSegment writeSegment (int[] lemmaIds, IntFunction<PostingList> postings) {
+        long generation = nextGeneration.getAndIncrement();
+        Path path = directory.resolve(String.format("%s%012d%s", SEGMENT_PREFIX, generation, SEGMENT_SUFFIX));
+        try {
+            return IndexSegment.write(path, generation, lemmaIds, postings);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Не удалось записать сегмент индекса " + path, e);
+        }
+    }
+
+    /**
+     * Сегменты делятся на уровни по размеру (каждый следующий уровень в merge-factor раз больше).
+     * Пока на каком-то уровне набирается merge-factor сегментов, самые старые из них сливаются в один.
+     */
+    private void mergeSegments () {
+        List<IndexSegment> group;
+        while (!closing && !(group = selectMergeGroup()).isEmpty()) {
+            try {
+                merge(group);
+            } catch (RuntimeException e) {
+                log.error("Не удалось слить сегменты индекса: " + e.getMessage());
+                return;
+            }
+        }
+    }
+
+    private List<IndexSegment> selectMergeGroup () {
+        int mergeFactor = Math.max(2, settings.getMergeFactor());
+        long maxBytes = settings.getMaxSegmentMb() * 1024L * 1024L;
+        Map<Integer, List<IndexSegment>> tiers = new TreeMap<>();
+        for (IndexSegment segment : segments) {
+            tiers.computeIfAbsent(tier(segment.size(), mergeFactor), tier -> new ArrayList<>()).add(segment);
+        }
+        for (List<IndexSegment> tier : tiers.values()) {
+            if (tier.size() < mergeFactor) {
+                continue;
+            }
+            List<IndexSegment> group = tier.subList(0, mergeFactor);
+            if (group.stream().mapToLong(IndexSegment::size).sum() <= maxBytes) {
+                return group;
+            }
+        }
+        return List.of();
+    }
+
+    private static int tier (long size, int mergeFactor) {
+        if (size <= MIN_TIER_BYTES) {
+            return 0;
+        }
+        return 1 + (int) (Math.log((double) size / MIN_TIER_BYTES) / Math.log(mergeFactor));
+    }
+
+    private void merge (List<IndexSegment> group) {
+        Set<Integer> deleted = deletedPages;
+        int[] lemmaIds = group.stream()
+                .flatMapToInt(segment -> IntStream.range(0, segment.termCount()).map(segment::lemmaId))
+                .sorted()
+                .distinct()
+                .toArray();
+        IndexSegment merged = writeSegment(lemmaIds, lemmaId -> PostingList
+                .mergeAll(group.stream().map(segment -> segment.read(lemmaId)).toList())
+                .without(deleted));
+
+        synchronized (segmentsLock) {
+            List<IndexSegment> updated = new ArrayList<>(segments);
+            updated.removeAll(group);
+            updated.add(merged);
+            updated.sort(Comparator.comparingLong(IndexSegment::getGeneration));
+            segments = List.copyOf(updated);
+        }
+        for (IndexSegment segment : group) {
+            try {
+                segment.close();
+                Files.deleteIfExists(segment.getPath());
+            } catch (IOException e) {
+                log.error("Не удалось удалить слитый сегмент " + segment.getPath() + ": " + e.getMessage());
+            }
+        }
+        log.info("Слито сегментов: " + group.size() + ", размер нового сегмента: " + merged.size()
+                + " байт, всего сегментов: " + segments.size());
+        pruneDeletedPages(deleted);
+    }
+
+    /**
+     * Текущее слияние дописывается до конца: его сегменты нельзя закрывать, пока они читаются
+     */
+    @Override
+    public void close () throws IOException {
+        closing = true;
+        merger.shutdown();
+        try {
+            if (!merger.awaitTermination(1, TimeUnit.MINUTES)) {
+                log.warn("Слияние сегментов индекса не завершилось за минуту");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (deletedPagesLock) {
+            deletedPagesLog.close();
+        }
+        for (IndexSegment segment : segments) {
+            segment.close();
+        }
+    }
+}
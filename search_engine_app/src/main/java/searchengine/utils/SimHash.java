@@ -0,0 +1,34 @@
+package searchengine.utils;
+
+import java.util.Collection;
+
+/**
+ * SimHash - 64-битный отпечаток текста: у похожих текстов отпечатки отличаются в немногих битах.
+ * Признаки - разные леммы страницы с одинаковым весом: при весе по числу вхождений отпечаток
+ * определяют самые частые слова языка, и похожими оказываются просто тексты на одну тему.
+ */
+public final class SimHash {
+    private SimHash () {
+    }
+
+    public static long fingerprint (Collection<String> lemmas) {
+        int[] weights = new int[Long.SIZE];
+        for (String lemma : lemmas) {
+            long hash = Hashing.hash64(lemma);
+            for (int bit = 0; bit < Long.SIZE; bit++) {
+                weights[bit] += ((hash >>> bit) & 1) == 1 ? 1 : -1;
+            }
+        }
+        long fingerprint = 0;
+        for (int bit = 0; bit < Long.SIZE; bit++) {
+            if (weights[bit] > 0) {
+                fingerprint |= 1L << bit;
+            }
+        }
+        return fingerprint;
+    }
+
+    public static int distance (long first, long second) {
+        return Long.bitCount(first ^ second);
+    }
+}
@@ -0,0 +1,95 @@
+package searchengine.utils;
+
+import lombok.extern.log4j.Log4j2;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+import searchengine.config.PurgeSettings;
+import searchengine.model.entities.Site;
+import searchengine.model.repositories.FrontierRepository;
+import searchengine.model.repositories.IndexRepository;
+import searchengine.model.repositories.LemmaRepository;
+import searchengine.model.repositories.PageContentRepository;
+import searchengine.model.repositories.PageRepository;
+import searchengine.model.repositories.PostingBlockRepository;
+import searchengine.model.repositories.SiteRepository;
+
+import java.util.function.IntBinaryOperator;
+
+/**
+ * Удаляет сайт вместе со страницами, леммами и индексами пакетными запросами
+ * DELETE ... WHERE site_id = ? без загрузки сущностей в память.
+ * Каждый пакет выполняется в отдельной транзакции, чтобы не держать блокировки долго.
+ */
+@Log4j2
+@Component
+public class SitePurger {
+    private final SiteRepository siteRepository;
+    private final PageRepository pageRepository;
+    private final PageContentRepository pageContentRepository;
+    private final LemmaRepository lemmaRepository;
+    private final IndexRepository indexRepository;
+    private final PostingBlockRepository postingBlockRepository;
+    private final FrontierRepository frontierRepository;
+    private final IndexStorage indexStorage;
+    private final PurgeSettings purgeSettings;
+    private final DuplicateDetector duplicateDetector;
+    private final LemmaSuggester lemmaSuggester;
+    private final TransactionTemplate transactionTemplate;
+
+    public SitePurger (SiteRepository siteRepository, PageRepository pageRepository, PageContentRepository pageContentRepository,
+                       LemmaRepository lemmaRepository, IndexRepository indexRepository,
+                       PostingBlockRepository postingBlockRepository, IndexStorage indexStorage,
+                       PurgeSettings purgeSettings, PlatformTransactionManager transactionManager,
+                       DuplicateDetector duplicateDetector, FrontierRepository frontierRepository,
+                       LemmaSuggester lemmaSuggester) {
+        this.siteRepository = siteRepository;
+        this.pageRepository = pageRepository;
+        this.pageContentRepository = pageContentRepository;
+        this.lemmaRepository = lemmaRepository;
+        this.indexRepository = indexRepository;
+        this.postingBlockRepository = postingBlockRepository;
+        this.frontierRepository = frontierRepository;
+        this.indexStorage = indexStorage;
+        this.purgeSettings = purgeSettings;
+        this.duplicateDetector = duplicateDetector;
+        this.lemmaSuggester = lemmaSuggester;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+    }
+
+    public void purgeSite (Site site) {
+        purgeSiteContent(site);
+        transactionTemplate.executeWithoutResult(status -> siteRepository.deleteRowById(site.getId()));
+        log.info("Сайт удален из БД: " + site.getUrl());
+    }
+
+    public void purgeSiteContent (Site site) {
+        int siteId = site.getId();
+        // подсказки вычитают частоты лемм сайта, поэтому читают их до очистки хранилища
+        lemmaSuggester.removeSite(site);
+        indexStorage.removeSite(site);
+        duplicateDetector.forgetSite(site);
+        long indexes = deleteInChunks(siteId, indexRepository::deleteChunkBySiteId)
+                + deleteInChunks(siteId, postingBlockRepository::deleteChunkBySiteId);
+        long lemmas = deleteInChunks(siteId, lemmaRepository::deleteChunkBySiteId);
+        deleteInChunks(siteId, pageContentRepository::deleteChunkBySiteId);
+        long pages = deleteInChunks(siteId, pageRepository::deleteChunkBySiteId);
+        long frontierUrls = deleteInChunks(siteId, frontierRepository::deleteChunkBySiteId);
+        log.info("Удалено индексов: " + indexes + ", лемм: " + lemmas + ", страниц: " + pages
+                + ", ссылок очереди обхода: " + frontierUrls + " для сайта " + site.getUrl());
+    }
+
+    private long deleteInChunks (int siteId, IntBinaryOperator chunkDelete) {
+        int chunkSize = Math.max(1, purgeSettings.getChunkSize());
+        long total = 0;
+        int deleted;
+        do {
+            Integer result = transactionTemplate.execute(status -> chunkDelete.applyAsInt(siteId, chunkSize));
+            deleted = result == null ? 0 : result;
+            total += deleted;
+        } while (deleted == chunkSize);
+        return total;
+    }
+}
@@ -0,0 +1,107 @@
+package searchengine.utils;
+
+import lombok.extern.log4j.Log4j2;
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.jsoup.nodes.Element;
+import org.jsoup.parser.Parser;
+import org.springframework.stereotype.Component;
+import searchengine.config.CrawlSeedSettings;
+
+import java.io.IOException;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeParseException;
+import java.util.*;
+
+/**
+ * Читает sitemap сайта: ссылки из robots.txt (Sitemap:), а если их нет - /sitemap.xml.
+ * Индексы sitemap обходятся рекурсивно до max-sitemap-depth, сжатые .xml.gz распаковываются
+ * при загрузке. Поддерживается и текстовый формат - по одной ссылке в строке.
+ */
+@Log4j2
+@Component
+public class SitemapReader {
+    private final PageFetcher pageFetcher;
+    private final CrawlSeedSettings settings;
+
+    public SitemapReader (PageFetcher pageFetcher, CrawlSeedSettings settings) {
+        this.pageFetcher = pageFetcher;
+        this.settings = settings;
+    }
+
+    public List<SitemapUrl> read (String siteUrl, RobotsRules robotsRules) {
+        if (!settings.isSitemapsEnabled()) {
+            return List.of();
+        }
+        List<String> sitemaps = robotsRules.getSitemaps().isEmpty()
+                ? List.of(siteUrl.replaceAll("/$", "") + "/sitemap.xml")
+                : robotsRules.getSitemaps();
+        Map<String, SitemapUrl> urls = new LinkedHashMap<>();
+        Set<String> visitedSitemaps = new HashSet<>();
+        for (String sitemap : sitemaps) {
+            readSitemap(sitemap, 0, visitedSitemaps, urls);
+        }
+        log.info("Ссылок в sitemap сайта " + siteUrl + ": " + urls.size());
+        return new ArrayList<>(urls.values());
+    }
+
+    private void readSitemap (String link, int depth, Set<String> visitedSitemaps, Map<String, SitemapUrl> urls) {
+        if (depth > settings.getMaxSitemapDepth() || urls.size() >= settings.getMaxSitemapUrls()
+                || !visitedSitemaps.add(link)) {
+            return;
+        }
+        FetchedPage sitemap;
+        try {
+            sitemap = pageFetcher.fetchResource(link);
+        } catch (IOException e) {
+            log.error("Не удалось загрузить sitemap " + link + ": " + e.getMessage());
+            return;
+        }
+        if (sitemap.statusCode() >= 400) {
+            log.info("sitemap не найден (" + sitemap.statusCode() + "): " + link);
+            return;
+        }
+
+        String body = sitemap.body().strip();
+        if (!body.startsWith("<")) {
+            body.lines().map(String::strip).filter(line -> !line.isEmpty())
+                    .forEach(url -> addUrl(urls, new SitemapUrl(url, null)));
+            return;
+        }
+        Document document = Jsoup.parse(body, link, Parser.xmlParser());
+        for (Element nested : document.select("sitemapindex > sitemap > loc")) {
+            readSitemap(nested.text().strip(), depth + 1, visitedSitemaps, urls);
+        }
+        for (Element url : document.select("urlset > url")) {
+            Element loc = url.selectFirst("loc");
+            if (loc != null) {
+                Element lastmod = url.selectFirst("lastmod");
+                addUrl(urls, new SitemapUrl(loc.text().strip(), lastmod == null ? null : parseLastModified(lastmod.text())));
+            }
+        }
+    }
+
+    private void addUrl (Map<String, SitemapUrl> urls, SitemapUrl url) {
+        if (urls.size() < settings.getMaxSitemapUrls()) {
+            urls.putIfAbsent(url.url(), url);
+        }
+    }
+
+    /**
+     * lastmod в формате W3C Datetime: дата или дата со временем и часовым поясом.
+     */
+    static LocalDateTime parseLastModified (String value) {
+        String text = value.strip();
+        try {
+            if (text.length() == 10) {
+                return LocalDate.parse(text).atStartOfDay();
+            }
+            return OffsetDateTime.parse(text).atZoneSameInstant(ZoneId.systemDefault()).toLocalDateTime();
+        } catch (DateTimeParseException e) {
+            return null;
+        }
+    }
+}
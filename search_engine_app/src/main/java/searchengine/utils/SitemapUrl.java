@@ -0,0 +1,9 @@
+package searchengine.utils;
+
+import java.time.LocalDateTime;
+
+/**
+ * Ссылка из sitemap.xml и дата последнего изменения страницы (lastmod), если она указана.
+ */
+public record SitemapUrl (String url, LocalDateTime lastModified) {
+}
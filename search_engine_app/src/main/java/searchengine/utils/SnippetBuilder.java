@@ -0,0 +1,90 @@
+package searchengine.utils;
+
+import org.jsoup.Jsoup;
+import org.springframework.stereotype.Component;
+import searchengine.model.entities.Lemma;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+@Component
+public class SnippetBuilder {
+    private final TextParser textParser;
+
+    public SnippetBuilder (TextParser textParser) {
+        this.textParser = textParser;
+    }
+
+    public String getSnippet (String content, Collection<Lemma> keyWords) {
+        List<String> textParts = decomposeText(content);
+        StringBuilder snippet = new StringBuilder();
+        long maxCount = 0L;
+        for (String part : textParts) {
+            long keyCount = 0L;
+            List<String> words = Arrays.stream(part.split("[^А-ЯЁа-яёA-Za-z]+")).toList();
+            for (Lemma keyWord : keyWords) {
+                List<String> keys = findKeyWord(words, keyWord);
+                keyCount = keys.size();
+                for (String key : keys) {
+                    key = key.replaceAll("[^А-ЯЁа-яёA-Za-z]", "");
+                    part = part.replaceAll(key, "<b>" + key + "</b>");
+                }
+            }
+            if (keyCount > maxCount) {
+                maxCount = keyCount;
+                snippet = new StringBuilder(part);
+            }
+        }
+        snippet = new StringBuilder().append("...").append(snippet).append("...");
+
+        return snippet.toString();
+    }
+
+    public String getTitle (String content) {
+        return Jsoup.parse(content).title();
+    }
+
+    private List<String> decomposeText (String text) {
+        List<String> textParts = new ArrayList<>();
+        text = textParser.replaceHtml(text).replaceAll(" +", " ").trim();
+        int startIndex = 0;
+        int endIndex = 300;
+
+        while (endIndex < text.length()) {
+            textParts.add(text.substring(startIndex, endIndex + 1));
+            startIndex = startIndex + 300;
+            endIndex = endIndex + 300;
+        }
+        if (text.length() <= 300) {
+            textParts.add(text);
+        } else {
+            textParts.add(text.substring(endIndex - 300));
+        }
+        return textParts;
+    }
+
+    private List<String> findKeyWord (List<String> words, Lemma keyWord) {
+        return words
+                .stream()
+                .filter(word -> {
+                    word = word.replaceAll("[^А-ЯЁа-яёA-Za-z]", "");
+                    if (word.isBlank()) {
+                        return false;
+                    }
+
+                    Language language;
+                    if (word.matches("^[a-zA-Z]*$")) {
+                        language = Language.ENGLISH;
+                    } else if (word.matches("^[А-ЯЁа-яё]*$")){
+                        language = Language.RUSSIAN;
+                    } else {
+                        return false;
+                    }
+
+                    return textParser.getLemma(word.toLowerCase(), language).equals(keyWord.getLemma());
+                })
+                .toList();
+    }
+}
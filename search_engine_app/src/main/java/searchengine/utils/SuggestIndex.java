@@ -0,0 +1,229 @@
+package searchengine.utils;
+
+import java.util.*;
+
+/**
+ * Неизменяемый индекс подсказок: леммы в лексикографическом порядке, записанные подряд
+ * в один массив символов, и их веса. Леммы с общим префиксом занимают непрерывный диапазон,
+ * он находится двоичным поиском. Над весами построено дерево отрезков с максимумами,
+ * по нему k самых частых лемм диапазона выбираются за O(k log n) без перебора диапазона.
+ * Объем памяти - около 2 байт на символ и 16 байт на лемму.
+ */
+public final class SuggestIndex {
+    private static final SuggestIndex EMPTY = new SuggestIndex(new char[0], new int[]{0}, new int[0]);
+
+    private final char[] chars;
+    private final int[] offsets;
+    private final int[] weights;
+    /**
+     * Дерево отрезков: листья в [n, 2n), у узла i потомки 2i и 2i + 1
+     */
+    private final int[] maxTree;
+
+    private SuggestIndex (char[] chars, int[] offsets, int[] weights) {
+        this.chars = chars;
+        this.offsets = offsets;
+        this.weights = weights;
+        int n = weights.length;
+        this.maxTree = new int[2 * n];
+        System.arraycopy(weights, 0, maxTree, n, n);
+        for (int i = n - 1; i > 0; i--) {
+            maxTree[i] = Math.max(maxTree[2 * i], maxTree[2 * i + 1]);
+        }
+    }
+
+    public static SuggestIndex empty () {
+        return EMPTY;
+    }
+
+    /**
+     * @param terms леммы и их веса, леммы с весом не больше 0 пропускаются
+     */
+    public static SuggestIndex build (SortedMap<String, Long> terms, int maxTerms) {
+        return empty().merge(terms, maxTerms);
+    }
+
+    public int size () {
+        return weights.length;
+    }
+
+    public long memoryBytes () {
+        return 2L * chars.length + 4L * (offsets.length + weights.length + maxTree.length);
+    }
+
+    /**
+     * Вес леммы или 0, если ее нет в индексе
+     */
+    public long weight (String term) {
+        int index = lowerBound(term);
+        return index < size() && compare(index, term) == 0 ? weights[index] : 0;
+    }
+
+    /**
+     * Новый индекс, в котором к весам лемм прибавлены изменения delta.
+     * Оба списка упорядочены, поэтому слияние выполняется за один проход.
+     * Если лемм больше maxTerms, отбрасываются самые редкие.
+     */
+    public SuggestIndex merge (SortedMap<String, Long> delta, int maxTerms) {
+        List<String> terms = new ArrayList<>(size() + delta.size());
+        List<Integer> mergedWeights = new ArrayList<>(size() + delta.size());
+        Iterator<Map.Entry<String, Long>> deltaIterator = delta.entrySet().iterator();
+        Map.Entry<String, Long> change = deltaIterator.hasNext() ? deltaIterator.next() : null;
+        int index = 0;
+        while (index < size() || change != null) {
+            int order = index == size() ? 1 : change == null ? -1 : compare(index, change.getKey());
+            String term;
+            long weight;
+            if (order < 0) {
+                term = term(index);
+                weight = weights[index++];
+            } else {
+                term = change.getKey();
+                weight = change.getValue() + (order == 0 ? weights[index++] : 0);
+                change = deltaIterator.hasNext() ? deltaIterator.next() : null;
+            }
+            if (weight > 0) {
+                terms.add(term);
+                mergedWeights.add((int) Math.min(weight, Integer.MAX_VALUE));
+            }
+        }
+        return compact(terms, mergedWeights, maxTerms);
+    }
+
+    /**
+     * До limit лемм с префиксом prefix по убыванию веса
+     */
+    public LinkedHashMap<String, Long> top (String prefix, int limit) {
+        LinkedHashMap<String, Long> result = new LinkedHashMap<>();
+        int n = size();
+        int from = lowerBound(prefix);
+        int to = prefixEnd(from, prefix);
+        if (from >= to || limit <= 0) {
+            return result;
+        }
+        PriorityQueue<Integer> nodes = new PriorityQueue<>((a, b) -> maxTree[a] != maxTree[b]
+                ? Integer.compare(maxTree[b], maxTree[a]) : Integer.compare(a, b));
+        for (int l = from + n, r = to + n; l < r; l >>= 1, r >>= 1) {
+            if ((l & 1) == 1) {
+                nodes.add(l++);
+            }
+            if ((r & 1) == 1) {
+                nodes.add(--r);
+            }
+        }
+        while (!nodes.isEmpty() && result.size() < limit) {
+            int node = nodes.poll();
+            if (node >= n) {
+                result.put(term(node - n), (long) weights[node - n]);
+            } else {
+                nodes.add(2 * node);
+                nodes.add(2 * node + 1);
+            }
+        }
+        return result;
+    }
+
+    private static SuggestIndex compact (List<String> terms, List<Integer> weights, int maxTerms) {
+        int threshold = 0;
+        int thresholdSlots = Integer.MAX_VALUE;
+        if (terms.size() > maxTerms) {
+            int[] sorted = weights.stream().mapToInt(Integer::intValue).sorted().toArray();
+            int minWeight = sorted[sorted.length - maxTerms];
+            threshold = minWeight;
+            // лемм с пороговым весом оставляется столько, чтобы всего их было не больше maxTerms
+            thresholdSlots = maxTerms - (int) Arrays.stream(sorted).filter(weight -> weight > minWeight).count();
+        }
+        int length = 0;
+        int count = 0;
+        boolean[] kept = new boolean[terms.size()];
+        for (int i = 0; i < terms.size(); i++) {
+            int weight = weights.get(i);
+            if (weight > threshold || (weight == threshold && thresholdSlots-- > 0)) {
+                kept[i] = true;
+                length += terms.get(i).length();
+                count++;
+            }
+        }
+        char[] chars = new char[length];
+        int[] offsets = new int[count + 1];
+        int[] keptWeights = new int[count];
+        int position = 0;
+        int term = 0;
+        for (int i = 0; i < terms.size(); i++) {
+            if (!kept[i]) {
+                continue;
+            }
+            String text = terms.get(i);
+            text.getChars(0, text.length(), chars, position);
+            offsets[term] = position;
+            keptWeights[term++] = weights.get(i);
+            position += text.length();
+        }
+        offsets[count] = position;
+        return new SuggestIndex(chars, offsets, keptWeights);
+    }
+
+    private String term (int index) {
+        return new String(chars, offsets[index], offsets[index + 1] - offsets[index]);
+    }
+
+    private int compare (int index, String other) {
+        int start = offsets[index];
+        int length = offsets[index + 1] - start;
+        int common = Math.min(length, other.length());
+        for (int i = 0; i < common; i++) {
+            int difference = chars[start + i] - other.charAt(i);
+            if (difference != 0) {
+                return difference;
+            }
+        }
+        return length - other.length();
+    }
+
+    private boolean startsWith (int index, String prefix) {
+        int start = offsets[index];
+        if (offsets[index + 1] - start < prefix.length()) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length(); i++) {
+            if (chars[start + i] != prefix.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Первая лемма, не меньшая term
+     */
+    private int lowerBound (String term) {
+        int low = 0;
+        int high = size();
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (compare(middle, term) < 0) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Первая лемма после from, не начинающаяся с prefix
+     */
+    private int prefixEnd (int from, String prefix) {
+        int low = from;
+        int high = size();
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (startsWith(middle, prefix)) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+}
@@ -0,0 +1,31 @@
+package searchengine.utils;
+
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Изменения вне БД (файлы, индексы в памяти), которые должны появиться только вместе с данными транзакции
+ */
+public final class TransactionHooks {
+
+    private TransactionHooks () {
+    }
+
+    /**
+     * Выполняет действие после фиксации текущей транзакции, а без транзакции - сразу.
+     * Действие, зарегистрированное из другого afterCommit, уже не будет вызвано, поэтому
+     * из отложенных действий этот метод не вызывается.
+     */
+    public static void afterCommit (Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit () {
+                    action.run();
+                }
+            });
+        } else {
+            action.run();
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package searchengine.utils;
+
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * Ответ получен, но тело не загружено или загружено не полностью: это не HTML
+ * или размер больше web-connection-settings.max-page-kb. Сайт при этом ответил без ошибки.
+ */
+public class UnsupportedContentException extends IOException {
+    private static final long serialVersionUID = 1L;
+
+    private final int statusCode;
+    private final Map<String, String> headers;
+
+    public UnsupportedContentException (String message, int statusCode, Map<String, String> headers) {
+        super(message);
+        this.statusCode = statusCode;
+        this.headers = headers;
+    }
+
+    public int getStatusCode () {
+        return statusCode;
+    }
+
+    public Map<String, String> getHeaders () {
+        return headers;
+    }
+}
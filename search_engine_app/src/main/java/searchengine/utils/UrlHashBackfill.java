@@ -0,0 +1,48 @@
+package searchengine.utils;
+
+import lombok.extern.log4j.Log4j2;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import searchengine.model.repositories.PageRepository;
+
+import java.util.List;
+
+/**
+ * Заполняет url_hash у страниц, сохраненных до появления этого столбца.
+ * Выполняется при запуске пакетами, каждый в своей транзакции.
+ */
+@Log4j2
+@Component
+public class UrlHashBackfill {
+    private static final int CHUNK_SIZE = 1000;
+
+    private final PageRepository pageRepository;
+    private final TransactionTemplate transactionTemplate;
+
+    public UrlHashBackfill (PageRepository pageRepository, PlatformTransactionManager transactionManager) {
+        this.pageRepository = pageRepository;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void backfill () {
+        long total = 0;
+        int updated;
+        do {
+            Integer result = transactionTemplate.execute(status -> {
+                List<Object[]> pages = pageRepository.findPathsWithoutUrlHash(PageRequest.of(0, CHUNK_SIZE));
+                pages.forEach(row -> pageRepository.updateUrlHash((Integer) row[0], Hashing.hash64((String) row[1])));
+                return pages.size();
+            });
+            updated = result == null ? 0 : result;
+            total += updated;
+        } while (updated == CHUNK_SIZE);
+        if (total > 0) {
+            log.info("Заполнен url_hash у страниц: " + total);
+        }
+    }
+}
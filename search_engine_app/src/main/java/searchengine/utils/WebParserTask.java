@@ -3,104 +3,135 @@ package searchengine.utils;
 import lombok.Getter;
 
 import lombok.extern.log4j.Log4j2;
+import org.jsoup.Jsoup;
 import org.jsoup.nodes.Document;
 import org.jsoup.nodes.Element;
 import org.jsoup.select.Elements;
 import searchengine.model.IndexingStatus;
+import searchengine.model.entities.Page;
 import searchengine.model.entities.Site;
-import searchengine.model.repositories.PageRepository;
 import searchengine.model.repositories.SiteRepository;
 
-import java.io.IOException;
-
 import java.time.LocalDateTime;
 import java.util.*;
-import java.util.concurrent.RecursiveAction;
 import java.util.concurrent.atomic.AtomicBoolean;
 
+/**
+ * Загрузка одной страницы сайта. Найденные на ней ссылки ставятся в очередь {@link CrawlScheduler},
+ * который выдерживает паузу между запросами к сайту.
+ */
 @Log4j2
-public class WebParserTask extends RecursiveAction {
+public class WebParserTask implements Runnable {
 
     private final Site site;
     private final String rootLink;
     private final SiteRepository siteRepository;
-    private final PageRepository pageRepository;
     private final PageIndexer pageIndexer;
+    private final IndexingPipeline pipeline;
+    private final CrawlScheduler scheduler;
+    private final Set<String> visitedLinks;
+    private final RobotsRules robotsRules;
+    private final Map<String, LocalDateTime> sitemapLastModified;
     @Getter
     private AtomicBoolean isIndexed;
-    private final List<WebParserTask> taskList = new ArrayList<>();
     @Getter
     private static final String[] invalidExtensions = new String[]{".png", ".svg", "jpg", "jpeg", ".gif", ".pdf", ".doc", ".docx", ".xlsx", ".eps", ".zip", ".yaml", ".yml", ".sql"};
 
 
     public WebParserTask (Site site, String rootLink,
-                          SiteRepository siteRepository, PageRepository pageRepository,
-                          AtomicBoolean isIndexed, PageIndexer pageIndexer) {
+                          SiteRepository siteRepository, AtomicBoolean isIndexed,
+                          PageIndexer pageIndexer, IndexingPipeline pipeline, CrawlScheduler scheduler,
+                          Set<String> visitedLinks, RobotsRules robotsRules,
+                          Map<String, LocalDateTime> sitemapLastModified) {
         this.site = site;
         this.rootLink = rootLink;
         this.siteRepository = siteRepository;
-        this.pageRepository = pageRepository;
         this.isIndexed = isIndexed;
         this.pageIndexer = pageIndexer;
+        this.pipeline = pipeline;
+        this.scheduler = scheduler;
+        this.visitedLinks = visitedLinks;
+        this.robotsRules = robotsRules;
+        this.sitemapLastModified = sitemapLastModified;
     }
 
 
     @Override
-    protected void compute() {
-        try {
-            Thread.sleep(1000);
-        } catch (InterruptedException e) {
-            failedIndexingResponse(e.getMessage() + " Индексация прервана, попробуйте еще раз.");
-            log.error(e.getMessage() + " Индексация прервана, попробуйте еще раз.");
+    public void run() {
+        PageFetchResult result = pageIndexer.getPageEntity(rootLink, site);
+        if (result.status() == PageFetchResult.Status.SKIPPED) {
             return;
         }
-
-        Document document;
+        Page page = result.page();
+        if (page == null) {
+            failedIndexingResponse("Не удалось подключиться к странице: " + rootLink);
+            log.error("Не удалось подключиться к странице: " + rootLink);
+            return;
+        }
+        page.setLastModified(sitemapLastModified.get(rootLink));
         try {
-            document = PageIndexer.getDocument(rootLink);
-        } catch (IOException e) {
-            failedIndexingResponse(e.getMessage() + "Не удалось подключиться к странице: " + rootLink);
+            pipeline.submit(page);
+        } catch (InterruptedException e) {
+            failedIndexingResponse(e.getMessage() + " Индексация прервана, попробуйте еще раз.");
             return;
         }
 
-        Elements links = document.select("a");
-        for (Element link : links) {
-            String href = link.attr("href");
-            String absHref = link.attr("abs:href");
-            if (!linkIsValid(href, absHref)) {
-                log.info("Ссылка не прошла проверку - " + absHref);
-                continue;
-            }
-            site.setStatusTime(LocalDateTime.now());
-            siteRepository.save(site);
-
-            if (pageRepository.findByPath(href).isPresent()) continue;
-
-            log.info("Ссылка прошла проверку - " + absHref);
-            boolean isComplete = pageIndexer.executePageIndexing(absHref, site);
-            if (!isComplete) {
-                failedIndexingResponse("Не удалось подключиться к странице: " + absHref);
-                log.error("Не удалось подключиться к странице: " + absHref);
-                return;
-            }
+        for (String childLink : childLinks(page, rootLink, site, robotsRules)) {
+            if (!visitedLinks.add(childLink)) continue;
 
             WebParserTask task = new WebParserTask(
-                    site, absHref.replace("www.", ""),
-                    siteRepository, pageRepository, isIndexed, pageIndexer
+                    site, childLink,
+                    siteRepository, isIndexed,
+                    pageIndexer, pipeline, scheduler, visitedLinks,
+                    robotsRules, sitemapLastModified
             );
-            taskList.add(task);
+            scheduler.submit(site, task);
         }
+        site.setStatusTime(LocalDateTime.now());
+        siteRepository.save(site);
+    }
 
-        for (WebParserTask task : taskList) {
-            task.fork();
-            task.join();
+    /**
+     * Ссылки страницы на другие страницы того же сайта, разрешенные robots.txt
+     */
+    public static List<String> childLinks (Page page, String link, Site site, RobotsRules robotsRules) {
+        Document document = Jsoup.parse(page.getContent(), link);
+        Elements links = document.select("a");
+        List<String> childLinks = new ArrayList<>();
+        for (Element element : links) {
+            String href = element.attr("href");
+            String absHref = element.attr("abs:href");
+            if (!linkIsValid(href, absHref, site, robotsRules)) {
+                log.debug("Ссылка не прошла проверку - " + absHref);
+                continue;
+            }
+            log.debug("Ссылка прошла проверку - " + absHref);
+            childLinks.add(absHref.replace("www.", ""));
         }
+        return childLinks;
     }
 
-    private boolean linkIsValid (String href, String absHref) {
+    private static boolean linkIsValid (String href, String absHref, Site site, RobotsRules robotsRules) {
         boolean hasValidExtension = Arrays.stream(invalidExtensions).noneMatch(extension -> href.toLowerCase().endsWith(extension));
-        log.info("Ссылка на страницу проверяется на валидность");
-        return hasValidExtension && absHref.startsWith(site.getUrl()) && !absHref.contains("#");
+        log.debug("Ссылка на страницу проверяется на валидность");
+        return hasValidExtension && absHref.startsWith(site.getUrl()) && !absHref.contains("#")
+                && robotsRules.isAllowed(pathOf(absHref));
+    }
+
+    /**
+     * Путь ссылки вместе со строкой запроса, начиная с "/"
+     */
+    public static String pathOf (String link) {
+        int pathStart = link.indexOf("/", link.indexOf("//") + 2);
+        return pathStart < 0 ? "/" : link.substring(pathStart);
+    }
+
+    /**
+     * Crawl-delay из robots.txt увеличивает паузу между запросами, но не включает ее,
+     * если загрузчик работает без пауз (воспроизведение архива обхода).
+     */
+    public static long requestDelay (long delay, RobotsRules robotsRules) {
+        return delay > 0 ? Math.max(delay, robotsRules.getCrawlDelayMs()) : 0;
     }
 
     private void failedIndexingResponse (String errorMessage) {
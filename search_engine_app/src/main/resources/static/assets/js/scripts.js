@@ -1458,6 +1458,78 @@ var API = function(){
         });
     }
     
+    function appendSearchResult($content, page, data) {
+        $content.append('<div class="SearchResult-block">' +
+            '<a href="' + page.site + page.uri +'" target="_blank" class="SearchResult-siteTitle">' +
+                (!data.siteName ? page.siteName + ' - ': '') +
+                page.title +
+            '</a>' +
+            '<div class="SearchResult-description">' +
+                page.snippet +
+            '</div>' +
+        '</div>')
+    }
+
+    function updateSearchFooter(count, shown, data) {
+        if (count > data.offset + shown) {
+            $('.SearchResult-footer').removeClass('SearchResult-footer_hide')
+            $('.SearchResult-footer button[data-send="search"]')
+                .data('sendoffset', data.offset + shown)
+                .data('searchquery', data.query)
+                .data('searchsite', data.site)
+                .data('sendlimit', data.limit);
+            $('.SearchResult-remain').text('(' + (count - data.offset - shown) + ')')
+        } else {
+            $('.SearchResult-footer').addClass('SearchResult-footer_hide')
+        }
+    }
+
+    function showSearchError($this, error) {
+        if ($this.next('.API-error').length) {
+            $this.next('.API-error').text(error);
+        } else {
+            $this.after('<div class="API-error">' + error + '</div>');
+        }
+    }
+
+    // Результаты поиска приходят по одному через Server-Sent Events по мере построения сниппетов
+    function streamSearch(data, $this) {
+        if (!window.EventSource) {
+            sendData(send.search.address, send.search.type, data, send.search.action, $this);
+            return;
+        }
+        var $searchResults = $('.SearchResult'),
+            $content = $searchResults.find('.SearchResult-content'),
+            count = 0,
+            shown = 0;
+        var source = new EventSource(backendApiUrl + '/search/stream?' + $.param(data));
+        source.addEventListener('count', function(e){
+            count = JSON.parse(e.data).count;
+            if ($this.next('.API-error').length) {
+                $this.next('.API-error').remove();
+            }
+            if (data.offset === 0) {
+                $content.empty();
+            }
+            $searchResults.find('.SearchResult-amount').text(count);
+            $searchResults.addClass('SearchResult_ACTIVE');
+        });
+        source.addEventListener('result', function(e){
+            var scroll = $(window).scrollTop();
+            appendSearchResult($content, JSON.parse(e.data), data);
+            $(window).scrollTop(scroll);
+            shown++;
+        });
+        source.addEventListener('end', function(){
+            source.close();
+            updateSearchFooter(count, shown, data);
+        });
+        source.addEventListener('error', function(e){
+            source.close();
+            showSearchError($this, e.data ? JSON.parse(e.data).error : 'Ошибка соединения');
+        });
+    }
+    
     var send = {
         startIndexing:{
             address: '/startIndexing',
@@ -1540,29 +1612,11 @@ var API = function(){
                     $searchResults.find('.SearchResult-amount').text(result.count);
                     var scroll = $(window).scrollTop();
                     result.data.forEach(function(page){
-                        $content.append('<div class="SearchResult-block">' +
-                            '<a href="' + page.site + page.uri +'" target="_blank" class="SearchResult-siteTitle">' +
-                                (!data.siteName ? page.siteName + ' - ': '') +
-                                page.title +
-                            '</a>' +
-                            '<div class="SearchResult-description">' +
-                                page.snippet +
-                            '</div>' +
-                        '</div>')
+                        appendSearchResult($content, page, data);
                     });
                     $(window).scrollTop(scroll);
                     $searchResults.addClass('SearchResult_ACTIVE');
-                    if (result.count > data.offset + result.data.length) {
-                        $('.SearchResult-footer').removeClass('SearchResult-footer_hide')
-                        $('.SearchResult-footer button[data-send="search"]')
-                            .data('sendoffset', data.offset + result.data.length)
-                            .data('searchquery', data.query)
-                            .data('searchsite', data.site)
-                            .data('sendlimit', data.limit);
-                        $('.SearchResult-remain').text('(' + (result.count - data.offset - result.data.length) + ')')
-                    } else {
-                        $('.SearchResult-footer').addClass('SearchResult-footer_hide')
-                    }
+                    updateSearchFooter(result.count, result.data.length, data);
                     
                 } else {
                     if ($this.next('.API-error').length) {
@@ -1764,13 +1818,17 @@ var API = function(){
                             break;
         
                     }
-                    sendData(
-                        send[$this.data('send')].address,
-                        send[$this.data('send')].type,
-                        data,
-                        send[$this.data('send')].action,
-                        $this
-                    )
+                    if ($this.data('send') === 'search') {
+                        streamSearch(data, $this);
+                    } else {
+                        sendData(
+                            send[$this.data('send')].address,
+                            send[$this.data('send')].type,
+                            data,
+                            send[$this.data('send')].action,
+                            $this
+                        )
+                    }
                 }
             });
         }
@@ -0,0 +1,93 @@
+package searchengine.utils;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AppendLogTest {
+    @TempDir
+    Path directory;
+
+    @Test
+    void replaysRecordsWithTheirOffsets () throws IOException {
+        Path path = directory.resolve("test.log");
+        long first;
+        long second;
+        try (AppendLog appendLog = AppendLog.open(path, (offset, record) -> {
+        })) {
+            first = appendLog.append(bytes("первая"));
+            second = appendLog.append(bytes("вторая"));
+            appendLog.flush();
+            assertEquals("вторая", text(appendLog.read(second)));
+        }
+
+        List<Long> offsets = new ArrayList<>();
+        List<String> records = new ArrayList<>();
+        try (AppendLog appendLog = AppendLog.open(path, (offset, record) -> {
+            offsets.add(offset);
+            records.add(StandardCharsets.UTF_8.decode(record).toString());
+        })) {
+            assertEquals(List.of(first, second), offsets);
+            assertEquals(List.of("первая", "вторая"), records);
+            assertEquals(Files.size(path), appendLog.size());
+        }
+    }
+
+    @Test
+    void dropsTornRecordAtTheEnd () throws IOException {
+        Path path = directory.resolve("test.log");
+        try (AppendLog appendLog = AppendLog.open(path, (offset, record) -> {
+        })) {
+            appendLog.append(bytes("целая"));
+        }
+        long intactSize = Files.size(path);
+        // длина обещает 100 байт, а дописаны только 3
+        Files.write(path, ByteBuffer.allocate(Integer.BYTES + 3).putInt(100).array(), StandardOpenOption.APPEND);
+
+        List<String> records = new ArrayList<>();
+        try (AppendLog appendLog = AppendLog.open(path, (offset, record) ->
+                records.add(StandardCharsets.UTF_8.decode(record).toString()))) {
+            assertEquals(List.of("целая"), records);
+            assertEquals(intactSize, Files.size(path));
+            long offset = appendLog.append(bytes("новая"));
+            appendLog.flush();
+            assertEquals(intactSize, offset);
+            assertEquals("новая", text(appendLog.read(offset)));
+        }
+    }
+
+    @Test
+    void rewriteReplacesRecords () throws IOException {
+        Path path = directory.resolve("test.log");
+        try (AppendLog appendLog = AppendLog.open(path, (offset, record) -> {
+        })) {
+            appendLog.append(bytes("старая"));
+            appendLog.append(bytes("устаревшая"));
+        }
+
+        AppendLog.rewrite(path, List.of(bytes("сжатая")).iterator());
+
+        List<String> records = new ArrayList<>();
+        AppendLog.open(path, (offset, record) -> records.add(StandardCharsets.UTF_8.decode(record).toString())).close();
+        assertEquals(List.of("сжатая"), records);
+        assertFalse(Files.exists(directory.resolve("test.log.tmp")));
+    }
+
+    private static byte[] bytes (String text) {
+        return text.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static String text (byte[] record) {
+        return new String(record, StandardCharsets.UTF_8);
+    }
+}
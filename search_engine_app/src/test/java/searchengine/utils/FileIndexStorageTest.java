@@ -0,0 +1,123 @@
+package searchengine.utils;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import searchengine.config.PostingSettings;
+import searchengine.model.entities.Lemma;
+import searchengine.model.entities.Site;
+import searchengine.model.repositories.PageRepository;
+import searchengine.model.repositories.SiteRepository;
+
+import java.io.IOException;
+import java.lang.reflect.Proxy;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FileIndexStorageTest {
+    @TempDir
+    Path directory;
+    private final Site first = site(1);
+    private final Site second = site(2);
+    private FileIndexStorage storage;
+
+    @BeforeEach
+    void openStorage () throws IOException {
+        storage = open();
+    }
+
+    @AfterEach
+    void closeStorage () throws IOException {
+        storage.close();
+    }
+
+    @Test
+    void replaysLemmaJournal () throws IOException {
+        Map<String, Lemma> lemmas = storage.upsertLemmas(first, Map.of("кот", 2, "дом", 1), false);
+        storage.upsertLemmas(first, Map.of("кот", 3), false);
+        storage.upsertLemmas(second, Map.of("кот", 1), true);
+
+        reopen();
+
+        assertEquals(Map.of("кот", 5, "дом", 1), storage.findLemmaFrequencies(first.getId()));
+        assertEquals(Map.of("кот", 0), storage.findLemmaFrequencies(second.getId()));
+        assertEquals((int) lemmas.get("кот").getId(), (int) storage.findLemma("кот", first).orElseThrow().getId());
+        Lemma added = storage.upsertLemmas(first, Map.of("сад", 1), false).get("сад");
+        assertEquals(4, (int) added.getId());
+    }
+
+    @Test
+    void replaysSiteDelete () throws IOException {
+        storage.upsertLemmas(first, Map.of("кот", 1), false);
+        storage.upsertLemmas(second, Map.of("кот", 2), false);
+        storage.removeSite(first);
+
+        reopen();
+
+        assertEquals(Map.of(), storage.findLemmaFrequencies(first.getId()));
+        assertEquals(List.of(2), storage.findLemmas("кот").stream().map(Lemma::getFrequency).toList());
+    }
+
+    @Test
+    void ignoresTornLemmaRecord () throws IOException {
+        storage.upsertLemmas(first, Map.of("кот", 1), false);
+        storage.close();
+        Files.write(directory.resolve("lemmas.log"), new byte[]{0, 0, 0, 20, 1}, StandardOpenOption.APPEND);
+
+        storage = open();
+
+        assertEquals(Map.of("кот", 1), storage.findLemmaFrequencies(first.getId()));
+    }
+
+    @Test
+    void compactsLemmaJournal () throws IOException {
+        for (int i = 0; i < 10_001; i++) {
+            storage.upsertLemmas(first, Map.of("кот", 1), false);
+        }
+        Path lemmaLog = directory.resolve("lemmas.log");
+        long journalSize = Files.size(lemmaLog);
+
+        reopen();
+
+        assertTrue(Files.size(lemmaLog) < journalSize / 100);
+        assertEquals(Map.of("кот", 10_001), storage.findLemmaFrequencies(first.getId()));
+    }
+
+    private void reopen () throws IOException {
+        storage.close();
+        storage = open();
+    }
+
+    private FileIndexStorage open () throws IOException {
+        PostingSettings settings = new PostingSettings();
+        settings.setFilePath(directory.toString());
+        return new FileIndexStorage(settings, repository(SiteRepository.class, "findAll", List.of(first, second)),
+                repository(PageRepository.class, "findIdsBySite", List.of()), null, null, new SimpleMeterRegistry());
+    }
+
+    /**
+     * Заглушка репозитория, которая отвечает только на один метод
+     */
+    private static <T> T repository (Class<T> type, String methodName, Object result) {
+        return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type}, (proxy, method, args) -> {
+            if (method.getName().equals(methodName)) {
+                return result;
+            }
+            throw new UnsupportedOperationException(method.getName());
+        }));
+    }
+
+    private static Site site (int id) {
+        Site site = new Site();
+        site.setId(id);
+        site.setUrl("http://site" + id + ".local/");
+        return site;
+    }
+}
@@ -0,0 +1,84 @@
+package searchengine.utils;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class IndexSegmentTest {
+    @TempDir
+    Path directory;
+
+    @Test
+    void writeAndReopenRoundTrip () throws IOException {
+        Map<Integer, PostingList> lemmaToPostings = Map.of(
+                3, PostingList.of(new int[]{10, 2}, new float[]{1, 5}),
+                8, PostingList.of(new int[]{7}, new float[]{2}),
+                40, PostingList.of(new int[]{2, 300, 7}, new float[]{4, 1, 3}));
+        Path path = directory.resolve("segment-1.seg");
+
+        try (IndexSegment written = IndexSegment.write(path, 1, new int[]{3, 8, 40}, lemmaToPostings::get)) {
+            assertSegment(written, lemmaToPostings);
+        }
+        try (IndexSegment reopened = IndexSegment.open(path, 1)) {
+            assertSegment(reopened, lemmaToPostings);
+            assertEquals(1, reopened.getGeneration());
+        }
+    }
+
+    @Test
+    void containsOnlyPagesOfItsPostings () throws IOException {
+        PostingList postings = PostingList.of(new int[]{5, 1, 9}, new float[]{1, 1, 1});
+
+        try (IndexSegment segment = IndexSegment.write(directory.resolve("segment-2.seg"), 2, new int[]{1},
+                lemmaId -> postings)) {
+            assertTrue(segment.containsPage(1));
+            assertTrue(segment.containsPage(5));
+            assertTrue(segment.containsPage(9));
+            assertFalse(segment.containsPage(2));
+            assertFalse(segment.containsPage(10));
+        }
+    }
+
+    @Test
+    void emptySegment () throws IOException {
+        try (IndexSegment segment = IndexSegment.write(directory.resolve("segment-3.seg"), 3, new int[0],
+                lemmaId -> PostingList.empty())) {
+            assertEquals(0, segment.termCount());
+            assertTrue(segment.read(1).isEmpty());
+            assertFalse(segment.containsPage(1));
+        }
+    }
+
+    @Test
+    void closedSegmentStaysReadableUntilReleased () throws IOException {
+        IndexSegment segment = IndexSegment.write(directory.resolve("segment-4.seg"), 4, new int[]{1},
+                lemmaId -> PostingList.of(new int[]{6}, new float[]{2}));
+
+        assertTrue(segment.acquire());
+        segment.close();
+        assertEquals(6, segment.read(1).pageId(0));
+        assertFalse(segment.acquire());
+        segment.release();
+    }
+
+    private static void assertSegment (IndexSegment segment, Map<Integer, PostingList> lemmaToPostings) {
+        assertEquals(lemmaToPostings.size(), segment.termCount());
+        assertEquals(3, segment.lemmaId(0));
+        assertEquals(40, segment.lemmaId(2));
+        lemmaToPostings.forEach((lemmaId, expected) -> {
+            PostingList actual = segment.read(lemmaId);
+            assertEquals(expected.size(), actual.size());
+            for (int i = 0; i < expected.size(); i++) {
+                assertEquals(expected.pageId(i), actual.pageId(i));
+                assertEquals(expected.rank(i), actual.rank(i));
+            }
+        });
+        assertTrue(segment.read(4).isEmpty());
+        assertTrue(segment.read(100).isEmpty());
+    }
+}
@@ -0,0 +1,83 @@
+package searchengine.utils;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class IndexSnapshotTest {
+    @TempDir
+    Path directory;
+
+    @Test
+    void writeAndReadRoundTrip () throws IOException {
+        Path path = directory.resolve("snapshot.bin");
+        IndexSnapshot snapshot = snapshot();
+
+        snapshot.write(path);
+        IndexSnapshot read = IndexSnapshot.read(path).orElseThrow();
+
+        assertEquals(snapshot.getCreatedAt(), read.getCreatedAt());
+        assertEquals(snapshot.getWatermark(), read.getWatermark());
+        assertEquals(snapshot.getSites(), read.getSites());
+        assertFalse(Files.exists(directory.resolve("snapshot.bin.tmp")));
+    }
+
+    @Test
+    void truncatedSnapshotIsRejected () throws IOException {
+        Path path = directory.resolve("snapshot.bin");
+        snapshot().write(path);
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+            channel.truncate(channel.size() - 3);
+        }
+
+        assertThrows(IOException.class, () -> IndexSnapshot.read(path));
+    }
+
+    @Test
+    void changedByteFailsChecksum () throws IOException {
+        Path path = directory.resolve("snapshot.bin");
+        snapshot().write(path);
+        byte[] bytes = Files.readAllBytes(path);
+        bytes[bytes.length - Long.BYTES - 1] ^= 1;
+        Files.write(path, bytes);
+
+        assertThrows(IOException.class, () -> IndexSnapshot.read(path));
+    }
+
+    @Test
+    void foreignFileIsRejected () throws IOException {
+        Path path = directory.resolve("snapshot.bin");
+        Files.write(path, new byte[64]);
+
+        assertThrows(IOException.class, () -> IndexSnapshot.read(path));
+    }
+
+    @Test
+    void otherVersionIsSkipped () throws IOException {
+        Path path = directory.resolve("snapshot.bin");
+        snapshot().write(path);
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.allocate(Integer.BYTES).putInt(0, IndexSnapshot.VERSION + 1), Integer.BYTES);
+        }
+
+        assertTrue(IndexSnapshot.read(path).isEmpty());
+    }
+
+    private static IndexSnapshot snapshot () {
+        IndexSnapshot.SiteSnapshot first = new IndexSnapshot.SiteSnapshot(1,
+                new IndexSnapshot.SiteCounters(3, 30, 2, 4), Map.of("кот", 3, "дом", 1));
+        IndexSnapshot.SiteSnapshot second = new IndexSnapshot.SiteSnapshot(2,
+                new IndexSnapshot.SiteCounters(0, 0, 0, 0), Map.of());
+        return new IndexSnapshot(1_700_000_000_000L, new IndexSnapshot.Watermark(30, 3, 2, 2),
+                Map.of(1, first, 2, second));
+    }
+}
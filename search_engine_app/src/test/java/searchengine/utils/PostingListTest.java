@@ -0,0 +1,100 @@
+package searchengine.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PostingListTest {
+
+    @Test
+    void encodeDecodeRoundTrip () {
+        PostingList postings = PostingList.of(new int[]{42, 7, 100_000, 128, Integer.MAX_VALUE},
+                new float[]{3, 1, 300, 127, 1});
+
+        PostingList decoded = PostingList.decode(postings.encode());
+
+        assertPostings(decoded, new int[]{7, 42, 128, 100_000, Integer.MAX_VALUE}, new float[]{1, 3, 127, 300, 1});
+    }
+
+    @Test
+    void encodesDeltasAsVarInts () {
+        // число записей 2, затем 127 и rank 1, затем разность 1 и rank 128 в двух байтах
+        byte[] data = PostingList.of(new int[]{127, 128}, new float[]{1, 128}).encode();
+
+        assertArrayEquals(new byte[]{2, 127, 1, 1, (byte) 0x80, 1}, data);
+    }
+
+    @Test
+    void emptyListRoundTrip () {
+        byte[] data = PostingList.empty().encode();
+
+        assertArrayEquals(new byte[]{0}, data);
+        assertTrue(PostingList.decode(data).isEmpty());
+    }
+
+    @Test
+    void ranksAreRoundedToIntegers () {
+        PostingList decoded = PostingList.decode(PostingList.of(new int[]{1, 2}, new float[]{1.4f, 2.6f}).encode());
+
+        assertPostings(decoded, new int[]{1, 2}, new float[]{1, 3});
+    }
+
+    @Test
+    void decodeAdvancesBufferPastList () {
+        byte[] first = PostingList.of(new int[]{5, 300}, new float[]{2, 4}).encode();
+        byte[] second = PostingList.of(new int[]{1}, new float[]{9}).encode();
+        ByteBuffer buffer = ByteBuffer.allocate(first.length + second.length).put(first).put(second).flip();
+
+        assertPostings(PostingList.decode(buffer), new int[]{5, 300}, new float[]{2, 4});
+        assertEquals(first.length, buffer.position());
+        assertPostings(PostingList.decode(buffer), new int[]{1}, new float[]{9});
+        assertFalse(buffer.hasRemaining());
+    }
+
+    @Test
+    void mergeIntersectAndWithout () {
+        PostingList left = PostingList.of(new int[]{1, 3, 5}, new float[]{1, 1, 1});
+        PostingList right = PostingList.of(new int[]{3, 4, 5}, new float[]{2, 2, 2});
+
+        assertPostings(left.merge(right), new int[]{1, 3, 4, 5}, new float[]{1, 2, 2, 2});
+        assertPostings(left.intersect(right), new int[]{3, 5}, new float[]{3, 3});
+        assertPostings(left.without(Set.of(3)), new int[]{1, 5}, new float[]{1, 1});
+    }
+
+    @Test
+    void concatMergesOnlyOverlappingLists () {
+        PostingList first = PostingList.of(new int[]{1, 2}, new float[]{1, 1});
+        PostingList second = PostingList.of(new int[]{4, 6}, new float[]{1, 1});
+        PostingList overlapping = PostingList.of(new int[]{2, 5}, new float[]{3, 3});
+
+        assertPostings(PostingList.concat(List.of(first, PostingList.empty(), second)),
+                new int[]{1, 2, 4, 6}, new float[]{1, 1, 1, 1});
+        assertPostings(PostingList.concat(List.of(first, second, overlapping)),
+                new int[]{1, 2, 4, 5, 6}, new float[]{1, 3, 1, 3, 1});
+        assertEquals(2, second.merge(overlapping).lowerBound(5, 1));
+    }
+
+    @Test
+    void mergeAllKeepsRankOfLastList () {
+        PostingList first = PostingList.of(new int[]{1, 4, 7}, new float[]{1, 1, 1});
+        PostingList second = PostingList.of(new int[]{2, 4}, new float[]{2, 2});
+        PostingList third = PostingList.of(new int[]{4, 9}, new float[]{3, 3});
+
+        PostingList merged = PostingList.mergeAll(List.of(first, PostingList.empty(), second, third));
+
+        assertPostings(merged, new int[]{1, 2, 4, 7, 9}, new float[]{1, 2, 3, 1, 3});
+        assertPostings(first.merge(second).merge(third), new int[]{1, 2, 4, 7, 9}, new float[]{1, 2, 3, 1, 3});
+    }
+
+    private static void assertPostings (PostingList postings, int[] pageIds, float[] ranks) {
+        assertEquals(pageIds.length, postings.size());
+        for (int i = 0; i < pageIds.length; i++) {
+            assertEquals(pageIds[i], postings.pageId(i));
+            assertEquals(ranks[i], postings.rank(i));
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package searchengine.utils;
+
+import org.junit.jupiter.api.Test;
+import searchengine.config.CrawlSeedSettings;
+import searchengine.config.WebConnection;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RobotsCacheTest {
+    private static final String SITE = "http://a.local/";
+
+    @Test
+    void concurrentRequestsWaitForOneFetch () throws Exception {
+        CountDownLatch fetchStarted = new CountDownLatch(1);
+        CountDownLatch releaseFetch = new CountDownLatch(1);
+        CountingFetcher fetcher = new CountingFetcher(() -> {
+            fetchStarted.countDown();
+            releaseFetch.await();
+        });
+        RobotsCache cache = new RobotsCache(fetcher, webConnection(), settings(60));
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<RobotsRules> first = executor.submit(() -> cache.getRules(SITE));
+            assertTrue(fetchStarted.await(5, TimeUnit.SECONDS));
+            Future<RobotsRules> second = executor.submit(() -> cache.getRules(SITE));
+            // другой сайт загружается, пока robots.txt первого еще не получен
+            assertEquals(2000L, cache.getRules("http://b.local/").getCrawlDelayMs());
+            assertFalse(second.isDone());
+
+            releaseFetch.countDown();
+            RobotsRules rules = first.get(5, TimeUnit.SECONDS);
+            assertSame(rules, second.get(5, TimeUnit.SECONDS));
+            assertEquals(1, fetcher.fetches(SITE));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void expiredRulesAreFetchedAgain () {
+        CountingFetcher fetcher = new CountingFetcher(() -> {
+        });
+        RobotsCache cache = new RobotsCache(fetcher, webConnection(), settings(0));
+
+        cache.getRules(SITE);
+        cache.getRules(SITE);
+
+        assertEquals(2, fetcher.fetches(SITE));
+    }
+
+    private static WebConnection webConnection () {
+        WebConnection webConnection = new WebConnection();
+        webConnection.setAgent("TestBot");
+        return webConnection;
+    }
+
+    private static CrawlSeedSettings settings (long ttlMinutes) {
+        CrawlSeedSettings settings = new CrawlSeedSettings();
+        settings.setRobotsCacheTtlMinutes(ttlMinutes);
+        return settings;
+    }
+
+    private interface FetchHook {
+        void run () throws InterruptedException;
+    }
+
+    private static class CountingFetcher implements PageFetcher {
+        private final FetchHook hook;
+        private final Map<String, AtomicInteger> fetches = new ConcurrentHashMap<>();
+
+        CountingFetcher (FetchHook hook) {
+            this.hook = hook;
+        }
+
+        int fetches (String siteUrl) {
+            return fetches.getOrDefault(siteUrl + "robots.txt", new AtomicInteger()).get();
+        }
+
+        @Override
+        public FetchedPage fetch (String link) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public FetchedPage fetchResource (String link) throws IOException {
+            fetches.computeIfAbsent(link, key -> new AtomicInteger()).incrementAndGet();
+            if (link.startsWith(SITE)) {
+                try {
+                    hook.run();
+                } catch (InterruptedException e) {
+                    throw new IOException(e);
+                }
+            }
+            return new FetchedPage(link, 200, Map.of(), "User-agent: *\nCrawl-delay: 2\n");
+        }
+
+        @Override
+        public long getRequestDelay () {
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package searchengine.utils;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import searchengine.config.PostingSettings;
+import searchengine.model.entities.Lemma;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SegmentPostingStoreTest {
+    private static final long WAIT_MS = 10_000;
+
+    @TempDir
+    Path directory;
+    private PostingSettings settings;
+    private SegmentPostingStore store;
+
+    @BeforeEach
+    void openStore () throws IOException {
+        settings = new PostingSettings();
+        settings.setMergeFactor(2);
+        store = open();
+    }
+
+    @AfterEach
+    void closeStore () throws IOException {
+        store.close();
+    }
+
+    @Test
+    void mergesSegmentsAndKeepsPostings () throws Exception {
+        store.append(Map.of(lemma(1), postings(1, 2), lemma(2), postings(2)));
+        store.append(Map.of(lemma(1), postings(5), lemma(3), postings(5, 6)));
+
+        await(() -> store.segmentCount() == 1);
+        assertPages(store.read(lemma(1)), 1, 2, 5);
+        assertPages(store.read(lemma(2)), 2);
+        assertPages(store.read(lemma(3)), 5, 6);
+        assertPages(store.intersect(lemma(3), postings(1, 6)), 6);
+    }
+
+    @Test
+    void mergeDropsDeletedPagesAndTheirMarks () throws Exception {
+        store.append(Map.of(lemma(1), postings(1, 2, 3)));
+        store.append(Map.of(lemma(1), postings(4)));
+        await(() -> store.segmentCount() == 1);
+
+        store.remove(Map.of(lemma(1), Set.of(2)));
+        assertPages(store.read(lemma(1)), 1, 3, 4);
+        Path deletedPages = directory.resolve("deleted-pages.bin");
+        assertEquals(Integer.BYTES, Files.size(deletedPages));
+
+        store.append(Map.of(lemma(1), postings(7)));
+        await(() -> sizeOf(deletedPages) == 0);
+        assertEquals(1, store.segmentCount());
+        assertPages(store.read(lemma(1)), 1, 3, 4, 7);
+
+        store.close();
+        store = open();
+        assertPages(store.read(lemma(1)), 1, 3, 4, 7);
+    }
+
+    @Test
+    void keepsMarksOfPagesStillInSegments () throws Exception {
+        store.append(Map.of(lemma(1), postings(1, 2)));
+        store.remove(Map.of(lemma(1), Set.of(2)));
+        store.close();
+
+        store = open();
+        assertEquals(Integer.BYTES, Files.size(directory.resolve("deleted-pages.bin")));
+        assertPages(store.read(lemma(1)), 1);
+    }
+
+    private SegmentPostingStore open () throws IOException {
+        return new SegmentPostingStore(directory, settings, null, null, new SimpleMeterRegistry());
+    }
+
+    private static Lemma lemma (int id) {
+        Lemma lemma = new Lemma();
+        lemma.setId(id);
+        return lemma;
+    }
+
+    private static PostingList postings (int... pageIds) {
+        return PostingList.of(pageIds, new float[pageIds.length]);
+    }
+
+    private static void assertPages (PostingList postings, int... pageIds) {
+        assertEquals(pageIds.length, postings.size());
+        for (int i = 0; i < pageIds.length; i++) {
+            assertEquals(pageIds[i], postings.pageId(i));
+        }
+    }
+
+    private static long sizeOf (Path path) {
+        try {
+            return Files.size(path);
+        } catch (IOException e) {
+            return -1;
+        }
+    }
+
+    private static void await (BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + WAIT_MS;
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.currentTimeMillis() < deadline, "условие не выполнилось за " + WAIT_MS + " мс");
+            Thread.sleep(10);
+        }
+    }
+}
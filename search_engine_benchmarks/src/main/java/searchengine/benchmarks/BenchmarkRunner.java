@@ -0,0 +1,23 @@
+package searchengine.benchmarks;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Запускает бенчмарки с профилировщиком GC, чтобы кроме пропускной способности
+ * выводить скорость выделения памяти (gc.alloc.rate, gc.alloc.rate.norm).
+ * Принимает те же аргументы командной строки, что и org.openjdk.jmh.Main.
+ */
+public class BenchmarkRunner {
+    public static void main (String[] args) throws RunnerException, CommandLineOptionException {
+        new Runner(new OptionsBuilder()
+                .parent(new CommandLineOptions(args))
+                .addProfiler(GCProfiler.class)
+                .build()
+        ).run();
+    }
+}
@@ -0,0 +1,77 @@
+package searchengine.benchmarks;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * HTML-страницы заданного размера на основе статей из resources/fixtures.
+ * Тело статьи повторяется, пока страница не достигнет нужного размера.
+ */
+public final class HtmlFixtures {
+    private static final Pattern MAIN = Pattern.compile("(?s)(.*<main[^>]*>)(.*)(</main>.*)");
+
+    public enum Size {
+        SMALL(4 * 1024), MEDIUM(64 * 1024), LARGE(512 * 1024);
+
+        private final int bytes;
+
+        Size (int bytes) {
+            this.bytes = bytes;
+        }
+    }
+
+    public enum Lang {
+        RU, EN, MIXED
+    }
+
+    private HtmlFixtures () {
+    }
+
+    public static String article (Lang lang) {
+        return switch (lang) {
+            case RU -> load("article_ru.html");
+            case EN -> load("article_en.html");
+            case MIXED -> merge(load("article_ru.html"), load("article_en.html"));
+        };
+    }
+
+    public static String page (Lang lang, Size size) {
+        String html = article(lang);
+        Matcher matcher = MAIN.matcher(html);
+        if (!matcher.matches()) {
+            throw new IllegalStateException("Фикстура не содержит тег main");
+        }
+        String head = matcher.group(1);
+        String body = matcher.group(2);
+        String tail = matcher.group(3);
+
+        StringBuilder page = new StringBuilder(size.bytes + body.length()).append(head);
+        while (page.length() + tail.length() < size.bytes) {
+            page.append(body);
+        }
+        return page.append(tail).toString();
+    }
+
+    private static String merge (String first, String second) {
+        Matcher matcher = MAIN.matcher(second);
+        if (!matcher.matches()) {
+            throw new IllegalStateException("Фикстура не содержит тег main");
+        }
+        return first.replace("</main>", matcher.group(2) + "</main>");
+    }
+
+    private static String load (String name) {
+        try (InputStream stream = HtmlFixtures.class.getResourceAsStream("/fixtures/" + name)) {
+            if (stream == null) {
+                throw new IllegalStateException("Фикстура не найдена: " + name);
+            }
+            return new String(stream.readAllBytes(), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package searchengine.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import searchengine.utils.Language;
+import searchengine.utils.TextParserImpl;
+
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LemmaBenchmark {
+    private static final String[] RUSSIAN_WORDS = {
+            "поисковый", "движок", "страницы", "индексация", "леммами", "ранжирование", "запроса", "сниппет"
+    };
+    private static final String[] ENGLISH_WORDS = {
+            "search", "engine", "pages", "indexing", "lemmas", "ranking", "queries", "snippets"
+    };
+
+    private TextParserImpl textParser;
+
+    @Setup
+    public void setUp () {
+        textParser = new TextParserImpl();
+    }
+
+    @State(Scope.Thread)
+    public static class WordCursor {
+        private int position;
+
+        int next (int length) {
+            position = (position + 1) % length;
+            return position;
+        }
+    }
+
+    @Benchmark
+    public String getLemmaRussian (WordCursor cursor) {
+        return textParser.getLemma(RUSSIAN_WORDS[cursor.next(RUSSIAN_WORDS.length)], Language.RUSSIAN);
+    }
+
+    @Benchmark
+    public String getLemmaEnglish (WordCursor cursor) {
+        return textParser.getLemma(ENGLISH_WORDS[cursor.next(ENGLISH_WORDS.length)], Language.ENGLISH);
+    }
+}
@@ -0,0 +1,117 @@
+package searchengine.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import searchengine.model.entities.Lemma;
+import searchengine.model.entities.Page;
+import searchengine.model.entities.Site;
+import searchengine.utils.PostingList;
+import searchengine.utils.SearchRanking;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Внутренние этапы поиска без обращения к БД: отбор ключевых слов,
+ * пересечение списков страниц и расчет релевантности.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SearchBenchmark {
+    static final String[] QUERY_LEMMAS = {"поисковый", "движок", "страница", "search", "engine", "page"};
+    private static final int SITE_COUNT = 3;
+    private static final int TOP_COUNT = 20;
+
+    @Param({"100", "1000", "10000"})
+    private int pageCount;
+
+    private Map<String, List<Lemma>> keyWordCandidates;
+    private PostingList rarestLemmaPages;
+    private PostingList otherLemmaPages;
+    private PostingList matches;
+    private List<List<Map.Entry<Page, Double>>> siteTopPages;
+
+    @Setup
+    public void setUp () {
+        Random random = new Random(42);
+        Site site = new Site();
+        site.setId(1);
+
+        keyWordCandidates = new HashMap<>();
+        for (String lemma : QUERY_LEMMAS) {
+            keyWordCandidates.put(lemma, List.of(lemma(site, lemma, random.nextInt(pageCount) + 1)));
+        }
+
+        rarestLemmaPages = sample(random, 0.3);
+        otherLemmaPages = sample(random, 0.6);
+        matches = rarestLemmaPages.intersect(otherLemmaPages);
+
+        List<List<Map.Entry<Page, Double>>> siteHits = new ArrayList<>();
+        for (int i = 0; i < SITE_COUNT; i++) {
+            siteHits.add(new ArrayList<>());
+        }
+        for (int i = 0; i < matches.size(); i++) {
+            Page page = new Page();
+            page.setId(matches.pageId(i));
+            page.setSite(site);
+            siteHits.get(i % SITE_COUNT).add(Map.entry(page, (double) matches.rank(i)));
+        }
+        siteTopPages = new ArrayList<>();
+        for (List<Map.Entry<Page, Double>> hits : siteHits) {
+            hits.sort(SearchRanking.RELEVANCE_ORDER);
+            siteTopPages.add(hits.subList(0, Math.min(TOP_COUNT, hits.size())));
+        }
+    }
+
+    @Benchmark
+    public List<Lemma> keyWordSelection () {
+        return SearchRanking.selectKeyWords(keyWordCandidates, pageCount);
+    }
+
+    @Benchmark
+    public PostingList pageIntersection () {
+        return rarestLemmaPages.intersect(otherLemmaPages);
+    }
+
+    /**
+     * Отбор первых страниц сайта по сумме rank
+     */
+    @Benchmark
+    public List<Map.Entry<Integer, Double>> relevance () {
+        return SearchRanking.topPageIds(matches, TOP_COUNT);
+    }
+
+    /**
+     * Слияние выдачи сайтов и деление релевантности на максимальную
+     */
+    @Benchmark
+    public List<Map.Entry<Page, Double>> relevanceNormalization () {
+        return SearchRanking.normalizeRelevance(SearchRanking.mergeTopPages(siteTopPages, TOP_COUNT));
+    }
+
+    static Lemma lemma (Site site, String text, int frequency) {
+        Lemma lemma = new Lemma();
+        lemma.setId(text.hashCode());
+        lemma.setSite(site);
+        lemma.setLemma(text);
+        lemma.setFrequency(frequency);
+        return lemma;
+    }
+
+    private PostingList sample (Random random, double share) {
+        List<Integer> pageIds = new ArrayList<>();
+        for (int i = 0; i < pageCount; i++) {
+            if (random.nextDouble() < share) {
+                pageIds.add(i);
+            }
+        }
+        float[] ranks = new float[pageIds.size()];
+        for (int i = 0; i < ranks.length; i++) {
+            ranks[i] = random.nextInt(20) + 1;
+        }
+        return PostingList.of(pageIds.stream().mapToInt(Integer::intValue).toArray(), ranks);
+    }
+}
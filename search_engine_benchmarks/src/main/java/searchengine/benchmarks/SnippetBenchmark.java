@@ -0,0 +1,47 @@
+package searchengine.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import searchengine.model.entities.Lemma;
+import searchengine.model.entities.Site;
+import searchengine.utils.SnippetBuilder;
+import searchengine.utils.TextParserImpl;
+
+import java.util.Comparator;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SnippetBenchmark {
+    @Param({"RU", "EN", "MIXED"})
+    private HtmlFixtures.Lang lang;
+
+    @Param({"SMALL", "MEDIUM", "LARGE"})
+    private HtmlFixtures.Size size;
+
+    private SnippetBuilder snippetBuilder;
+    private Set<Lemma> keyWords;
+    private String html;
+
+    @Setup
+    public void setUp () {
+        Site site = new Site();
+        site.setId(1);
+        snippetBuilder = new SnippetBuilder(new TextParserImpl());
+        keyWords = new TreeSet<>(Comparator.comparing(Lemma::getLemma));
+        for (String lemma : SearchBenchmark.QUERY_LEMMAS) {
+            keyWords.add(SearchBenchmark.lemma(site, lemma, 1));
+        }
+        html = HtmlFixtures.page(lang, size);
+    }
+
+    @Benchmark
+    public String snippet () {
+        return snippetBuilder.getSnippet(html, keyWords);
+    }
+}
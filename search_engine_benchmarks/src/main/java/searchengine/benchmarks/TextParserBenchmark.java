@@ -0,0 +1,40 @@
+package searchengine.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import searchengine.utils.TextParserImpl;
+
+import java.util.HashMap;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TextParserBenchmark {
+    @Param({"RU", "EN", "MIXED"})
+    private HtmlFixtures.Lang lang;
+
+    @Param({"SMALL", "MEDIUM", "LARGE"})
+    private HtmlFixtures.Size size;
+
+    private TextParserImpl textParser;
+    private String html;
+
+    @Setup
+    public void setUp () {
+        textParser = new TextParserImpl();
+        html = HtmlFixtures.page(lang, size);
+    }
+
+    @Benchmark
+    public HashMap<String, Integer> getLemmas () {
+        return textParser.getLemmas(html);
+    }
+
+    @Benchmark
+    public String replaceHtml () {
+        return textParser.replaceHtml(html);
+    }
+}
@@ -0,0 +1,136 @@
+package searchengine.loadtest;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import searchengine.Application;
+import searchengine.config.PipelineSettings;
+import searchengine.dto.statistics.PipelineStageStatistics;
+import searchengine.model.IndexingStatus;
+import searchengine.model.entities.Site;
+import searchengine.model.repositories.SiteRepository;
+import searchengine.services.IndexingService;
+import searchengine.utils.CrawlArchive;
+import searchengine.utils.FetchedPage;
+import searchengine.utils.IndexingPipeline;
+
+import javax.persistence.EntityManagerFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+/**
+ * Воспроизводимый замер полной индексации без сети. Поднимает приложение на H2
+ * в режиме crawl-archive-settings.mode=REPLAY и обходит сайт по архиву обхода,
+ * записанному ранее в режиме RECORD. Если архива нет, создается синтетический
+ * сайт из --pages связанных страниц.
+ * Выводит страницы/с и число записей и SQL-запросов в БД в секунду.
+ *
+ * <p>Аргументы: --archive=crawl-archive.bin --site=http://replay.local/ --name=REPLAY
+ * --pages=2000 --seed=42 --db=jdbc-url --deferred-frequencies=false
+ */
+public class CrawlReplayBenchmark {
+    private static final int LINKS_PER_PAGE = 8;
+    private static final long POLL_INTERVAL_MS = 200;
+
+    public static void main (String[] args) throws Exception {
+        LoadTestOptions options = new LoadTestOptions(args);
+        Path archive = Path.of(options.get("archive", "crawl-archive.bin"));
+        String siteUrl = options.get("site", "http://replay.local/");
+        String siteName = options.get("name", "REPLAY");
+        int pageCount = options.getInt("pages", 2000);
+        long seed = options.getLong("seed", 42);
+        String dbUrl = options.get("db", "jdbc:h2:mem:replay;MODE=MySQL;DB_CLOSE_DELAY=-1");
+        // H2 не поддерживает UPDATE ... JOIN, поэтому отложенный пересчет частот по умолчанию выключен
+        boolean deferredFrequencies = options.getBoolean("deferred-frequencies", false);
+
+        if (Files.notExists(archive)) {
+            generateArchive(archive, siteUrl, pageCount, seed);
+        }
+
+        ConfigurableApplicationContext context = new SpringApplicationBuilder(Application.class)
+                .web(WebApplicationType.NONE)
+                .run(
+                        "--spring.datasource.url=" + dbUrl,
+                        "--spring.datasource.username=sa",
+                        "--spring.datasource.password=",
+                        "--spring.datasource.driver-class-name=org.h2.Driver",
+                        "--spring.jpa.database-platform=org.hibernate.dialect.H2Dialect",
+                        "--spring.jpa.hibernate.ddl-auto=create-drop",
+                        "--spring.jpa.show-sql=false",
+                        "--spring.profiles.active=bench",
+                        "--crawl-archive-settings.mode=REPLAY",
+                        "--crawl-archive-settings.path=" + archive,
+                        "--indexing-settings.sites[0].url=" + siteUrl,
+                        "--indexing-settings.sites[0].name=" + siteName,
+                        "--pipeline-settings.deferred-frequencies=" + deferredFrequencies
+                );
+        try {
+            run(context, siteUrl);
+        } finally {
+            context.close();
+        }
+    }
+
+    private static void run (ConfigurableApplicationContext context, String siteUrl) throws InterruptedException {
+        IndexingService indexingService = context.getBean(IndexingService.class);
+        SiteRepository siteRepository = context.getBean(SiteRepository.class);
+        IndexingPipeline pipeline = context.getBean(IndexingPipeline.class);
+        PipelineSettings pipelineSettings = context.getBean(PipelineSettings.class);
+        Statistics statistics = context.getBean(EntityManagerFactory.class)
+                .unwrap(SessionFactory.class)
+                .getStatistics();
+        statistics.clear();
+
+        long start = System.nanoTime();
+        indexingService.startIndexing();
+        Site site;
+        do {
+            Thread.sleep(POLL_INTERVAL_MS);
+            site = siteRepository.findByUrl(siteUrl).orElse(null);
+        } while (site == null || site.getIndexingStatus() == IndexingStatus.INDEXING);
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        long pages = pipeline.getStatistics().stream()
+                .filter(stage -> stage.getStage().equals("persist"))
+                .mapToLong(PipelineStageStatistics::getProcessed)
+                .sum();
+        long rowWrites = statistics.getEntityInsertCount()
+                + statistics.getEntityUpdateCount()
+                + statistics.getEntityDeleteCount();
+        long statementCount = statistics.getPrepareStatementCount();
+
+        System.out.printf("Статус сайта: %s%s%n", site.getIndexingStatus(),
+                site.getLastError() == null ? "" : " (" + site.getLastError() + ")");
+        // без отложенного пересчета частоты лемм обновляются при каждой записи пачки, поэтому
+        // записей в БД на страницу больше, чем в рабочей конфигурации
+        System.out.printf("pipeline-settings.deferred-frequencies: %s%s%n", pipelineSettings.isDeferredFrequencies(),
+                pipelineSettings.isDeferredFrequencies() ? "" : " (в рабочей конфигурации true)");
+        System.out.printf("%10s %10s %12s %14s %14s%n", "pages", "time, s", "pages/s", "rows/s", "statements/s");
+        System.out.printf("%10d %10.1f %12.1f %14.1f %14.1f%n", pages, seconds,
+                pages / seconds, rowWrites / seconds, statementCount / seconds);
+    }
+
+    private static void generateArchive (Path archive, String siteUrl, int pageCount, long seed) throws Exception {
+        SyntheticCorpus corpus = new SyntheticCorpus(seed);
+        Random random = new Random(seed);
+        try (CrawlArchive.Writer writer = new CrawlArchive.Writer(archive)) {
+            for (int number = 0; number < pageCount; number++) {
+                String html = corpus.page(random, number);
+                StringBuilder links = new StringBuilder();
+                for (int i = 0; i < LINKS_PER_PAGE && pageCount > 1; i++) {
+                    links.append("<a href=\"/page/").append(1 + random.nextInt(pageCount - 1)).append("\">link</a>");
+                }
+                if (number + 1 < pageCount) {
+                    links.append("<a href=\"/page/").append(number + 1).append("\">next</a>");
+                }
+                html = html.replace("</body>", links + "</body>");
+                String url = number == 0 ? siteUrl : siteUrl + "page/" + number;
+                writer.write(new FetchedPage(url, 200, Map.of("Content-Type", "text/html; charset=UTF-8"), html));
+            }
+        }
+        System.out.printf("Создан синтетический архив %s: %d страниц%n", archive, pageCount);
+    }
+}
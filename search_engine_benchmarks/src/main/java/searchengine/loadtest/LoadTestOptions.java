@@ -0,0 +1,42 @@
+package searchengine.loadtest;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Аргументы нагрузочных тестов вида --name=value
+ */
+final class LoadTestOptions {
+    private final Map<String, String> options = new HashMap<>();
+
+    LoadTestOptions (String[] args) {
+        for (String arg : args) {
+            if (!arg.startsWith("--") || !arg.contains("=")) {
+                throw new IllegalArgumentException("Ожидается аргумент вида --name=value: " + arg);
+            }
+            options.put(arg.substring(2, arg.indexOf("=")), arg.substring(arg.indexOf("=") + 1));
+        }
+    }
+
+    String get (String name, String defaultValue) {
+        return options.getOrDefault(name, defaultValue);
+    }
+
+    int getInt (String name, int defaultValue) {
+        return options.containsKey(name) ? Integer.parseInt(options.get(name)) : defaultValue;
+    }
+
+    long getLong (String name, long defaultValue) {
+        return options.containsKey(name) ? Long.parseLong(options.get(name)) : defaultValue;
+    }
+
+    boolean getBoolean (String name, boolean defaultValue) {
+        return options.containsKey(name) ? Boolean.parseBoolean(options.get(name)) : defaultValue;
+    }
+
+    List<Integer> getInts (String name, String defaultValue) {
+        return Arrays.stream(get(name, defaultValue).split(",")).map(String::trim).map(Integer::parseInt).toList();
+    }
+}
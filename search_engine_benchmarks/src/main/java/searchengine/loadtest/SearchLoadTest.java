@@ -0,0 +1,162 @@
+package searchengine.loadtest;
+
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import searchengine.Application;
+import searchengine.model.IndexingStatus;
+import searchengine.model.entities.Page;
+import searchengine.model.entities.Site;
+import searchengine.model.repositories.SiteRepository;
+import searchengine.services.SearchService;
+import searchengine.utils.PageIndexer;
+
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Нагрузочный тест поиска. Поднимает контекст приложения на встроенной H2 (режим MySQL),
+ * загружает синтетический корпус через {@link PageIndexer#savePages} и параллельно
+ * выполняет смесь запросов через {@link SearchService#search} без срока выполнения,
+ * чтобы измерялась сама обработка запроса, а не очередь пула поиска.
+ * Для каждого размера корпуса и числа потоков выводит QPS и p50/p95/p99.
+ *
+ * <p>Аргументы: --sizes=1000,5000,20000 --threads=1,4,16 --queries=1000 --seed=42 --db=jdbc-url
+ */
+public class SearchLoadTest {
+    private static final String SITE_URL = "http://loadtest.local/";
+    private static final int LOAD_BATCH_SIZE = 100;
+    private static final int RESULT_LIMIT = 20;
+
+    public static void main (String[] args) throws Exception {
+        LoadTestOptions options = new LoadTestOptions(args);
+        List<Integer> sizes = options.getInts("sizes", "1000,5000,20000");
+        List<Integer> threadCounts = options.getInts("threads", "1,4,16");
+        int queryCount = options.getInt("queries", 1000);
+        long seed = options.getLong("seed", 42);
+        String dbUrl = options.get("db", "jdbc:h2:mem:loadtest;MODE=MySQL;DB_CLOSE_DELAY=-1");
+
+        ConfigurableApplicationContext context = new SpringApplicationBuilder(Application.class)
+                .web(WebApplicationType.NONE)
+                .run(
+                        "--spring.datasource.url=" + dbUrl,
+                        "--spring.datasource.username=sa",
+                        "--spring.datasource.password=",
+                        "--spring.datasource.driver-class-name=org.h2.Driver",
+                        "--spring.jpa.database-platform=org.hibernate.dialect.H2Dialect",
+                        "--spring.jpa.hibernate.ddl-auto=create-drop",
+                        "--spring.jpa.show-sql=false"
+                );
+        try {
+            new SearchLoadTest(context, seed).run(sizes, threadCounts, queryCount);
+        } finally {
+            context.close();
+        }
+    }
+
+    private final PageIndexer pageIndexer;
+    private final SiteRepository siteRepository;
+    private final SearchService searchService;
+    private final SyntheticCorpus corpus;
+    private final Random random;
+
+    private SearchLoadTest (ConfigurableApplicationContext context, long seed) {
+        this.pageIndexer = context.getBean(PageIndexer.class);
+        this.siteRepository = context.getBean(SiteRepository.class);
+        this.searchService = context.getBean(SearchService.class);
+        this.corpus = new SyntheticCorpus(seed);
+        this.random = new Random(seed);
+    }
+
+    private void run (List<Integer> sizes, List<Integer> threadCounts, int queryCount) throws Exception {
+        Site site = saveSite();
+        List<String> queries = new ArrayList<>();
+        for (int i = 0; i < queryCount; i++) {
+            queries.add(corpus.query(random));
+        }
+
+        System.out.printf("Словарь: %d слов, запросов в смеси: %d%n", corpus.vocabularySize(), queryCount);
+        System.out.printf("%10s %8s %10s %10s %10s %10s %12s%n",
+                "pages", "threads", "qps", "p50, ms", "p95, ms", "p99, ms", "load, s");
+
+        int loadedPages = 0;
+        for (int size : sizes) {
+            long loadStart = System.nanoTime();
+            loadedPages = loadPages(site, loadedPages, size);
+            double loadSeconds = (System.nanoTime() - loadStart) / 1e9;
+
+            for (int threads : threadCounts) {
+                replay(queries.subList(0, Math.max(1, queries.size() / 10)), threads);
+                Result result = replay(queries, threads);
+                System.out.printf("%10d %8d %10.1f %10.2f %10.2f %10.2f %12.1f%n",
+                        loadedPages, threads, result.qps(),
+                        result.percentile(0.50), result.percentile(0.95), result.percentile(0.99),
+                        loadSeconds);
+            }
+        }
+    }
+
+    private Site saveSite () {
+        Site site = new Site();
+        site.setUrl(SITE_URL);
+        site.setName("LOADTEST");
+        site.setIndexingStatus(IndexingStatus.INDEXED);
+        site.setStatusTime(LocalDateTime.now());
+        return siteRepository.save(site);
+    }
+
+    private int loadPages (Site site, int from, int to) {
+        List<Page> batch = new ArrayList<>();
+        for (int number = from; number < to; number++) {
+            Page page = new Page();
+            page.setSite(site);
+            page.setPath("/page/" + number);
+            page.setCode(200);
+            page.setContent(corpus.page(random, number));
+            batch.add(page);
+            if (batch.size() == LOAD_BATCH_SIZE) {
+                pageIndexer.savePages(batch);
+                batch = new ArrayList<>();
+            }
+        }
+        pageIndexer.savePages(batch);
+        return Math.max(from, to);
+    }
+
+    private Result replay (List<String> queries, int threads) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        long[] latencies = new long[queries.size()];
+        List<Callable<Void>> tasks = new ArrayList<>();
+        for (int thread = 0; thread < threads; thread++) {
+            int first = thread;
+            tasks.add(() -> {
+                for (int i = first; i < queries.size(); i += threads) {
+                    long start = System.nanoTime();
+                    searchService.search(queries.get(i), null, 0, RESULT_LIMIT);
+                    latencies[i] = System.nanoTime() - start;
+                }
+                return null;
+            });
+        }
+
+        long start = System.nanoTime();
+        try {
+            for (Future<Void> future : executor.invokeAll(tasks)) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+        long elapsed = System.nanoTime() - start;
+        Arrays.sort(latencies);
+        return new Result(latencies, queries.size() / (elapsed / 1e9));
+    }
+
+    private record Result (long[] sortedLatencies, double qps) {
+        double percentile (double quantile) {
+            int index = (int) Math.ceil(quantile * sortedLatencies.length) - 1;
+            return sortedLatencies[Math.max(0, index)] / 1e6;
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package searchengine.loadtest;
+
+import searchengine.benchmarks.HtmlFixtures;
+
+import java.util.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Синтетический русско-английский корпус. Словарь берется из статей-фикстур,
+ * частота слов подчиняется закону Ципфа, порядок рангов перемешан, поэтому
+ * частые слова есть в обоих языках.
+ */
+public class SyntheticCorpus {
+    private static final Pattern WORD = Pattern.compile("[А-Яа-яЁё]{3,}|[A-Za-z]{3,}");
+    private static final double ZIPF_EXPONENT = 1.07;
+
+    private final List<String> vocabulary;
+    private final ZipfSampler sampler;
+
+    public SyntheticCorpus (long seed) {
+        Set<String> words = new LinkedHashSet<>();
+        for (HtmlFixtures.Lang lang : List.of(HtmlFixtures.Lang.RU, HtmlFixtures.Lang.EN)) {
+            String text = HtmlFixtures.article(lang)
+                    .replaceAll("(?s)<(script|style)[^>]*>.*?</\\1>", " ")
+                    .replaceAll("<[^>]*>", " ");
+            Matcher matcher = WORD.matcher(text);
+            while (matcher.find()) {
+                words.add(matcher.group().toLowerCase());
+            }
+        }
+        vocabulary = new ArrayList<>(words);
+        Collections.shuffle(vocabulary, new Random(seed));
+        sampler = new ZipfSampler(vocabulary.size(), ZIPF_EXPONENT);
+    }
+
+    public int vocabularySize () {
+        return vocabulary.size();
+    }
+
+    public String page (Random random, int pageNumber) {
+        StringBuilder html = new StringBuilder("<html><head><title>")
+                .append(words(random, 3 + random.nextInt(4)))
+                .append(" ").append(pageNumber)
+                .append("</title></head><body>");
+        int paragraphs = 2 + random.nextInt(8);
+        for (int i = 0; i < paragraphs; i++) {
+            html.append("<p>").append(words(random, 40 + random.nextInt(120))).append(".</p>");
+        }
+        return html.append("</body></html>").toString();
+    }
+
+    public String query (Random random) {
+        return words(random, 1 + random.nextInt(3));
+    }
+
+    private String words (Random random, int count) {
+        StringJoiner joiner = new StringJoiner(" ");
+        for (int i = 0; i < count; i++) {
+            joiner.add(vocabulary.get(sampler.next(random)));
+        }
+        return joiner.toString();
+    }
+}
@@ -0,0 +1,29 @@
+package searchengine.loadtest;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Выбирает ранг от 0 до size - 1 с вероятностью, обратно пропорциональной (rank + 1)^exponent.
+ */
+public class ZipfSampler {
+    private final double[] cumulative;
+
+    public ZipfSampler (int size, double exponent) {
+        cumulative = new double[size];
+        double sum = 0;
+        for (int rank = 0; rank < size; rank++) {
+            sum += 1.0 / Math.pow(rank + 1, exponent);
+            cumulative[rank] = sum;
+        }
+        for (int rank = 0; rank < size; rank++) {
+            cumulative[rank] /= sum;
+        }
+    }
+
+    public int next (Random random) {
+        int index = Arrays.binarySearch(cumulative, random.nextDouble());
+        int rank = index >= 0 ? index : -index - 1;
+        return Math.min(rank, cumulative.length - 1);
+    }
+}